@@ -0,0 +1,14 @@
+package android.os;
+
+import java.io.File;
+
+/*
+ * Desktop stand-in for the only android class used by the
+ * platform-independent code (Paths); the benchmarks override the
+ * directory options anyway.
+ */
+public class Environment {
+	public static File getExternalStorageDirectory() {
+		return new File(System.getProperty("java.io.tmpdir"));
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.benchmark;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.geometerplus.zlibrary.core.network.*;
+
+import org.geometerplus.benchmark.platform.BenchmarkPlatform;
+import org.geometerplus.benchmark.platform.StubHttpServer;
+
+/*
+ * Loading of one page from each of several local stub catalogs that
+ * answer with different latencies: all the requests at once, as the
+ * network library does, and one after another. Performed at once, the
+ * requests should take about the latency of the slowest catalog, not
+ * the sum of the latencies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CatalogBenchmark {
+	private static final int PAGE_SIZE = 16 * 1024;
+
+	// latencies of the catalogs, in milliseconds
+	@Param({ "50,100,200,400" })
+	public String latencies;
+
+	private final ArrayList<StubHttpServer> myServers = new ArrayList<StubHttpServer>();
+
+	@Setup
+	public void setUp() throws IOException {
+		BenchmarkPlatform.init();
+		for (String latency : latencies.split(",")) {
+			final StubHttpServer server = new StubHttpServer(PAGE_SIZE);
+			server.setLatency(Long.parseLong(latency));
+			myServers.add(server);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (StubHttpServer server : myServers) {
+			server.stop();
+		}
+	}
+
+	private static final class PageRequest extends ZLNetworkRequest {
+		int Size;
+
+		PageRequest(String url) {
+			super(url);
+		}
+
+		public void handleStream(InputStream inputStream, int length) throws IOException {
+			final byte[] buffer = new byte[8192];
+			int count;
+			while ((count = inputStream.read(buffer)) > 0) {
+				Size += count;
+			}
+		}
+	}
+
+	private List<PageRequest> createRequests() {
+		final ArrayList<PageRequest> requests = new ArrayList<PageRequest>();
+		for (StubHttpServer server : myServers) {
+			requests.add(new PageRequest(server.url()));
+		}
+		return requests;
+	}
+
+	private static int check(List<PageRequest> requests) {
+		int size = 0;
+		for (PageRequest request : requests) {
+			if (request.Size != PAGE_SIZE) {
+				throw new IllegalStateException(request.Size + " bytes instead of " + PAGE_SIZE);
+			}
+			size += request.Size;
+		}
+		return size;
+	}
+
+	@Benchmark
+	public int performAtOnce() throws ZLNetworkException {
+		final List<PageRequest> requests = createRequests();
+		ZLNetworkManager.Instance().perform(new ArrayList<ZLNetworkRequest>(requests));
+		return check(requests);
+	}
+
+	@Benchmark
+	public int performOneByOne() throws ZLNetworkException {
+		final List<PageRequest> requests = createRequests();
+		for (PageRequest request : requests) {
+			ZLNetworkManager.Instance().perform(request);
+		}
+		return check(requests);
+	}
+}
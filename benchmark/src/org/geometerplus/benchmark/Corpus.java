@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark;
+
+import java.io.File;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+
+import org.geometerplus.fbreader.bookmodel.BookModel;
+import org.geometerplus.fbreader.library.Book;
+
+import org.geometerplus.benchmark.platform.BenchmarkPlatform;
+
+// access to the files written by CorpusGenerator
+public abstract class Corpus {
+	/*
+	 * name is a path relative to the corpus directory; an entry of
+	 * an archive is given as archive:entry.
+	 */
+	public static ZLFile file(String name) {
+		final int index = name.indexOf(':');
+		final String path = index == -1 ? name : name.substring(0, index);
+		final File file = new File(BenchmarkPlatform.corpusDirectory(), path);
+		if (!file.exists()) {
+			throw new IllegalStateException(file + " not found; generate the corpus first");
+		}
+		final ZLFile zlFile = ZLFile.createFileByPath(file.getAbsolutePath());
+		return index == -1 ? zlFile : ZLFile.createFile(zlFile, name.substring(index + 1));
+	}
+
+	public static BookModel model(String name) {
+		BenchmarkPlatform.init();
+		final BookModel model = BookModel.createModel(Book.getByFile(file(name)));
+		if (model == null) {
+			throw new IllegalStateException("cannot read " + name);
+		}
+		return model;
+	}
+}
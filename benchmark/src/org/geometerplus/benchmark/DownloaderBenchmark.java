@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.benchmark;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.geometerplus.zlibrary.core.network.*;
+
+import org.geometerplus.fbreader.Paths;
+
+import org.geometerplus.benchmark.platform.BenchmarkPlatform;
+import org.geometerplus.benchmark.platform.StubHttpServer;
+
+/*
+ * A book download from a local stub server: a well-behaved one, one that
+ * drops every connection, one that replaces the book during the download,
+ * and ones without range support, with and without the length. Every
+ * downloaded file is compared with the book the server has at the end.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DownloaderBenchmark {
+	// large enough to be fetched in several segments
+	private static final int SIZE = 6 * 1024 * 1024;
+
+	@Param({ "clean", "drops", "changed", "noRanges", "noRangesNoLength" })
+	public String server;
+
+	private StubHttpServer myServer;
+	private ZLNetworkDownloader myDownloader;
+	private File myFile;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		BenchmarkPlatform.init();
+		myServer = new StubHttpServer(SIZE);
+		myDownloader = new ZLNetworkDownloader(1, 1);
+		myFile = new File(Paths.cacheDirectory(), "download.epub");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		myServer.stop();
+	}
+
+	@Setup(Level.Invocation)
+	public void prepare() {
+		myServer.reset();
+		if ("drops".equals(server)) {
+			myServer.setDropAfter(1024 * 1024);
+		} else if ("changed".equals(server)) {
+			myServer.setChangeAfter(2);
+		} else if ("noRanges".equals(server)) {
+			myServer.setRangesSupported(false);
+		} else if ("noRangesNoLength".equals(server)) {
+			myServer.setRangesSupported(false);
+			myServer.setLengthKnown(false);
+		}
+		myFile.delete();
+		new File(myFile.getPath() + ".part").delete();
+		new File(myFile.getPath() + ".state").delete();
+	}
+
+	@Benchmark
+	public long download() throws Exception {
+		final CountDownLatch finished = new CountDownLatch(1);
+		final ZLNetworkException[] error = new ZLNetworkException[1];
+		myDownloader.download(myServer.url(), null, myFile, new ZLNetworkDownloader.Listener() {
+			public void onProgress(ZLNetworkDownloader.Download download, long downloaded, long total) {
+			}
+
+			public void onFinish(ZLNetworkDownloader.Download download, ZLNetworkException e) {
+				error[0] = e;
+				finished.countDown();
+			}
+		});
+		finished.await();
+		if (error[0] != null) {
+			throw error[0];
+		}
+		if (!Arrays.equals(read(myFile), myServer.data())) {
+			throw new IllegalStateException("downloaded file differs from the served one");
+		}
+		// without ranges, a second request would download the book again
+		if (server.startsWith("noRanges") && myServer.getRequestsNumber() != 1) {
+			throw new IllegalStateException(myServer.getRequestsNumber() + " requests instead of 1");
+		}
+		return myFile.length();
+	}
+
+	private static byte[] read(File file) throws IOException {
+		final byte[] data = new byte[(int)file.length()];
+		final DataInputStream stream = new DataInputStream(new FileInputStream(file));
+		try {
+			stream.readFully(data);
+		} finally {
+			stream.close();
+		}
+		return data;
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.geometerplus.fbreader.bookmodel.BookModel;
+import org.geometerplus.fbreader.formats.*;
+import org.geometerplus.fbreader.library.Book;
+
+import org.geometerplus.benchmark.platform.BenchmarkPlatform;
+
+/*
+ * Reading of the corpus book in every format: meta info (as the library
+ * scan does) and the full model. With modelCache set, the model is
+ * written to the model cache once and then loaded from it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FormatBenchmark {
+	@Param({ "book.fb2", "book.epub", "book.mobi", "book.huff.mobi", "book.fb2.zip:book.fb2" })
+	public String fileName;
+
+	@Param({ "false", "true" })
+	public boolean modelCache;
+
+	private Book myBook;
+	private FormatPlugin myPlugin;
+
+	@Setup
+	public void setUp() {
+		BenchmarkPlatform.init();
+		BenchmarkPlatform.setModelCacheEnabled(modelCache);
+		myBook = Book.getByFile(Corpus.file(fileName));
+		myPlugin = PluginCollection.Instance().getPlugin(myBook.File);
+	}
+
+	@Benchmark
+	public boolean readMetaInfo() {
+		return myPlugin.readMetaInfo(myBook);
+	}
+
+	@Benchmark
+	public int readModel() {
+		return BookModel.createModel(myBook).BookTextModel.getParagraphsNumber();
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.geometerplus.zlibrary.text.hyphenation.ZLTextHyphenator;
+import org.geometerplus.zlibrary.text.model.*;
+import org.geometerplus.zlibrary.text.view.ZLTextWord;
+
+import org.geometerplus.benchmark.platform.BenchmarkPlatform;
+
+/*
+ * Hyphenation: loading of the patterns for a language, from the XML
+ * pattern file or from the compiled pattern cache, and computing of
+ * hyphenation points for the distinct words of the corpus book. There
+ * are more words than the hyphenator caches, so every call computes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HyphenationBenchmark {
+	@Param({ "en", "de" })
+	public String language;
+
+	private File myCacheDirectory;
+	private ZLTextWord[] myWords;
+
+	@Setup
+	public void setUp() {
+		BenchmarkPlatform.init();
+		myCacheDirectory = new File(System.getProperty("java.io.tmpdir"), "fbreader-benchmark-hyphenation");
+
+		final ZLTextModel model = Corpus.model("book.fb2").BookTextModel;
+		final LinkedHashSet<String> words = new LinkedHashSet<String>();
+		for (int i = 0; i < model.getParagraphsNumber(); ++i) {
+			for (ZLTextParagraph.EntryIterator it = model.getParagraph(i).iterator(); it.hasNext(); ) {
+				it.next();
+				if (it.getType() != ZLTextParagraph.Entry.TEXT) {
+					continue;
+				}
+				final char[] data = it.getTextData();
+				final int end = it.getTextOffset() + it.getTextLength();
+				for (int start = it.getTextOffset(); start < end; ) {
+					int wordEnd = start;
+					while (wordEnd < end && !Character.isWhitespace(data[wordEnd])) {
+						++wordEnd;
+					}
+					if (wordEnd > start) {
+						words.add(new String(data, start, wordEnd - start));
+					}
+					start = wordEnd + 1;
+				}
+			}
+		}
+		myWords = new ZLTextWord[words.size()];
+		int index = 0;
+		for (String word : words) {
+			myWords[index++] = new ZLTextWord(word.toCharArray(), 0, word.length(), 0);
+		}
+	}
+
+	@Benchmark
+	public int loadPatterns() {
+		ZLTextHyphenator.setCacheDirectory(null);
+		ZLTextHyphenator.deleteInstance();
+		ZLTextHyphenator.Instance().load(language);
+		return ZLTextHyphenator.Instance().getInfo(myWords[0]).hashCode();
+	}
+
+	@Benchmark
+	public int loadCompiledPatterns() {
+		ZLTextHyphenator.setCacheDirectory(myCacheDirectory.getPath());
+		ZLTextHyphenator.deleteInstance();
+		ZLTextHyphenator.Instance().load(language);
+		return ZLTextHyphenator.Instance().getInfo(myWords[0]).hashCode();
+	}
+
+	@Benchmark
+	public int hyphenate() {
+		final ZLTextHyphenator hyphenator = ZLTextHyphenator.Instance();
+		hyphenator.load(language);
+		int count = 0;
+		for (ZLTextWord word : myWords) {
+			if (hyphenator.getInfo(word).isHyphenationPossible(word.Length / 2)) {
+				++count;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.benchmark;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.geometerplus.zlibrary.core.network.*;
+
+import org.geometerplus.benchmark.platform.BenchmarkPlatform;
+import org.geometerplus.benchmark.platform.StubHttpServer;
+
+/*
+ * Browsing of 50 catalog pages on one stub catalog, one page after
+ * another and all at once. The shared client keeps its connections
+ * alive, so a whole trial should open at most as many connections as
+ * are allowed per host; more connections fail the trial. The numbers
+ * of connections and the mean time to the first byte, as counted by
+ * ZLNetworkMetrics, are printed at the end of the trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class KeepAliveBenchmark {
+	private static final int PAGES_NUMBER = 50;
+	private static final int PAGE_SIZE = 16 * 1024;
+
+	@Param({ "0", "20" })
+	public long latency;
+
+	private StubHttpServer myServer;
+	private int myMaxConnections;
+	private int myConnectionsNumber;
+	private int myRequestsNumber;
+	private long myFirstByteTime;
+
+	@Setup
+	public void setUp() throws IOException {
+		BenchmarkPlatform.init();
+		myServer = new StubHttpServer(PAGE_SIZE);
+		myServer.setLatency(latency);
+		myMaxConnections = ZLNetworkManager.Instance().MaxConnectionsPerHostOption.getValue();
+	}
+
+	@TearDown
+	public void tearDown() {
+		myServer.stop();
+		System.out.println(
+			"connections: " + myConnectionsNumber + " for " + myRequestsNumber + " pages" +
+			", first byte: " + (myRequestsNumber > 0 ? myFirstByteTime / (double)myRequestsNumber : 0) + "ms"
+		);
+	}
+
+	private static final class PageRequest extends ZLNetworkRequest {
+		int Size;
+
+		PageRequest(String url) {
+			super(url);
+		}
+
+		public void handleStream(InputStream inputStream, int length) throws IOException {
+			final byte[] buffer = new byte[8192];
+			int count;
+			while ((count = inputStream.read(buffer)) > 0) {
+				Size += count;
+			}
+		}
+	}
+
+	private List<PageRequest> createRequests() {
+		final ArrayList<PageRequest> requests = new ArrayList<PageRequest>();
+		for (int i = 0; i < PAGES_NUMBER; ++i) {
+			requests.add(new PageRequest(myServer.url() + "?page=" + i));
+		}
+		return requests;
+	}
+
+	private int check(List<PageRequest> requests) {
+		int size = 0;
+		for (PageRequest request : requests) {
+			if (request.Size != PAGE_SIZE) {
+				throw new IllegalStateException(request.Size + " bytes instead of " + PAGE_SIZE);
+			}
+			final ZLNetworkMetrics metrics = request.getMetrics();
+			myConnectionsNumber += metrics.ConnectionsNumber;
+			myFirstByteTime += metrics.FirstByteTime;
+			++myRequestsNumber;
+			size += request.Size;
+		}
+		if (myConnectionsNumber > myMaxConnections) {
+			throw new IllegalStateException(myConnectionsNumber + " connections for " + myRequestsNumber + " pages");
+		}
+		return size;
+	}
+
+	@Benchmark
+	public int browseOneByOne() throws ZLNetworkException {
+		final List<PageRequest> requests = createRequests();
+		for (PageRequest request : requests) {
+			ZLNetworkManager.Instance().perform(request);
+		}
+		return check(requests);
+	}
+
+	@Benchmark
+	public int browseAtOnce() throws ZLNetworkException {
+		final List<PageRequest> requests = createRequests();
+		ZLNetworkManager.Instance().perform(new ArrayList<ZLNetworkRequest>(requests));
+		return check(requests);
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.geometerplus.zlibrary.core.view.ZLView;
+
+import org.geometerplus.fbreader.bookmodel.BookModel;
+
+import org.geometerplus.benchmark.platform.*;
+
+/*
+ * Line layout in ZLTextView. paginate lays out the whole book page by
+ * page; with coldCaches the paragraph and line caches are dropped first,
+ * so paragraphs are split into elements again. turnPage is the cost of
+ * one page turn.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LayoutBenchmark {
+	@Param({ "book.fb2", "book.epub" })
+	public String fileName;
+
+	@Param({ "480", "1024" })
+	public int width;
+
+	@Param({ "false", "true" })
+	public boolean coldCaches;
+
+	private BenchmarkApplication myApplication;
+	private BenchmarkPaintContext myContext;
+
+	@Setup
+	public void setUp() {
+		final BookModel model = Corpus.model(fileName);
+		myApplication = new BenchmarkApplication();
+		myApplication.TextView.setModel(model.BookTextModel);
+		myContext = new BenchmarkPaintContext(width, width * 4 / 3);
+	}
+
+	@Benchmark
+	public int paginate() {
+		if (coldCaches) {
+			myApplication.TextView.clearCaches();
+		}
+		return myApplication.TextView.paintPages(myContext, Integer.MAX_VALUE);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int turnPage() {
+		final BenchmarkTextView view = myApplication.TextView;
+		if (coldCaches) {
+			view.clearCaches();
+		}
+		if (view.canScroll(ZLView.PageIndex.next)) {
+			view.onScrollingFinished(ZLView.PageIndex.next);
+		} else {
+			view.gotoPosition(0, 0, 0);
+		}
+		view.paint(myContext, ZLView.PageIndex.current);
+		return myContext.getDrawnStringsNumber();
+	}
+}
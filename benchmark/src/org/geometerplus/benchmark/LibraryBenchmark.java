@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.geometerplus.fbreader.library.Library;
+
+import org.geometerplus.benchmark.platform.BenchmarkPlatform;
+
+/*
+ * The library over the corpus directory: the first scan, which reads
+ * the meta info of every book, and a rescan of unchanged files. The book
+ * search is in BookSearchBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LibraryBenchmark {
+	// the database of the rescan
+	@Setup
+	public void setUp() {
+		BenchmarkPlatform.init();
+		BenchmarkPlatform.resetDatabase();
+		new Library().synchronize();
+	}
+
+	@State(Scope.Thread)
+	public static class EmptyDatabase {
+		@Setup(Level.Invocation)
+		public void setUp() {
+			BenchmarkPlatform.init();
+			BenchmarkPlatform.resetDatabase();
+		}
+	}
+
+	@Benchmark
+	public int scan(EmptyDatabase database) {
+		final Library library = new Library();
+		library.synchronize();
+		return library.byTitle().subTrees().size();
+	}
+
+	@Benchmark
+	public int rescan() {
+		final Library library = new Library();
+		library.synchronize();
+		return library.byTitle().subTrees().size();
+	}
+}
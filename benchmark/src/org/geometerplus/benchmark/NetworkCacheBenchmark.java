@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.benchmark;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.geometerplus.zlibrary.core.constants.MimeTypes;
+import org.geometerplus.zlibrary.core.network.*;
+
+import org.geometerplus.fbreader.network.NetworkImage;
+import org.geometerplus.fbreader.Paths;
+
+import org.geometerplus.benchmark.platform.BenchmarkPlatform;
+import org.geometerplus.benchmark.platform.StubHttpServer;
+
+/*
+ * Synchronization of a catalog image through the network cache, from a
+ * stub server that sends neither expiration nor modification time, with
+ * and without an ETag. The image is downloaded once; every later image
+ * object for the same URL is taken from the cache, so a trial that sends
+ * more than one request to the server fails.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class NetworkCacheBenchmark {
+	private static final int IMAGE_SIZE = 32 * 1024;
+
+	@Param({ "true", "false" })
+	public boolean validator;
+
+	private StubHttpServer myServer;
+	private int mySynchronizationsNumber;
+
+	@Setup
+	public void setUp() throws IOException {
+		BenchmarkPlatform.init();
+		final File directory = new File(Paths.cacheDirectory(), "benchmark-http");
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		ZLNetworkManager.Instance().setCache(new ZLNetworkCache(directory.getPath(), 16 * 1024 * 1024));
+		myServer = new StubHttpServer(IMAGE_SIZE);
+		myServer.setValidatorSent(validator);
+	}
+
+	@TearDown
+	public void tearDown() {
+		myServer.stop();
+		ZLNetworkManager.Instance().setCache(null);
+	}
+
+	@Benchmark
+	public boolean synchronizeImage() {
+		final NetworkImage image = new NetworkImage(myServer.url(), MimeTypes.MIME_IMAGE_PNG);
+		image.synchronize();
+		++mySynchronizationsNumber;
+		if (myServer.getRequestsNumber() != 1) {
+			throw new IllegalStateException(
+				myServer.getRequestsNumber() + " requests for " + mySynchronizationsNumber + " synchronizations"
+			);
+		}
+		return new File(image.getFilePath()).length() == IMAGE_SIZE;
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.geometerplus.zlibrary.text.model.*;
+
+/*
+ * Text search in book.fb2, by a linear scan or through the word index:
+ * a word that occurs in many paragraphs, a rare one, and a substring
+ * that cannot use the index at all.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SearchBenchmark {
+	@Param({ "false", "true" })
+	public boolean indexed;
+
+	private ZLTextModel myModel;
+	private String myFrequentWord;
+	private String myRareWord;
+	private String myPrefix;
+	private String mySubstring;
+
+	@Setup
+	public void setUp() {
+		myModel = Corpus.model("book.fb2").BookTextModel;
+		((ZLTextPlainModel)myModel).setSearchIndex(indexed ? ZLTextSearchIndex.build(myModel) : null);
+
+		final HashMap<String,Integer> counts = new HashMap<String,Integer>();
+		final int paragraphsNumber = myModel.getParagraphsNumber();
+		for (int i = 0; i < paragraphsNumber; ++i) {
+			for (ZLTextParagraph.EntryIterator it = myModel.getParagraph(i).iterator(); it.hasNext(); ) {
+				it.next();
+				if (it.getType() != ZLTextParagraph.Entry.TEXT) {
+					continue;
+				}
+				final char[] data = it.getTextData();
+				final int end = it.getTextOffset() + it.getTextLength();
+				int start = -1;
+				for (int j = it.getTextOffset(); j <= end; ++j) {
+					if (j < end && Character.isLetterOrDigit(data[j])) {
+						if (start == -1) {
+							start = j;
+						}
+					} else if (start != -1) {
+						final String word = new String(data, start, j - start).toLowerCase();
+						final Integer count = counts.get(word);
+						counts.put(word, count != null ? count + 1 : 1);
+						start = -1;
+					}
+				}
+			}
+		}
+
+		int maxCount = 0;
+		int minCount = Integer.MAX_VALUE;
+		for (Map.Entry<String,Integer> entry : counts.entrySet()) {
+			final String word = entry.getKey();
+			final int count = entry.getValue();
+			if (count > maxCount || (count == maxCount && word.compareTo(myFrequentWord) < 0)) {
+				maxCount = count;
+				myFrequentWord = word;
+			}
+			if (word.length() >= 5 &&
+				(count < minCount || (count == minCount && word.compareTo(myRareWord) < 0))) {
+				minCount = count;
+				myRareWord = word;
+			}
+		}
+		myPrefix = myRareWord.substring(0, 3);
+		mySubstring = myRareWord.substring(1, 4);
+	}
+
+	@Benchmark
+	public int searchFrequentWord() {
+		return myModel.searchWords(myFrequentWord, 0, myModel.getParagraphsNumber(), true, false);
+	}
+
+	@Benchmark
+	public int searchRareWord() {
+		return myModel.searchWords(myRareWord, 0, myModel.getParagraphsNumber(), true, false);
+	}
+
+	@Benchmark
+	public int searchPrefix() {
+		return myModel.searchWords(myPrefix, 0, myModel.getParagraphsNumber(), true, true);
+	}
+
+	@Benchmark
+	public int searchSubstring() {
+		return myModel.search(mySubstring, 0, myModel.getParagraphsNumber(), true);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public ZLTextSearchIndex buildIndex() {
+		return ZLTextSearchIndex.build(myModel);
+	}
+}
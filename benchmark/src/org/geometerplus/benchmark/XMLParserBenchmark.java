@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.xml.*;
+
+import org.geometerplus.benchmark.platform.BenchmarkPlatform;
+
+// the XML parser alone, with handlers that only count what they get
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class XMLParserBenchmark {
+	private static final class CountingReader extends ZLXMLReaderAdapter {
+		private final boolean myProcessNamespaces;
+		int ElementsNumber;
+		int CharactersNumber;
+
+		CountingReader(boolean processNamespaces) {
+			myProcessNamespaces = processNamespaces;
+		}
+
+		@Override
+		public boolean startElementHandler(String tag, ZLStringMap attributes) {
+			++ElementsNumber;
+			return false;
+		}
+
+		@Override
+		public void characterDataHandler(char[] ch, int start, int length) {
+			CharactersNumber += length;
+		}
+
+		@Override
+		public boolean processNamespaces() {
+			return myProcessNamespaces;
+		}
+	}
+
+	@Param({ "book.fb2", "book.epub:OEBPS/content.opf", "book.epub:OEBPS/chapter10.xhtml" })
+	public String fileName;
+
+	@Param({ "false", "true" })
+	public boolean processNamespaces;
+
+	private ZLFile myFile;
+
+	@Setup
+	public void setUp() {
+		BenchmarkPlatform.init();
+		myFile = Corpus.file(fileName);
+	}
+
+	@Benchmark
+	public int parse() {
+		final CountingReader reader = new CountingReader(processNamespaces);
+		reader.read(myFile);
+		return reader.ElementsNumber + reader.CharactersNumber;
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.amse.ys.zip.*;
+
+
+/*
+ * Zip access over book.epub: reading the central directory, inflating
+ * every entry, and opening a single entry in the middle of the archive
+ * (both directly and through ZLFile, the way the format plugins do).
+ * The native inflater needs the library built by 'ant native'.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ZipBenchmark {
+	private static final String ENTRY_NAME = "OEBPS/chapter10.xhtml";
+
+	@Param({ "java", "native" })
+	public String inflater;
+
+	private final byte[] myBuffer = new byte[8192];
+	private String myPath;
+	private ZipFile myZipFile;
+	private ArrayList<String> myEntryNames;
+
+	@Setup
+	public void setUp() {
+		Decompressor.setNativeInflaterEnabled("native".equals(inflater));
+		if ("native".equals(inflater) && !Decompressor.isNativeInflaterUsed()) {
+			throw new IllegalStateException("native inflater is not found; run 'ant native' first");
+		}
+		myPath = Corpus.file("book.epub").getPath();
+		myZipFile = new ZipFile(myPath);
+		myEntryNames = new ArrayList<String>();
+		for (LocalFileHeader header : myZipFile.headers()) {
+			myEntryNames.add(header.FileName);
+		}
+	}
+
+	private long drain(InputStream stream) throws IOException {
+		long size = 0;
+		try {
+			int count;
+			while ((count = stream.read(myBuffer)) > 0) {
+				size += count;
+			}
+		} finally {
+			stream.close();
+		}
+		return size;
+	}
+
+	@Benchmark
+	public int readHeaders() {
+		return new ZipFile(myPath).headers().size();
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public long readAllEntries() throws IOException {
+		long size = 0;
+		for (String name : myEntryNames) {
+			size += drain(myZipFile.getInputStream(name));
+		}
+		return size;
+	}
+
+	@Benchmark
+	public long readEntry() throws IOException {
+		return drain(myZipFile.getInputStream(ENTRY_NAME));
+	}
+
+	@Benchmark
+	public long readEntryFile() throws IOException {
+		return drain(Corpus.file("book.epub:" + ENTRY_NAME).getInputStream());
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark.corpus;
+
+import java.io.*;
+import java.util.zip.*;
+
+/*
+ * Writes the benchmark corpus: one large book in every supported format
+ * and a library of small books for the library scan. Books depend only
+ * on their seeds, and the CRC of every file is listed in corpus.txt,
+ * so two corpora can be checked to be identical.
+ *
+ * Usage: CorpusGenerator <directory> [<scale>]
+ */
+public final class CorpusGenerator {
+	private static final long SEED = 20110401L;
+	private static final int BOOK_PARAGRAPHS = 3000;
+	private static final int LIBRARY_BOOKS = 200;
+	private static final int LIBRARY_BOOK_PARAGRAPHS = 60;
+	private static final int IMAGE_SIZE = 24 * 1024;
+
+	private final File myDirectory;
+	private final Writer myManifest;
+
+	private CorpusGenerator(File directory) throws IOException {
+		myDirectory = directory;
+		myDirectory.mkdirs();
+		myManifest = new OutputStreamWriter(new FileOutputStream(new File(directory, "corpus.txt")), "UTF-8");
+	}
+
+	private OutputStream create(String name) throws IOException {
+		final File file = new File(myDirectory, name);
+		file.getParentFile().mkdirs();
+		return new BufferedOutputStream(new FileOutputStream(file), 65536);
+	}
+
+	private void register(String name) throws IOException {
+		final File file = new File(myDirectory, name);
+		final CRC32 crc = new CRC32();
+		final byte[] buffer = new byte[65536];
+		final InputStream stream = new FileInputStream(file);
+		try {
+			for (int count = stream.read(buffer); count > 0; count = stream.read(buffer)) {
+				crc.update(buffer, 0, count);
+			}
+		} finally {
+			stream.close();
+		}
+		myManifest.write(name + "\t" + file.length() + "\t" + Long.toHexString(crc.getValue()) + "\n");
+	}
+
+	private static abstract class BookWriter {
+		abstract void write(GeneratedBook book, OutputStream stream) throws IOException;
+	}
+
+	private static final BookWriter FB2 = new BookWriter() {
+		void write(GeneratedBook book, OutputStream stream) throws IOException {
+			FB2Writer.write(book, stream);
+		}
+	};
+	private static final BookWriter EPUB = new BookWriter() {
+		void write(GeneratedBook book, OutputStream stream) throws IOException {
+			EPUBWriter.write(book, stream);
+		}
+	};
+	private static final BookWriter MOBIPOCKET = new BookWriter() {
+		void write(GeneratedBook book, OutputStream stream) throws IOException {
+			MobipocketWriter.write(book, stream, false);
+		}
+	};
+	private static final BookWriter HUFFDIC_MOBIPOCKET = new BookWriter() {
+		void write(GeneratedBook book, OutputStream stream) throws IOException {
+			MobipocketWriter.write(book, stream, true);
+		}
+	};
+
+	private void writeBook(GeneratedBook book, BookWriter writer, String name) throws IOException {
+		final OutputStream stream = create(name);
+		try {
+			writer.write(book, stream);
+		} finally {
+			stream.close();
+		}
+		register(name);
+	}
+
+	// an archive of one deflated book, as books are often distributed
+	private void writeZippedBook(GeneratedBook book, BookWriter writer, String name) throws IOException {
+		final ZipOutputStream stream = new ZipOutputStream(create(name + ".zip"));
+		try {
+			final ZipEntry entry = new ZipEntry(name.substring(name.lastIndexOf('/') + 1));
+			entry.setTime(EPUBWriter.ENTRY_TIME);
+			stream.putNextEntry(entry);
+			writer.write(book, stream);
+			stream.closeEntry();
+		} finally {
+			stream.close();
+		}
+		register(name + ".zip");
+	}
+
+	private void generate(int scale) throws IOException {
+		final GeneratedBook book = new GeneratedBook(SEED, BOOK_PARAGRAPHS * scale, IMAGE_SIZE);
+		writeBook(book, FB2, "book.fb2");
+		writeBook(book, EPUB, "book.epub");
+		writeBook(book, MOBIPOCKET, "book.mobi");
+		writeBook(book, HUFFDIC_MOBIPOCKET, "book.huff.mobi");
+		writeZippedBook(book, FB2, "book.fb2");
+		// every paragraph refers to a footnote
+		writeBook(new GeneratedBook(SEED, BOOK_PARAGRAPHS * scale, IMAGE_SIZE, 1), FB2, "book.links.fb2");
+
+		for (int i = 0; i < LIBRARY_BOOKS * scale; ++i) {
+			final GeneratedBook libraryBook = new GeneratedBook(SEED + 1 + i, LIBRARY_BOOK_PARAGRAPHS, IMAGE_SIZE / 8);
+			final String name =
+				"library/" + libraryBook.AuthorLastName.charAt(0) + "/" + libraryBook.AuthorLastName + "/book" + i;
+			switch (i % 10) {
+				case 9:
+					writeZippedBook(libraryBook, FB2, name + ".fb2");
+					break;
+				case 3:
+				case 6:
+					writeBook(libraryBook, EPUB, name + ".epub");
+					break;
+				case 8:
+					writeBook(libraryBook, MOBIPOCKET, name + ".mobi");
+					break;
+				default:
+					writeBook(libraryBook, FB2, name + ".fb2");
+					break;
+			}
+		}
+		myManifest.close();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: CorpusGenerator <directory> [<scale>]");
+			System.exit(1);
+		}
+		final int scale = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		new CorpusGenerator(new File(args[0])).generate(Math.max(scale, 1));
+	}
+}
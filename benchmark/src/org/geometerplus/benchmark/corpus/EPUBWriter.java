@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark.corpus;
+
+import java.io.*;
+import java.util.zip.*;
+
+// an OPS 2.0 book: one XHTML file per chapter, an NCX table of contents
+final class EPUBWriter {
+	// entries get a fixed time, so the archive bytes do not depend on the clock
+	static final long ENTRY_TIME = 1301616000000L;
+
+	private static void writeEntry(ZipOutputStream zip, String name, String content) throws IOException {
+		writeEntry(zip, name, content.getBytes("UTF-8"));
+	}
+
+	private static void writeEntry(ZipOutputStream zip, String name, byte[] content) throws IOException {
+		final ZipEntry entry = new ZipEntry(name);
+		entry.setTime(ENTRY_TIME);
+		zip.putNextEntry(entry);
+		zip.write(content);
+		zip.closeEntry();
+	}
+
+	private static String chapterName(int index) {
+		return "chapter" + index + ".xhtml";
+	}
+
+	private static String chapter(GeneratedBook book, int chapterIndex) {
+		final GeneratedBook.Chapter chapter = book.Chapters.get(chapterIndex);
+		final StringBuilder xhtml = new StringBuilder();
+		xhtml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		xhtml.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.1//EN\" \"http://www.w3.org/TR/xhtml11/DTD/xhtml11.dtd\">\n");
+		xhtml.append("<html xmlns=\"http://www.w3.org/1999/xhtml\">\n<head><title>");
+		xhtml.append(chapter.Title).append("</title><link rel=\"stylesheet\" type=\"text/css\" href=\"style.css\"/></head>\n<body>\n");
+		xhtml.append("<h2 id=\"c").append(chapterIndex).append("\">").append(chapter.Title).append("</h2>\n");
+		if (chapter.ImageIndex != -1) {
+			xhtml.append("<div class=\"image\"><img src=\"image").append(chapter.ImageIndex).append(".png\" alt=\"\"/></div>\n");
+		}
+		int index = 0;
+		for (GeneratedBook.Paragraph paragraph : chapter.Paragraphs) {
+			xhtml.append("<p>");
+			for (int i = 0; i < paragraph.Sentences.size(); ++i) {
+				if (i > 0) {
+					xhtml.append(' ');
+				}
+				final String sentence = paragraph.Sentences.get(i);
+				if ((index + i) % 11 == 5) {
+					xhtml.append("<em>").append(sentence).append("</em>");
+				} else if ((index + i) % 23 == 7) {
+					xhtml.append("<strong>").append(sentence).append("</strong>");
+				} else {
+					xhtml.append(sentence);
+				}
+			}
+			if (paragraph.NoteIndex != -1) {
+				final int number = paragraph.NoteIndex + 1;
+				xhtml.append("<a href=\"notes.xhtml#n").append(number).append("\"><sup>").append(number).append("</sup></a>");
+			}
+			xhtml.append("</p>\n");
+			++index;
+		}
+		xhtml.append("</body>\n</html>\n");
+		return xhtml.toString();
+	}
+
+	private static String notes(GeneratedBook book) {
+		final StringBuilder xhtml = new StringBuilder();
+		xhtml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		xhtml.append("<html xmlns=\"http://www.w3.org/1999/xhtml\">\n<head><title>Notes</title></head>\n<body>\n<h2>Notes</h2>\n");
+		for (int i = 0; i < book.Notes.size(); ++i) {
+			xhtml.append("<p id=\"n").append(i + 1).append("\">").append(i + 1).append(". ").append(book.Notes.get(i)).append("</p>\n");
+		}
+		xhtml.append("</body>\n</html>\n");
+		return xhtml.toString();
+	}
+
+	private static String opf(GeneratedBook book) {
+		final StringBuilder opf = new StringBuilder();
+		opf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		opf.append("<package xmlns=\"http://www.idpf.org/2007/opf\" version=\"2.0\" unique-identifier=\"BookId\">\n");
+		opf.append("<metadata xmlns:dc=\"http://purl.org/dc/elements/1.1/\" xmlns:opf=\"http://www.idpf.org/2007/opf\">\n");
+		opf.append("<dc:title>").append(book.Title).append("</dc:title>\n");
+		opf.append("<dc:creator opf:role=\"aut\" opf:file-as=\"").append(book.AuthorLastName).append(", ").append(book.AuthorFirstName).append("\">");
+		opf.append(book.AuthorFirstName).append(' ').append(book.AuthorLastName).append("</dc:creator>\n");
+		opf.append("<dc:subject>").append(book.Genre).append("</dc:subject>\n");
+		opf.append("<dc:language>").append(book.Language).append("</dc:language>\n");
+		opf.append("<dc:identifier id=\"BookId\">urn:benchmark:").append(Integer.toHexString(book.Title.hashCode())).append("</dc:identifier>\n");
+		if (book.SeriesName != null) {
+			opf.append("<meta name=\"calibre:series\" content=\"").append(book.SeriesName).append("\"/>\n");
+			opf.append("<meta name=\"calibre:series_index\" content=\"").append(book.SeriesIndex).append("\"/>\n");
+		}
+		opf.append("<meta name=\"cover\" content=\"image0\"/>\n");
+		opf.append("</metadata>\n<manifest>\n");
+		opf.append("<item id=\"ncx\" href=\"toc.ncx\" media-type=\"application/x-dtbncx+xml\"/>\n");
+		opf.append("<item id=\"style\" href=\"style.css\" media-type=\"text/css\"/>\n");
+		for (int i = 0; i < book.Chapters.size(); ++i) {
+			opf.append("<item id=\"chapter").append(i).append("\" href=\"").append(chapterName(i)).append("\" media-type=\"application/xhtml+xml\"/>\n");
+		}
+		opf.append("<item id=\"notes\" href=\"notes.xhtml\" media-type=\"application/xhtml+xml\"/>\n");
+		for (int i = 0; i < book.Images.size(); ++i) {
+			opf.append("<item id=\"image").append(i).append("\" href=\"image").append(i).append(".png\" media-type=\"image/png\"/>\n");
+		}
+		opf.append("</manifest>\n<spine toc=\"ncx\">\n");
+		for (int i = 0; i < book.Chapters.size(); ++i) {
+			opf.append("<itemref idref=\"chapter").append(i).append("\"/>\n");
+		}
+		opf.append("<itemref idref=\"notes\"/>\n");
+		opf.append("</spine>\n<guide>\n<reference type=\"cover\" title=\"Cover\" href=\"image0.png\"/>\n</guide>\n</package>\n");
+		return opf.toString();
+	}
+
+	private static String ncx(GeneratedBook book) {
+		final StringBuilder ncx = new StringBuilder();
+		ncx.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		ncx.append("<ncx xmlns=\"http://www.daisy.org/z3986/2005/ncx/\" version=\"2005-1\">\n");
+		ncx.append("<head><meta name=\"dtb:depth\" content=\"1\"/></head>\n");
+		ncx.append("<docTitle><text>").append(book.Title).append("</text></docTitle>\n<navMap>\n");
+		for (int i = 0; i < book.Chapters.size(); ++i) {
+			ncx.append("<navPoint id=\"np").append(i).append("\" playOrder=\"").append(i + 1).append("\">");
+			ncx.append("<navLabel><text>").append(book.Chapters.get(i).Title).append("</text></navLabel>");
+			ncx.append("<content src=\"").append(chapterName(i)).append("#c").append(i).append("\"/></navPoint>\n");
+		}
+		ncx.append("</navMap>\n</ncx>\n");
+		return ncx.toString();
+	}
+
+	static void write(GeneratedBook book, OutputStream stream) throws IOException {
+		final ZipOutputStream zip = new ZipOutputStream(stream);
+
+		// the mimetype entry must be the first one and must not be compressed
+		final byte[] mimetype = "application/epub+zip".getBytes("US-ASCII");
+		final ZipEntry mimetypeEntry = new ZipEntry("mimetype");
+		mimetypeEntry.setTime(ENTRY_TIME);
+		mimetypeEntry.setMethod(ZipEntry.STORED);
+		mimetypeEntry.setSize(mimetype.length);
+		final CRC32 crc = new CRC32();
+		crc.update(mimetype);
+		mimetypeEntry.setCrc(crc.getValue());
+		zip.putNextEntry(mimetypeEntry);
+		zip.write(mimetype);
+		zip.closeEntry();
+
+		writeEntry(zip, "META-INF/container.xml",
+			"<?xml version=\"1.0\"?>\n" +
+			"<container version=\"1.0\" xmlns=\"urn:oasis:names:tc:opendocument:xmlns:container\">\n" +
+			"<rootfiles><rootfile full-path=\"OEBPS/content.opf\" media-type=\"application/oebps-package+xml\"/></rootfiles>\n" +
+			"</container>\n"
+		);
+		writeEntry(zip, "OEBPS/content.opf", opf(book));
+		writeEntry(zip, "OEBPS/toc.ncx", ncx(book));
+		writeEntry(zip, "OEBPS/style.css",
+			"h2 { text-align: center; font-size: 1.4em; }\n" +
+			"p { text-indent: 1.5em; margin: 0; }\n" +
+			"div.image { text-align: center; }\n"
+		);
+		for (int i = 0; i < book.Chapters.size(); ++i) {
+			writeEntry(zip, "OEBPS/" + chapterName(i), chapter(book, i));
+		}
+		writeEntry(zip, "OEBPS/notes.xhtml", notes(book));
+		for (int i = 0; i < book.Images.size(); ++i) {
+			writeEntry(zip, "OEBPS/image" + i + ".png", book.Images.get(i));
+		}
+		zip.finish();
+	}
+}
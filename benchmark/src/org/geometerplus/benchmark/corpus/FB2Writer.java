@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark.corpus;
+
+import java.io.*;
+
+final class FB2Writer {
+	private static final char[] BASE64_ALPHABET =
+		"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+	// lines of 76 characters, as most FB2 tools write them
+	static void writeBase64(Writer writer, byte[] data) throws IOException {
+		int column = 0;
+		for (int i = 0; i < data.length; i += 3) {
+			final int b0 = data[i] & 0xFF;
+			final int b1 = (i + 1 < data.length) ? data[i + 1] & 0xFF : 0;
+			final int b2 = (i + 2 < data.length) ? data[i + 2] & 0xFF : 0;
+			writer.write(BASE64_ALPHABET[b0 >> 2]);
+			writer.write(BASE64_ALPHABET[((b0 & 0x03) << 4) | (b1 >> 4)]);
+			writer.write((i + 1 < data.length) ? BASE64_ALPHABET[((b1 & 0x0F) << 2) | (b2 >> 6)] : '=');
+			writer.write((i + 2 < data.length) ? BASE64_ALPHABET[b2 & 0x3F] : '=');
+			column += 4;
+			if (column == 76) {
+				writer.write('\n');
+				column = 0;
+			}
+		}
+		if (column != 0) {
+			writer.write('\n');
+		}
+	}
+
+	static void write(GeneratedBook book, OutputStream stream) throws IOException {
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"));
+		writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		writer.write("<FictionBook xmlns=\"http://www.gribuser.ru/xml/fictionbook/2.0\" xmlns:l=\"http://www.w3.org/1999/xlink\">\n");
+		writer.write("<description>\n<title-info>\n");
+		writer.write("<genre>" + book.Genre + "</genre>\n");
+		writer.write("<author><first-name>" + book.AuthorFirstName + "</first-name><last-name>" + book.AuthorLastName + "</last-name></author>\n");
+		writer.write("<book-title>" + book.Title + "</book-title>\n");
+		writer.write("<coverpage><image l:href=\"#image0.png\"/></coverpage>\n");
+		writer.write("<lang>" + book.Language + "</lang>\n");
+		if (book.SeriesName != null) {
+			writer.write("<sequence name=\"" + book.SeriesName + "\" number=\"" + book.SeriesIndex + "\"/>\n");
+		}
+		writer.write("</title-info>\n</description>\n");
+
+		writer.write("<body>\n<title><p>" + book.Title + "</p></title>\n");
+		for (GeneratedBook.Chapter chapter : book.Chapters) {
+			writer.write("<section>\n<title><p>" + chapter.Title + "</p></title>\n");
+			if (chapter.ImageIndex != -1) {
+				writer.write("<image l:href=\"#image" + chapter.ImageIndex + ".png\"/>\n");
+			}
+			int index = 0;
+			for (GeneratedBook.Paragraph paragraph : chapter.Paragraphs) {
+				writer.write("<p>");
+				for (int i = 0; i < paragraph.Sentences.size(); ++i) {
+					if (i > 0) {
+						writer.write(' ');
+					}
+					final String sentence = paragraph.Sentences.get(i);
+					if ((index + i) % 11 == 5) {
+						writer.write("<emphasis>" + sentence + "</emphasis>");
+					} else if ((index + i) % 23 == 7) {
+						writer.write("<strong>" + sentence + "</strong>");
+					} else {
+						writer.write(sentence);
+					}
+				}
+				if (paragraph.NoteIndex != -1) {
+					final int number = paragraph.NoteIndex + 1;
+					writer.write("<a l:href=\"#n" + number + "\" type=\"note\">[" + number + "]</a>");
+				}
+				writer.write("</p>\n");
+				if (++index % 15 == 0) {
+					writer.write("<empty-line/>\n");
+				}
+			}
+			writer.write("</section>\n");
+		}
+		writer.write("</body>\n");
+
+		if (!book.Notes.isEmpty()) {
+			writer.write("<body name=\"notes\">\n<title><p>Notes</p></title>\n");
+			for (int i = 0; i < book.Notes.size(); ++i) {
+				writer.write("<section id=\"n" + (i + 1) + "\"><title><p>" + (i + 1) + "</p></title><p>" + book.Notes.get(i) + "</p></section>\n");
+			}
+			writer.write("</body>\n");
+		}
+
+		for (int i = 0; i < book.Images.size(); ++i) {
+			writer.write("<binary id=\"image" + i + ".png\" content-type=\"image/png\">\n");
+			writeBase64(writer, book.Images.get(i));
+			writer.write("</binary>\n");
+		}
+		writer.write("</FictionBook>\n");
+		writer.flush();
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark.corpus;
+
+import java.util.*;
+
+// format-independent content of a generated book
+final class GeneratedBook {
+	static final class Paragraph {
+		final List<String> Sentences;
+		// index in Notes of the footnote referenced at the end, or -1
+		final int NoteIndex;
+
+		Paragraph(List<String> sentences, int noteIndex) {
+			Sentences = sentences;
+			NoteIndex = noteIndex;
+		}
+	}
+
+	static final class Chapter {
+		final String Title;
+		final List<Paragraph> Paragraphs = new ArrayList<Paragraph>();
+		// index in Images of the illustration after the title, or -1
+		final int ImageIndex;
+
+		Chapter(String title, int imageIndex) {
+			Title = title;
+			ImageIndex = imageIndex;
+		}
+	}
+
+	final String Title;
+	final String AuthorFirstName;
+	final String AuthorLastName;
+	final String Genre;
+	final String Language = "en";
+	final String SeriesName;
+	final int SeriesIndex;
+	final List<Chapter> Chapters = new ArrayList<Chapter>();
+	final List<String> Notes = new ArrayList<String>();
+	// the first image is the cover
+	final List<byte[]> Images = new ArrayList<byte[]>();
+
+	private static final String[] GENRES = { "sf", "sf_fantasy", "det_classic", "prose_classic", "adventure", "love_contemporary" };
+
+	GeneratedBook(long seed, int paragraphsNumber, int imageSize) {
+		this(seed, paragraphsNumber, imageSize, 20);
+	}
+
+	/*
+	 * Generates a book of about paragraphsNumber paragraphs in chapters of
+	 * 20 to 60 paragraphs; one chapter in four is illustrated by an image
+	 * of imageSize bytes, one paragraph in noteFrequency refers to a footnote.
+	 */
+	GeneratedBook(long seed, int paragraphsNumber, int imageSize, int noteFrequency) {
+		final TextGenerator generator = new TextGenerator(seed);
+		final Random random = generator.random();
+		Title = generator.title(4);
+		AuthorFirstName = generator.name();
+		AuthorLastName = generator.name();
+		Genre = GENRES[random.nextInt(GENRES.length)];
+		SeriesName = random.nextBoolean() ? generator.title(2) : null;
+		SeriesIndex = 1 + random.nextInt(9);
+
+		Images.add(generator.image(imageSize));
+		int paragraphs = 0;
+		while (paragraphs < paragraphsNumber) {
+			int imageIndex = -1;
+			if (random.nextInt(4) == 0) {
+				imageIndex = Images.size();
+				Images.add(generator.image(imageSize / 2 + random.nextInt(imageSize)));
+			}
+			final Chapter chapter = new Chapter(generator.title(6), imageIndex);
+			for (int i = Math.min(20 + random.nextInt(41), paragraphsNumber - paragraphs); i > 0; --i) {
+				int noteIndex = -1;
+				if (random.nextInt(noteFrequency) == 0) {
+					noteIndex = Notes.size();
+					Notes.add(generator.sentence());
+				}
+				chapter.Paragraphs.add(new Paragraph(generator.paragraph(), noteIndex));
+				++paragraphs;
+			}
+			Chapters.add(chapter);
+		}
+	}
+}
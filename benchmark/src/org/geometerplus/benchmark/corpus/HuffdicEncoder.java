@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.benchmark.corpus;
+
+import java.io.*;
+import java.util.*;
+
+/*
+ * HUFF/CDIC compression of Mobipocket text records. The phrases are the
+ * bytes, the words and the words followed by a space that occur more than
+ * once; a word with a space is stored compressed, as the codes of the word
+ * and of the space, so nested phrases are exercised as well. The code is
+ * a canonical Huffman code in which longer codes are numerically smaller,
+ * as the HUFF tables require.
+ */
+final class HuffdicEncoder {
+	private static final int CDIC_BITS = 10;
+	private static final int MAX_CODE_LENGTH = 32;
+
+	private static boolean isLetter(byte b) {
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+	}
+
+	private static String phrase(byte[] data, int offset, int length) {
+		try {
+			return new String(data, offset, length, "ISO-8859-1");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static byte[] bytes(String phrase) {
+		try {
+			return phrase.getBytes("ISO-8859-1");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/*
+	 * Splits data into phrases from dictionary (all the candidates if
+	 * dictionary is null), preferring a word with the following space.
+	 */
+	private static List<String> split(byte[] data, int offset, int length, Set<String> dictionary) {
+		final ArrayList<String> phrases = new ArrayList<String>();
+		final int end = offset + length;
+		for (int i = offset; i < end; ) {
+			int wordEnd = i;
+			while (wordEnd < end && isLetter(data[wordEnd])) {
+				++wordEnd;
+			}
+			if (wordEnd > i) {
+				final String word = phrase(data, i, wordEnd - i);
+				if (wordEnd < end && data[wordEnd] == ' ' &&
+					(dictionary == null || dictionary.contains(word + " "))) {
+					phrases.add(word + " ");
+					i = wordEnd + 1;
+					continue;
+				}
+				if (dictionary == null || dictionary.contains(word)) {
+					phrases.add(word);
+					i = wordEnd;
+					continue;
+				}
+			}
+			phrases.add(phrase(data, i, 1));
+			++i;
+		}
+		return phrases;
+	}
+
+	private static void count(Map<String,Integer> counts, String phrase, int number) {
+		final Integer count = counts.get(phrase);
+		counts.put(phrase, (count != null ? count : 0) + number);
+	}
+
+	private static final class Node implements Comparable<Node> {
+		final long Weight;
+		final int Order;
+		final Node Left;
+		final Node Right;
+		final String Phrase;
+
+		Node(long weight, int order, Node left, Node right, String phrase) {
+			Weight = weight;
+			Order = order;
+			Left = left;
+			Right = right;
+			Phrase = phrase;
+		}
+
+		public int compareTo(Node node) {
+			if (Weight != node.Weight) {
+				return Weight < node.Weight ? -1 : 1;
+			}
+			return Order - node.Order;
+		}
+	}
+
+	private static void collectLengths(Node node, int depth, Map<String,Integer> lengths) {
+		if (node.Phrase != null) {
+			lengths.put(node.Phrase, Math.max(depth, 1));
+		} else {
+			collectLengths(node.Left, depth + 1, lengths);
+			collectLengths(node.Right, depth + 1, lengths);
+		}
+	}
+
+	private final byte[] myText;
+	private final Set<String> myDictionary;
+	// phrases in the order of the CDIC records, i.e. by code length
+	private final List<String> myPhrases = new ArrayList<String>();
+	private final Map<String,Integer> myCodes = new HashMap<String,Integer>();
+	private final Map<String,Integer> myCodeLengths = new HashMap<String,Integer>();
+	private final int[] myNumbers = new int[MAX_CODE_LENGTH + 1];
+	private final long[] myMinCodes = new long[MAX_CODE_LENGTH + 1];
+	private final long[] myMaxCodes = new long[MAX_CODE_LENGTH + 1];
+
+	HuffdicEncoder(byte[] text, int recordSize) {
+		myText = text;
+
+		final HashMap<String,Integer> candidates = new HashMap<String,Integer>();
+		for (int offset = 0; offset < text.length; offset += recordSize) {
+			for (String phrase : split(text, offset, Math.min(recordSize, text.length - offset), null)) {
+				count(candidates, phrase, 1);
+			}
+		}
+		myDictionary = new HashSet<String>();
+		for (Map.Entry<String,Integer> entry : candidates.entrySet()) {
+			final String phrase = entry.getKey();
+			if (phrase.length() == 1 || entry.getValue() > 1) {
+				myDictionary.add(phrase);
+				if (phrase.endsWith(" ") && phrase.length() > 1) {
+					myDictionary.add(phrase.substring(0, phrase.length() - 1));
+					myDictionary.add(" ");
+				}
+			}
+		}
+
+		final TreeMap<String,Integer> counts = new TreeMap<String,Integer>();
+		for (int offset = 0; offset < text.length; offset += recordSize) {
+			for (String phrase : split(text, offset, Math.min(recordSize, text.length - offset), myDictionary)) {
+				count(counts, phrase, 1);
+			}
+		}
+		for (String phrase : new ArrayList<String>(counts.keySet())) {
+			if (isCompressed(phrase)) {
+				count(counts, phrase.substring(0, phrase.length() - 1), 1);
+				count(counts, " ", 1);
+			}
+		}
+
+		final PriorityQueue<Node> queue = new PriorityQueue<Node>();
+		int order = 0;
+		for (Map.Entry<String,Integer> entry : counts.entrySet()) {
+			queue.add(new Node(entry.getValue(), order++, null, null, entry.getKey()));
+		}
+		while (queue.size() > 1) {
+			final Node left = queue.poll();
+			final Node right = queue.poll();
+			queue.add(new Node(left.Weight + right.Weight, order++, left, right, null));
+		}
+		collectLengths(queue.poll(), 0, myCodeLengths);
+
+		myPhrases.addAll(counts.keySet());
+		Collections.sort(myPhrases, new Comparator<String>() {
+			public int compare(String phrase0, String phrase1) {
+				final int diff = myCodeLengths.get(phrase0) - myCodeLengths.get(phrase1);
+				return diff != 0 ? diff : phrase0.compareTo(phrase1);
+			}
+		});
+		assignCodes();
+	}
+
+	private boolean isCompressed(String phrase) {
+		return phrase.length() > 1 && phrase.endsWith(" ");
+	}
+
+	/*
+	 * Codes of the longest length start from 0; codes of each shorter
+	 * length start right after the longer ones. Within a length, the
+	 * phrase with the smallest index gets the largest code, since the
+	 * decoder computes the index as maxCode - code.
+	 */
+	private void assignCodes() {
+		final int[] starts = new int[MAX_CODE_LENGTH + 1];
+		int maxLength = 0;
+		for (int i = 0; i < myPhrases.size(); ++i) {
+			final int length = myCodeLengths.get(myPhrases.get(i));
+			if (length > MAX_CODE_LENGTH) {
+				throw new IllegalStateException("Huffman code is too long");
+			}
+			if (myNumbers[length]++ == 0) {
+				starts[length] = i;
+			}
+			maxLength = Math.max(maxLength, length);
+		}
+		// trailing zero bits of a record must not form a whole code
+		if (maxLength < 8) {
+			throw new IllegalStateException("Huffman code is too short");
+		}
+		long next = 0;
+		for (int length = MAX_CODE_LENGTH; length >= 1; --length) {
+			myMinCodes[length] = next;
+			myMaxCodes[length] = starts[length] + next + myNumbers[length] - 1;
+			for (int j = 0; j < myNumbers[length]; ++j) {
+				myCodes.put(myPhrases.get(starts[length] + j), (int)(next + myNumbers[length] - 1 - j));
+			}
+			next = (next + myNumbers[length] + 1) >> 1;
+		}
+	}
+
+	private final class BitWriter {
+		private final ByteArrayOutputStream myStream = new ByteArrayOutputStream();
+		private long myBits;
+		private int myBitsNumber;
+
+		void write(String phrase) {
+			final int length = myCodeLengths.get(phrase);
+			myBits = (myBits << length) | (myCodes.get(phrase) & 0xFFFFFFFFL);
+			myBitsNumber += length;
+			while (myBitsNumber >= 8) {
+				myBitsNumber -= 8;
+				myStream.write((int)(myBits >> myBitsNumber));
+			}
+		}
+
+		byte[] toByteArray() {
+			if (myBitsNumber > 0) {
+				myStream.write((int)(myBits << (8 - myBitsNumber)));
+				myBitsNumber = 0;
+			}
+			return myStream.toByteArray();
+		}
+	}
+
+	byte[] compress(int offset, int length) {
+		final BitWriter writer = new BitWriter();
+		for (String phrase : split(myText, offset, length, myDictionary)) {
+			writer.write(phrase);
+		}
+		return writer.toByteArray();
+	}
+
+	byte[] huffRecord() throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream stream = new DataOutputStream(bytes);
+		stream.write("HUFF".getBytes("US-ASCII"));
+		stream.writeInt(24);
+		stream.writeInt(24);
+		stream.writeInt(24 + 4 * 256);
+		stream.writeInt(0);
+		stream.writeInt(0);
+		for (int prefix = 0; prefix < 256; ++prefix) {
+			int entry = 9;
+			for (int length = 1; length <= 8; ++length) {
+				final long code = prefix >> (8 - length);
+				if (code >= myMinCodes[length] && code < myMinCodes[length] + myNumbers[length]) {
+					entry = (int)((myMaxCodes[length] << 8) | 0x80 | length);
+					break;
+				}
+			}
+			stream.writeInt(entry);
+		}
+		for (int length = 1; length <= MAX_CODE_LENGTH; ++length) {
+			stream.writeInt((int)myMinCodes[length]);
+			stream.writeInt((int)myMaxCodes[length]);
+		}
+		stream.flush();
+		return bytes.toByteArray();
+	}
+
+	List<byte[]> cdicRecords() throws IOException {
+		final ArrayList<byte[]> records = new ArrayList<byte[]>();
+		final int phrasesPerRecord = 1 << CDIC_BITS;
+		for (int first = 0; first < myPhrases.size(); first += phrasesPerRecord) {
+			final int number = Math.min(phrasesPerRecord, myPhrases.size() - first);
+			final ByteArrayOutputStream data = new ByteArrayOutputStream();
+			final DataOutputStream dataStream = new DataOutputStream(data);
+			final int[] offsets = new int[number];
+			for (int i = 0; i < number; ++i) {
+				final String phrase = myPhrases.get(first + i);
+				offsets[i] = 2 * number + data.size();
+				final byte[] bytes;
+				if (isCompressed(phrase)) {
+					final BitWriter writer = new BitWriter();
+					writer.write(phrase.substring(0, phrase.length() - 1));
+					writer.write(" ");
+					bytes = writer.toByteArray();
+					dataStream.writeShort(bytes.length);
+				} else {
+					bytes = bytes(phrase);
+					dataStream.writeShort(0x8000 | bytes.length);
+				}
+				dataStream.write(bytes);
+			}
+			dataStream.flush();
+
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final DataOutputStream stream = new DataOutputStream(bytes);
+			stream.write("CDIC".getBytes("US-ASCII"));
+			stream.writeInt(16);
+			stream.writeInt(myPhrases.size());
+			stream.writeInt(CDIC_BITS);
+			for (int offset : offsets) {
+				stream.writeShort(offset);
+			}
+			stream.write(data.toByteArray());
+			stream.flush();
+			records.add(bytes.toByteArray());
+		}
+		return records;
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark.corpus;
+
+import java.io.*;
+import java.util.*;
+
+/*
+ * A Mobipocket book with PalmDOC- or HUFF/CDIC-compressed text records of
+ * 4096 bytes, followed by the image records, the HUFF and CDIC records if
+ * any and an end-of-file record. Only the header fields read by
+ * MobipocketPlugin and MobipocketStream are filled.
+ */
+final class MobipocketWriter {
+	private static final int RECORD_SIZE = 4096;
+	private static final int MOBI_HEADER_LENGTH = 232;
+	private static final int FILEPOS_WIDTH = 10;
+	private static final int HUFFDIC_COMPRESSION = 17480;
+	// multibyte character data and one more trailing entry
+	private static final int EXTRA_DATA_FLAGS = 3;
+	private static final byte[] TRAILING_ENTRIES = { 0x00, 'x', 'y', 'z', (byte)0x84 };
+
+	private static String filepos(int position) {
+		final String value = "0000000000" + position;
+		return value.substring(value.length() - FILEPOS_WIDTH);
+	}
+
+	private static byte[] html(GeneratedBook book) throws IOException {
+		final StringBuilder html = new StringBuilder();
+		html.append("<html><head><guide><reference type=\"toc\" title=\"Table of Contents\" filepos=");
+		final int tocReference = html.length();
+		html.append(filepos(0)).append(" /></guide></head><body>");
+		final int[] chapterPositions = new int[book.Chapters.size()];
+		final ArrayList<Integer> noteReferences = new ArrayList<Integer>();
+		for (int i = 0; i < book.Chapters.size(); ++i) {
+			final GeneratedBook.Chapter chapter = book.Chapters.get(i);
+			if (i > 0) {
+				html.append("<mbp:pagebreak/>");
+			}
+			chapterPositions[i] = html.length();
+			html.append("<h2>").append(chapter.Title).append("</h2>");
+			if (chapter.ImageIndex != -1) {
+				final String index = "0000" + (chapter.ImageIndex + 1);
+				html.append("<p align=\"center\"><img recindex=\"").append(index.substring(index.length() - 5)).append("\" /></p>");
+			}
+			int index = 0;
+			for (GeneratedBook.Paragraph paragraph : chapter.Paragraphs) {
+				html.append("<p width=\"1.5em\">");
+				for (int j = 0; j < paragraph.Sentences.size(); ++j) {
+					if (j > 0) {
+						html.append(' ');
+					}
+					final String sentence = paragraph.Sentences.get(j);
+					if ((index + j) % 11 == 5) {
+						html.append("<i>").append(sentence).append("</i>");
+					} else if ((index + j) % 23 == 7) {
+						html.append("<b>").append(sentence).append("</b>");
+					} else {
+						html.append(sentence);
+					}
+				}
+				if (paragraph.NoteIndex != -1) {
+					html.append("<a filepos=");
+					noteReferences.add(html.length());
+					html.append(filepos(0)).append("><sup>").append(paragraph.NoteIndex + 1).append("</sup></a>");
+				}
+				html.append("</p>");
+				++index;
+			}
+		}
+
+		html.append("<mbp:pagebreak/>");
+		final int[] notePositions = new int[book.Notes.size()];
+		html.append("<h2>Notes</h2>");
+		for (int i = 0; i < book.Notes.size(); ++i) {
+			notePositions[i] = html.length();
+			html.append("<p>").append(i + 1).append(". ").append(book.Notes.get(i)).append("</p>");
+		}
+
+		html.append("<mbp:pagebreak/>");
+		final int tocPosition = html.length();
+		html.append("<h2>Table of Contents</h2>");
+		for (int i = 0; i < book.Chapters.size(); ++i) {
+			html.append("<p><a filepos=").append(filepos(chapterPositions[i])).append(">");
+			html.append(book.Chapters.get(i).Title).append("</a></p>");
+		}
+		html.append("</body></html>");
+
+		// the text is ASCII, so character positions are byte positions
+		html.replace(tocReference, tocReference + FILEPOS_WIDTH, filepos(tocPosition));
+		int noteIndex = 0;
+		for (int position : noteReferences) {
+			html.replace(position, position + FILEPOS_WIDTH, filepos(notePositions[noteIndex++]));
+		}
+		return html.toString().getBytes("US-ASCII");
+	}
+
+	/*
+	 * PalmDOC (LZ77) compression of one record: back references of 3 to 10
+	 * bytes at distances up to 2047, space+character pairs, literals.
+	 */
+	static byte[] compress(byte[] data, int offset, int length) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+		final int[] head = new int[4096];
+		Arrays.fill(head, -1);
+		final int[] previous = new int[length];
+		int i = 0;
+		while (i < length) {
+			int bestLength = 0;
+			int bestDistance = 0;
+			if (i + 3 <= length) {
+				final int hash = hash(data, offset + i);
+				int steps = 0;
+				for (int j = head[hash]; j >= 0 && i - j <= 2047 && steps < 32; j = previous[j], ++steps) {
+					int l = 0;
+					while (l < 10 && i + l < length && data[offset + j + l] == data[offset + i + l]) {
+						++l;
+					}
+					if (l > bestLength) {
+						bestLength = l;
+						bestDistance = i - j;
+					}
+				}
+			}
+			int step;
+			if (bestLength >= 3) {
+				final int code = 0x8000 | (bestDistance << 3) | (bestLength - 3);
+				out.write(code >> 8);
+				out.write(code & 0xFF);
+				step = bestLength;
+			} else {
+				final int b = data[offset + i] & 0xFF;
+				if (b == ' ' && i + 1 < length && (data[offset + i + 1] & 0xFF) >= 0x40 && (data[offset + i + 1] & 0xFF) < 0x80) {
+					out.write((data[offset + i + 1] & 0xFF) ^ 0x80);
+					step = 2;
+				} else if (b == 0 || (b >= 0x09 && b < 0x80)) {
+					out.write(b);
+					step = 1;
+				} else {
+					out.write(1);
+					out.write(b);
+					step = 1;
+				}
+			}
+			for (int k = 0; k < step; ++k, ++i) {
+				if (i + 3 <= length) {
+					final int hash = hash(data, offset + i);
+					previous[i] = head[hash];
+					head[hash] = i;
+				}
+			}
+		}
+		return out.toByteArray();
+	}
+
+	private static int hash(byte[] data, int offset) {
+		return ((data[offset] & 0xFF) * 961 + (data[offset + 1] & 0xFF) * 31 + (data[offset + 2] & 0xFF)) & 4095;
+	}
+
+	private static byte[] recordZero(GeneratedBook book, int textLength, int textRecordsNumber, int huffRecordIndex, int huffRecordsNumber) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream stream = new DataOutputStream(bytes);
+		final byte[] title = book.Title.getBytes("UTF-8");
+
+		// PalmDOC header
+		stream.writeShort(huffRecordsNumber > 0 ? HUFFDIC_COMPRESSION : 2);
+		stream.writeShort(0);
+		stream.writeInt(textLength);
+		stream.writeShort(textRecordsNumber);
+		stream.writeShort(RECORD_SIZE);
+		stream.writeShort(0);
+		stream.writeShort(0);
+
+		// MOBI header
+		final byte[] header = new byte[MOBI_HEADER_LENGTH];
+		System.arraycopy("MOBI".getBytes("US-ASCII"), 0, header, 0, 4);
+		putInt(header, 4, MOBI_HEADER_LENGTH);
+		putInt(header, 8, 2);
+		putInt(header, 12, 65001);
+		putInt(header, 68, 16 + MOBI_HEADER_LENGTH);
+		putInt(header, 72, title.length);
+		putInt(header, 76, 9);
+		putInt(header, 92, textRecordsNumber + 1);
+		if (huffRecordsNumber > 0) {
+			putInt(header, 20, 6);
+			putInt(header, 96, huffRecordIndex);
+			putInt(header, 100, huffRecordsNumber);
+			header[226] = (byte)(EXTRA_DATA_FLAGS >> 8);
+			header[227] = (byte)EXTRA_DATA_FLAGS;
+		}
+		stream.write(header);
+		stream.write(title);
+		while (bytes.size() % 4 != 0) {
+			stream.write(0);
+		}
+		stream.flush();
+		return bytes.toByteArray();
+	}
+
+	private static void putInt(byte[] data, int offset, int value) {
+		data[offset] = (byte)(value >> 24);
+		data[offset + 1] = (byte)(value >> 16);
+		data[offset + 2] = (byte)(value >> 8);
+		data[offset + 3] = (byte)value;
+	}
+
+	static void write(GeneratedBook book, OutputStream output, boolean huffdic) throws IOException {
+		final byte[] text = html(book);
+		final ArrayList<byte[]> records = new ArrayList<byte[]>();
+		records.add(null);
+		final HuffdicEncoder encoder = huffdic ? new HuffdicEncoder(text, RECORD_SIZE) : null;
+		for (int offset = 0; offset < text.length; offset += RECORD_SIZE) {
+			final int length = Math.min(RECORD_SIZE, text.length - offset);
+			if (encoder != null) {
+				final ByteArrayOutputStream record = new ByteArrayOutputStream();
+				record.write(encoder.compress(offset, length));
+				record.write(TRAILING_ENTRIES);
+				records.add(record.toByteArray());
+			} else {
+				records.add(compress(text, offset, length));
+			}
+		}
+		final int textRecordsNumber = records.size() - 1;
+		records.addAll(book.Images);
+		final int huffRecordIndex = records.size();
+		if (encoder != null) {
+			records.add(encoder.huffRecord());
+			records.addAll(encoder.cdicRecords());
+		}
+		records.set(0, recordZero(book, text.length, textRecordsNumber, huffRecordIndex, records.size() - huffRecordIndex));
+		records.add(new byte[] { (byte)0xE9, (byte)0x8E, '\r', '\n' });
+
+		final DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(output));
+		final byte[] name = new byte[32];
+		final byte[] title = book.Title.replace(' ', '_').getBytes("US-ASCII");
+		System.arraycopy(title, 0, name, 0, Math.min(title.length, 31));
+		stream.write(name);
+		stream.writeShort(0);
+		stream.writeShort(0);
+		// creation, modification and backup dates are fixed for reproducibility
+		stream.writeInt(0x7C000000);
+		stream.writeInt(0x7C000000);
+		stream.writeInt(0);
+		stream.writeInt(0);
+		stream.writeInt(0);
+		stream.writeInt(0);
+		stream.write("BOOKMOBI".getBytes("US-ASCII"));
+		stream.writeInt(2 * records.size() - 1);
+		stream.writeInt(0);
+		stream.writeShort(records.size());
+		int offset = 78 + 8 * records.size() + 2;
+		for (int i = 0; i < records.size(); ++i) {
+			stream.writeInt(offset);
+			stream.writeInt(2 * i);
+			offset += records.get(i).length;
+		}
+		stream.writeShort(0);
+		for (byte[] record : records) {
+			stream.write(record);
+		}
+		stream.flush();
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark.corpus;
+
+import java.util.*;
+
+/*
+ * Pseudo-English text built from a fixed syllable set. Words are
+ * drawn with a skewed distribution, so short words are frequent and
+ * long (hyphenatable) ones are rare, roughly as in real prose.
+ * The output depends only on the seed.
+ */
+public final class TextGenerator {
+	private static final String[] SYLLABLES = {
+		"a", "al", "an", "ar", "ba", "be", "bi", "bor", "ca", "con", "de", "di",
+		"do", "el", "en", "er", "es", "fa", "for", "ga", "ge", "ha", "he", "in",
+		"is", "ka", "la", "le", "li", "lo", "ma", "me", "mi", "mo", "na", "ne",
+		"ni", "no", "o", "on", "or", "pa", "pe", "pro", "ra", "re", "ri", "ro",
+		"sa", "se", "si", "so", "ta", "te", "ter", "ti", "to", "tion", "u", "un",
+		"va", "ve", "vi", "wa", "we", "ya", "za"
+	};
+	private static final String[] PUNCTUATION = { ".", ".", ".", "!", "?", "..." };
+
+	private final Random myRandom;
+	private final String[] myVocabulary;
+
+	public TextGenerator(long seed) {
+		myRandom = new Random(seed);
+		// the vocabulary depends on a fixed seed, so all books share words
+		final Random vocabularyRandom = new Random(20110401L);
+		myVocabulary = new String[6000];
+		for (int i = 0; i < myVocabulary.length; ++i) {
+			final int syllables = 1 + i * 5 / myVocabulary.length + vocabularyRandom.nextInt(2);
+			final StringBuilder word = new StringBuilder();
+			for (int j = 0; j < syllables; ++j) {
+				word.append(SYLLABLES[vocabularyRandom.nextInt(SYLLABLES.length)]);
+			}
+			myVocabulary[i] = word.toString();
+		}
+	}
+
+	public Random random() {
+		return myRandom;
+	}
+
+	String word() {
+		final double x = myRandom.nextDouble();
+		return myVocabulary[(int)(x * x * x * myVocabulary.length)];
+	}
+
+	private static String capitalize(String word) {
+		return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+	}
+
+	public String name() {
+		String name = word();
+		while (name.length() < 4) {
+			name += word();
+		}
+		return capitalize(name);
+	}
+
+	public String title(int maxWords) {
+		final StringBuilder title = new StringBuilder(capitalize(word()));
+		for (int i = myRandom.nextInt(maxWords); i > 0; --i) {
+			title.append(' ').append(word());
+		}
+		return title.toString();
+	}
+
+	String sentence() {
+		final StringBuilder sentence = new StringBuilder(capitalize(word()));
+		for (int i = 3 + myRandom.nextInt(14); i > 0; --i) {
+			if (myRandom.nextInt(9) == 0) {
+				sentence.append(',');
+			}
+			sentence.append(' ');
+			if (myRandom.nextInt(40) == 0) {
+				sentence.append(word()).append('-').append(word());
+			} else {
+				sentence.append(word());
+			}
+		}
+		sentence.append(PUNCTUATION[myRandom.nextInt(PUNCTUATION.length)]);
+		return sentence.toString();
+	}
+
+	// a paragraph as a list of sentences
+	List<String> paragraph() {
+		final ArrayList<String> sentences = new ArrayList<String>();
+		for (int i = 1 + myRandom.nextInt(7); i > 0; --i) {
+			sentences.add(sentence());
+		}
+		return sentences;
+	}
+
+	// bytes of a fake PNG image: the signature followed by noise
+	byte[] image(int size) {
+		final byte[] data = new byte[size];
+		myRandom.nextBytes(data);
+		final byte[] signature = { (byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+		System.arraycopy(signature, 0, data, 0, Math.min(signature.length, size));
+		return data;
+	}
+}
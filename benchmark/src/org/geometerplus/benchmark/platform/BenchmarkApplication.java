@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark.platform;
+
+import org.geometerplus.zlibrary.core.application.*;
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.view.ZLView;
+import org.geometerplus.zlibrary.core.view.ZLViewWidget;
+
+// an application without actions, shown in a window that never repaints
+public final class BenchmarkApplication extends ZLApplication {
+	private static final class Widget implements ZLViewWidget {
+		public void reset() {
+		}
+
+		public void repaint() {
+		}
+
+		public void startManualScrolling(int x, int y, ZLView.Direction direction) {
+		}
+
+		public void scrollManuallyTo(int x, int y) {
+		}
+
+		public void startAutoScrolling(ZLView.PageIndex pageIndex, int x, int y, ZLView.Direction direction, int speed) {
+		}
+
+		public void startAutoScrolling(ZLView.PageIndex pageIndex, ZLView.Direction direction, int speed) {
+		}
+
+		public void startAutoScrolling(int x, int y, int speed) {
+		}
+	}
+
+	private static final class Window extends ZLApplicationWindow {
+		private final ZLViewWidget myWidget = new Widget();
+
+		Window(ZLApplication application) {
+			super(application);
+		}
+
+		@Override
+		protected void refreshMenu() {
+		}
+
+		@Override
+		protected ZLViewWidget getViewWidget() {
+			return myWidget;
+		}
+
+		@Override
+		protected void rotate() {
+		}
+
+		@Override
+		protected boolean canRotate() {
+			return false;
+		}
+
+		@Override
+		protected void close() {
+		}
+
+		@Override
+		protected int getBatteryLevel() {
+			return 100;
+		}
+	}
+
+	public final BenchmarkTextView TextView;
+	private ZLKeyBindings myBindings;
+
+	public BenchmarkApplication() {
+		BenchmarkPlatform.init();
+		new Window(this);
+		TextView = new BenchmarkTextView(this);
+		setView(TextView);
+	}
+
+	@Override
+	public ZLKeyBindings keyBindings() {
+		if (myBindings == null) {
+			myBindings = new ZLKeyBindings("Keys");
+		}
+		return myBindings;
+	}
+
+	@Override
+	public void openFile(ZLFile file) {
+	}
+}
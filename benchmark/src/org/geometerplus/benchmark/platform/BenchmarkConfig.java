@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark.platform;
+
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.config.ZLConfig;
+
+// options live in memory only, so every benchmark fork starts from the same settings
+final class BenchmarkConfig extends ZLConfig {
+	private final Map<String,Map<String,String>> myGroups =
+		Collections.synchronizedMap(new HashMap<String,Map<String,String>>());
+
+	private Map<String,String> group(String name, boolean create) {
+		synchronized (myGroups) {
+			Map<String,String> group = myGroups.get(name);
+			if (group == null && create) {
+				group = Collections.synchronizedMap(new HashMap<String,String>());
+				myGroups.put(name, group);
+			}
+			return group;
+		}
+	}
+
+	@Override
+	public String getValue(String group, String name, String defaultValue) {
+		final Map<String,String> values = group(group, false);
+		final String value = values != null ? values.get(name) : null;
+		return value != null ? value : defaultValue;
+	}
+
+	@Override
+	public void setValue(String group, String name, String value) {
+		group(group, true).put(name, value);
+	}
+
+	@Override
+	public void unsetValue(String group, String name) {
+		final Map<String,String> values = group(group, false);
+		if (values != null) {
+			values.remove(name);
+		}
+	}
+
+	@Override
+	public void removeGroup(String name) {
+		myGroups.remove(name);
+	}
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark.platform;
+
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.text.view.ZLTextPosition;
+import org.geometerplus.fbreader.library.*;
+
+/*
+ * In-memory replacement of the SQLite database; bookmarks are not stored.
+ * Authors and series are kept in tables of their own, as in SQLite, so
+ * the id cache of BooksDatabase is used; sorted maps stand for the indices.
+ */
+final class BenchmarkDatabase extends BooksDatabase {
+	private static final class FileRecord {
+		final String Name;
+		final long ParentId;
+		final long Size;
+		final long LastModified;
+
+		FileRecord(String name, long parentId, long size, long lastModified) {
+			Name = name;
+			ParentId = parentId;
+			Size = size;
+			LastModified = lastModified;
+		}
+	}
+
+	private static final class BookRecord {
+		long FileId;
+		String Title;
+		String Encoding;
+		String Language;
+		final ArrayList<Long> AuthorIds = new ArrayList<Long>();
+		final ArrayList<Tag> Tags = new ArrayList<Tag>();
+		long SeriesId = -1;
+		float SeriesIndex;
+	}
+
+	private final LinkedHashMap<Long,FileRecord> myFiles = new LinkedHashMap<Long,FileRecord>();
+	private final HashMap<Long,BookRecord> myBooks = new HashMap<Long,BookRecord>();
+	private final HashMap<Long,Author> myAuthors = new HashMap<Long,Author>();
+	private final TreeMap<String,Long> myAuthorIndex = new TreeMap<String,Long>();
+	private final HashMap<Long,String> mySeries = new HashMap<Long,String>();
+	private final TreeMap<String,Long> mySeriesIndex = new TreeMap<String,Long>();
+	private final ArrayList<Long> myRecentBookIds = new ArrayList<Long>();
+	private final HashSet<Long> myFavoriteIds = new HashSet<Long>();
+	private final HashSet<Long> myBookList = new HashSet<Long>();
+	private final HashMap<Long,ZLTextPosition> myPositions = new HashMap<Long,ZLTextPosition>();
+	private final HashMap<Long,Set<String>> myVisitedHyperlinks = new HashMap<Long,Set<String>>();
+	private final HashMap<Long,String> myPageIndexFingerprints = new HashMap<Long,String>();
+	private final HashMap<String,byte[]> myPageIndexes = new HashMap<String,byte[]>();
+	private long myNextId = 1;
+
+	@Override
+	protected synchronized void executeAsATransaction(Runnable actions) {
+		actions.run();
+	}
+
+	private Book createBook(long id, BookRecord record, ZLFile file) {
+		final Book book = file != null
+			? createBook(id, file, record.Title, record.Encoding, record.Language)
+			: createBook(id, record.FileId, record.Title, record.Encoding, record.Language);
+		if (book != null) {
+			for (long authorId : record.AuthorIds) {
+				addAuthor(book, myAuthors.get(authorId));
+			}
+			for (Tag tag : record.Tags) {
+				addTag(book, tag);
+			}
+			if (record.SeriesId != -1) {
+				setSeriesInfo(book, mySeries.get(record.SeriesId), record.SeriesIndex);
+			}
+		}
+		return book;
+	}
+
+	private static String authorKey(Author author) {
+		return author.DisplayName + "\000" + author.SortKey;
+	}
+
+	@Override
+	protected synchronized Map<Long,Book> loadBooks(FileInfoSet infos) {
+		for (Map.Entry<Long,Author> entry : myAuthors.entrySet()) {
+			cacheAuthorId(entry.getValue(), entry.getKey());
+		}
+		for (Map.Entry<Long,String> entry : mySeries.entrySet()) {
+			cacheSeriesId(entry.getValue(), entry.getKey());
+		}
+		final HashMap<Long,Book> books = new HashMap<Long,Book>();
+		for (Map.Entry<Long,BookRecord> entry : myBooks.entrySet()) {
+			final BookRecord record = entry.getValue();
+			final Book book = createBook(entry.getKey(), record, infos.getFile(record.FileId));
+			if (book != null) {
+				books.put(record.FileId, book);
+			}
+		}
+		return books;
+	}
+
+	@Override
+	protected synchronized Book loadBook(long bookId) {
+		final BookRecord record = myBooks.get(bookId);
+		return record != null ? createBook(bookId, record, null) : null;
+	}
+
+	@Override
+	protected void reloadBook(Book book) {
+	}
+
+	@Override
+	protected synchronized Book loadBookByFile(long fileId, ZLFile file) {
+		for (Map.Entry<Long,BookRecord> entry : myBooks.entrySet()) {
+			if (entry.getValue().FileId == fileId) {
+				return createBook(entry.getKey(), entry.getValue(), file);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	protected synchronized List<Author> loadAuthors(long bookId) {
+		final BookRecord record = myBooks.get(bookId);
+		if (record == null) {
+			return null;
+		}
+		final ArrayList<Author> authors = new ArrayList<Author>(record.AuthorIds.size());
+		for (long authorId : record.AuthorIds) {
+			authors.add(myAuthors.get(authorId));
+		}
+		return authors;
+	}
+
+	@Override
+	protected synchronized List<Tag> loadTags(long bookId) {
+		final BookRecord record = myBooks.get(bookId);
+		return record != null ? new ArrayList<Tag>(record.Tags) : null;
+	}
+
+	@Override
+	protected synchronized SeriesInfo loadSeriesInfo(long bookId) {
+		final BookRecord record = myBooks.get(bookId);
+		if (record == null || record.SeriesId == -1) {
+			return null;
+		}
+		return new SeriesInfo(mySeries.get(record.SeriesId), record.SeriesIndex);
+	}
+
+	@Override
+	protected synchronized void updateBookInfo(long bookId, long fileId, String encoding, String language, String title) {
+		final BookRecord record = myBooks.get(bookId);
+		if (record != null) {
+			record.FileId = fileId;
+			record.Encoding = encoding;
+			record.Language = language;
+			record.Title = title;
+		}
+	}
+
+	@Override
+	protected synchronized long insertBookInfo(long fileId, String encoding, String language, String title) {
+		final BookRecord record = new BookRecord();
+		record.FileId = fileId;
+		record.Encoding = encoding;
+		record.Language = language;
+		record.Title = title;
+		final long id = myNextId++;
+		myBooks.put(id, record);
+		return id;
+	}
+
+	@Override
+	protected synchronized void deleteAllBookAuthors(long bookId) {
+		myBooks.get(bookId).AuthorIds.clear();
+	}
+
+	@Override
+	protected synchronized void saveBookAuthorInfo(long bookId, long index, long authorId) {
+		myBooks.get(bookId).AuthorIds.add(authorId);
+	}
+
+	@Override
+	protected synchronized long findAuthorId(Author author) {
+		final Long id = myAuthorIndex.get(authorKey(author));
+		return id != null ? id : -1;
+	}
+
+	@Override
+	protected synchronized long insertAuthor(Author author) {
+		final long id = myNextId++;
+		myAuthors.put(id, author);
+		myAuthorIndex.put(authorKey(author), id);
+		return id;
+	}
+
+	@Override
+	protected synchronized void deleteAllBookTags(long bookId) {
+		myBooks.get(bookId).Tags.clear();
+	}
+
+	@Override
+	protected synchronized void saveBookTagInfo(long bookId, Tag tag) {
+		myBooks.get(bookId).Tags.add(tag);
+	}
+
+	@Override
+	protected synchronized void saveBookSeriesInfo(long bookId, long seriesId, float index) {
+		final BookRecord record = myBooks.get(bookId);
+		record.SeriesId = seriesId;
+		record.SeriesIndex = index;
+	}
+
+	@Override
+	protected synchronized void deleteBookSeriesInfo(long bookId) {
+		myBooks.get(bookId).SeriesId = -1;
+	}
+
+	@Override
+	protected synchronized long findSeriesId(String name) {
+		final Long id = mySeriesIndex.get(name);
+		return id != null ? id : -1;
+	}
+
+	@Override
+	protected synchronized long insertSeries(String name) {
+		final long id = myNextId++;
+		mySeries.put(id, name);
+		mySeriesIndex.put(name, id);
+		return id;
+	}
+
+	private FileInfo createFileInfo(long id, FileRecord record, FileInfo parent) {
+		final FileInfo info = createFileInfo(id, record.Name, parent);
+		info.FileSize = record.Size;
+		info.LastModified = record.LastModified;
+		return info;
+	}
+
+	@Override
+	protected synchronized Collection<FileInfo> loadFileInfos() {
+		final LinkedHashMap<Long,FileInfo> infos = new LinkedHashMap<Long,FileInfo>();
+		// parents are always saved before their children
+		for (Map.Entry<Long,FileRecord> entry : myFiles.entrySet()) {
+			final FileRecord record = entry.getValue();
+			infos.put(entry.getKey(), createFileInfo(entry.getKey(), record, infos.get(record.ParentId)));
+		}
+		return infos.values();
+	}
+
+	@Override
+	protected synchronized Collection<FileInfo> loadFileInfos(ZLFile file) {
+		final LinkedList<ZLFile> fileSet = new LinkedList<ZLFile>();
+		for (ZLFile f = file; f != null; f = f.getParent()) {
+			fileSet.addFirst(f);
+		}
+		final ArrayList<FileInfo> infos = new ArrayList<FileInfo>(fileSet.size());
+		FileInfo parent = null;
+		long parentId = -1;
+		for (ZLFile f : fileSet) {
+			FileInfo info = null;
+			for (Map.Entry<Long,FileRecord> entry : myFiles.entrySet()) {
+				final FileRecord record = entry.getValue();
+				if (record.ParentId == parentId && record.Name.equals(f.getLongName())) {
+					info = createFileInfo(entry.getKey(), record, parent);
+					break;
+				}
+			}
+			if (info == null) {
+				break;
+			}
+			infos.add(info);
+			parent = info;
+			parentId = info.Id;
+		}
+		return infos;
+	}
+
+	@Override
+	protected synchronized Collection<FileInfo> loadFileInfos(long fileId) {
+		final LinkedList<Long> ids = new LinkedList<Long>();
+		for (long id = fileId; id != -1; ) {
+			final FileRecord record = myFiles.get(id);
+			if (record == null) {
+				break;
+			}
+			ids.addFirst(id);
+			id = record.ParentId;
+		}
+		final ArrayList<FileInfo> infos = new ArrayList<FileInfo>(ids.size());
+		FileInfo parent = null;
+		for (long id : ids) {
+			parent = createFileInfo(id, myFiles.get(id), parent);
+			infos.add(parent);
+		}
+		return infos;
+	}
+
+	@Override
+	protected synchronized void removeFileInfo(long fileId) {
+		myFiles.remove(fileId);
+	}
+
+	@Override
+	protected synchronized void saveFileInfo(FileInfo fileInfo) {
+		if (fileInfo.Id == -1) {
+			fileInfo.Id = myNextId++;
+		}
+		final long parentId = fileInfo.Parent != null ? fileInfo.Parent.Id : -1;
+		myFiles.put(fileInfo.Id, new FileRecord(fileInfo.Name, parentId, fileInfo.FileSize, fileInfo.LastModified));
+	}
+
+	@Override
+	protected synchronized List<Long> loadRecentBookIds() {
+		return new ArrayList<Long>(myRecentBookIds);
+	}
+
+	@Override
+	protected synchronized void saveRecentBookIds(final List<Long> ids) {
+		myRecentBookIds.clear();
+		myRecentBookIds.addAll(ids);
+	}
+
+	@Override
+	protected synchronized List<Long> loadFavoritesIds() {
+		return new ArrayList<Long>(myFavoriteIds);
+	}
+
+	@Override
+	protected synchronized void addToFavorites(long bookId) {
+		myFavoriteIds.add(bookId);
+	}
+
+	@Override
+	protected synchronized void removeFromFavorites(long bookId) {
+		myFavoriteIds.remove(bookId);
+	}
+
+	@Override
+	protected List<Bookmark> loadBookmarks(long bookId, boolean isVisible) {
+		return new ArrayList<Bookmark>();
+	}
+
+	@Override
+	protected List<Bookmark> loadAllVisibleBookmarks() {
+		return new ArrayList<Bookmark>();
+	}
+
+	@Override
+	protected long saveBookmark(Bookmark bookmark) {
+		return -1;
+	}
+
+	@Override
+	protected void deleteBookmark(Bookmark bookmark) {
+	}
+
+	@Override
+	protected synchronized ZLTextPosition getStoredPosition(long bookId) {
+		return myPositions.get(bookId);
+	}
+
+	@Override
+	protected synchronized void storePosition(long bookId, ZLTextPosition position) {
+		myPositions.put(bookId, position);
+	}
+
+	@Override
+	protected synchronized boolean insertIntoBookList(long bookId) {
+		return myBookList.add(bookId);
+	}
+
+	@Override
+	protected synchronized boolean deleteFromBookList(long bookId) {
+		return myBookList.remove(bookId);
+	}
+
+	@Override
+	protected synchronized boolean checkBookList(long bookId) {
+		return myBookList.contains(bookId);
+	}
+
+	@Override
+	protected synchronized Collection<String> loadVisitedHyperlinks(long bookId) {
+		final Set<String> links = myVisitedHyperlinks.get(bookId);
+		return links != null ? new ArrayList<String>(links) : new ArrayList<String>();
+	}
+
+	@Override
+	protected synchronized void addVisitedHyperlink(long bookId, String hyperlinkId) {
+		Set<String> links = myVisitedHyperlinks.get(bookId);
+		if (links == null) {
+			links = new HashSet<String>();
+			myVisitedHyperlinks.put(bookId, links);
+		}
+		links.add(hyperlinkId);
+	}
+
+	@Override
+	protected synchronized byte[] loadPageIndex(long bookId, String fingerprint, String configuration) {
+		if (!fingerprint.equals(myPageIndexFingerprints.get(bookId))) {
+			return null;
+		}
+		return myPageIndexes.get(bookId + "\000" + configuration);
+	}
+
+	@Override
+	protected synchronized void savePageIndex(long bookId, String fingerprint, String configuration, byte[] data) {
+		if (!fingerprint.equals(myPageIndexFingerprints.get(bookId))) {
+			deletePageIndices(bookId);
+			myPageIndexFingerprints.put(bookId, fingerprint);
+		}
+		myPageIndexes.put(bookId + "\000" + configuration, data);
+	}
+
+	@Override
+	protected synchronized void deletePageIndices(long bookId) {
+		myPageIndexFingerprints.remove(bookId);
+		final String prefix = bookId + "\000";
+		for (Iterator<String> it = myPageIndexes.keySet().iterator(); it.hasNext(); ) {
+			if (it.next().startsWith(prefix)) {
+				it.remove();
+			}
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark.platform;
+
+import java.io.*;
+
+import org.geometerplus.zlibrary.core.image.*;
+
+/*
+ * Images are read to the end, so the cost of getting the bytes out of
+ * the book is measured, but not decoded: every image is laid out as
+ * a square of a fixed size.
+ */
+final class BenchmarkImageManager extends ZLImageManager {
+	static final class ImageData implements ZLImageData {
+		final int Size;
+
+		ImageData(int size) {
+			Size = size;
+		}
+	}
+
+	static final int IMAGE_SIZE = 120;
+
+	@Override
+	public ZLImageData getImageData(ZLImage image) {
+		if (!(image instanceof ZLSingleImage)) {
+			return null;
+		}
+		final InputStream stream = ((ZLSingleImage)image).inputStream();
+		if (stream == null) {
+			return null;
+		}
+		try {
+			final byte[] buffer = new byte[8192];
+			while (stream.read(buffer) > 0) {
+			}
+			return new ImageData(IMAGE_SIZE);
+		} catch (IOException e) {
+			return null;
+		} finally {
+			try {
+				stream.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	@Override
+	protected void startImageLoading(ZLLoadableImage image, Runnable postLoadingRunnable) {
+		image.synchronize();
+		if (postLoadingRunnable != null) {
+			postLoadingRunnable.run();
+		}
+	}
+}
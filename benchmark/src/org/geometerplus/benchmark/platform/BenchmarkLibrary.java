@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark.platform;
+
+import java.io.*;
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.filesystem.ZLResourceFile;
+import org.geometerplus.zlibrary.core.library.ZLibrary;
+
+// resources are read from a copy of the assets directory
+final class BenchmarkLibrary extends ZLibrary {
+	private final File myAssetsDirectory;
+
+	BenchmarkLibrary(File assetsDirectory) {
+		myAssetsDirectory = assetsDirectory;
+	}
+
+	@Override
+	public ZLResourceFile createResourceFile(String path) {
+		return new AssetsFile(path);
+	}
+
+	@Override
+	public ZLResourceFile createResourceFile(ZLResourceFile parent, String name) {
+		return new AssetsFile(parent.getPath().length() == 0 ? name : parent.getPath() + '/' + name);
+	}
+
+	@Override
+	public String getVersionName() {
+		return "benchmark";
+	}
+
+	@Override
+	public String getCurrentTimeString() {
+		return "00:00";
+	}
+
+	@Override
+	public void setScreenBrightness(int percent) {
+	}
+
+	@Override
+	public int getScreenBrightness() {
+		return 0;
+	}
+
+	@Override
+	public int getDisplayDPI() {
+		return 160;
+	}
+
+	@Override
+	public Collection<String> defaultLanguageCodes() {
+		return Collections.singletonList("en");
+	}
+
+	private final class AssetsFile extends ZLResourceFile {
+		private final File myFile;
+
+		AssetsFile(String path) {
+			super(path);
+			myFile = new File(myAssetsDirectory, path);
+		}
+
+		@Override
+		protected List<ZLFile> directoryEntries() {
+			final String[] names = myFile.list();
+			if (names == null || names.length == 0) {
+				return Collections.emptyList();
+			}
+			Arrays.sort(names);
+			final ArrayList<ZLFile> files = new ArrayList<ZLFile>(names.length);
+			for (String name : names) {
+				files.add(BenchmarkLibrary.this.createResourceFile(this, name));
+			}
+			return files;
+		}
+
+		@Override
+		public boolean isDirectory() {
+			return myFile.isDirectory();
+		}
+
+		@Override
+		public boolean exists() {
+			return myFile.exists();
+		}
+
+		@Override
+		public long size() {
+			return myFile.length();
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return new FileInputStream(myFile);
+		}
+
+		@Override
+		public ZLFile getParent() {
+			final String path = getPath();
+			final int index = path.lastIndexOf('/');
+			return path.length() == 0 ? null : BenchmarkLibrary.this.createResourceFile(index >= 0 ? path.substring(0, index) : "");
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark.platform;
+
+import java.util.ArrayList;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.image.ZLImageData;
+import org.geometerplus.zlibrary.core.util.ZLColor;
+import org.geometerplus.zlibrary.core.view.ZLPaintContext;
+
+/*
+ * Paint context of a fixed size with synthetic font metrics: a character
+ * is 30 to 100 percent of the font size wide depending on its shape,
+ * bold text is 10 percent wider. Drawing calls only count the
+ * strings, so layout is measured without any rendering.
+ */
+public final class BenchmarkPaintContext extends ZLPaintContext {
+	private final int myWidth;
+	private final int myHeight;
+
+	private int myFontSize;
+	private boolean myFontIsBold;
+
+	private int myDrawnStringsNumber;
+
+	public BenchmarkPaintContext(int width, int height) {
+		myWidth = width;
+		myHeight = height;
+	}
+
+	public int getDrawnStringsNumber() {
+		return myDrawnStringsNumber;
+	}
+
+	@Override
+	public void clear(ZLFile wallpaperFile, boolean doMirror) {
+		myDrawnStringsNumber = 0;
+	}
+
+	@Override
+	public void clear(ZLColor color) {
+		myDrawnStringsNumber = 0;
+	}
+
+	@Override
+	protected void setFontInternal(String family, int size, boolean bold, boolean italic, boolean underline) {
+		myFontSize = size;
+		myFontIsBold = bold;
+	}
+
+	@Override
+	public void setTextColor(ZLColor color) {
+	}
+
+	@Override
+	public void setLineColor(ZLColor color, int style) {
+	}
+
+	@Override
+	public void setLineWidth(int width) {
+	}
+
+	@Override
+	public void setFillColor(ZLColor color, int style) {
+	}
+
+	@Override
+	public int getWidth() {
+		return myWidth;
+	}
+
+	@Override
+	public int getHeight() {
+		return myHeight;
+	}
+
+	// in percents of the font size
+	private static int charWidth(char ch) {
+		switch (ch) {
+			case 'i':
+			case 'j':
+			case 'l':
+			case 'I':
+			case '.':
+			case ',':
+			case ':':
+			case ';':
+			case '\'':
+			case '!':
+			case '|':
+				return 30;
+			case 'm':
+			case 'w':
+			case 'M':
+			case 'W':
+				return 85;
+			default:
+				if (ch >= 0x2E80 && ch <= 0x9FFF) {
+					return 100;
+				}
+				return Character.isUpperCase(ch) ? 68 : 55;
+		}
+	}
+
+	@Override
+	public int getStringWidth(char[] string, int offset, int length) {
+		int width = 0;
+		for (int i = offset; i < offset + length; ++i) {
+			width += charWidth(string[i]);
+		}
+		if (myFontIsBold) {
+			width += width / 10;
+		}
+		return (width * myFontSize + 50) / 100;
+	}
+
+	@Override
+	protected int getSpaceWidthInternal() {
+		return (myFontSize * 28 + 50) / 100;
+	}
+
+	@Override
+	protected int getStringHeightInternal() {
+		return (myFontSize * 120 + 50) / 100;
+	}
+
+	@Override
+	protected int getDescentInternal() {
+		return (myFontSize * 22 + 50) / 100;
+	}
+
+	@Override
+	public void drawString(int x, int y, char[] string, int offset, int length) {
+		++myDrawnStringsNumber;
+	}
+
+	@Override
+	public int imageWidth(ZLImageData image) {
+		return ((BenchmarkImageManager.ImageData)image).Size;
+	}
+
+	@Override
+	public int imageHeight(ZLImageData image) {
+		return ((BenchmarkImageManager.ImageData)image).Size;
+	}
+
+	@Override
+	public void drawImage(int x, int y, ZLImageData image) {
+	}
+
+	@Override
+	public void drawLine(int x0, int y0, int x1, int y1) {
+	}
+
+	@Override
+	public void fillRectangle(int x0, int y0, int x1, int y1) {
+	}
+
+	@Override
+	public void drawFilledCircle(int x, int y, int r) {
+	}
+
+	@Override
+	public void drawOutline(int[] xs, int ys[]) {
+	}
+
+	@Override
+	public String realFontFamilyName(String fontFamily) {
+		return "Serif";
+	}
+
+	@Override
+	protected void fillFamiliesList(ArrayList<String> families) {
+		families.add("Serif");
+		families.add("Sans");
+		families.add("Monospace");
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark.platform;
+
+import java.io.File;
+
+import org.geometerplus.zlibrary.core.options.*;
+
+import org.geometerplus.fbreader.Paths;
+
+/*
+ * Installs the desktop stand-ins of the platform singletons. The assets
+ * and the corpus are looked up in the directories given by the
+ * benchmark.assets and benchmark.corpus system properties.
+ */
+public abstract class BenchmarkPlatform {
+	private static boolean ourIsInitialized;
+
+	public static File assetsDirectory() {
+		return new File(System.getProperty("benchmark.assets", "../assets"));
+	}
+
+	public static File corpusDirectory() {
+		return new File(System.getProperty("benchmark.corpus", "corpus"));
+	}
+
+	public static synchronized void init() {
+		if (ourIsInitialized) {
+			return;
+		}
+		ourIsInitialized = true;
+
+		new BenchmarkConfig();
+		new BenchmarkLibrary(assetsDirectory());
+		new BenchmarkImageManager();
+		new BenchmarkDatabase();
+
+		Paths.BooksDirectoryOption().setValue(corpusDirectory().getAbsolutePath());
+		new File(Paths.cacheDirectory()).mkdirs();
+
+		// every measurement runs on the calling thread and starts from scratch
+		setModelCacheEnabled(false);
+		new ZLBooleanOption("Memory", "UseSearchIndex", true).setValue(false);
+		new ZLIntegerRangeOption("Options", "PagesToPrefetch", 0, 5, 2).setValue(0);
+		new ZLBooleanOption("Options", "IndexPages", true).setValue(false);
+	}
+
+	// drops everything the library scan has stored
+	public static void resetDatabase() {
+		new BenchmarkDatabase();
+	}
+
+	// options keep their values once read, so this works only before the first model is created
+	public static void setModelCacheEnabled(boolean enabled) {
+		new ZLIntegerRangeOption("Memory", "ModelCacheSizeLimit", 0, 1024, 64).setValue(enabled ? 1024 : 0);
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark.platform;
+
+import org.geometerplus.zlibrary.core.application.ZLApplication;
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.util.ZLColor;
+import org.geometerplus.zlibrary.core.view.ZLPaintContext;
+
+import org.geometerplus.zlibrary.text.model.ZLTextModel;
+import org.geometerplus.zlibrary.text.view.ZLTextHyperlink;
+import org.geometerplus.zlibrary.text.view.ZLTextView;
+
+// text view with the default FBReader margins and no footer
+public final class BenchmarkTextView extends ZLTextView {
+	private static final ZLColor BACKGROUND_COLOR = new ZLColor(255, 255, 255);
+	private static final ZLColor SELECTED_BACKGROUND_COLOR = new ZLColor(82, 131, 194);
+	private static final ZLColor TEXT_COLOR = new ZLColor(0, 0, 0);
+	private static final ZLColor HYPERLINK_COLOR = new ZLColor(60, 139, 255);
+	private static final ZLColor HIGHLIGHTING_COLOR = new ZLColor(255, 192, 128);
+
+	BenchmarkTextView(ZLApplication application) {
+		super(application);
+	}
+
+	/*
+	 * Pages through the text from the beginning the way page turns do,
+	 * painting at most maxPages pages; returns the number of pages painted.
+	 */
+	public synchronized int paintPages(ZLPaintContext context, int maxPages) {
+		final ZLTextModel model = getModel();
+		if (model == null || model.getParagraphsNumber() == 0) {
+			return 0;
+		}
+		gotoPosition(0, 0, 0);
+		int count = 0;
+		while (count < maxPages) {
+			paint(context, PageIndex.current);
+			++count;
+			if (!canScroll(PageIndex.next)) {
+				break;
+			}
+			onScrollingFinished(PageIndex.next);
+		}
+		return count;
+	}
+
+	@Override
+	public int getLeftMargin() {
+		return 4;
+	}
+
+	@Override
+	public int getRightMargin() {
+		return 4;
+	}
+
+	@Override
+	public int getTopMargin() {
+		return 0;
+	}
+
+	@Override
+	public int getBottomMargin() {
+		return 4;
+	}
+
+	@Override
+	public ZLFile getWallpaperFile() {
+		return null;
+	}
+
+	@Override
+	public ZLColor getBackgroundColor() {
+		return BACKGROUND_COLOR;
+	}
+
+	@Override
+	public ZLColor getSelectedBackgroundColor() {
+		return SELECTED_BACKGROUND_COLOR;
+	}
+
+	@Override
+	public ZLColor getTextColor(ZLTextHyperlink hyperlink) {
+		return hyperlink.Type == 0 ? TEXT_COLOR : HYPERLINK_COLOR;
+	}
+
+	@Override
+	public ZLColor getHighlightingColor() {
+		return HIGHLIGHTING_COLOR;
+	}
+
+	@Override
+	public FooterArea getFooterArea() {
+		return null;
+	}
+
+	@Override
+	public Animation getAnimationType() {
+		return Animation.none;
+	}
+
+	@Override
+	public int scrollbarType() {
+		return SCROLLBAR_HIDE;
+	}
+
+	@Override
+	protected boolean isSelectionEnabled() {
+		return false;
+	}
+}
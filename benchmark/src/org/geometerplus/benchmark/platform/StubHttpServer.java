@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.benchmark.platform;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.*;
+
+/*
+ * A local HTTP server with a single resource, for the network code
+ * to be run without the catalog servers. It can misbehave the way real
+ * servers do: cut every response after some bytes, ignore ranges, hide
+ * the length, and replace the resource (with a new ETag) while it is
+ * being downloaded. It can also be slow to answer, as a distant catalog is,
+ * and send the resource without a validator. A request with the current
+ * ETag in If-None-Match gets 304.
+ */
+public final class StubHttpServer {
+	static {
+		// without it, the headers and the body of a small response wait for a delayed ACK
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	private final HttpServer myServer;
+	private final AtomicInteger myRequestsNumber = new AtomicInteger();
+
+	private volatile byte[] myData;
+	private volatile int myVersion;
+	private volatile boolean myRangesSupported = true;
+	private volatile boolean myLengthKnown = true;
+	private volatile long myDropAfter = -1;
+	private volatile int myChangeAfter = -1;
+	private volatile long myLatency;
+	private volatile boolean myValidatorSent = true;
+
+	public StubHttpServer(int size) throws IOException {
+		myData = data(size, 0);
+		myServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		myServer.setExecutor(Executors.newCachedThreadPool());
+		myServer.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+		});
+		myServer.start();
+	}
+
+	private static byte[] data(int size, int version) {
+		final byte[] data = new byte[size];
+		new Random(size * 31L + version).nextBytes(data);
+		return data;
+	}
+
+	public String url() {
+		return "http://127.0.0.1:" + myServer.getAddress().getPort() + "/book.epub";
+	}
+
+	// the current version of the resource
+	public byte[] data() {
+		return myData;
+	}
+
+	public void setRangesSupported(boolean supported) {
+		myRangesSupported = supported;
+	}
+
+	// without the length, the body is sent chunked
+	public void setLengthKnown(boolean known) {
+		myLengthKnown = known;
+	}
+
+	// every response is cut after this number of bytes; -1 means never
+	public void setDropAfter(long bytes) {
+		myDropAfter = bytes;
+	}
+
+	// the resource is replaced after this number of requests; -1 means never
+	public void setChangeAfter(int requests) {
+		myChangeAfter = requests;
+	}
+
+	// every response is sent this number of milliseconds after the request
+	public void setLatency(long milliseconds) {
+		myLatency = milliseconds;
+	}
+
+	// without the ETag, the resource cannot be revalidated
+	public void setValidatorSent(boolean sent) {
+		myValidatorSent = sent;
+	}
+
+	public int getRequestsNumber() {
+		return myRequestsNumber.get();
+	}
+
+	// restores the first version and the default behaviour
+	public void reset() {
+		myData = data(myData.length, 0);
+		myVersion = 0;
+		myRangesSupported = true;
+		myLengthKnown = true;
+		myDropAfter = -1;
+		myChangeAfter = -1;
+		myLatency = 0;
+		myValidatorSent = true;
+		myRequestsNumber.set(0);
+	}
+
+	public void stop() {
+		myServer.stop(0);
+	}
+
+	private String etag() {
+		return "\"v" + myVersion + "\"";
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		if (myLatency > 0) {
+			try {
+				Thread.sleep(myLatency);
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+		}
+		synchronized (this) {
+			if (myRequestsNumber.incrementAndGet() - 1 == myChangeAfter) {
+				++myVersion;
+				myData = data(myData.length, myVersion);
+			}
+		}
+		final byte[] data = myData;
+		final String etag = etag();
+		final Headers headers = exchange.getResponseHeaders();
+		if (myValidatorSent) {
+			headers.add("ETag", etag);
+			if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+				return;
+			}
+		}
+
+		long start = 0;
+		long end = data.length - 1;
+		boolean partial = false;
+		final String range = exchange.getRequestHeaders().getFirst("Range");
+		final String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		if (myRangesSupported && range != null && range.startsWith("bytes=") &&
+			(ifRange == null || ifRange.equals(etag))) {
+			final String value = range.substring(6);
+			final int dash = value.indexOf('-');
+			start = Long.parseLong(value.substring(0, dash));
+			if (dash + 1 < value.length()) {
+				end = Math.min(end, Long.parseLong(value.substring(dash + 1)));
+			}
+			partial = true;
+			headers.add("Accept-Ranges", "bytes");
+			headers.add("Content-Range", "bytes " + start + "-" + end + "/" +
+				(myLengthKnown ? String.valueOf(data.length) : "*"));
+		}
+
+		final long length = end - start + 1;
+		exchange.sendResponseHeaders(partial ? 206 : 200, myLengthKnown ? length : 0);
+		final OutputStream stream = exchange.getResponseBody();
+		final long dropAfter = myDropAfter;
+		for (long sent = 0; sent < length; ) {
+			int size = (int)Math.min(64 * 1024, length - sent);
+			if (dropAfter >= 0 && sent + size > dropAfter) {
+				size = (int)(dropAfter - sent);
+				stream.write(data, (int)(start + sent), size);
+				stream.flush();
+				// the server closes the connection of a failed exchange without finishing
+				// the body, so even a chunked response is seen as incomplete
+				throw new IOException("Connection is dropped");
+			}
+			stream.write(data, (int)(start + sent), size);
+			sent += size;
+		}
+		exchange.close();
+	}
+}
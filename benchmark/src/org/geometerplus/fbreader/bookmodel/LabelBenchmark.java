@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.bookmodel;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.geometerplus.fbreader.library.Book;
+
+import org.geometerplus.benchmark.Corpus;
+import org.geometerplus.benchmark.platform.BenchmarkPlatform;
+
+/*
+ * Hyperlink label lookups in a model with many labels (a dictionary or
+ * an annotated book): labels that exist and labels that do not.
+ * Lives in this package to reach BookModel.addHyperlinkLabel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LabelBenchmark {
+	private static final int LOOKUPS_NUMBER = 1024;
+
+	@Param({ "100000" })
+	public int labels;
+
+	private BookModel myModel;
+	private final String[] myExistingLabels = new String[LOOKUPS_NUMBER];
+	private final String[] myMissingLabels = new String[LOOKUPS_NUMBER];
+	private int myIndex;
+
+	@Setup
+	public void setUp() {
+		BenchmarkPlatform.init();
+		myModel = new BookModel(Book.getByFile(Corpus.file("book.fb2")), null);
+		for (int i = 0; i < labels; ++i) {
+			myModel.addHyperlinkLabel("note" + i, myModel.BookTextModel, i);
+		}
+		final Random random = new Random(labels);
+		for (int i = 0; i < LOOKUPS_NUMBER; ++i) {
+			myExistingLabels[i] = "note" + random.nextInt(labels);
+			myMissingLabels[i] = "note" + (labels + random.nextInt(labels));
+		}
+	}
+
+	@Benchmark
+	public int findExisting() {
+		myIndex = (myIndex + 1) % LOOKUPS_NUMBER;
+		return myModel.getLabel(myExistingLabels[myIndex]).ParagraphIndex;
+	}
+
+	@Benchmark
+	public boolean findMissing() {
+		myIndex = (myIndex + 1) % LOOKUPS_NUMBER;
+		return myModel.getLabel(myMissingLabels[myIndex]) == null;
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.bookmodel;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.geometerplus.zlibrary.text.model.ZLTextModel;
+
+import org.geometerplus.fbreader.formats.*;
+import org.geometerplus.fbreader.library.Book;
+
+import org.geometerplus.benchmark.Corpus;
+import org.geometerplus.benchmark.platform.BenchmarkPlatform;
+
+/*
+ * The first opening of a book, which parses it and writes the model
+ * cache, against the next ones, which load the model from the cache;
+ * and a search through the whole text of a loaded model.
+ * Lives in this package to reach BookModelCache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ModelCacheBenchmark {
+	@Param({ "book.fb2", "book.epub", "book.mobi" })
+	public String fileName;
+
+	private Book myBook;
+	private FormatPlugin myPlugin;
+	private String myFingerprint;
+	private ZLTextModel myLoadedModel;
+
+	@Setup
+	public void setUp() {
+		BenchmarkPlatform.init();
+		BenchmarkPlatform.setModelCacheEnabled(true);
+		myBook = Book.getByFile(Corpus.file(fileName));
+		myPlugin = PluginCollection.Instance().getPlugin(myBook.File);
+		myFingerprint = BookModelCache.fingerprint(myBook);
+		if (myFingerprint == null) {
+			throw new IllegalStateException("The model cache is disabled");
+		}
+		parse();
+		myLoadedModel = load();
+	}
+
+	@Benchmark
+	public int parse() {
+		final BookModel model = new BookModel(myBook, BookModelCache.prepareDirectory(myFingerprint));
+		if (!myPlugin.readModel(model)) {
+			throw new IllegalStateException("Cannot read " + fileName);
+		}
+		BookModelCache.save(model, myFingerprint);
+		return model.BookTextModel.getParagraphsNumber();
+	}
+
+	private ZLTextModel load() {
+		final BookModel model = BookModelCache.load(myBook, myFingerprint);
+		if (model == null) {
+			throw new IllegalStateException("No cached model for " + fileName);
+		}
+		return model.BookTextModel;
+	}
+
+	@Benchmark
+	public int loadFromCache() {
+		return load().getParagraphsNumber();
+	}
+
+	// the range ends at the last paragraph
+	@Benchmark
+	public int searchLoaded() {
+		return myLoadedModel.search("tion", 0, myLoadedModel.getParagraphsNumber(), true);
+	}
+}
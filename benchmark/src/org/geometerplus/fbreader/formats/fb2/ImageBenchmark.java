@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.fbreader.formats.fb2;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.image.ZLFileImage;
+import org.geometerplus.zlibrary.core.util.*;
+
+import org.geometerplus.benchmark.Corpus;
+
+/*
+ * FB2 images: locating the binaries in the book file, and decoding
+ * them from their byte ranges. The streams are built directly, so the
+ * decoded image cache of ZLFileImage is not involved. Lives in this
+ * package to reach FB2ImageLocator.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ImageBenchmark {
+	private static final Pattern BINARY_PATTERN =
+		Pattern.compile("<binary id=\"([^\"]+)\" content-type=\"([^\"]+)\"");
+
+	@Param({ "book.fb2", "book.fb2.zip:book.fb2" })
+	public String fileName;
+
+	private final byte[] myBuffer = new byte[8192];
+	private ZLFile myFile;
+	private HashMap<String,String> myMimeTypes;
+	private Collection<ZLFileImage> myImages;
+
+	@Setup
+	public void setUp() throws IOException {
+		myFile = Corpus.file(fileName);
+		final ByteArrayOutputStream text = new ByteArrayOutputStream();
+		final InputStream stream = myFile.getInputStream();
+		try {
+			int count;
+			while ((count = stream.read(myBuffer)) > 0) {
+				text.write(myBuffer, 0, count);
+			}
+		} finally {
+			stream.close();
+		}
+		myMimeTypes = new HashMap<String,String>();
+		final Matcher matcher = BINARY_PATTERN.matcher(text.toString("ISO-8859-1"));
+		while (matcher.find()) {
+			myMimeTypes.put(matcher.group(1), matcher.group(2));
+		}
+		myImages = FB2ImageLocator.locate(myFile, myMimeTypes).values();
+		if (myImages.size() != myMimeTypes.size()) {
+			throw new IllegalStateException("cannot locate images in " + fileName);
+		}
+	}
+
+	@Benchmark
+	public int locate() {
+		return FB2ImageLocator.locate(myFile, myMimeTypes).size();
+	}
+
+	@Benchmark
+	public long decode() throws IOException {
+		long size = 0;
+		for (ZLFileImage image : myImages) {
+			final InputStream stream = new Base64InputStream(
+				new SliceInputStream(myFile.getInputStream(), image.getOffset(), image.getLength()),
+				image.getLength()
+			);
+			try {
+				int count;
+				while ((count = stream.read(myBuffer)) > 0) {
+					size += count;
+				}
+			} finally {
+				stream.close();
+			}
+		}
+		return size;
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.fbreader.formats.pdb;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+
+import org.geometerplus.benchmark.Corpus;
+import org.geometerplus.benchmark.platform.BenchmarkPlatform;
+
+/*
+ * Decoding of the whole text of Mobipocket books, PalmDOC- and
+ * HUFF/CDIC-compressed, with and without parallel record decoding.
+ * Lives in this package to reach MobipocketStream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MobipocketBenchmark {
+	@Param({ "book.mobi", "book.huff.mobi" })
+	public String fileName;
+
+	@Param({ "false", "true" })
+	public boolean parallelDecoding;
+
+	private final byte[] myBuffer = new byte[8192];
+	private ZLFile myFile;
+
+	@Setup
+	public void setUp() {
+		BenchmarkPlatform.init();
+		PalmDocLikeStream.ParallelDecodingOption.setValue(parallelDecoding);
+		myFile = Corpus.file(fileName);
+	}
+
+	@Benchmark
+	public long decode() throws IOException {
+		long size = 0;
+		final InputStream stream = new MobipocketStream(myFile);
+		try {
+			int count;
+			while ((count = stream.read(myBuffer)) > 0) {
+				size += count;
+			}
+		} finally {
+			stream.close();
+		}
+		return size;
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.library;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+
+import org.geometerplus.benchmark.corpus.TextGenerator;
+import org.geometerplus.benchmark.platform.BenchmarkPlatform;
+
+/*
+ * Book search over a synthetic library, typed letter by letter: every
+ * invocation searches all the prefixes of the query, as the search box
+ * does. The first prefix never extends the previous (whole) query, so
+ * each invocation starts from the index, not from the last results.
+ * Lives in this package to reach BookSearchIndex.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BookSearchBenchmark {
+	private static final String[] TAGS = { "sf", "fantasy", "detective", "classic", "adventure", "romance" };
+
+	@Param({ "50000" })
+	public int books;
+
+	@Param({ "tion", "alma", "zzz" })
+	public String query;
+
+	private BookSearchIndex myIndex;
+
+	@Setup
+	public void setUp() {
+		BenchmarkPlatform.init();
+		final TextGenerator generator = new TextGenerator(books);
+		final Random random = generator.random();
+		final Author[] authors = new Author[books / 5];
+		for (int i = 0; i < authors.length; ++i) {
+			final String name = generator.name() + " " + generator.name();
+			authors[i] = new Author(name, name.toLowerCase());
+		}
+		myIndex = new BookSearchIndex();
+		for (int i = 0; i < books; ++i) {
+			final ZLFile file = ZLFile.createFileByPath("/library/book" + i + ".fb2");
+			final Book book = new Book(i + 1, file, generator.title(5), "utf-8", "en");
+			book.addAuthorWithNoCheck(authors[random.nextInt(authors.length)]);
+			if (random.nextInt(4) == 0) {
+				book.setSeriesInfoWithNoCheck(generator.title(2), 1 + random.nextInt(10));
+			}
+			book.addTagWithNoCheck(Tag.getTag(null, TAGS[random.nextInt(TAGS.length)]));
+			myIndex.add(book);
+		}
+	}
+
+	@Benchmark
+	public int typeQuery() {
+		int count = 0;
+		for (int length = 1; length <= query.length(); ++length) {
+			count += myIndex.find(query.substring(0, length), -1).size();
+		}
+		return count;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.zlibrary.text.view;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.geometerplus.zlibrary.text.model.*;
+
+import org.geometerplus.benchmark.Corpus;
+
+/*
+ * Paragraph tokenisation: iteration over the entries stored in the
+ * model, and splitting of paragraphs into words and spaces by
+ * ZLTextParagraphCursor. book.links.fb2 has a footnote reference in
+ * every paragraph; run with '-prof gc' for the allocation rate. Lives
+ * in this package to reach the cursor and the cursor cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ParagraphBenchmark {
+	@Param({ "book.fb2", "book.links.fb2", "book.epub", "book.mobi" })
+	public String fileName;
+
+	private ZLTextModel myModel;
+
+	@Setup
+	public void setUp() {
+		myModel = Corpus.model(fileName).BookTextModel;
+	}
+
+	@Benchmark
+	public int iterateEntries() {
+		int count = 0;
+		final int paragraphsNumber = myModel.getParagraphsNumber();
+		for (int i = 0; i < paragraphsNumber; ++i) {
+			for (ZLTextParagraph.EntryIterator it = myModel.getParagraph(i).iterator(); it.hasNext(); ) {
+				it.next();
+				switch (it.getType()) {
+					case ZLTextParagraph.Entry.TEXT:
+						count += it.getTextLength();
+						break;
+					case ZLTextParagraph.Entry.CONTROL:
+						if (it.getHyperlinkType() != 0) {
+							count += it.getHyperlinkId().length();
+						} else {
+							++count;
+						}
+						break;
+					case ZLTextParagraph.Entry.IMAGE:
+						count += it.getImageEntry().Id.length();
+						break;
+					default:
+						++count;
+						break;
+				}
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	public int splitParagraphs() {
+		ZLTextParagraphCursorCache.clear(myModel);
+		int count = 0;
+		final int paragraphsNumber = myModel.getParagraphsNumber();
+		for (int i = 0; i < paragraphsNumber; ++i) {
+			count += ZLTextParagraphCursor.cursor(myModel, i).getParagraphLength();
+		}
+		return count;
+	}
+}
@@ -0,0 +1,56 @@
+package org.vimgadgets.linebreak;
+
+/*
+ * Desktop stand-in for the JNI line breaker. It is a rough approximation
+ * of UAX #14: breaks are allowed after spaces and hyphens and around
+ * ideographs, and required after line feeds and at the end of the text.
+ */
+public final class LineBreaker {
+	public static final char MUSTBREAK = 0;
+	public static final char ALLOWBREAK = 1;
+	public static final char NOBREAK = 2;
+	public static final char INSIDEACHAR = 3;
+
+	private final String myLanguage;
+
+	public LineBreaker(String lang) {
+		myLanguage = lang;
+	}
+
+	public void setLineBreaks(char[] data, int offset, int length, byte[] breaks) {
+		for (int i = 0; i < length - 1; ++i) {
+			breaks[i] = breakAfter(data[offset + i], data[offset + i + 1]);
+		}
+		if (length > 0) {
+			breaks[length - 1] = MUSTBREAK;
+		}
+	}
+
+	public void setLineBreaks(String data, byte[] breaks) {
+		final char[] array = data.toCharArray();
+		setLineBreaks(array, 0, array.length, breaks);
+	}
+
+	private static boolean isIdeograph(char ch) {
+		return (ch >= 0x2E80 && ch <= 0x9FFF) || (ch >= 0xF900 && ch <= 0xFAFF);
+	}
+
+	private static byte breakAfter(char ch, char next) {
+		if (ch == '\n') {
+			return MUSTBREAK;
+		}
+		if (Character.isSurrogatePair(ch, next)) {
+			return INSIDEACHAR;
+		}
+		if (Character.isWhitespace(next)) {
+			return NOBREAK;
+		}
+		if (Character.isWhitespace(ch) || isIdeograph(ch) || isIdeograph(next)) {
+			return ALLOWBREAK;
+		}
+		if (ch == '-' && Character.isLetter(next)) {
+			return ALLOWBREAK;
+		}
+		return NOBREAK;
+	}
+}
@@ -1,5 +1,6 @@
 #include <jni.h>
 
+#include <pthread.h>
 #include <string.h>
 #include <zlib.h>
 
@@ -9,13 +10,39 @@
 
 static jobject				keys[SIZE]				= { 0 };
 static z_stream*			values[SIZE]			= { 0 };
+// guards keys and values: decompressors of different threads share the table
+static pthread_mutex_t		tableLock				= PTHREAD_MUTEX_INITIALIZER;
 
+class TableLock {
+
+public:
+	TableLock() { pthread_mutex_lock(&tableLock); }
+	~TableLock() { pthread_mutex_unlock(&tableLock); }
+};
+
+// keys are global references: local ones are not comparable between calls;
+// to be called with tableLock held
+static int find(JNIEnv *env, jobject thiz) {
+	int i;
+	for (i = 0; i < SIZE; ++i) {
+		if (keys[i] != 0 && env->IsSameObject(keys[i], thiz)) {
+			return i;
+		}
+	}
+	return -1;
+}
+
+// a stream that is still allocated for thiz (an entry closed before its end) is reset
 extern "C"
 jboolean Java_org_amse_ys_zip_DeflatingDecompressor_startInflating(JNIEnv *env, jobject thiz) {
-	int i;
+	TableLock lock;
+	int i = find(env, thiz);
+	if (i != -1) {
+		return inflateReset(values[i]) == Z_OK;
+	}
 	for (i = 0; i < SIZE; ++i) {
 		if (keys[i] == 0) {
-			keys[i] = thiz;
+			keys[i] = env->NewGlobalRef(thiz);
 			values[i] = new z_stream;
 			memset(values[i], 0, sizeof(z_stream));
 			inflateInit2(values[i], -MAX_WBITS);
@@ -27,43 +54,52 @@ jboolean Java_org_amse_ys_zip_DeflatingDecompressor_startInflating(JNIEnv *env,
 
 extern "C"
 void Java_org_amse_ys_zip_DeflatingDecompressor_endInflating(JNIEnv *env, jobject thiz) {
-	int i;
-	for (i = 0; i < SIZE; ++i) {
-		if (keys[i] == thiz) {
-			keys[i] = 0;
-			inflateEnd(values[i]);
-			delete values[i];
-			values[i] = 0;
-			break;
-		}
+	TableLock lock;
+	const int i = find(env, thiz);
+	if (i != -1) {
+		env->DeleteGlobalRef(keys[i]);
+		keys[i] = 0;
+		inflateEnd(values[i]);
+		delete values[i];
+		values[i] = 0;
 	}
 }
 
-// returns (endFlag << 32) + ((used inLength) << 16) + outLength
+// returns (endFlag << 32) + ((used inLength) << 16) + outLength;
+// the lock is held for the lookup only: a stream is used and freed
+// by the thread of its own decompressor
 extern "C"
 jlong Java_org_amse_ys_zip_DeflatingDecompressor_inflate(JNIEnv *env, jobject thiz, jbyteArray in, jint inOffset, jint inLength, jbyteArray out) {
-	int i;
-	z_stream *stream = 0;
-	for (i = 0; i < SIZE; ++i) {
-		if (keys[i] == thiz) {
-			stream = values[i];
-			break;
+	z_stream *stream;
+	{
+		TableLock lock;
+		const int i = find(env, thiz);
+		if (i == -1) {
+			return -1;
 		}
+		stream = values[i];
 	}
-	if (stream == 0) {
+
+	// critical access pins the arrays instead of copying them
+	const int outLength = env->GetArrayLength(out);
+	jbyte* inStart = (jbyte*)env->GetPrimitiveArrayCritical(in, 0);
+	jbyte* outStart = (jbyte*)env->GetPrimitiveArrayCritical(out, 0);
+	if (inStart == 0 || outStart == 0) {
+		if (outStart != 0) {
+			env->ReleasePrimitiveArrayCritical(out, outStart, 0);
+		}
+		if (inStart != 0) {
+			env->ReleasePrimitiveArrayCritical(in, inStart, JNI_ABORT);
+		}
 		return -1;
 	}
-
-	jbyte* inStart = env->GetByteArrayElements(in, 0);
-	jbyte* outStart = env->GetByteArrayElements(out, 0);
 	stream->next_in = (Bytef*)inStart + inOffset;
 	stream->avail_in = inLength;
 	stream->next_out = (Bytef*)outStart;
-	const int outLength = env->GetArrayLength(out);
 	stream->avail_out = outLength;
 	const int code = inflate(stream, Z_SYNC_FLUSH);
-	env->ReleaseByteArrayElements(in, inStart, 0);
-	env->ReleaseByteArrayElements(out, outStart, 0);
+	env->ReleasePrimitiveArrayCritical(out, outStart, 0);
+	env->ReleasePrimitiveArrayCritical(in, inStart, JNI_ABORT);
 	if (code == Z_OK || code == Z_STREAM_END) {
 		jlong result = ((inLength - stream->avail_in) << 16) + outLength - stream->avail_out;
 		if (code == Z_STREAM_END) {
@@ -16,13 +16,38 @@ public abstract class Decompressor {
     protected Decompressor() {
     }
 
-    private static Queue<DeflatingDecompressor> ourDeflators = new LinkedList<DeflatingDecompressor>();
+    private static final int MAX_STORED_INFLATERS = 8;
+
+    private static volatile boolean ourNativeInflaterEnabled = true;
+    private static final Queue<DeflatingDecompressor> ourDeflators = new LinkedList<DeflatingDecompressor>();
+    private static final Queue<InflaterDecompressor> ourInflaters = new LinkedList<InflaterDecompressor>();
+
+    /**
+     * Selects the implementation of deflate for the entries opened later:
+     * zlib through JNI, or java.util.zip. The JNI one is used by default,
+     * if the library can be loaded.
+     */
+    public static void setNativeInflaterEnabled(boolean enabled) {
+        ourNativeInflaterEnabled = enabled;
+    }
+
+    public static boolean isNativeInflaterUsed() {
+        return ourNativeInflaterEnabled && DeflatingDecompressor.isLibraryLoaded();
+    }
 
     static void storeDecompressor(Decompressor decompressor) {
         if (decompressor instanceof DeflatingDecompressor) {
             synchronized (ourDeflators) {
                 ourDeflators.add((DeflatingDecompressor)decompressor);
             }
+        } else if (decompressor instanceof InflaterDecompressor) {
+            synchronized (ourInflaters) {
+                if (ourInflaters.size() < MAX_STORED_INFLATERS) {
+                    ourInflaters.add((InflaterDecompressor)decompressor);
+                    return;
+                }
+            }
+            ((InflaterDecompressor)decompressor).end();
         }
     }
 
@@ -31,14 +56,25 @@ public abstract class Decompressor {
         case 0:
             return new NoCompressionDecompressor(is, header);
         case 8:
-            synchronized (ourDeflators) {
-                if (!ourDeflators.isEmpty()) {
-                    DeflatingDecompressor decompressor = ourDeflators.poll();
-                    decompressor.reset(is, header);
-                    return decompressor;
+            if (isNativeInflaterUsed()) {
+                synchronized (ourDeflators) {
+                    if (!ourDeflators.isEmpty()) {
+                        DeflatingDecompressor decompressor = ourDeflators.poll();
+                        decompressor.reset(is, header);
+                        return decompressor;
+                    }
+                }
+                return new DeflatingDecompressor(is, header);
+            } else {
+                synchronized (ourInflaters) {
+                    if (!ourInflaters.isEmpty()) {
+                        InflaterDecompressor decompressor = ourInflaters.poll();
+                        decompressor.reset(is, header);
+                        return decompressor;
+                    }
                 }
+                return new InflaterDecompressor(is, header);
             }
-            return new DeflatingDecompressor(is, header);
         default:
             throw new ZipException("Unsupported method of compression");
         }
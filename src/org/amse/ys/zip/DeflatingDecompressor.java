@@ -3,8 +3,18 @@ package org.amse.ys.zip;
 import java.io.*;
 
 class DeflatingDecompressor extends Decompressor {
-	static {
-		System.loadLibrary("DeflatingDecompressor");
+	private static Boolean ourIsLibraryLoaded;
+
+	static synchronized boolean isLibraryLoaded() {
+		if (ourIsLibraryLoaded == null) {
+			try {
+				System.loadLibrary("DeflatingDecompressor");
+				ourIsLibraryLoaded = true;
+			} catch (Throwable t) {
+				ourIsLibraryLoaded = false;
+			}
+		}
+		return ourIsLibraryLoaded;
 	}
 
     // common variables
@@ -30,10 +40,7 @@ class DeflatingDecompressor extends Decompressor {
     }
 
     void reset(MyBufferedInputStream inputStream, LocalFileHeader header) throws IOException {
-		if (myInflatingInProgress) {
-			endInflating();
-			myInflatingInProgress = false;
-		}
+		myInflatingInProgress = false;
 
         myStream = inputStream;
         myCompressedAvailable = header.CompressedSize;
@@ -50,7 +57,10 @@ class DeflatingDecompressor extends Decompressor {
 		myOutBufferOffset = OUT_BUFFER_SIZE;
 		myOutBufferLength = 0;
 
-		startInflating();
+		// the native stream of an unfinished entry is reset, not reallocated
+		if (!startInflating()) {
+			throw new ZipException("Too many zip entries are open");
+		}
 		myInflatingInProgress = true;
     }
 
@@ -114,7 +124,7 @@ class DeflatingDecompressor extends Decompressor {
 		}
 		--myAvailable;
 		--myOutBufferLength;
-		return myOutBuffer[myOutBufferOffset++];
+		return myOutBuffer[myOutBufferOffset++] & 0xFF;
     }
 
 	private void fillOutBuffer() throws IOException {
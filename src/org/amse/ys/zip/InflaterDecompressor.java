@@ -0,0 +1,126 @@
+package org.amse.ys.zip;
+
+import java.io.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/*
+ * Pure Java counterpart of DeflatingDecompressor, over java.util.zip.
+ * Data are inflated directly into the caller's array; the inflater and
+ * the input buffer are kept for the next entry by reset().
+ */
+final class InflaterDecompressor extends Decompressor {
+	private static final int IN_BUFFER_SIZE = 8192;
+	private static final int SKIP_BUFFER_SIZE = 8192;
+
+	private final Inflater myInflater = new Inflater(true);
+	private final byte[] myInBuffer = new byte[IN_BUFFER_SIZE];
+	private final byte[] myOneByte = new byte[1];
+	private byte[] mySkipBuffer;
+
+	private MyBufferedInputStream myStream;
+	private int myCompressedAvailable;
+	private int myAvailable;
+	private boolean myInflatingInProgress;
+
+	InflaterDecompressor(MyBufferedInputStream inputStream, LocalFileHeader header) throws IOException {
+		super();
+		reset(inputStream, header);
+	}
+
+	void reset(MyBufferedInputStream inputStream, LocalFileHeader header) throws IOException {
+		myInflater.reset();
+
+		myStream = inputStream;
+		myCompressedAvailable = header.CompressedSize;
+		if (myCompressedAvailable <= 0) {
+			myCompressedAvailable = Integer.MAX_VALUE;
+		}
+		myAvailable = header.UncompressedSize;
+		if (myAvailable <= 0) {
+			myAvailable = Integer.MAX_VALUE;
+		}
+
+		myInflatingInProgress = true;
+	}
+
+	// frees the native memory of the inflater; the object is not usable after that
+	void end() {
+		myInflater.end();
+	}
+
+	@Override
+	public int available() {
+		return myAvailable;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (myAvailable <= 0) {
+			return -1;
+		}
+		if (len > myAvailable) {
+			len = myAvailable;
+		}
+		int done = 0;
+		while (done < len) {
+			final int count;
+			if (b != null) {
+				count = inflate(b, off + done, len - done);
+			} else {
+				if (mySkipBuffer == null) {
+					mySkipBuffer = new byte[SKIP_BUFFER_SIZE];
+				}
+				count = inflate(mySkipBuffer, 0, Math.min(len - done, SKIP_BUFFER_SIZE));
+			}
+			if (count == 0) {
+				break;
+			}
+			done += count;
+		}
+		if (done == 0) {
+			myAvailable = 0;
+			return -1;
+		}
+		myAvailable -= done;
+		return done;
+	}
+
+	@Override
+	public int read() throws IOException {
+		return (read(myOneByte, 0, 1) == 1) ? myOneByte[0] & 0xFF : -1;
+	}
+
+	private int inflate(byte[] b, int off, int len) throws IOException {
+		while (myInflatingInProgress) {
+			final int count;
+			try {
+				count = myInflater.inflate(b, off, len);
+			} catch (DataFormatException e) {
+				throw new IOException("Cannot inflate zip-compressed block: " + e.getMessage());
+			}
+			if (myInflater.finished()) {
+				myInflatingInProgress = false;
+				// the input buffer might contain the bytes following the entry
+				myStream.backSkip(myInflater.getRemaining());
+			}
+			if (count > 0) {
+				return count;
+			}
+			if (!myInflatingInProgress) {
+				break;
+			}
+			if (!myInflater.needsInput()) {
+				throw new IOException("cannot read from zip");
+			}
+			final int toRead = (myCompressedAvailable < IN_BUFFER_SIZE) ? myCompressedAvailable : IN_BUFFER_SIZE;
+			final int ready = (toRead > 0) ? myStream.read(myInBuffer, 0, toRead) : -1;
+			if (ready <= 0) {
+				throw new IOException("cannot read from zip");
+			}
+			myCompressedAvailable -= ready;
+			myInflater.setInput(myInBuffer, 0, ready);
+		}
+		return 0;
+	}
+}
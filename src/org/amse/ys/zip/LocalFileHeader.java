@@ -12,6 +12,7 @@ public class LocalFileHeader {
     static final int FOLDER_HEADER_SIGNATURE = 0x02014b50;
     static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
     static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
 
 	int Signature;
 
@@ -27,7 +28,10 @@ public class LocalFileHeader {
 	int ExtraLength;
 
 	public String FileName;
+	// -1 for central directory entries until the local header is read
 	int DataOffset;
+	// known only for central directory entries
+	int HeaderOffset;
 
     LocalFileHeader() {
     }
@@ -54,17 +58,19 @@ public class LocalFileHeader {
                 CRC32 = stream.read4Bytes();
                 CompressedSize = stream.read4Bytes();
                 UncompressedSize = stream.read4Bytes();
-				if (CompressionMethod == 0 && CompressedSize != UncompressedSize) {
-					CompressedSize = UncompressedSize;
-				}
                 NameLength = stream.read2Bytes();
                 ExtraLength = stream.read2Bytes();
                 int comment = stream.read2Bytes();
-				stream.skip(12);
+				stream.skip(8);
+				HeaderOffset = stream.read4Bytes();
 				FileName = stream.readString(NameLength);
-				stream.skip(ExtraLength);
+				readExtraFields(stream, ExtraLength);
+				if (CompressionMethod == 0 && CompressedSize != UncompressedSize) {
+					CompressedSize = UncompressedSize;
+				}
 				stream.skip(comment);
-				break;
+				DataOffset = -1;
+				return;
 			}
 			case FILE_HEADER_SIGNATURE:
                 Version = stream.read2Bytes();
@@ -91,4 +97,47 @@ public class LocalFileHeader {
 		}
 		DataOffset = stream.offset();
     }
+
+	/**
+	 * Replaces 0xFFFFFFFF sizes and offset by the values from the ZIP64
+	 * extended information field; entries that do not fit in int are rejected.
+	 */
+	private void readExtraFields(MyBufferedInputStream stream, int length) throws IOException {
+		while (length >= 4) {
+			final int id = stream.read2Bytes();
+			final int size = stream.read2Bytes();
+			length -= 4;
+			if (size > length) {
+				break;
+			}
+			length -= size;
+			if (id != ZIP64_EXTRA_FIELD_ID) {
+				stream.skip(size);
+				continue;
+			}
+			int remaining = size;
+			if (UncompressedSize == -1 && remaining >= 8) {
+				UncompressedSize = readZip64Value(stream);
+				remaining -= 8;
+			}
+			if (CompressedSize == -1 && remaining >= 8) {
+				CompressedSize = readZip64Value(stream);
+				remaining -= 8;
+			}
+			if (HeaderOffset == -1 && remaining >= 8) {
+				HeaderOffset = readZip64Value(stream);
+				remaining -= 8;
+			}
+			stream.skip(remaining);
+		}
+		stream.skip(length);
+	}
+
+	private int readZip64Value(MyBufferedInputStream stream) throws IOException {
+		final long value = stream.read8Bytes();
+		if (value < 0 || value > Integer.MAX_VALUE) {
+			throw new ZipException("Entry " + FileName + " is too large");
+		}
+		return (int)value;
+	}
 }
@@ -82,6 +82,12 @@ final class MyBufferedInputStream extends InputStream {
 		return (fourthByte << 24) + (thirdByte << 16) + (secondByte << 8) + firstByte;
 	}
 
+	long read8Bytes() throws IOException {
+		final long low = read4Bytes() & 0xFFFFFFFFL;
+		final long high = read4Bytes() & 0xFFFFFFFFL;
+		return (high << 32) + low;
+	}
+
 	String readString(int stringLength) throws IOException {
 		char[] array = new char[stringLength];
 		for (int i = 0; i < stringLength; i++) {
@@ -117,6 +123,15 @@ final class MyBufferedInputStream extends InputStream {
 		if (n <= 0) {
 			return;
 		}
+		if (myFileInputStream instanceof FileInputStream) {
+			// a file is repositioned in place, not reopened and skipped from the start
+			final int position = myCurrentPosition - n;
+			((FileInputStream)myFileInputStream).getChannel().position(position);
+			myBytesReady = 0;
+			myPositionInBuffer = 0;
+			myCurrentPosition = position;
+			return;
+		}
 		myFileInputStream.close();
 		myFileInputStream = myStreamHolder.getInputStream();
 		myBytesReady = 0;
@@ -14,17 +14,22 @@ public class NoCompressionDecompressor extends Decompressor {
     }
 
     public int read(byte b[], int off, int len) throws IOException {
-        int i = 0;
-        for (; i < len; ++i) {
-            int value = read();
-            if (value == -1) {
-                break;
-            }
-			if (b != null) {
-            	b[off + i] = (byte)value;
-			}
+        final int toRead = Math.min(len, myHeader.CompressedSize - myCurrentPosition);
+        if (toRead <= 0) {
+            return -1;
+        }
+		// skipping a stored entry is a seek in the archive
+		if (b == null) {
+			myStream.skip(toRead);
+			myCurrentPosition += toRead;
+			return toRead;
+		}
+        final int ready = myStream.read(b, off, toRead);
+        if (ready <= 0) {
+            return -1;
         }
-        return (i > 0) ? i : -1;
+        myCurrentPosition += ready;
+        return ready;
     }
 
     public int read() throws IOException {
@@ -34,6 +34,7 @@ public final class ZipFile {
 	};
 
     private boolean myAllFilesAreRead;
+    private boolean myCentralDirectoryIsChecked;
 
     public ZipFile(String filePath) {
 		this(new FileInputStreamHolder(filePath));
@@ -43,7 +44,7 @@ public final class ZipFile {
         myStreamHolder = streamHolder;
     }
 
-    public Collection<LocalFileHeader> headers() {
+    public synchronized Collection<LocalFileHeader> headers() {
         try {
             readAllHeaders();
         } catch (IOException e) {
@@ -73,6 +74,7 @@ public final class ZipFile {
     }
 
     private void readAllHeaders() throws IOException {
+        readCentralDirectory();
         if (myAllFilesAreRead) {
             return;
         }
@@ -91,6 +93,141 @@ public final class ZipFile {
 		}
     }
 
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+
+    private static int getShort(byte[] data, int offset) {
+        return (data[offset] & 0xFF) + ((data[offset + 1] & 0xFF) << 8);
+    }
+
+    private static long getInt(byte[] data, int offset) {
+        return getShort(data, offset) + ((long)getShort(data, offset + 2) << 16);
+    }
+
+    private static long getLong(byte[] data, int offset) {
+        return getInt(data, offset) + (getInt(data, offset + 4) << 32);
+    }
+
+    /**
+     * Reads all headers from the central directory, so entries are found
+     * without scanning the archive and sizes are exact even for entries
+     * written with data descriptors. Leaves the headers untouched if the
+     * directory cannot be found or read; the local header scan is used then.
+     */
+    private synchronized void readCentralDirectory() {
+        if (myCentralDirectoryIsChecked) {
+            return;
+        }
+        myCentralDirectoryIsChecked = true;
+
+        MyBufferedInputStream baseStream = null;
+        try {
+            baseStream = getBaseStream();
+            final int length = baseStream.offset() + baseStream.available();
+            if (length < END_OF_CENTRAL_DIRECTORY_SIZE) {
+                return;
+            }
+            final int tailStart = Math.max(0,
+                length - END_OF_CENTRAL_DIRECTORY_SIZE - MAX_COMMENT_LENGTH - ZIP64_LOCATOR_SIZE
+            );
+            final byte[] tail = new byte[length - tailStart];
+            baseStream.setPosition(tailStart);
+            for (int offset = 0; offset < tail.length; ) {
+                final int ready = baseStream.read(tail, offset, tail.length - offset);
+                if (ready <= 0) {
+                    return;
+                }
+                offset += ready;
+            }
+
+            int end = tail.length - END_OF_CENTRAL_DIRECTORY_SIZE;
+            for (; end >= 0; --end) {
+                if (getInt(tail, end) == (LocalFileHeader.END_OF_CENTRAL_DIRECTORY_SIGNATURE & 0xFFFFFFFFL) &&
+                    end + END_OF_CENTRAL_DIRECTORY_SIZE + getShort(tail, end + 20) == tail.length) {
+                    break;
+                }
+            }
+            if (end < 0) {
+                return;
+            }
+            long entriesNumber = getShort(tail, end + 10);
+            long directoryOffset = getInt(tail, end + 16);
+            if (entriesNumber == 0xFFFF || directoryOffset == 0xFFFFFFFFL) {
+                final int locator = end - ZIP64_LOCATOR_SIZE;
+                if (locator < 0 || getInt(tail, locator) != ZIP64_LOCATOR_SIGNATURE) {
+                    return;
+                }
+                final long recordOffset = getLong(tail, locator + 8);
+                if (recordOffset < 0 || recordOffset > Integer.MAX_VALUE) {
+                    return;
+                }
+                baseStream.setPosition((int)recordOffset);
+                if (baseStream.read4Bytes() != ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                    return;
+                }
+                // record size, versions, disk numbers, entries on this disk
+                baseStream.skip(28);
+                entriesNumber = baseStream.read8Bytes();
+                // directory size
+                baseStream.skip(8);
+                directoryOffset = baseStream.read8Bytes();
+            }
+            if (directoryOffset < 0 || directoryOffset > Integer.MAX_VALUE ||
+                entriesNumber < 0 || entriesNumber > Integer.MAX_VALUE) {
+                return;
+            }
+
+            baseStream.setPosition((int)directoryOffset);
+            final LocalFileHeader[] headers = new LocalFileHeader[(int)entriesNumber];
+            for (int i = 0; i < headers.length; ++i) {
+                final LocalFileHeader header = new LocalFileHeader();
+                header.readFrom(baseStream);
+                if (header.Signature != LocalFileHeader.FOLDER_HEADER_SIGNATURE) {
+                    return;
+                }
+                headers[i] = header;
+            }
+            myFileHeaders.clear();
+            for (LocalFileHeader header : headers) {
+                if (header.FileName != null) {
+                    myFileHeaders.put(header.FileName, header);
+                }
+            }
+            myAllFilesAreRead = true;
+        } catch (IOException e) {
+        } finally {
+            if (baseStream != null) {
+                storeBaseStream(baseStream);
+            }
+        }
+    }
+
+    /**
+     * Central directory entries do not know the length of the local extra
+     * field, so the data offset is taken from the local header on first use.
+     */
+    private void readDataOffset(LocalFileHeader header) throws IOException {
+        if (header.DataOffset != -1) {
+            return;
+        }
+        MyBufferedInputStream baseStream = getBaseStream();
+        try {
+            baseStream.setPosition(header.HeaderOffset);
+            if (baseStream.read4Bytes() != LocalFileHeader.FILE_HEADER_SIGNATURE) {
+                throw new ZipException("Local header of " + header.FileName + " is not found");
+            }
+            baseStream.skip(22);
+            final int nameLength = baseStream.read2Bytes();
+            final int extraLength = baseStream.read2Bytes();
+            header.DataOffset = header.HeaderOffset + 30 + nameLength + extraLength;
+        } finally {
+            storeBaseStream(baseStream);
+        }
+    }
+
     /**
      * Finds descriptor of the last header and installs sizes of files
      */
@@ -104,6 +241,7 @@ public final class ZipFile {
 			}
 			uncompressedSize += blockSize;
 		}
+		Decompressor.storeDecompressor(decompressor);
 		header.UncompressedSize = uncompressedSize;
     }
 
@@ -130,10 +268,12 @@ public final class ZipFile {
 		return createZipInputStream(getHeader(entryName));
     }
 
-    public LocalFileHeader getHeader(String entryName) throws IOException {
+    public synchronized LocalFileHeader getHeader(String entryName) throws IOException {
+        readCentralDirectory();
         if (!myFileHeaders.isEmpty()) {
             LocalFileHeader header = myFileHeaders.get(entryName);
             if (header != null) {
+                readDataOffset(header);
                 return header;
             }
             if (myAllFilesAreRead) {
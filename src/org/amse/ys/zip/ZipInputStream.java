@@ -39,6 +39,19 @@ class ZipInputStream extends InputStream {
         return myDecompressor.read();
     }
 
+	@Override
+    public long skip(long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n) {
+			final int ready = myDecompressor.read(null, 0, (int)Math.min(n - skipped, Integer.MAX_VALUE));
+			if (ready <= 0) {
+				break;
+			}
+			skipped += ready;
+		}
+		return skipped;
+    }
+
     public void close() throws IOException {
 		if (!myIsClosed) {
 			myIsClosed = true;
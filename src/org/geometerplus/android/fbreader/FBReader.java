@@ -32,6 +32,7 @@ import android.widget.RelativeLayout;
 import org.geometerplus.zlibrary.core.filesystem.ZLFile;
 
 import org.geometerplus.zlibrary.text.hyphenation.ZLTextHyphenator;
+import org.geometerplus.zlibrary.text.view.ZLTextView;
 
 import org.geometerplus.zlibrary.ui.android.R;
 import org.geometerplus.zlibrary.ui.android.library.ZLAndroidActivity;
@@ -143,7 +144,17 @@ public final class FBReader extends ZLAndroidActivity {
 					ourTextSearchPanel.initPosition();
 					final FBReaderApp fbReader = (FBReaderApp)FBReaderApp.Instance();
 					fbReader.TextSearchPatternOption.setValue(pattern);
-					if (fbReader.getTextView().search(pattern, true, false, false, false) != 0) {
+					// "word" finds whole words, word* finds words starting with word
+					String text = pattern;
+					int mode = ZLTextView.SearchMode.SUBSTRING;
+					if (text.length() > 2 && text.startsWith("\"") && text.endsWith("\"")) {
+						text = text.substring(1, text.length() - 1);
+						mode = ZLTextView.SearchMode.WHOLE_WORD;
+					} else if (text.length() > 1 && text.endsWith("*")) {
+						text = text.substring(0, text.length() - 1);
+						mode = ZLTextView.SearchMode.WORD_PREFIX;
+					}
+					if (fbReader.getTextView().search(text, true, false, false, false, mode) != 0) {
 						successHandler.sendEmptyMessage(0);
 					} else {
 						failureHandler.sendEmptyMessage(0);
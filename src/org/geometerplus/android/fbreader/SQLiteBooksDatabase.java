@@ -61,7 +61,7 @@ public final class SQLiteBooksDatabase extends BooksDatabase {
 
 	private void migrate(Context context) {
 		final int version = myDatabase.getVersion();
-		final int currentVersion = 16;
+		final int currentVersion = 19;
 		if (version >= currentVersion) {
 			return;
 		}
@@ -102,6 +102,12 @@ public final class SQLiteBooksDatabase extends BooksDatabase {
 						updateTables14();
 					case 15:
 						updateTables15();
+					case 16:
+						updateTables16();
+					case 17:
+						updateTables17();
+					case 18:
+						updateTables18();
 				}
 				myDatabase.setTransactionSuccessful();
 				myDatabase.endTransaction();
@@ -200,7 +206,9 @@ public final class SQLiteBooksDatabase extends BooksDatabase {
 		);
 		final HashMap<Long,Author> authorById = new HashMap<Long,Author>();
 		while (cursor.moveToNext()) {
-			authorById.put(cursor.getLong(0), new Author(cursor.getString(1), cursor.getString(2)));
+			final Author author = new Author(cursor.getString(1), cursor.getString(2));
+			authorById.put(cursor.getLong(0), author);
+			cacheAuthorId(author, cursor.getLong(0));
 		}
 		cursor.close();
 
@@ -233,6 +241,7 @@ public final class SQLiteBooksDatabase extends BooksDatabase {
 		final HashMap<Long,String> seriesById = new HashMap<Long,String>();
 		while (cursor.moveToNext()) {
 			seriesById.put(cursor.getLong(0), cursor.getString(1));
+			cacheSeriesId(cursor.getString(1), cursor.getLong(0));
 		}
 		cursor.close();
 
@@ -268,7 +277,7 @@ public final class SQLiteBooksDatabase extends BooksDatabase {
 	}
 
 	private SQLiteStatement myInsertBookInfoStatement;
-	protected long insertBookInfo(ZLFile file, String encoding, String language, String title) {
+	protected long insertBookInfo(long fileId, String encoding, String language, String title) {
 		if (myInsertBookInfoStatement == null) {
 			myInsertBookInfoStatement = myDatabase.compileStatement(
 				"INSERT OR IGNORE INTO Books (encoding,language,title,file_id) VALUES (?,?,?,?)"
@@ -277,8 +286,7 @@ public final class SQLiteBooksDatabase extends BooksDatabase {
 		SQLiteUtil.bindString(myInsertBookInfoStatement, 1, encoding);
 		SQLiteUtil.bindString(myInsertBookInfoStatement, 2, language);
 		myInsertBookInfoStatement.bindString(3, title);
-		final FileInfoSet infoSet = new FileInfoSet(file);
-		myInsertBookInfoStatement.bindLong(4, infoSet.getId(file));
+		myInsertBookInfoStatement.bindLong(4, fileId);
 		return myInsertBookInfoStatement.executeInsert();
 	}
 
@@ -294,31 +302,40 @@ public final class SQLiteBooksDatabase extends BooksDatabase {
 	}
 
 	private SQLiteStatement myGetAuthorIdStatement;
-	private SQLiteStatement myInsertAuthorStatement;
-	private SQLiteStatement myInsertBookAuthorStatement;
-	protected void saveBookAuthorInfo(long bookId, long index, Author author) {
+	protected long findAuthorId(Author author) {
 		if (myGetAuthorIdStatement == null) {
 			myGetAuthorIdStatement = myDatabase.compileStatement(
 				"SELECT author_id FROM Authors WHERE name = ? AND sort_key = ?"
 			);
+		}
+		myGetAuthorIdStatement.bindString(1, author.DisplayName);
+		myGetAuthorIdStatement.bindString(2, author.SortKey);
+		try {
+			return myGetAuthorIdStatement.simpleQueryForLong();
+		} catch (SQLException e) {
+			return -1;
+		}
+	}
+
+	private SQLiteStatement myInsertAuthorStatement;
+	protected long insertAuthor(Author author) {
+		if (myInsertAuthorStatement == null) {
 			myInsertAuthorStatement = myDatabase.compileStatement(
 				"INSERT OR IGNORE INTO Authors (name,sort_key) VALUES (?,?)"
 			);
+		}
+		myInsertAuthorStatement.bindString(1, author.DisplayName);
+		myInsertAuthorStatement.bindString(2, author.SortKey);
+		return myInsertAuthorStatement.executeInsert();
+	}
+
+	private SQLiteStatement myInsertBookAuthorStatement;
+	protected void saveBookAuthorInfo(long bookId, long index, long authorId) {
+		if (myInsertBookAuthorStatement == null) {
 			myInsertBookAuthorStatement = myDatabase.compileStatement(
 				"INSERT OR REPLACE INTO BookAuthor (book_id,author_id,author_index) VALUES (?,?,?)"
 			);
 		}
-
-		long authorId;
-		try {
-			myGetAuthorIdStatement.bindString(1, author.DisplayName);
-			myGetAuthorIdStatement.bindString(2, author.SortKey);
-			authorId = myGetAuthorIdStatement.simpleQueryForLong();
-		} catch (SQLException e) {
-			myInsertAuthorStatement.bindString(1, author.DisplayName);
-			myInsertAuthorStatement.bindString(2, author.SortKey);
-			authorId = myInsertAuthorStatement.executeInsert();
-		}
 		myInsertBookAuthorStatement.bindLong(1, bookId);
 		myInsertBookAuthorStatement.bindLong(2, authorId);
 		myInsertBookAuthorStatement.bindLong(3, index);
@@ -432,42 +449,53 @@ public final class SQLiteBooksDatabase extends BooksDatabase {
 	}
 
 	private SQLiteStatement myGetSeriesIdStatement;
-	private SQLiteStatement myInsertSeriesStatement;
-	private SQLiteStatement myInsertBookSeriesStatement;
-	private SQLiteStatement myDeleteBookSeriesStatement;
-	protected void saveBookSeriesInfo(long bookId, SeriesInfo seriesInfo) {
+	protected long findSeriesId(String name) {
 		if (myGetSeriesIdStatement == null) {
 			myGetSeriesIdStatement = myDatabase.compileStatement(
 				"SELECT series_id FROM Series WHERE name = ?"
 			);
+		}
+		myGetSeriesIdStatement.bindString(1, name);
+		try {
+			return myGetSeriesIdStatement.simpleQueryForLong();
+		} catch (SQLException e) {
+			return -1;
+		}
+	}
+
+	private SQLiteStatement myInsertSeriesStatement;
+	protected long insertSeries(String name) {
+		if (myInsertSeriesStatement == null) {
 			myInsertSeriesStatement = myDatabase.compileStatement(
 				"INSERT OR IGNORE INTO Series (name) VALUES (?)"
 			);
+		}
+		myInsertSeriesStatement.bindString(1, name);
+		return myInsertSeriesStatement.executeInsert();
+	}
+
+	private SQLiteStatement myInsertBookSeriesStatement;
+	protected void saveBookSeriesInfo(long bookId, long seriesId, float index) {
+		if (myInsertBookSeriesStatement == null) {
 			myInsertBookSeriesStatement = myDatabase.compileStatement(
 				"INSERT OR REPLACE INTO BookSeries (book_id,series_id,book_index) VALUES (?,?,?)"
 			);
+		}
+		myInsertBookSeriesStatement.bindLong(1, bookId);
+		myInsertBookSeriesStatement.bindLong(2, seriesId);
+		myInsertBookSeriesStatement.bindDouble(3, index);
+		myInsertBookSeriesStatement.execute();
+	}
+
+	private SQLiteStatement myDeleteBookSeriesStatement;
+	protected void deleteBookSeriesInfo(long bookId) {
+		if (myDeleteBookSeriesStatement == null) {
 			myDeleteBookSeriesStatement = myDatabase.compileStatement(
 				"DELETE FROM BookSeries WHERE book_id = ?"
 			);
 		}
-
-		if (seriesInfo == null) {
-			myDeleteBookSeriesStatement.bindLong(1, bookId);
-			myDeleteBookSeriesStatement.execute();
-		} else {
-			long seriesId;
-			try {
-				myGetSeriesIdStatement.bindString(1, seriesInfo.Name);
-				seriesId = myGetSeriesIdStatement.simpleQueryForLong();
-			} catch (SQLException e) {
-				myInsertSeriesStatement.bindString(1, seriesInfo.Name);
-				seriesId = myInsertSeriesStatement.executeInsert();
-			}
-			myInsertBookSeriesStatement.bindLong(1, bookId);
-			myInsertBookSeriesStatement.bindLong(2, seriesId);
-			myInsertBookSeriesStatement.bindDouble(3, seriesInfo.Index);
-			myInsertBookSeriesStatement.execute();
-		}
+		myDeleteBookSeriesStatement.bindLong(1, bookId);
+		myDeleteBookSeriesStatement.execute();
 	}
 
 	protected SeriesInfo loadSeriesInfo(long bookId) {
@@ -502,14 +530,14 @@ public final class SQLiteBooksDatabase extends BooksDatabase {
 		if (id == -1) {
 			if (myInsertFileInfoStatement == null) {
 				myInsertFileInfoStatement = myDatabase.compileStatement(
-					"INSERT OR IGNORE INTO Files (name,parent_id,size) VALUES (?,?,?)"
+					"INSERT OR IGNORE INTO Files (name,parent_id,size,modified) VALUES (?,?,?,?)"
 				);
 			}
 			statement = myInsertFileInfoStatement;
 		} else {
 			if (myUpdateFileInfoStatement == null) {
 				myUpdateFileInfoStatement = myDatabase.compileStatement(
-					"UPDATE Files SET name = ?, parent_id = ?, size = ? WHERE file_id = ?"
+					"UPDATE Files SET name = ?, parent_id = ?, size = ?, modified = ? WHERE file_id = ?"
 				);
 			}
 			statement = myUpdateFileInfoStatement;
@@ -527,17 +555,23 @@ public final class SQLiteBooksDatabase extends BooksDatabase {
 		} else {
 			statement.bindNull(3);
 		}
+		final long modified = fileInfo.LastModified;
+		if (modified != -1) {
+			statement.bindLong(4, modified);
+		} else {
+			statement.bindNull(4);
+		}
 		if (id == -1) {
 			fileInfo.Id = statement.executeInsert();
 		} else {
-			statement.bindLong(4, id);
+			statement.bindLong(5, id);
 			statement.execute();
 		}
 	}
 
 	protected Collection<FileInfo> loadFileInfos() {
 		Cursor cursor = myDatabase.rawQuery(
-			"SELECT file_id,name,parent_id,size FROM Files", null
+			"SELECT file_id,name,parent_id,size,modified FROM Files", null
 		);
 		HashMap<Long,FileInfo> infosById = new HashMap<Long,FileInfo>();
 		while (cursor.moveToNext()) {
@@ -549,6 +583,9 @@ public final class SQLiteBooksDatabase extends BooksDatabase {
 			if (!cursor.isNull(3)) {
 				info.FileSize = cursor.getLong(3);
 			}
+			if (!cursor.isNull(4)) {
+				info.LastModified = cursor.getLong(4);
+			}
 			infosById.put(id, info);
 		}
 		cursor.close();
@@ -568,8 +605,8 @@ public final class SQLiteBooksDatabase extends BooksDatabase {
 			parameters[0] = f.getLongName();
 			final Cursor cursor = myDatabase.rawQuery(
 				(current == null) ?
-					"SELECT file_id,size FROM Files WHERE name = ?" :
-					"SELECT file_id,size FROM Files WHERE parent_id = " + current.Id + " AND name = ?",
+					"SELECT file_id,size,modified FROM Files WHERE name = ?" :
+					"SELECT file_id,size,modified FROM Files WHERE parent_id = " + current.Id + " AND name = ?",
 				parameters
 			);
 			if (cursor.moveToNext()) {
@@ -577,6 +614,9 @@ public final class SQLiteBooksDatabase extends BooksDatabase {
 				if (!cursor.isNull(1)) {
 					current.FileSize = cursor.getLong(1);
 				}
+				if (!cursor.isNull(2)) {
+					current.LastModified = cursor.getLong(2);
+				}
 				infos.add(current);
 				cursor.close();
 			} else {
@@ -592,13 +632,16 @@ public final class SQLiteBooksDatabase extends BooksDatabase {
 		final ArrayList<FileInfo> infos = new ArrayList<FileInfo>();
 		while (fileId != -1) {
 			final Cursor cursor = myDatabase.rawQuery(
-				"SELECT name,size,parent_id FROM Files WHERE file_id = " + fileId, null
+				"SELECT name,size,parent_id,modified FROM Files WHERE file_id = " + fileId, null
 			);
 			if (cursor.moveToNext()) {
 				FileInfo info = createFileInfo(fileId, cursor.getString(0), null);
 				if (!cursor.isNull(1)) {
 					info.FileSize = cursor.getLong(1);
 				}
+				if (!cursor.isNull(3)) {
+					info.LastModified = cursor.getLong(3);
+				}
 				infos.add(0, info);
 				fileId = cursor.isNull(2) ? -1 : cursor.getLong(2);
 			} else {
@@ -610,6 +653,7 @@ public final class SQLiteBooksDatabase extends BooksDatabase {
 			final FileInfo oldInfo = infos.get(i);
 			final FileInfo newInfo = createFileInfo(oldInfo.Id, oldInfo.Name, infos.get(i - 1));
 			newInfo.FileSize = oldInfo.FileSize;
+			newInfo.LastModified = oldInfo.LastModified;
 			infos.set(i, newInfo);
 		}
 		return infos;
@@ -890,6 +934,54 @@ public final class SQLiteBooksDatabase extends BooksDatabase {
 		return links;
 	}
 
+	protected byte[] loadPageIndex(long bookId, String fingerprint, String configuration) {
+		byte[] data = null;
+		final Cursor cursor = myDatabase.rawQuery("SELECT data FROM PageIndices WHERE book_id = ? AND fingerprint = ? AND configuration = ?", new String[] { "" + bookId, fingerprint, configuration });
+		if (cursor.moveToNext()) {
+			data = cursor.getBlob(0);
+		}
+		cursor.close();
+		return data;
+	}
+
+	private SQLiteStatement myDeleteStalePageIndicesStatement;
+	private SQLiteStatement mySavePageIndexStatement;
+	protected void savePageIndex(final long bookId, final String fingerprint, final String configuration, final byte[] data) {
+		if (mySavePageIndexStatement == null) {
+			myDeleteStalePageIndicesStatement = myDatabase.compileStatement(
+				"DELETE FROM PageIndices WHERE book_id = ? AND fingerprint <> ?"
+			);
+			mySavePageIndexStatement = myDatabase.compileStatement(
+				"INSERT OR REPLACE INTO PageIndices(book_id,fingerprint,configuration,data) VALUES (?,?,?,?)"
+			);
+		}
+
+		executeAsATransaction(new Runnable() {
+			public void run() {
+				myDeleteStalePageIndicesStatement.bindLong(1, bookId);
+				myDeleteStalePageIndicesStatement.bindString(2, fingerprint);
+				myDeleteStalePageIndicesStatement.execute();
+
+				mySavePageIndexStatement.bindLong(1, bookId);
+				mySavePageIndexStatement.bindString(2, fingerprint);
+				mySavePageIndexStatement.bindString(3, configuration);
+				mySavePageIndexStatement.bindBlob(4, data);
+				mySavePageIndexStatement.execute();
+			}
+		});
+	}
+
+	private SQLiteStatement myDeletePageIndicesStatement;
+	protected void deletePageIndices(long bookId) {
+		if (myDeletePageIndicesStatement == null) {
+			myDeletePageIndicesStatement = myDatabase.compileStatement(
+				"DELETE FROM PageIndices WHERE book_id = ?"
+			);
+		}
+		myDeletePageIndicesStatement.bindLong(1, bookId);
+		myDeletePageIndicesStatement.execute();
+	}
+
 
 	private void createTables() {
 		myDatabase.execSQL(
@@ -1186,4 +1278,29 @@ public final class SQLiteBooksDatabase extends BooksDatabase {
 				"hyperlink_id TEXT NOT NULL," +
 				"CONSTRAINT VisitedHyperlinks_Unique UNIQUE (book_id, hyperlink_id))");
 	}
+
+	private void updateTables16() {
+		myDatabase.execSQL(
+			"CREATE TABLE IF NOT EXISTS PageIndices(" +
+				"book_id INTEGER NOT NULL REFERENCES Books(book_id)," +
+				"configuration TEXT NOT NULL," +
+				"data BLOB NOT NULL," +
+				"CONSTRAINT PageIndices_Unique UNIQUE (book_id, configuration))");
+	}
+
+	private void updateTables17() {
+		myDatabase.execSQL("ALTER TABLE Files ADD COLUMN modified INTEGER");
+	}
+
+	private void updateTables18() {
+		// page indices are rebuilt on demand, so the old ones are just dropped
+		myDatabase.execSQL("DROP TABLE IF EXISTS PageIndices");
+		myDatabase.execSQL(
+			"CREATE TABLE PageIndices(" +
+				"book_id INTEGER NOT NULL REFERENCES Books(book_id)," +
+				"fingerprint TEXT NOT NULL," +
+				"configuration TEXT NOT NULL," +
+				"data BLOB NOT NULL," +
+				"CONSTRAINT PageIndices_Unique UNIQUE (book_id, configuration))");
+	}
 }
@@ -59,6 +59,7 @@ public class ImageViewActivity extends Activity {
 				final ZLFileImage image = new ZLFileImage(
 					"image/auto",
 					ZLFile.createFileByPath(data[0]),
+					data.length > 3 ? data[3] : ZLFileImage.ENCODING_NONE,
 					Integer.parseInt(data[1]),
 					Integer.parseInt(data[2])
 				);
@@ -19,6 +19,8 @@
 
 package org.geometerplus.android.fbreader.library;
 
+import java.util.*;
+
 import android.app.*;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -124,6 +126,17 @@ abstract class BaseActivity extends ListActivity {
 		return coverView;
 	}
 
+	private static final int THUMBNAIL_CACHE_SIZE = 4 * 1024 * 1024;
+	private static int ourThumbnailCacheSize;
+	// decoded thumbnails of loadable images, by image id (a book cover id includes the book
+	// size and date) and thumbnail size; bounded by bitmap bytes
+	private static final LinkedHashMap<String,Bitmap> ourThumbnails =
+		new LinkedHashMap<String,Bitmap>(64, .75f, true);
+
+	private static int bitmapSize(Bitmap bitmap) {
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
 	protected Bitmap getCoverBitmap(ZLImage cover) {
 		if (cover == null) {
 			return null;
@@ -134,7 +147,22 @@ abstract class BaseActivity extends ListActivity {
 		if (cover instanceof ZLLoadableImage) {
 			final ZLLoadableImage img = (ZLLoadableImage)cover;
 			if (img.isSynchronized()) {
-				data = mgr.getImageData(img);
+				final String key = img.getId() + "\000" + myCoverWidth + "\000" + myCoverHeight;
+				Bitmap bitmap = ourThumbnails.get(key);
+				if (bitmap == null) {
+					data = mgr.getImageData(img);
+					bitmap = data != null ? data.getBitmap(2 * myCoverWidth, 2 * myCoverHeight) : null;
+					if (bitmap != null) {
+						ourThumbnailCacheSize += bitmapSize(bitmap);
+						ourThumbnails.put(key, bitmap);
+						final Iterator<Bitmap> it = ourThumbnails.values().iterator();
+						while (ourThumbnailCacheSize > THUMBNAIL_CACHE_SIZE && it.hasNext()) {
+							ourThumbnailCacheSize -= bitmapSize(it.next());
+							it.remove();
+						}
+					}
+				}
+				return bitmap;
 			} else {
 				img.startSynchronization(myInvalidateViewsRunnable);
 			}
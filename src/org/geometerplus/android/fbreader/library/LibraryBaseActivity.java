@@ -267,13 +267,13 @@ abstract class LibraryBaseActivity extends BaseActivity implements MenuItem.OnMe
 			if (myLibrary == null) {
 				return;
 			}
-			if (myLibrary.hasState(Library.STATE_FULLY_INITIALIZED)) {
+			if (myLibrary.hasState(Library.STATE_PARTIALLY_INITIALIZED)) {
 				myPostRunnable.run();
 			} else {
 				UIUtil.runWithMessage(LibraryBaseActivity.this, "loadingBookList",
 				new Runnable() {
 					public void run() {
-						myLibrary.waitForState(Library.STATE_FULLY_INITIALIZED);
+						myLibrary.waitForState(Library.STATE_PARTIALLY_INITIALIZED);
 					}
 				},
 				myPostRunnable);
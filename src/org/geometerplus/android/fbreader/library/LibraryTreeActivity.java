@@ -19,6 +19,8 @@
 
 package org.geometerplus.android.fbreader.library;
 
+import java.util.List;
+
 import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
@@ -28,10 +30,14 @@ import org.geometerplus.zlibrary.core.filesystem.ZLFile;
 
 import org.geometerplus.fbreader.library.Book;
 import org.geometerplus.fbreader.library.BookTree;
+import org.geometerplus.fbreader.library.Library;
 import org.geometerplus.fbreader.tree.FBTree;
 
-public class LibraryTreeActivity extends LibraryBaseActivity {
+public class LibraryTreeActivity extends LibraryBaseActivity implements Library.ChangeListener {
 	private String myTreePathString;
+	private String[] myPath;
+	private List<FBTree> myItems;
+	private boolean myListenerAdded;
 
 	@Override
 	public void onCreate(Bundle icicle) {
@@ -60,6 +66,7 @@ public class LibraryTreeActivity extends LibraryBaseActivity {
 		myTreePathString = intent.getStringExtra(TREE_PATH_KEY);
         
 		final String[] path = myTreePathString.split("\000");
+		myPath = path;
         
 		String title = null;
 		if (path.length == 1) {
@@ -73,6 +80,43 @@ public class LibraryTreeActivity extends LibraryBaseActivity {
 		}
 		setTitle(title);
 
+		mySelectedBook = null;
+		if (mySelectedBookPath != null) {
+			final ZLFile file = ZLFile.createFileByPath(mySelectedBookPath);
+			if (file != null) {
+				mySelectedBook = Book.getByFile(file);
+			}
+		}
+
+		// the books found by the scan later are added to the list when found
+		if (!LibraryInstance.hasState(Library.STATE_FULLY_INITIALIZED)) {
+			LibraryInstance.addChangeListener(this);
+			myListenerAdded = true;
+		}
+		updateList();
+	}
+
+	@Override
+	protected void onDestroy() {
+		if (myListenerAdded) {
+			LibraryInstance.removeChangeListener(this);
+			myListenerAdded = false;
+		}
+		super.onDestroy();
+	}
+
+	public void onLibraryChanged() {
+		runOnUiThread(new Runnable() {
+			public void run() {
+				if (myListenerAdded) {
+					updateList();
+				}
+			}
+		});
+	}
+
+	private FBTree findTree() {
+		final String[] path = myPath;
 		FBTree tree = null;
 		if (PATH_RECENT.equals(path[0])) {
 			tree = LibraryInstance.recentBooks();
@@ -94,20 +138,25 @@ public class LibraryTreeActivity extends LibraryBaseActivity {
 			}
 			tree = tree.getSubTreeByName(path[i]);
 		}
+		return tree;
+	}
 
-		mySelectedBook = null;
-		if (mySelectedBookPath != null) {
-			final ZLFile file = ZLFile.createFileByPath(mySelectedBookPath);
-			if (file != null) {
-				mySelectedBook = Book.getByFile(file);
-			}
+	// the root getter adds the newly found books to the trees; a tree
+	// replaces its list of subtrees when the first one is added
+	private void updateList() {
+		final FBTree tree = findTree();
+		if (tree == null) {
+			return;
 		}
-        
-		if (tree != null) {
-			final LibraryAdapter adapter = new LibraryAdapter(tree.subTrees());
+		final List<FBTree> items = tree.subTrees();
+		if (items != myItems) {
+			myItems = items;
+			final LibraryAdapter adapter = new LibraryAdapter(items);
 			setListAdapter(adapter);
 			getListView().setOnCreateContextMenuListener(adapter);
 			setSelection(adapter.getFirstSelectedItemIndex());
+		} else {
+			((LibraryAdapter)getListAdapter()).notifyDataSetChanged();
 		}
 	}
 
@@ -63,6 +63,8 @@ public class BookDownloaderService extends Service {
 
 	private Set<String> myDownloadingURLs = Collections.synchronizedSet(new HashSet<String>());
 	private Set<Integer> myOngoingNotifications = new HashSet<Integer>();
+	// accessed from the main thread only
+	private Set<ZLNetworkDownloader.Download> myDownloads = new HashSet<ZLNetworkDownloader.Download>();
 
 	private volatile int myServiceCounter;
 
@@ -91,6 +93,11 @@ public class BookDownloaderService extends Service {
 
 	@Override
 	public void onDestroy() {
+		// a cancelled download is kept in a .part file and resumed by the next attempt
+		for (ZLNetworkDownloader.Download download : myDownloads) {
+			download.cancel();
+		}
+		myDownloads.clear();
 		final NotificationManager notificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
 		for (int notificationId: myOngoingNotifications) {
 			notificationManager.cancel(notificationId);
@@ -275,6 +282,10 @@ public class BookDownloaderService extends Service {
 
 		final Handler downloadFinishHandler = new Handler() {
 			public void handleMessage(Message message) {
+				if (!myDownloads.remove(message.obj)) {
+					// cancelled by onDestroy
+					return;
+				}
 				myDownloadingURLs.remove(urlString);
 				final NotificationManager notificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
 				notificationManager.cancel(notificationId);
@@ -288,66 +299,19 @@ public class BookDownloaderService extends Service {
 			}
 		};
 
-		final ZLNetworkRequest request = new ZLNetworkRequest(urlString, sslCertificate, null) {
-			public void handleStream(InputStream inputStream, int length) throws IOException, ZLNetworkException {
-				final int updateIntervalMillis = 1000; // FIXME: remove hardcoded time constant
-
-				int downloadedPart = 0;
-				long progressTime = System.currentTimeMillis() + updateIntervalMillis;
-				if (length <= 0) {
-					progressHandler.sendEmptyMessage(-1);
-				}
-				OutputStream outStream;
-				try {
-					outStream = new FileOutputStream(file);
-				} catch (FileNotFoundException ex) {
-					throw new ZLNetworkException(ZLNetworkException.ERROR_CREATE_FILE, file.getPath());
-				}
-				try {
-					final byte[] buffer = new byte[8192];
-					while (true) {
-						final int size = inputStream.read(buffer);
-						if (size <= 0) {
-							break;
-						}
-						downloadedPart += size;
-						if (length > 0) {
-							final long currentTime = System.currentTimeMillis();
-							if (currentTime > progressTime) {
-								progressTime = currentTime + updateIntervalMillis;
-								progressHandler.sendEmptyMessage(downloadedPart * 100 / length);
-							}
-							/*if (downloadedPart * 100 / length > 95) {
-								throw new IOException("debug exception");
-							}*/
-						}
-						outStream.write(buffer, 0, size);
-						/*try {
-							Thread.currentThread().sleep(200);
-						} catch (InterruptedException ex) {
-						}*/
-					}
-				} finally {
-					outStream.close();
-				}
+		progressHandler.sendEmptyMessage(-1);
+		// an interrupted download is kept in a .part file and resumed by the next attempt
+		myDownloads.add(ZLNetworkDownloader.Instance().download(urlString, sslCertificate, file, new ZLNetworkDownloader.Listener() {
+			public void onProgress(ZLNetworkDownloader.Download download, long downloaded, long total) {
+				progressHandler.sendEmptyMessage(total > 0 ? (int)(downloaded * 100 / total) : -1);
 			}
-		};
 
-		final Thread downloader = new Thread(new Runnable() {
-			public void run() {
-				boolean success = false;
-				try {
-					ZLNetworkManager.Instance().perform(request);
-					success = true;
-				} catch (ZLNetworkException e) {
-					// TODO: show error message to User
-					file.delete();
-				} finally {
-					downloadFinishHandler.sendEmptyMessage(success ? 1 : 0);
-				}
+			public void onFinish(ZLNetworkDownloader.Download download, ZLNetworkException error) {
+				// TODO: show error message to User
+				downloadFinishHandler.sendMessage(
+					downloadFinishHandler.obtainMessage(error == null ? 1 : 0, download)
+				);
 			}
-		});
-		downloader.setPriority(Thread.MIN_PRIORITY);
-		downloader.start();
+		}));
 	}
 }
@@ -19,9 +19,12 @@
 
 package org.geometerplus.fbreader.bookmodel;
 
+import java.io.*;
 import java.util.*;
 
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
 import org.geometerplus.zlibrary.core.image.*;
+import org.geometerplus.zlibrary.core.options.ZLBooleanOption;
 
 import org.geometerplus.zlibrary.text.model.*;
 
@@ -35,20 +38,84 @@ public final class BookModel {
 		if (plugin == null) {
 			return null;
 		}
-		BookModel model = new BookModel(book);
+		final String fingerprint = BookModelCache.fingerprint(book);
+		if (fingerprint != null) {
+			final BookModel cached = BookModelCache.load(book, fingerprint);
+			if (cached != null) {
+				cached.loadSearchIndex(fingerprint);
+				return cached;
+			}
+			final BookModel model = new BookModel(book, BookModelCache.prepareDirectory(fingerprint));
+			if (plugin.readModel(model)) {
+				BookModelCache.save(model, fingerprint);
+				model.loadSearchIndex(fingerprint);
+				return model;
+			}
+			return null;
+		}
+		BookModel model = new BookModel(book, null);
 		if (plugin.readModel(model)) {
+			model.loadSearchIndex(null);
 			return model;
 		}
 		return null;
 	}
 
+	public static final ZLBooleanOption UseMappedStorageOption =
+		new ZLBooleanOption("Memory", "UseMappedStorage", true);
+	public static final ZLBooleanOption UseSearchIndexOption =
+		new ZLBooleanOption("Memory", "UseSearchIndex", true);
+
+	/*
+	 * Reads the search index of the book text from the model cache or builds
+	 * it on a background thread; until the index is ready, word searches scan
+	 * the text.
+	 */
+	private void loadSearchIndex(final String fingerprint) {
+		if (!UseSearchIndexOption.getValue()) {
+			return;
+		}
+		final Thread thread = new Thread("SearchIndexer") {
+			public void run() {
+				ZLTextSearchIndex index =
+					(fingerprint != null) ? BookModelCache.loadSearchIndex(fingerprint) : null;
+				if (index == null) {
+					index = ZLTextSearchIndex.build(BookTextModel);
+					if (fingerprint != null) {
+						BookModelCache.saveSearchIndex(index, fingerprint);
+					}
+				}
+				((ZLTextPlainModel)BookTextModel).setSearchIndex(index);
+			}
+		};
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private final String myStorageDirectory;
+	private final HashMap<String,CharStorage> myStorages = new HashMap<String,CharStorage>();
+
+	private CharStorage createStorage(int blockSize, String extension, int maxCachedBlocks) {
+		final CharStorage storage;
+		if (myStorageDirectory != null) {
+			storage = new MappedCharStorage(blockSize, myStorageDirectory, extension, maxCachedBlocks);
+		} else if (UseMappedStorageOption.getValue()) {
+			storage = new MappedCharStorage(blockSize, Paths.cacheDirectory(), extension, maxCachedBlocks);
+		} else {
+			storage = new CachedCharStorage(blockSize, Paths.cacheDirectory(), extension);
+		}
+		myStorages.put(extension, storage);
+		return storage;
+	}
+
 	private final ZLImageMap myImageMap = new ZLImageMap(); 
 	
 	public final Book Book;
 	public final ZLTextModel BookTextModel;
 	public final TOCTree TOCTree = new TOCTree();
 
-	private final HashMap<String,ZLTextModel> myFootnotes = new HashMap<String,ZLTextModel>();
+	private final LinkedHashMap<String,ZLTextModel> myFootnotes = new LinkedHashMap<String,ZLTextModel>();
 
 	public static final class Label {
 		public final String ModelId;
@@ -64,9 +131,13 @@ public final class BookModel {
 	//	return Constants.CACHE_DIRECTORY + "/links" + index + ".cache";
 	//}
 
-	private BookModel(Book book) {
+	private final CharStorage myInternalHyperlinks;
+
+	BookModel(Book book, String storageDirectory) {
 		Book = book;
-		BookTextModel = new ZLTextWritablePlainModel(null, book.getLanguage(), 1024, 65536, Paths.cacheDirectory(), "cache", myImageMap);
+		myStorageDirectory = storageDirectory;
+		BookTextModel = new ZLTextWritablePlainModel(null, book.getLanguage(), 1024, createStorage(65536, "cache", 16), myImageMap);
+		myInternalHyperlinks = createStorage(32768, "links", 8);
 		//for (int i = 0; i < 50; ++i) {
 		//	new File(linksFileName(i)).delete();
 		//}
@@ -75,13 +146,13 @@ public final class BookModel {
 	public ZLTextModel getFootnoteModel(String id) {
 		ZLTextModel model = myFootnotes.get(id);
 		if (model == null) {
-			model = new ZLTextWritablePlainModel(id, Book.getLanguage(), 8, 512, Paths.cacheDirectory(), "cache" + myFootnotes.size(), myImageMap); 
+			model = new ZLTextWritablePlainModel(id, Book.getLanguage(), 8, createStorage(512, "cache" + myFootnotes.size(), 16), myImageMap); 
 			myFootnotes.put(id, model); 
 		}
 		return model;
 	}
 	
-	private final CharStorage myInternalHyperlinks = new CachedCharStorage(32768, Paths.cacheDirectory(), "links");
+	private final LabelIndex myLabelIndex = new LabelIndex();
 	private char[] myCurrentLinkBlock;
 	private int myCurrentLinkBlockOffset;
 
@@ -121,6 +192,7 @@ public final class BookModel {
 			myCurrentLinkBlock = block;
 			offset = 0;
 		}
+		myLabelIndex.add(label.hashCode(), myInternalHyperlinks.size() - 1, offset);
 		block[offset++] = (char)labelLength;
 		label.getChars(0, labelLength, block, offset);
 		offset += labelLength;
@@ -135,8 +207,6 @@ public final class BookModel {
 	}
 
 	public Label getLabel(String id) {
-		final int len = id.length();
-		final int size = myInternalHyperlinks.size();
 		/*
 		try {
 			final File file = new File(linksFileName(id.hashCode() % 50));
@@ -170,29 +240,171 @@ public final class BookModel {
 		} catch (IOException e) {
 		}
 		*/
-		for (int i = 0; i < size; ++i) {
-			final char[] block = myInternalHyperlinks.block(i);
-			for (int offset = 0; offset < block.length; ) {
-				final int labelLength = (int)block[offset++];
-				if (labelLength == 0) {
-					break;
-				}
-				final int idLength = (int)block[offset + labelLength];
-				if ((labelLength != len) || !id.equals(new String(block, offset, labelLength))) {
-					offset += labelLength + idLength + 3;
-					continue;
-				}
-				offset += labelLength + 1;
-				final String modelId = (idLength > 0) ? new String(block, offset, idLength) : null;
-				offset += idLength;
-				final int paragraphNumber = (((int)block[offset++]) << 16) + (int)block[offset];
-				return new Label(modelId, paragraphNumber);
-			}
+		final int entry = myLabelIndex.find(id, myInternalHyperlinks);
+		if (entry == -1) {
+			return null;
 		}
-		return null;
+		final char[] block = myInternalHyperlinks.block(myLabelIndex.getBlock(entry));
+		int offset = myLabelIndex.getOffset(entry);
+		offset += block[offset] + 1;
+		final int idLength = (int)block[offset++];
+		final String modelId = (idLength > 0) ? new String(block, offset, idLength) : null;
+		offset += idLength;
+		final int paragraphNumber = (((int)block[offset++]) << 16) + (int)block[offset];
+		return new Label(modelId, paragraphNumber);
 	}
 	
 	void addImage(String id, ZLImage image) {
 		myImageMap.put(id, image);
 	}
+
+	private MappedCharStorage mappedStorage(String extension) throws IOException {
+		final CharStorage storage = myStorages.get(extension);
+		if (!(storage instanceof MappedCharStorage)) {
+			throw new IOException("Storage " + extension + " cannot be stored");
+		}
+		return (MappedCharStorage)storage;
+	}
+
+	void writeSnapshot(DataOutputStream stream) throws IOException {
+		((ZLTextWritablePlainModel)BookTextModel).writeParagraphIndex(stream);
+		mappedStorage("cache").writeIndex(stream);
+		stream.writeInt(myFootnotes.size());
+		int index = 0;
+		for (Map.Entry<String,ZLTextModel> entry : myFootnotes.entrySet()) {
+			stream.writeUTF(entry.getKey());
+			((ZLTextWritablePlainModel)entry.getValue()).writeParagraphIndex(stream);
+			mappedStorage("cache" + index++).writeIndex(stream);
+		}
+		mappedStorage("links").writeIndex(stream);
+		myLabelIndex.write(stream);
+		writeTOCTree(stream, TOCTree);
+		writeImages(stream);
+	}
+
+	void readSnapshot(DataInputStream stream) throws IOException {
+		((ZLTextWritablePlainModel)BookTextModel).readParagraphIndex(stream);
+		mappedStorage("cache").readIndex(stream);
+		final int footnotesNumber = stream.readInt();
+		for (int i = 0; i < footnotesNumber; ++i) {
+			final ZLTextModel model = getFootnoteModel(stream.readUTF());
+			((ZLTextWritablePlainModel)model).readParagraphIndex(stream);
+			mappedStorage("cache" + i).readIndex(stream);
+		}
+		mappedStorage("links").readIndex(stream);
+		myLabelIndex.read(stream);
+		readTOCTree(stream, TOCTree);
+		readImages(stream);
+	}
+
+	private static void writeString(DataOutputStream stream, String value) throws IOException {
+		stream.writeBoolean(value != null);
+		if (value != null) {
+			stream.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInputStream stream) throws IOException {
+		return stream.readBoolean() ? stream.readUTF() : null;
+	}
+
+	private void writeTOCTree(DataOutputStream stream, TOCTree tree) throws IOException {
+		writeString(stream, tree.getText());
+		final TOCTree.Reference reference = tree.getReference();
+		if (reference != null) {
+			stream.writeInt(reference.ParagraphIndex);
+			writeString(stream, reference.Model.getId());
+		} else {
+			stream.writeInt(-1);
+		}
+		final List<TOCTree> subTrees = tree.subTrees();
+		stream.writeInt(subTrees.size());
+		for (TOCTree subTree : subTrees) {
+			writeTOCTree(stream, subTree);
+		}
+	}
+
+	private void readTOCTree(DataInputStream stream, TOCTree tree) throws IOException {
+		tree.setText(readString(stream));
+		final int paragraphIndex = stream.readInt();
+		if (paragraphIndex != -1) {
+			final String modelId = readString(stream);
+			tree.setReference(modelId != null ? getFootnoteModel(modelId) : BookTextModel, paragraphIndex);
+		}
+		final int subTreesNumber = stream.readInt();
+		for (int i = 0; i < subTreesNumber; ++i) {
+			readTOCTree(stream, new TOCTree(tree));
+		}
+	}
+
+	private void writeImages(DataOutputStream stream) throws IOException {
+		stream.writeInt(myImageMap.size());
+		int counter = 0;
+		for (Map.Entry<String,ZLImage> entry : myImageMap.entrySet()) {
+			final ZLImage image = entry.getValue();
+			if (!(image instanceof ZLSingleImage)) {
+				throw new IOException("Image " + entry.getKey() + " cannot be stored");
+			}
+			// copied images are stored by name, since the directory is renamed after saving
+			final boolean copied = !(image instanceof ZLFileImage);
+			final String path;
+			final String encoding;
+			final int offset;
+			final int length;
+			if (image instanceof ZLFileImage) {
+				final ZLFileImage fileImage = (ZLFileImage)image;
+				path = fileImage.getFile().getPath();
+				encoding = fileImage.getEncoding();
+				offset = fileImage.getOffset();
+				length = fileImage.getLength();
+			} else {
+				// images decoded into shared temporary files are copied into the snapshot
+				final InputStream inputStream = ((ZLSingleImage)image).inputStream();
+				if (inputStream == null) {
+					throw new IOException("Image " + entry.getKey() + " cannot be read");
+				}
+				path = "image" + counter++;
+				final OutputStream outputStream = new FileOutputStream(myStorageDirectory + "/" + path);
+				int size = 0;
+				try {
+					final byte[] buffer = new byte[8192];
+					for (int len = inputStream.read(buffer); len > 0; len = inputStream.read(buffer)) {
+						outputStream.write(buffer, 0, len);
+						size += len;
+					}
+				} finally {
+					outputStream.close();
+					inputStream.close();
+				}
+				encoding = ZLFileImage.ENCODING_NONE;
+				offset = 0;
+				length = size;
+			}
+			stream.writeUTF(entry.getKey());
+			stream.writeUTF(((ZLSingleImage)image).mimeType());
+			stream.writeBoolean(copied);
+			stream.writeUTF(path);
+			stream.writeUTF(encoding);
+			stream.writeInt(offset);
+			stream.writeInt(length);
+		}
+	}
+
+	private void readImages(DataInputStream stream) throws IOException {
+		final int imagesNumber = stream.readInt();
+		for (int i = 0; i < imagesNumber; ++i) {
+			final String id = stream.readUTF();
+			final String mimeType = stream.readUTF();
+			final boolean copied = stream.readBoolean();
+			final String path = stream.readUTF();
+			final ZLFile file = ZLFile.createFileByPath(copied ? myStorageDirectory + "/" + path : path);
+			final String encoding = stream.readUTF();
+			final int offset = stream.readInt();
+			final int length = stream.readInt();
+			if (file == null || (copied && !file.exists())) {
+				throw new IOException("Image file for " + id + " is missing");
+			}
+			myImageMap.put(id, new ZLFileImage(mimeType, file, encoding, offset, length));
+		}
+	}
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.bookmodel;
+
+import java.io.*;
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLPhysicalFile;
+import org.geometerplus.zlibrary.core.options.ZLIntegerRangeOption;
+
+import org.geometerplus.zlibrary.text.model.ZLTextSearchIndex;
+
+import org.geometerplus.fbreader.library.Book;
+import org.geometerplus.fbreader.Paths;
+
+/*
+ * Parsed models are kept in per-book directories under
+ * cacheDirectory/models. A model is parsed into a temporary directory
+ * that is renamed only after the snapshot index is written, so a
+ * directory without the .tmp suffix is always complete.
+ */
+abstract class BookModelCache {
+	private static final int VERSION = 5;
+	private static final String INDEX_FILE = "index";
+	private static final String SEARCH_INDEX_FILE = "words";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+
+	static final ZLIntegerRangeOption SizeLimitOption =
+		new ZLIntegerRangeOption("Memory", "ModelCacheSizeLimit", 0, 1024, 64);
+
+	private static String cacheDirectory() {
+		return Paths.cacheDirectory() + "/models";
+	}
+
+	static String fingerprint(Book book) {
+		if (!BookModel.UseMappedStorageOption.getValue() || SizeLimitOption.getValue() == 0) {
+			return null;
+		}
+		final ZLPhysicalFile physicalFile = book.File.getPhysicalFile();
+		if (physicalFile == null || !physicalFile.exists()) {
+			return null;
+		}
+		return book.File.getPath() + "\000" + physicalFile.size() + "\000" + physicalFile.lastModified();
+	}
+
+	private static String directoryName(String fingerprint) {
+		final int separator = fingerprint.indexOf('\000');
+		return cacheDirectory() + "/" +
+			Integer.toHexString(fingerprint.substring(0, separator).hashCode()) + "-" +
+			Integer.toHexString(fingerprint.hashCode());
+	}
+
+	private static void deleteDirectory(File directory) {
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private static long directorySize(File directory) {
+		long size = 0;
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				size += file.length();
+			}
+		}
+		return size;
+	}
+
+	private static long lastUsed(File directory) {
+		final File index = new File(directory, INDEX_FILE);
+		return index.exists() ? index.lastModified() : directory.lastModified();
+	}
+
+	static String prepareDirectory(String fingerprint) {
+		final File directory = new File(directoryName(fingerprint) + TEMPORARY_SUFFIX);
+		deleteDirectory(directory);
+		directory.mkdirs();
+		return directory.getPath();
+	}
+
+	static BookModel load(Book book, String fingerprint) {
+		final File directory = new File(directoryName(fingerprint));
+		final File index = new File(directory, INDEX_FILE);
+		if (!index.exists()) {
+			return null;
+		}
+		DataInputStream stream = null;
+		try {
+			stream = new DataInputStream(new BufferedInputStream(new FileInputStream(index), 65536));
+			if (stream.readInt() != VERSION || !fingerprint.equals(stream.readUTF())) {
+				return null;
+			}
+			final BookModel model = new BookModel(book, directory.getPath());
+			model.readSnapshot(stream);
+			index.setLastModified(System.currentTimeMillis());
+			return model;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	static void save(BookModel model, String fingerprint) {
+		final String name = directoryName(fingerprint);
+		final File temporaryDirectory = new File(name + TEMPORARY_SUFFIX);
+		DataOutputStream stream = null;
+		try {
+			stream = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(new File(temporaryDirectory, INDEX_FILE)), 65536
+			));
+			stream.writeInt(VERSION);
+			stream.writeUTF(fingerprint);
+			model.writeSnapshot(stream);
+			stream.close();
+			stream = null;
+			final File directory = new File(name);
+			deleteDirectory(directory);
+			if (!temporaryDirectory.renameTo(directory)) {
+				return;
+			}
+		} catch (IOException e) {
+			return;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		evict(new File(name));
+	}
+
+	static ZLTextSearchIndex loadSearchIndex(String fingerprint) {
+		final File file = new File(directoryName(fingerprint), SEARCH_INDEX_FILE);
+		if (!file.exists()) {
+			return null;
+		}
+		DataInputStream stream = null;
+		try {
+			stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+			if (stream.readInt() != VERSION || !fingerprint.equals(stream.readUTF())) {
+				return null;
+			}
+			return ZLTextSearchIndex.read(stream);
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	// the index is written under a temporary name, so a partially written file is never read
+	static void saveSearchIndex(ZLTextSearchIndex index, String fingerprint) {
+		final File directory = new File(directoryName(fingerprint));
+		if (!directory.exists()) {
+			return;
+		}
+		final File temporaryFile = new File(directory, SEARCH_INDEX_FILE + TEMPORARY_SUFFIX);
+		DataOutputStream stream = null;
+		try {
+			stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), 65536));
+			stream.writeInt(VERSION);
+			stream.writeUTF(fingerprint);
+			index.write(stream);
+			stream.close();
+			stream = null;
+			temporaryFile.renameTo(new File(directory, SEARCH_INDEX_FILE));
+		} catch (IOException e) {
+			temporaryFile.delete();
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private static void evict(File current) {
+		final File[] directories = new File(cacheDirectory()).listFiles();
+		if (directories == null) {
+			return;
+		}
+		final long limit = SizeLimitOption.getValue() * 1024L * 1024L;
+		final HashMap<File,Long> lastUsed = new HashMap<File,Long>();
+		long totalSize = 0;
+		for (File directory : directories) {
+			lastUsed.put(directory, lastUsed(directory));
+			totalSize += directorySize(directory);
+		}
+		if (totalSize <= limit) {
+			return;
+		}
+		Arrays.sort(directories, new Comparator<File>() {
+			public int compare(File file0, File file1) {
+				final long diff = lastUsed.get(file0) - lastUsed.get(file1);
+				return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+			}
+		});
+		for (File directory : directories) {
+			if (totalSize <= limit) {
+				break;
+			}
+			if (directory.equals(current) || directory.getPath().equals(current.getPath() + TEMPORARY_SUFFIX)) {
+				continue;
+			}
+			totalSize -= directorySize(directory);
+			deleteDirectory(directory);
+		}
+	}
+}
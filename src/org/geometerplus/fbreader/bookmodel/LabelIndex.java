@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.bookmodel;
+
+import java.io.*;
+
+import org.geometerplus.zlibrary.core.util.ZLArrayUtils;
+
+import org.geometerplus.zlibrary.text.model.CharStorage;
+
+/*
+ * Open-addressing (linear probing) index over hyperlink labels stored in
+ * a CharStorage. An entry keeps the label hash and the block/offset of
+ * the label record; labels themselves are compared in place.
+ */
+final class LabelIndex {
+	private int mySize;
+	private int[] myHashes = new int[256];
+	private int[] myBlocks = new int[256];
+	private int[] myOffsets = new int[256];
+	// entry number + 1; 0 marks an empty slot
+	private int[] myTable = new int[512];
+
+	int getBlock(int entry) {
+		return myBlocks[entry];
+	}
+
+	int getOffset(int entry) {
+		return myOffsets[entry];
+	}
+
+	void add(int hash, int block, int offset) {
+		if (mySize == myHashes.length) {
+			myHashes = ZLArrayUtils.createCopy(myHashes, mySize, mySize << 1);
+			myBlocks = ZLArrayUtils.createCopy(myBlocks, mySize, mySize << 1);
+			myOffsets = ZLArrayUtils.createCopy(myOffsets, mySize, mySize << 1);
+		}
+		myHashes[mySize] = hash;
+		myBlocks[mySize] = block;
+		myOffsets[mySize] = offset;
+		++mySize;
+		if (2 * mySize > myTable.length) {
+			rehash(myTable.length << 1);
+		} else {
+			insert(mySize - 1);
+		}
+	}
+
+	private static int firstSlot(int hash, int mask) {
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	private void insert(int entry) {
+		final int[] table = myTable;
+		final int mask = table.length - 1;
+		int slot = firstSlot(myHashes[entry], mask);
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = entry + 1;
+	}
+
+	private void rehash(int tableSize) {
+		myTable = new int[tableSize];
+		for (int i = 0; i < mySize; ++i) {
+			insert(i);
+		}
+	}
+
+	/*
+	 * Returns the first added entry whose label equals id, or -1.
+	 * Each label record starts with its length followed by the label chars.
+	 */
+	int find(String id, CharStorage storage) {
+		final int hash = id.hashCode();
+		final int len = id.length();
+		final int[] table = myTable;
+		final int mask = table.length - 1;
+		for (int slot = firstSlot(hash, mask); table[slot] != 0; slot = (slot + 1) & mask) {
+			final int entry = table[slot] - 1;
+			if (myHashes[entry] != hash) {
+				continue;
+			}
+			final char[] block = storage.block(myBlocks[entry]);
+			int offset = myOffsets[entry];
+			if (block[offset++] != len) {
+				continue;
+			}
+			int i = 0;
+			while (i < len && block[offset + i] == id.charAt(i)) {
+				++i;
+			}
+			if (i == len) {
+				return entry;
+			}
+		}
+		return -1;
+	}
+
+	void write(DataOutputStream stream) throws IOException {
+		stream.writeInt(mySize);
+		for (int i = 0; i < mySize; ++i) {
+			stream.writeInt(myHashes[i]);
+			stream.writeInt(myBlocks[i]);
+			stream.writeInt(myOffsets[i]);
+		}
+	}
+
+	void read(DataInputStream stream) throws IOException {
+		final int size = stream.readInt();
+		final int capacity = Math.max(size, 256);
+		myHashes = new int[capacity];
+		myBlocks = new int[capacity];
+		myOffsets = new int[capacity];
+		for (int i = 0; i < size; ++i) {
+			myHashes[i] = stream.readInt();
+			myBlocks[i] = stream.readInt();
+			myOffsets[i] = stream.readInt();
+		}
+		mySize = size;
+		int tableSize = 512;
+		while (tableSize < 2 * size) {
+			tableSize <<= 1;
+		}
+		rehash(tableSize);
+	}
+}
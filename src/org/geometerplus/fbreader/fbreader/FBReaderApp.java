@@ -30,6 +30,7 @@ import org.geometerplus.zlibrary.core.options.*;
 import org.geometerplus.zlibrary.text.hyphenation.ZLTextHyphenator;
 import org.geometerplus.zlibrary.text.view.ZLTextWordCursor;
 
+import org.geometerplus.fbreader.Paths;
 import org.geometerplus.fbreader.bookmodel.BookModel;
 import org.geometerplus.fbreader.library.Library;
 import org.geometerplus.fbreader.library.Book;
@@ -102,6 +103,8 @@ public final class FBReaderApp extends ZLApplication {
 	public FBReaderApp(String arg) {
 		myArg0 = arg;
 
+		ZLTextHyphenator.setCacheDirectory(Paths.cacheDirectory() + "/hyphenation");
+
 		addAction(ActionCode.INCREASE_FONT, new ChangeFontSizeAction(this, +2));
 		addAction(ActionCode.DECREASE_FONT, new ChangeFontSizeAction(this, -2));
 		addAction(ActionCode.ROTATE, new RotateAction(this));
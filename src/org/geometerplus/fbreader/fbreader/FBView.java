@@ -528,4 +528,18 @@ public final class FBView extends ZLTextView {
 	public Animation getAnimationType() {
 		return ScrollingPreferences.Instance().AnimationOption.getValue();
 	}
+
+	@Override
+	protected byte[] loadPageIndex(String configuration) {
+		final BookModel model = myReader.Model;
+		return model != null ? model.Book.loadPageIndex(configuration) : null;
+	}
+
+	@Override
+	protected void savePageIndex(String configuration, byte[] data) {
+		final BookModel model = myReader.Model;
+		if (model != null) {
+			model.Book.savePageIndex(configuration, data);
+		}
+	}
 }
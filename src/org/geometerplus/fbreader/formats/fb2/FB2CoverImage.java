@@ -19,6 +19,8 @@
 
 package org.geometerplus.fbreader.formats.fb2;
 
+import java.util.Collections;
+
 import org.geometerplus.zlibrary.core.constants.XMLNamespaces;
 import org.geometerplus.zlibrary.core.constants.MimeTypes;
 import org.geometerplus.zlibrary.core.filesystem.ZLFile;
@@ -51,13 +53,19 @@ class FB2CoverImage extends ZLImageProxy {
 	private static class BackgroundReader extends ZLXMLReaderAdapter {
 		private boolean myReadCoverPage;
 		private String myImageReference;
-		private Base64EncodedImage myImage;
+		private String myMimeType;
 
-		Base64EncodedImage readCover(ZLFile file) {
+		ZLSingleImage readCover(ZLFile file) {
 			myReadCoverPage = false;
 			myImageReference = null;
+			myMimeType = null;
 			read(file);
-			return myImage;
+			if (myMimeType == null) {
+				return null;
+			}
+			return FB2ImageLocator.locate(
+				file, Collections.singletonMap(myImageReference, myMimeType)
+			).get(myImageReference);
 		}
 
 		@Override
@@ -83,9 +91,10 @@ class FB2CoverImage extends ZLImageProxy {
 				if (myImageReference != null) {
 					final String id = attributes.getValue("id");
 					final String contentType = attributes.getValue("content-type");
-					if (id != null && contentType != null && myImageReference.equals(id)) {
-						// FIXME: make different Base64EncodedImage constructor to use another cache for covers
-						myImage = new Base64EncodedImage((contentType != null) ? contentType : MimeTypes.MIME_IMAGE_AUTO);
+					if (id != null && myImageReference.equals(id)) {
+						myMimeType = (contentType != null) ? contentType : MimeTypes.MIME_IMAGE_AUTO;
+						// the binary text is read by FB2ImageLocator
+						return true;
 					}
 				}
 				break;
@@ -104,21 +113,8 @@ class FB2CoverImage extends ZLImageProxy {
 					return true;
 				}
 				break;
-			case FB2Tag.BINARY:
-				if (myImage != null) {
-					myImage.close();
-					return true;
-				}
-				break;
 			}	
 			return false;
 		}
-
-		@Override
-		public void characterDataHandler(char[] data, int start, int length) {
-			if (length > 0 && myImage != null) {
-				myImage.addData(data, start, length);
-			}
-		}
 	}
 }
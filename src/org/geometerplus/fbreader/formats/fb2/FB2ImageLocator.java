@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.formats.fb2;
+
+import java.io.*;
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.image.ZLFileImage;
+
+/*
+ * Finds the base64 text of <binary> elements in the raw bytes of a book,
+ * so images are decoded straight from the book file when they are shown
+ * and nothing is copied while the book is parsed. Tag and attribute
+ * names and the base64 alphabet are ASCII, so the scan does not depend
+ * on the book encoding (the XML parser reads ASCII-compatible ones only).
+ */
+final class FB2ImageLocator {
+	private static final int MAX_TAG_LENGTH = 4096;
+
+	/*
+	 * Returns images for the binaries with ids from mimeTypes (a map
+	 * id -> mime type); the scan stops when all of them are found.
+	 */
+	static Map<String,ZLFileImage> locate(ZLFile file, Map<String,String> mimeTypes) {
+		final HashMap<String,ZLFileImage> images = new HashMap<String,ZLFileImage>();
+		if (mimeTypes.isEmpty()) {
+			return images;
+		}
+		InputStream stream = null;
+		try {
+			stream = file.getInputStream();
+			new FB2ImageLocator(stream).locate(file, mimeTypes, images);
+		} catch (IOException e) {
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		return images;
+	}
+
+	private final InputStream myStream;
+	private final byte[] myBuffer = new byte[8192];
+	private int myBufferOffset;
+	private int myBufferLength;
+	// offset of the next byte in the file
+	private int myPosition;
+
+	private FB2ImageLocator(InputStream stream) {
+		myStream = stream;
+	}
+
+	private int next() throws IOException {
+		if (myBufferOffset == myBufferLength) {
+			myBufferOffset = 0;
+			myBufferLength = myStream.read(myBuffer);
+			if (myBufferLength <= 0) {
+				myBufferLength = 0;
+				return -1;
+			}
+		}
+		++myPosition;
+		return myBuffer[myBufferOffset++] & 0xFF;
+	}
+
+	private static boolean isSpace(int b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+	}
+
+	private void locate(ZLFile file, Map<String,String> mimeTypes, Map<String,ZLFileImage> images) throws IOException {
+		final StringBuilder name = new StringBuilder();
+		final StringBuilder tag = new StringBuilder();
+		int b = next();
+		while (b != -1 && images.size() < mimeTypes.size()) {
+			if (b != '<') {
+				b = next();
+				continue;
+			}
+
+			name.setLength(0);
+			for (b = next(); b != -1 && b != '<' && b != '>' && b != '/' && !isSpace(b); b = next()) {
+				name.append((char)b);
+			}
+			final int length = name.length();
+			if (length < 6 || !"binary".equals(name.substring(length - 6)) ||
+				(length > 6 && name.charAt(length - 7) != ':')) {
+				continue;
+			}
+
+			tag.setLength(0);
+			for (; b != -1 && b != '>' && b != '<' && tag.length() < MAX_TAG_LENGTH; b = next()) {
+				tag.append((char)b);
+			}
+			if (b != '>') {
+				continue;
+			}
+			final int start = myPosition;
+			for (b = next(); b != -1 && b != '<'; b = next()) {
+			}
+			final int end = (b == -1) ? myPosition : myPosition - 1;
+
+			final String id = attributeValue(tag, "id");
+			final String mimeType = id != null ? mimeTypes.get(id) : null;
+			if (mimeType != null) {
+				images.put(id, new ZLFileImage(mimeType, file, ZLFileImage.ENCODING_BASE64, start, end - start));
+			}
+		}
+	}
+
+	private static String attributeValue(StringBuilder tag, String name) {
+		final int length = tag.length();
+		for (int index = tag.indexOf(name); index != -1; index = tag.indexOf(name, index + 1)) {
+			if (index == 0 || !isSpace(tag.charAt(index - 1))) {
+				continue;
+			}
+			int i = index + name.length();
+			while (i < length && isSpace(tag.charAt(i))) {
+				++i;
+			}
+			if (i == length || tag.charAt(i) != '=') {
+				continue;
+			}
+			++i;
+			while (i < length && isSpace(tag.charAt(i))) {
+				++i;
+			}
+			if (i == length || (tag.charAt(i) != '"' && tag.charAt(i) != '\'')) {
+				continue;
+			}
+			final int end = tag.indexOf(String.valueOf(tag.charAt(i)), i + 1);
+			if (end == -1) {
+				return null;
+			}
+			return tag.substring(i + 1, end);
+		}
+		return null;
+	}
+}
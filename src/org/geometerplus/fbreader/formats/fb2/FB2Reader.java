@@ -23,6 +23,8 @@ import java.util.*;
 
 import org.geometerplus.zlibrary.core.library.ZLibrary;
 import org.geometerplus.zlibrary.core.constants.XMLNamespaces;
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.image.ZLFileImage;
 import org.geometerplus.zlibrary.core.xml.*;
 import org.geometerplus.zlibrary.core.util.*;
 import org.geometerplus.zlibrary.text.model.ZLTextParagraph;
@@ -41,7 +43,9 @@ public final class FB2Reader extends ZLXMLReaderAdapter {
 	
 	private byte myHyperlinkType;
 	
-	private Base64EncodedImage myCurrentImage;
+	// binaries are located in the book file after parsing; their text is skipped
+	private boolean myInsideBinary = false;
+	private final HashMap<String,String> myBinaryMimeTypes = new HashMap<String,String>();
 	private boolean myInsideCoverpage = false;
 	private String myCoverImageReference;
 	private int myParagraphsBeforeBodyNumber = Integer.MAX_VALUE;
@@ -56,8 +60,14 @@ public final class FB2Reader extends ZLXMLReaderAdapter {
 	}
 
 	boolean readBook() {
-		Base64EncodedImage.resetCounter();
-		return ZLXMLProcessor.read(this, myBookReader.Model.Book.File);
+		final ZLFile file = myBookReader.Model.Book.File;
+		if (!ZLXMLProcessor.read(this, file)) {
+			return false;
+		}
+		for (Map.Entry<String,ZLFileImage> entry : FB2ImageLocator.locate(file, myBinaryMimeTypes).entrySet()) {
+			myBookReader.addImage(entry.getKey(), entry.getValue());
+		}
+		return true;
 	}
 
 	public void startDocumentHandler() {
@@ -74,24 +84,18 @@ public final class FB2Reader extends ZLXMLReaderAdapter {
 		if (length == 0) {
 			return;
 		}
-		final Base64EncodedImage image = myCurrentImage;
-		if (image != null) {
-			image.addData(ch, start, length);
-		} else {
+		if (!myInsideBinary) {
 			myBookReader.addData(ch, start, length, false);
-		}		
+		}
 	}
 
 	public void characterDataHandlerFinal(char[] ch, int start, int length) {
 		if (length == 0) {
 			return;
 		}
-		final Base64EncodedImage image = myCurrentImage;
-		if (image != null) {
-			image.addData(ch, start, length);
-		} else {
+		if (!myInsideBinary) {
 			myBookReader.addData(ch, start, length, true);
-		}		
+		}
 	}
 
 	public boolean endElementHandler(String tagName) {
@@ -194,10 +198,7 @@ public final class FB2Reader extends ZLXMLReaderAdapter {
 				break;	
 			
 			case FB2Tag.BINARY:
-				if (myCurrentImage != null) {
-					myCurrentImage.close();
-					myCurrentImage = null;
-				}
+				myInsideBinary = false;
 				break;	
 				
 			default:
@@ -387,9 +388,9 @@ public final class FB2Reader extends ZLXMLReaderAdapter {
 			case FB2Tag.BINARY:			
 				final String contentType = attributes.getValue("content-type");
 				final String imgId = attributes.getValue("id");
-				if ((contentType != null) && (id != null)) {
-					myCurrentImage = new Base64EncodedImage(contentType);
-					myBookReader.addImage(imgId, myCurrentImage);
+				if ((contentType != null) && (imgId != null)) {
+					myInsideBinary = true;
+					myBinaryMimeTypes.put(imgId, contentType);
 				}
 				break;	
 
@@ -29,6 +29,10 @@ public abstract class DocDecompressor {
 			return 0;
 		}
 
+		return decompress(sourceBuffer, compressedSize, targetBuffer);
+	}
+
+	public static int decompress(byte[] sourceBuffer, int compressedSize, byte[] targetBuffer) {
 		int sourceIndex = 0;
 		int targetIndex = 0;
 
@@ -37,7 +41,7 @@ public abstract class DocDecompressor {
 		int count2 = 0;
 		int count3 = 0;
 		try {
-			while (true) {
+			while (sourceIndex < compressedSize) {
 				final byte token = sourceBuffer[sourceIndex++];
 				switch (token) {
 					default:
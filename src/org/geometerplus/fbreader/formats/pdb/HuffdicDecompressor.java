@@ -20,94 +20,184 @@
 package org.geometerplus.fbreader.formats.pdb;
 
 import java.io.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-public abstract class HuffdicDecompressor {
-	public static int decompress(InputStream stream, byte[] targetBuffer, int compressedSize) throws IOException {
-		final byte[] sourceBuffer = new byte[compressedSize];
+import org.geometerplus.zlibrary.core.util.ZLArrayUtils;
 
-		if (stream.read(sourceBuffer) != compressedSize) {
-			return 0;
+/*
+ * Mobipocket HUFF/CDIC decompression. The HUFF record holds a canonical
+ * Huffman code: a 256-entry table indexed by the first 8 bits of a code
+ * (exact for codes up to 8 bits) and the per-length code limits used for
+ * longer codes. CDIC records hold the phrases the codes stand for; a
+ * phrase is either literal or compressed by the same code, and compressed
+ * ones are expanded on first use. The tables are not changed after
+ * loading, so one decompressor serves concurrent decoding of records.
+ */
+final class HuffdicDecompressor {
+	private static final int HUFF_SIGNATURE = 0x48554646; /* "HUFF" */
+	private static final int CDIC_SIGNATURE = 0x43444943; /* "CDIC" */
+	private static final int MAX_PHRASE_DEPTH = 32;
+
+	private final int[] myCodeLengths = new int[256];
+	private final boolean[] myIsTerminal = new boolean[256];
+	private final long[] myTableMaxCodes = new long[256];
+	private final long[] myMinCodes = new long[33];
+	private final long[] myMaxCodes = new long[33];
+
+	private final byte[][] myPhrases;
+	// null for phrases that are not expanded yet
+	private final AtomicReferenceArray<byte[]> myExpandedPhrases;
+
+	private static int readInt(byte[] data, int offset) throws IOException {
+		if (offset < 0 || offset + 4 > data.length) {
+			throw new IOException("HUFF/CDIC record is too short");
+		}
+		return
+			((data[offset] & 0xFF) << 24) + ((data[offset + 1] & 0xFF) << 16) +
+			((data[offset + 2] & 0xFF) << 8) + (data[offset + 3] & 0xFF);
+	}
+
+	private static int readShort(byte[] data, int offset) throws IOException {
+		if (offset < 0 || offset + 2 > data.length) {
+			throw new IOException("CDIC record is too short");
+		}
+		return ((data[offset] & 0xFF) << 8) + (data[offset + 1] & 0xFF);
+	}
+
+	HuffdicDecompressor(byte[] huff, byte[][] cdics) throws IOException {
+		if (readInt(huff, 0) != HUFF_SIGNATURE || readInt(huff, 4) != 24) {
+			throw new IOException("Invalid HUFF record");
+		}
+		final int tableOffset = readInt(huff, 8);
+		final int limitsOffset = readInt(huff, 12);
+		for (int i = 0; i < 256; ++i) {
+			final long value = readInt(huff, tableOffset + 4 * i) & 0xFFFFFFFFL;
+			final int codeLength = (int)(value & 0x1F);
+			if (codeLength == 0) {
+				throw new IOException("Invalid HUFF record");
+			}
+			myCodeLengths[i] = codeLength;
+			myIsTerminal[i] = (value & 0x80) != 0;
+			myTableMaxCodes[i] = (((value >> 8) + 1) << (32 - codeLength)) - 1;
+		}
+		for (int codeLength = 1; codeLength <= 32; ++codeLength) {
+			final long minCode = readInt(huff, limitsOffset + 8 * (codeLength - 1)) & 0xFFFFFFFFL;
+			final long maxCode = readInt(huff, limitsOffset + 8 * (codeLength - 1) + 4) & 0xFFFFFFFFL;
+			myMinCodes[codeLength] = minCode << (32 - codeLength);
+			myMaxCodes[codeLength] = ((maxCode + 1) << (32 - codeLength)) - 1;
+		}
+
+		int phrasesNumber = 0;
+		for (byte[] cdic : cdics) {
+			if (readInt(cdic, 0) != CDIC_SIGNATURE || readInt(cdic, 4) != 16) {
+				throw new IOException("Invalid CDIC record");
+			}
+			phrasesNumber = Math.max(phrasesNumber, readInt(cdic, 8));
 		}
+		myPhrases = new byte[phrasesNumber][];
+		myExpandedPhrases = new AtomicReferenceArray<byte[]>(phrasesNumber);
+		int index = 0;
+		for (byte[] cdic : cdics) {
+			final int bits = readInt(cdic, 12);
+			final int count = Math.min(1 << Math.min(bits, 16), phrasesNumber - index);
+			for (int i = 0; i < count; ++i, ++index) {
+				final int offset = 16 + readShort(cdic, 16 + 2 * i);
+				final int header = readShort(cdic, offset);
+				final int length = header & 0x7FFF;
+				if (offset + 2 + length > cdic.length) {
+					throw new IOException("CDIC record is too short");
+				}
+				final byte[] phrase = new byte[length];
+				System.arraycopy(cdic, offset + 2, phrase, 0, length);
+				myPhrases[index] = phrase;
+				if ((header & 0x8000) != 0) {
+					myExpandedPhrases.set(index, phrase);
+				}
+			}
+		}
+		if (index < phrasesNumber) {
+			throw new IOException("Some CDIC records are missing");
+		}
+	}
 
-		int sourceIndex = 0;
-		int targetIndex = 0;
+	// 8 bytes starting at offset, big-endian; bytes after end are zeros
+	private static long readLong(byte[] data, int offset, int end) {
+		long value = 0;
+		for (int i = offset; i < offset + 8; ++i) {
+			value = (value << 8) + ((i < end) ? (data[i] & 0xFF) : 0);
+		}
+		return value;
+	}
 
-		int count0 = 0;
-		int count1 = 0;
-		int count2 = 0;
-		int count3 = 0;
-		try {
-			while (true) {
-				final byte token = sourceBuffer[sourceIndex++];
-				switch (token) {
-					default:
-						++count0;
-						targetBuffer[targetIndex++] = token;
-						break;
-					case 1: case 2: case 3: case 4:
-					case 5: case 6: case 7: case 8:
-						++count1;
-						System.arraycopy(sourceBuffer, sourceIndex, targetBuffer, targetIndex, token);
-						sourceIndex += token;
-						targetIndex += token;
-						break;
-					case -64: case -63: case -62: case -61:
-					case -60: case -59: case -58: case -57:
-					case -56: case -55: case -54: case -53:
-					case -52: case -51: case -50: case -49:
-					case -48: case -47: case -46: case -45:
-					case -44: case -43: case -42: case -41:
-					case -40: case -39: case -38: case -37:
-					case -36: case -35: case -34: case -33:
-					case -32: case -31: case -30: case -29:
-					case -28: case -27: case -26: case -25:
-					case -24: case -23: case -22: case -21:
-					case -20: case -19: case -18: case -17:
-					case -16: case -15: case -14: case -13:
-					case -12: case -11: case -10: case -9:
-					case -8: case -7: case -6: case -5:
-					case -4: case -3: case -2: case -1:
-						++count2;
-						targetBuffer[targetIndex++] = ' ';
-						targetBuffer[targetIndex++] = (byte)(token ^ 0x80);
-						break;
-					case -128: case -127: case -126: case -125:
-					case -124: case -123: case -122: case -121:
-					case -120: case -119: case -118: case -117:
-					case -116: case -115: case -114: case -113:
-					case -112: case -111: case -110: case -109:
-					case -108: case -107: case -106: case -105:
-					case -104: case -103: case -102: case -101:
-					case -100: case -99: case -98: case -97:
-					case -96: case -95: case -94: case -93:
-					case -92: case -91: case -90: case -89:
-					case -88: case -87: case -86: case -85:
-					case -84: case -83: case -82: case -81:
-					case -80: case -79: case -78: case -77:
-					case -76: case -75: case -74: case -73:
-					case -72: case -71: case -70: case -69:
-					case -68: case -67: case -66: case -65:
-						++count3;
-						final int N = ((token & 0x3F) << 8) + (sourceBuffer[sourceIndex++] & 0xFF);
-						int copyLength = (N & 7) + 3;
-						int srcIndex = targetIndex - (N >> 3);
-						if (targetIndex >= srcIndex + copyLength) {
-							System.arraycopy(targetBuffer, srcIndex, targetBuffer, targetIndex, copyLength);
-							targetIndex += copyLength;
-						} else {
-							while (copyLength-- > 0) {
-								targetBuffer[targetIndex++] = targetBuffer[srcIndex++];
-							}
-						}
-						break;
+	/*
+	 * Decompresses length bytes of data into target. Returns the number
+	 * of bytes written or -1 if they do not fit into target.
+	 */
+	int decompress(byte[] data, int length, byte[] target) throws IOException {
+		return unpack(data, 0, length, target, 0);
+	}
+
+	private int unpack(byte[] data, int offset, int length, byte[] target, int depth) throws IOException {
+		final int end = offset + length;
+		int bitsLeft = 8 * length;
+		int position = offset;
+		long window = readLong(data, position, end);
+		int shift = 32;
+		int targetLength = 0;
+		while (true) {
+			if (shift <= 0) {
+				position += 4;
+				window = readLong(data, position, end);
+				shift += 32;
+			}
+			final long code = (window >>> shift) & 0xFFFFFFFFL;
+			final int prefix = (int)(code >>> 24);
+			int codeLength = myCodeLengths[prefix];
+			long maxCode = myTableMaxCodes[prefix];
+			if (!myIsTerminal[prefix]) {
+				while (codeLength < 32 && code < myMinCodes[codeLength]) {
+					++codeLength;
 				}
+				maxCode = myMaxCodes[codeLength];
+			}
+			shift -= codeLength;
+			bitsLeft -= codeLength;
+			if (bitsLeft < 0) {
+				break;
+			}
+			final long index = (maxCode - code) >>> (32 - codeLength);
+			if (index >= myPhrases.length) {
+				throw new IOException("Invalid HUFF code");
 			}
-		} catch (Exception e) {
-			if (targetIndex > targetBuffer.length) {
-				targetIndex = targetBuffer.length;
+			byte[] phrase = myExpandedPhrases.get((int)index);
+			if (phrase == null) {
+				phrase = expand((int)index, depth);
 			}
+			if (targetLength + phrase.length > target.length) {
+				return -1;
+			}
+			System.arraycopy(phrase, 0, target, targetLength, phrase.length);
+			targetLength += phrase.length;
 		}
+		return targetLength;
+	}
 
-		return targetIndex;
+	/*
+	 * Concurrent expansions of the same phrase give equal arrays,
+	 * so any of them can be stored.
+	 */
+	private byte[] expand(int index, int depth) throws IOException {
+		if (depth >= MAX_PHRASE_DEPTH) {
+			throw new IOException("CDIC phrases are nested too deep");
+		}
+		final byte[] data = myPhrases[index];
+		byte[] buffer = new byte[Math.max(64, 4 * data.length)];
+		int length;
+		while ((length = unpack(data, 0, data.length, buffer, depth + 1)) == -1) {
+			buffer = new byte[2 * buffer.length];
+		}
+		final byte[] phrase = ZLArrayUtils.createCopy(buffer, length, length);
+		myExpandedPhrases.set(index, phrase);
+		return phrase;
 	}
 }
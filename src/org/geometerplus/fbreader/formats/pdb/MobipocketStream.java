@@ -41,8 +41,19 @@ class MobipocketStream extends PalmDocLikeStream {
 		myBuffer = new byte[maxRecordSize];
 		myRecordIndex = 0;
 
-		PdbUtil.skip(myBase, 96);
+		// offsets below are from the start of record 0
+		PdbUtil.skip(myBase, 8);
+		final int headerLength = (int)PdbUtil.readInt(myBase);
+		PdbUtil.skip(myBase, 12);
+		final int version = (int)PdbUtil.readInt(myBase);
+		PdbUtil.skip(myBase, 68);
 		myImageStartIndex = (int)PdbUtil.readInt(myBase);
+		myHuffdicRecordIndex = (int)PdbUtil.readInt(myBase);
+		myHuffdicRecordsNumber = (int)PdbUtil.readInt(myBase);
+		if (headerLength >= 0xE4 && version >= 5) {
+			PdbUtil.skip(myBase, 0xF2 - 120);
+			myExtraDataFlags = PdbUtil.readShort(myBase);
+		}
 	}
 
 	int getImageOffset(int index) {
@@ -20,10 +20,56 @@
 package org.geometerplus.fbreader.formats.pdb;
 
 import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.*;
 
 import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.options.ZLBooleanOption;
+import org.geometerplus.zlibrary.core.util.ZLInputStreamWithOffset;
 
+/*
+ * Text records are read one after another from the base stream. With
+ * parallel decoding, the records ahead of the current one are read and
+ * handed to a small pool; at most DECODED_RECORDS_NUMBER of them are
+ * kept decoded or in progress. Only HUFF/CDIC records are decoded so:
+ * a PalmDOC record takes less time to decode than to hand over.
+ */
 abstract class PalmDocLikeStream extends PdbStream {
+	public static final ZLBooleanOption ParallelDecodingOption =
+		new ZLBooleanOption("Options", "ParallelRecordDecoding", true);
+
+	// no parallel decoding on single-core devices
+	private static final int DECODING_THREADS_NUMBER =
+		Math.min(4, Runtime.getRuntime().availableProcessors());
+	private static final int DECODED_RECORDS_NUMBER = 2 * DECODING_THREADS_NUMBER;
+
+	private static ExecutorService ourDecodingPool;
+
+	private static synchronized ExecutorService decodingPool() {
+		if (ourDecodingPool == null) {
+			ourDecodingPool = Executors.newFixedThreadPool(DECODING_THREADS_NUMBER, new ThreadFactory() {
+				private final ThreadFactory myDefaultThreadFactory = Executors.defaultThreadFactory();
+
+				public Thread newThread(Runnable r) {
+					final Thread th = myDefaultThreadFactory.newThread(r);
+					th.setDaemon(true);
+					return th;
+				}
+			});
+		}
+		return ourDecodingPool;
+	}
+
+	private static final class DecodedRecord {
+		final byte[] Data;
+		final int Length;
+
+		DecodedRecord(byte[] data, int length) {
+			Data = data;
+			Length = length;
+		}
+	}
+
 	protected int myMaxRecordIndex;
 	protected int myRecordIndex;
 	protected interface CompressionType {
@@ -32,54 +78,191 @@ abstract class PalmDocLikeStream extends PdbStream {
 		int HUFFDIC = 17480;
 	}
 	protected int myCompressionType;
+	// describes the trailing entries appended to every text record
+	protected int myExtraDataFlags;
+	protected int myHuffdicRecordIndex;
+	protected int myHuffdicRecordsNumber;
 
 	private final long myFileSize;
 
+	private boolean myIsDecodingStarted;
+	private HuffdicDecompressor myHuffdicDecompressor;
+	private byte[] myRecordBuffer = new byte[0];
+	private LinkedList<Future<DecodedRecord>> myDecodedRecords;
+	private int myLastSubmittedIndex;
+
 	PalmDocLikeStream(ZLFile file) throws IOException {
 		super(file);
 		myFileSize = file.size();
 	}
 
+	private int recordEnd(int index) {
+		return (index + 1 < myHeader.Offsets.length) ? myHeader.Offsets[index + 1] : (int)myFileSize;
+	}
+
+	// reads the raw record that follows the current position of the base stream
+	private int readRecord(int index) throws IOException {
+		final int offset = myHeader.Offsets[index];
+		final int size = recordEnd(index) - offset;
+		if (size < 0 || offset < myBase.offset()) {
+			throw new IOException("Invalid offset of record " + index);
+		}
+		PdbUtil.skip(myBase, offset - myBase.offset());
+		if (myRecordBuffer.length < size) {
+			myRecordBuffer = new byte[size];
+		}
+		PdbUtil.readFully(myBase, myRecordBuffer, size);
+		return size;
+	}
+
+	// reads records by their offsets in a separate stream; the base stream is not moved
+	private byte[][] readRecords(int first, int number) throws IOException {
+		if (first < 0 || number <= 0 || first + number > myHeader.Offsets.length) {
+			throw new IOException("Invalid record range " + first + ".." + (first + number - 1));
+		}
+		final ZLInputStreamWithOffset stream = new ZLInputStreamWithOffset(myFile.getInputStream());
+		try {
+			final byte[][] records = new byte[number][];
+			for (int i = 0; i < number; ++i) {
+				final int offset = myHeader.Offsets[first + i];
+				final int size = recordEnd(first + i) - offset;
+				if (size < 0 || offset < stream.offset()) {
+					throw new IOException("Invalid offset of record " + (first + i));
+				}
+				PdbUtil.skip(stream, offset - stream.offset());
+				records[i] = new byte[size];
+				PdbUtil.readFully(stream, records[i], size);
+			}
+			return records;
+		} finally {
+			stream.close();
+		}
+	}
+
+	private static int trailingEntrySize(byte[] data, int end) {
+		int size = 0;
+		for (int shift = 0; end > 0 && shift < 28; shift += 7) {
+			final int b = data[--end] & 0xFF;
+			size |= (b & 0x7F) << shift;
+			if ((b & 0x80) != 0) {
+				break;
+			}
+		}
+		return size;
+	}
+
+	/*
+	 * Each bit of myExtraDataFlags but the lowest one marks an entry that
+	 * ends with its own size; the lowest bit marks multibyte character
+	 * data, which are the first ones after the text.
+	 */
+	private int trailingEntriesSize(byte[] record, int length) {
+		int size = 0;
+		for (int flags = myExtraDataFlags >> 1; flags != 0; flags >>= 1) {
+			if ((flags & 1) != 0 && size < length) {
+				size += trailingEntrySize(record, length - size);
+			}
+		}
+		if ((myExtraDataFlags & 1) != 0 && size < length) {
+			size += (record[length - size - 1] & 0x3) + 1;
+		}
+		return Math.min(size, length);
+	}
+
+	// called from the pool threads when parallel decoding is on
+	private int decodeRecord(byte[] record, int length, byte[] target) throws IOException {
+		length -= trailingEntriesSize(record, length);
+		switch (myCompressionType) {
+			case CompressionType.NONE:
+				length = Math.min(length, target.length);
+				System.arraycopy(record, 0, target, 0, length);
+				return length;
+			case CompressionType.DOC:
+				return DocDecompressor.decompress(record, length, target);
+			case CompressionType.HUFFDIC:
+				length = myHuffdicDecompressor.decompress(record, length, target);
+				if (length == -1) {
+					throw new IOException("Decompressed record is too long");
+				}
+				return length;
+			default:
+				throw new IOException("Unsupported compression type " + myCompressionType);
+		}
+	}
+
+	private void startDecoding() throws IOException {
+		myIsDecodingStarted = true;
+		if (myCompressionType == CompressionType.HUFFDIC) {
+			final byte[][] records = readRecords(myHuffdicRecordIndex, myHuffdicRecordsNumber);
+			final byte[][] cdics = new byte[records.length - 1][];
+			System.arraycopy(records, 1, cdics, 0, cdics.length);
+			myHuffdicDecompressor = new HuffdicDecompressor(records[0], cdics);
+		}
+		if (myCompressionType == CompressionType.HUFFDIC &&
+			DECODING_THREADS_NUMBER > 1 &&
+			myMaxRecordIndex > myRecordIndex + 1 &&
+			ParallelDecodingOption.getValue()) {
+			myDecodedRecords = new LinkedList<Future<DecodedRecord>>();
+			myLastSubmittedIndex = myRecordIndex;
+		}
+	}
+
+	private DecodedRecord nextDecodedRecord() throws IOException, InterruptedException, ExecutionException {
+		while (myDecodedRecords.size() < DECODED_RECORDS_NUMBER && myLastSubmittedIndex < myMaxRecordIndex) {
+			final int length = readRecord(++myLastSubmittedIndex);
+			final byte[] record = new byte[length];
+			System.arraycopy(myRecordBuffer, 0, record, 0, length);
+			final int targetLength = myBuffer.length;
+			myDecodedRecords.add(decodingPool().submit(new Callable<DecodedRecord>() {
+				public DecodedRecord call() throws IOException {
+					final byte[] target = new byte[targetLength];
+					return new DecodedRecord(target, decodeRecord(record, length, target));
+				}
+			}));
+		}
+		return myDecodedRecords.removeFirst().get();
+	}
+
 	protected final boolean fillBuffer() {
 		while (myBufferOffset == myBufferLength) {
 			if (myRecordIndex + 1 > myMaxRecordIndex) {
 				return false;
 			}
-			++myRecordIndex;
-			final int currentOffset = myHeader.Offsets[myRecordIndex];
 
 			try {
-				myBase.skip(currentOffset - myBase.offset());
-				final int nextOffset =
-					(myRecordIndex + 1 < myHeader.Offsets.length) ?
-						myHeader.Offsets[myRecordIndex + 1] :
-						(int)myFileSize;
-				if (nextOffset < currentOffset) {
-					return false;
+				if (!myIsDecodingStarted) {
+					startDecoding();
 				}
-				final short recordSize = (short)Math.min(nextOffset - currentOffset, myBuffer.length);
-
-				switch (myCompressionType) {
-					case CompressionType.NONE:
-						myBase.read(myBuffer, 0, recordSize);
-						myBufferLength = recordSize;
-						break;
-					case CompressionType.DOC:
-						myBufferLength = (short)DocDecompressor.decompress(myBase, myBuffer, recordSize);
-						break;
-					//case CompressionType.HUFFDIC:
-					//	myBufferLength = (short)HuffdicDecompressor.decompress(myBase, myBuffer, recordSize);
-					//	break;
-					default:
-						// Unsupported compression type
-						return false;
+				++myRecordIndex;
+				if (myDecodedRecords != null) {
+					final DecodedRecord record = nextDecodedRecord();
+					myBuffer = record.Data;
+					myBufferLength = (short)record.Length;
+				} else {
+					final int length = readRecord(myRecordIndex);
+					myBufferLength = (short)decodeRecord(myRecordBuffer, length, myBuffer);
 				}
 			} catch (IOException e) {
 				return false;
+			} catch (InterruptedException e) {
+				return false;
+			} catch (ExecutionException e) {
+				return false;
 			}
 			myBufferOffset = 0;
 		}
 		
 		return true;
 	}
+
+	@Override
+	public void close() throws IOException {
+		if (myDecodedRecords != null) {
+			for (Future<DecodedRecord> record : myDecodedRecords) {
+				record.cancel(false);
+			}
+			myDecodedRecords.clear();
+		}
+		super.close();
+	}
 }
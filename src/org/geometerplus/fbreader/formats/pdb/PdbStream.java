@@ -26,6 +26,7 @@ import org.geometerplus.zlibrary.core.filesystem.ZLFile;
 import org.geometerplus.zlibrary.core.util.ZLInputStreamWithOffset;
 
 public abstract class PdbStream extends InputStream {
+	protected final ZLFile myFile;
 	protected final ZLInputStreamWithOffset myBase;
 	public PdbHeader myHeader;
 	protected byte[] myBuffer;
@@ -34,6 +35,7 @@ public abstract class PdbStream extends InputStream {
 	protected short myBufferOffset;
 
 	public PdbStream(ZLFile file) throws IOException {
+		myFile = file;
 		myBase = new ZLInputStreamWithOffset(file.getInputStream());
 
 		myHeader = new PdbHeader(myBase);
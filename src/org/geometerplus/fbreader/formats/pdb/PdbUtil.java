@@ -31,6 +31,16 @@ public abstract class PdbUtil {
 		}
 	}
 
+	public static void readFully(InputStream stream, byte[] buffer, int length) throws IOException {
+		for (int offset = 0; offset < length; ) {
+			final int ready = stream.read(buffer, offset, length - offset);
+			if (ready <= 0) {
+				throw new IOException("Unexpected end of stream");
+			}
+			offset += ready;
+		}
+	}
+
 	public static int readShort(InputStream stream) throws IOException {
 		final byte[] tmp = new byte[2];
 		stream.read(tmp, 0, 2);
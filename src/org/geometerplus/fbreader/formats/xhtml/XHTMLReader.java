@@ -223,7 +223,7 @@ cycle:
 
 	private static ArrayList<String> ourExternalDTDs = new ArrayList<String>();
 
-	public static List<String> xhtmlDTDs() {
+	public static synchronized List<String> xhtmlDTDs() {
 		if (ourExternalDTDs.isEmpty()) {
 			ourExternalDTDs.add("formats/xhtml/xhtml-lat1.ent");
 			ourExternalDTDs.add("formats/xhtml/xhtml-special.ent");
@@ -100,7 +100,13 @@ public class Book {
 	private List<Tag> myTags;
 	private SeriesInfo mySeriesInfo;
 
-	private boolean myIsSaved;
+	// parts of the book info changed since it was loaded or saved
+	private static final int CHANGED_INFO = 1;
+	private static final int CHANGED_AUTHORS = 2;
+	private static final int CHANGED_TAGS = 4;
+	private static final int CHANGED_SERIES = 8;
+	private static final int CHANGED_ALL = CHANGED_INFO | CHANGED_AUTHORS | CHANGED_TAGS | CHANGED_SERIES;
+	private int myChanges;
 
 	Book(long id, ZLFile file, String title, String encoding, String language) {
 		myId = id;
@@ -108,12 +114,13 @@ public class Book {
 		myTitle = title;
 		myEncoding = encoding;
 		myLanguage = language;
-		myIsSaved = true;
+		myChanges = 0;
 	}
 
 	Book(ZLFile file) {
 		myId = -1;
 		File = file;
+		myChanges = CHANGED_ALL;
 	}
 
 	public void reloadInfoFromFile() {
@@ -128,7 +135,7 @@ public class Book {
 		myAuthors = database.loadAuthors(myId);
 		myTags = database.loadTags(myId);
 		mySeriesInfo = database.loadSeriesInfo(myId);
-		myIsSaved = true;
+		myChanges = 0;
 	}
 
 	boolean readMetaInfo() {
@@ -155,7 +162,7 @@ public class Book {
 		myAuthors = database.loadAuthors(myId);
 		myTags = database.loadTags(myId);
 		mySeriesInfo = database.loadSeriesInfo(myId);
-		myIsSaved = true;
+		myChanges = 0;
 	}
 
 	public List<Author> authors() {
@@ -176,10 +183,10 @@ public class Book {
 		if (myAuthors == null) {
 			myAuthors = new ArrayList<Author>();
 			myAuthors.add(author);
-			myIsSaved = false;
+			myChanges |= CHANGED_AUTHORS;
 		} else if (!myAuthors.contains(author)) {
 			myAuthors.add(author);
-			myIsSaved = false;
+			myChanges |= CHANGED_AUTHORS;
 		}
 	}
 
@@ -223,7 +230,7 @@ public class Book {
 	public void setTitle(String title) {
 		if (!ZLMiscUtil.equals(myTitle, title)) {
 			myTitle = title;
-			myIsSaved = false;
+			myChanges |= CHANGED_INFO;
 		}
 	}
 
@@ -239,14 +246,14 @@ public class Book {
 		if (mySeriesInfo == null) {
 			if (name != null) {
 				mySeriesInfo = new SeriesInfo(name, index);
-				myIsSaved = false;
+				myChanges |= CHANGED_SERIES;
 			}
 		} else if (name == null) {
 			mySeriesInfo = null;
-			myIsSaved = false;
+			myChanges |= CHANGED_SERIES;
 		} else if (!name.equals(mySeriesInfo.Name) || mySeriesInfo.Index != index) {
 			mySeriesInfo = new SeriesInfo(name, index);
-			myIsSaved = false;
+			myChanges |= CHANGED_SERIES;
 		}
 	}
 
@@ -257,7 +264,7 @@ public class Book {
 	public void setLanguage(String language) {
 		if (!ZLMiscUtil.equals(myLanguage, language)) {
 			myLanguage = language;
-			myIsSaved = false;
+			myChanges |= CHANGED_INFO;
 		}
 	}
 
@@ -268,7 +275,7 @@ public class Book {
 	public void setEncoding(String encoding) {
 		if (!ZLMiscUtil.equals(myEncoding, encoding)) {
 			myEncoding = encoding;
-			myIsSaved = false;
+			myChanges |= CHANGED_INFO;
 		}
 	}
 
@@ -290,7 +297,7 @@ public class Book {
 			}
 			if (!myTags.contains(tag)) {
 				myTags.add(tag);
-				myIsSaved = false;
+				myChanges |= CHANGED_TAGS;
 			}
 		}
 	}
@@ -299,59 +306,52 @@ public class Book {
 		addTag(Tag.getTag(null, tagName));
 	}
 
-	boolean matches(String pattern) {
-		if ((myTitle != null) && ZLMiscUtil.matchesIgnoreCase(myTitle, pattern)) {
-			return true;
-		}
-		if ((mySeriesInfo != null) && ZLMiscUtil.matchesIgnoreCase(mySeriesInfo.Name, pattern)) {
-			return true;
-		}
-		if (myAuthors != null) {
-			for (Author author : myAuthors) {
-				if (ZLMiscUtil.matchesIgnoreCase(author.DisplayName, pattern)) {
-					return true;
-				}
-			}
-		}
-		if (myTags != null) {
-			for (Tag tag : myTags) {
-				if (ZLMiscUtil.matchesIgnoreCase(tag.Name, pattern)) {
-					return true;
-				}
-			}
-		}
-		return false;
+	public boolean save() {
+		return save(null);
 	}
 
-	public boolean save() {
-		if (myIsSaved) {
+	/*
+	 * Writes the changed parts of the book info only; fileInfos
+	 * (if not null) is used to find the id of the book file.
+	 */
+	boolean save(final FileInfoSet fileInfos) {
+		if (myChanges == 0) {
 			return false;
 		}
 		final BooksDatabase database = BooksDatabase.Instance();
 		database.executeAsATransaction(new Runnable() {
 			public void run() {
 				if (myId >= 0) {
-					final FileInfoSet fileInfos = new FileInfoSet(File);
-					database.updateBookInfo(myId, fileInfos.getId(File), myEncoding, myLanguage, myTitle);
+					if ((myChanges & CHANGED_INFO) != 0) {
+						final FileInfoSet infos = fileInfos != null ? fileInfos : new FileInfoSet(File);
+						database.updateBookInfo(myId, infos.getId(File), myEncoding, myLanguage, myTitle);
+					}
 				} else {
-					myId = database.insertBookInfo(File, myEncoding, myLanguage, myTitle);
+					final FileInfoSet infos = fileInfos != null ? fileInfos : new FileInfoSet(File);
+					myId = database.insertBookInfo(infos.getId(File), myEncoding, myLanguage, myTitle);
 					storeAllVisitedHyperinks();
 				}
 
-				long index = 0;
-				database.deleteAllBookAuthors(myId);
-				for (Author author : authors()) {
-					database.saveBookAuthorInfo(myId, index++, author);
+				if ((myChanges & CHANGED_AUTHORS) != 0) {
+					long index = 0;
+					database.deleteAllBookAuthors(myId);
+					for (Author author : authors()) {
+						database.saveBookAuthorInfo(myId, index++, author);
+					}
+				}
+				if ((myChanges & CHANGED_TAGS) != 0) {
+					database.deleteAllBookTags(myId);
+					for (Tag tag : tags()) {
+						database.saveBookTagInfo(myId, tag);
+					}
 				}
-				database.deleteAllBookTags(myId);
-				for (Tag tag : tags()) {
-					database.saveBookTagInfo(myId, tag);
+				if ((myChanges & CHANGED_SERIES) != 0) {
+					database.saveBookSeriesInfo(myId, mySeriesInfo);
 				}
-				database.saveBookSeriesInfo(myId, mySeriesInfo);
 			}
 		});
 
-		myIsSaved = true;
+		myChanges = 0;
 		return true;
 	}
 
@@ -398,6 +398,22 @@ public class Book {
 		}
 	}
 
+	// page indices of a replaced book file are neither loaded nor kept
+	private String fileFingerprint() {
+		final ZLPhysicalFile physicalFile = File.getPhysicalFile();
+		return physicalFile != null ? physicalFile.size() + ":" + physicalFile.lastModified() : "";
+	}
+
+	public byte[] loadPageIndex(String configuration) {
+		return myId != -1 ? BooksDatabase.Instance().loadPageIndex(myId, fileFingerprint(), configuration) : null;
+	}
+
+	public void savePageIndex(String configuration, byte[] data) {
+		if (myId != -1) {
+			BooksDatabase.Instance().savePageIndex(myId, fileFingerprint(), configuration, data);
+		}
+	}
+
 	public void insertIntoBookList() {
 		if (myId != -1) {
 			BooksDatabase.Instance().insertIntoBookList(myId);
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.library;
+
+import java.io.InputStream;
+
+import org.geometerplus.zlibrary.core.constants.MimeTypes;
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.image.ZLLoadableImage;
+import org.geometerplus.zlibrary.core.image.ZLSingleImage;
+
+/*
+ * Cover of a local book. The image is not read until the cover is
+ * synchronized; after that it is read from the cover store, and
+ * inputStream() returns null for a book without a cover. The id is
+ * the fingerprint of the book version the cover was created for.
+ */
+final class BookCover extends ZLLoadableImage {
+	final ZLFile File;
+	private final String myId;
+	private volatile ZLSingleImage myImage;
+
+	BookCover(ZLFile file, String id) {
+		super(MimeTypes.MIME_IMAGE_AUTO);
+		File = file;
+		myId = id;
+	}
+
+	@Override
+	public int sourceType() {
+		return SourceType.DISK;
+	}
+
+	@Override
+	public String getId() {
+		return myId;
+	}
+
+	@Override
+	public void synchronize() {
+		if (!isSynchronized()) {
+			CoverCache.extract(this);
+			setSynchronized();
+		}
+	}
+
+	@Override
+	public void synchronizeFast() {
+		if (!isSynchronized() && CoverCache.load(this)) {
+			setSynchronized();
+		}
+	}
+
+	public String getURI() {
+		final ZLSingleImage image = myImage;
+		return image != null ? image.getURI() : null;
+	}
+
+	void setImage(ZLSingleImage image) {
+		myImage = image;
+	}
+
+	@Override
+	public InputStream inputStream() {
+		final ZLSingleImage image = myImage;
+		return image != null ? image.inputStream() : null;
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.fbreader.library;
+
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.util.ZLArrayUtils;
+
+/*
+ * Substring index over titles, authors, series and tags of the library
+ * books. Texts are folded (lower case, no diacritics on Latin letters,
+ * cyrillic yo as ye); every trigram of a folded text has a posting list
+ * of book slots, and a query checks only the books from the shortest
+ * list of its trigrams. A query that extends the previous one checks
+ * only the previous results.
+ */
+final class BookSearchIndex {
+	private static final String LATIN_FOLDING =
+		"aaaaaa.ceeeeiiii.nooooo.ouuuuy..aaaaaa.ceeeeiiii.nooooo.ouuuuy.y" +
+		"aaaaaaccccccccddddeeeeeeeeeegggggggghhhhiiiiiiiii...jjkk.lllllll" +
+		"lllnnnnnn...oooooo..rrrrrrssssssssttttttuuuuuuuuuuuuwwyyyzzzzzzs";
+
+	static char fold(char ch) {
+		ch = Character.toLowerCase(ch);
+		if (ch >= '\u00C0' && ch < '\u0180') {
+			final char folded = LATIN_FOLDING.charAt(ch - '\u00C0');
+			return folded != '.' ? folded : ch;
+		}
+		return ch == '\u0451' ? '\u0435' : ch;
+	}
+
+	static String fold(String text) {
+		final char[] data = text.toCharArray();
+		for (int i = 0; i < data.length; ++i) {
+			data[i] = fold(data[i]);
+		}
+		return new String(data);
+	}
+
+	// field kinds, in the order of their rank
+	private static final byte TITLE = 0;
+	private static final byte AUTHOR = 1;
+	private static final byte SERIES = 2;
+	private static final byte TAG = 3;
+
+	private static final class Entry {
+		final Book Book;
+		final String[] Fields;
+		final byte[] Kinds;
+
+		Entry(Book book, String[] fields, byte[] kinds) {
+			Book = book;
+			Fields = fields;
+			Kinds = kinds;
+		}
+
+		/*
+		 * Returns -1 if no field contains the pattern; otherwise less
+		 * is better: title before author, series and tag matches,
+		 * a match at a word start before one inside a word.
+		 */
+		int rank(String pattern) {
+			int rank = -1;
+			for (int i = 0; i < Fields.length; ++i) {
+				final String field = Fields[i];
+				for (int index = field.indexOf(pattern); index != -1; index = field.indexOf(pattern, index + 1)) {
+					final boolean wordStart = index == 0 || !Character.isLetterOrDigit(field.charAt(index - 1));
+					final int r = 2 * Kinds[i] + (wordStart ? 0 : 1);
+					if (rank == -1 || r < rank) {
+						rank = r;
+					}
+					if (wordStart) {
+						break;
+					}
+				}
+			}
+			return rank;
+		}
+	}
+
+	// varint-coded gaps between the slots containing a trigram
+	private static final class Postings {
+		byte[] Data = new byte[4];
+		int Length;
+		int Count;
+		int Last = -1;
+
+		void add(int slot) {
+			if (slot == Last) {
+				return;
+			}
+			if (Length + 5 > Data.length) {
+				Data = ZLArrayUtils.createCopy(Data, Length, 2 * Data.length + 5);
+			}
+			int gap = slot - Last;
+			while ((gap & ~0x7F) != 0) {
+				Data[Length++] = (byte)((gap & 0x7F) | 0x80);
+				gap >>>= 7;
+			}
+			Data[Length++] = (byte)gap;
+			Last = slot;
+			++Count;
+		}
+
+		int[] slots() {
+			final int[] slots = new int[Count];
+			int position = 0;
+			int slot = -1;
+			for (int i = 0; i < Count; ++i) {
+				int gap = 0;
+				for (int shift = 0; ; shift += 7) {
+					final byte b = Data[position++];
+					gap |= (b & 0x7F) << shift;
+					if (b >= 0) {
+						break;
+					}
+				}
+				slot += gap;
+				slots[i] = slot;
+			}
+			return slots;
+		}
+	}
+
+	private static long trigram(String text, int index) {
+		return ((long)text.charAt(index) << 32) | ((long)text.charAt(index + 1) << 16) | text.charAt(index + 2);
+	}
+
+	// slots are never reused: a removed book leaves a null entry
+	private final ArrayList<Entry> myEntries = new ArrayList<Entry>();
+	private final HashMap<Long,Postings> myPostings = new HashMap<Long,Postings>();
+
+	private String myLastPattern;
+	private int[] myLastSlots;
+
+	synchronized void add(Book book) {
+		final ArrayList<String> fields = new ArrayList<String>();
+		final ArrayList<Byte> kinds = new ArrayList<Byte>();
+		if (book.getTitle() != null) {
+			fields.add(fold(book.getTitle()));
+			kinds.add(TITLE);
+		}
+		for (Author author : book.authors()) {
+			fields.add(fold(author.DisplayName));
+			kinds.add(AUTHOR);
+		}
+		if (book.getSeriesInfo() != null) {
+			fields.add(fold(book.getSeriesInfo().Name));
+			kinds.add(SERIES);
+		}
+		for (Tag tag : book.tags()) {
+			fields.add(fold(tag.Name));
+			kinds.add(TAG);
+		}
+		final byte[] kindArray = new byte[kinds.size()];
+		for (int i = 0; i < kindArray.length; ++i) {
+			kindArray[i] = kinds.get(i);
+		}
+
+		final int slot = myEntries.size();
+		myEntries.add(new Entry(book, fields.toArray(new String[fields.size()]), kindArray));
+		for (String field : fields) {
+			for (int i = 0; i + 3 <= field.length(); ++i) {
+				final Long key = trigram(field, i);
+				Postings postings = myPostings.get(key);
+				if (postings == null) {
+					postings = new Postings();
+					myPostings.put(key, postings);
+				}
+				postings.add(slot);
+			}
+		}
+		myLastPattern = null;
+	}
+
+	// books are compared by id, which new books get only when saved, so there is no map by book
+	synchronized void remove(Book book) {
+		for (int i = 0; i < myEntries.size(); ++i) {
+			final Entry entry = myEntries.get(i);
+			if (entry != null && entry.Book.equals(book)) {
+				myEntries.set(i, null);
+				myLastPattern = null;
+			}
+		}
+	}
+
+	// slots of the books that may contain the pattern
+	private int[] candidates(String pattern) {
+		if (myLastPattern != null && pattern.contains(myLastPattern)) {
+			return myLastSlots;
+		}
+		Postings shortest = null;
+		for (int i = 0; i + 3 <= pattern.length(); ++i) {
+			final Postings postings = myPostings.get(trigram(pattern, i));
+			if (postings == null) {
+				return new int[0];
+			}
+			if (shortest == null || postings.Count < shortest.Count) {
+				shortest = postings;
+			}
+		}
+		if (shortest != null) {
+			return shortest.slots();
+		}
+		final int[] all = new int[myEntries.size()];
+		for (int i = 0; i < all.length; ++i) {
+			all[i] = i;
+		}
+		return all;
+	}
+
+	/*
+	 * Returns the books with a title, author, series or tag containing
+	 * the pattern, the best matches first; at most limit books
+	 * if limit is not negative.
+	 */
+	synchronized List<Book> find(String pattern, int limit) {
+		pattern = fold(pattern);
+		final int[] candidates = candidates(pattern);
+		final int[] slots = new int[candidates.length];
+		final int[] ranks = new int[candidates.length];
+		int count = 0;
+		for (int slot : candidates) {
+			final Entry entry = myEntries.get(slot);
+			if (entry == null) {
+				continue;
+			}
+			final int rank = entry.rank(pattern);
+			if (rank != -1) {
+				slots[count] = slot;
+				ranks[count] = rank;
+				++count;
+			}
+		}
+		myLastPattern = pattern;
+		myLastSlots = ZLArrayUtils.createCopy(slots, count, count);
+
+		final ArrayList<Integer> order = new ArrayList<Integer>(count);
+		for (int i = 0; i < count; ++i) {
+			order.add(i);
+		}
+		Collections.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i0, Integer i1) {
+				final int diff = ranks[i0] - ranks[i1];
+				if (diff != 0) {
+					return diff;
+				}
+				final String title0 = myEntries.get(slots[i0]).Book.getTitle();
+				final String title1 = myEntries.get(slots[i1]).Book.getTitle();
+				if (title0 == null || title1 == null) {
+					return title0 == null ? (title1 == null ? 0 : 1) : -1;
+				}
+				return title0.compareToIgnoreCase(title1);
+			}
+		});
+		if (limit >= 0 && count > limit) {
+			count = limit;
+		}
+		final ArrayList<Book> books = new ArrayList<Book>(count);
+		for (int i = 0; i < count; ++i) {
+			books.add(myEntries.get(slots[order.get(i)]).Book);
+		}
+		return books;
+	}
+}
@@ -65,12 +65,67 @@ public abstract class BooksDatabase {
 	protected abstract List<Tag> loadTags(long bookId);
 	protected abstract SeriesInfo loadSeriesInfo(long bookId);
 	protected abstract void updateBookInfo(long bookId, long fileId, String encoding, String language, String title);
-	protected abstract long insertBookInfo(ZLFile file, String encoding, String language, String title);
+	protected abstract long insertBookInfo(long fileId, String encoding, String language, String title);
 	protected abstract void deleteAllBookAuthors(long bookId);
-	protected abstract void saveBookAuthorInfo(long bookId, long index, Author author);
+	protected abstract void saveBookAuthorInfo(long bookId, long index, long authorId);
 	protected abstract void deleteAllBookTags(long bookId);
 	protected abstract void saveBookTagInfo(long bookId, Tag tag);
-	protected abstract void saveBookSeriesInfo(long bookId, SeriesInfo seriesInfo);
+	protected abstract void saveBookSeriesInfo(long bookId, long seriesId, float index);
+	protected abstract void deleteBookSeriesInfo(long bookId);
+
+	// return -1 if there is no such author (series)
+	protected abstract long findAuthorId(Author author);
+	protected abstract long insertAuthor(Author author);
+	protected abstract long findSeriesId(String name);
+	protected abstract long insertSeries(String name);
+
+	// authors and series are never deleted, so their ids can be cached
+	private final HashMap<Author,Long> myIdByAuthor = new HashMap<Author,Long>();
+	private final HashMap<String,Long> mySeriesIdByName = new HashMap<String,Long>();
+
+	protected void cacheAuthorId(Author author, long id) {
+		myIdByAuthor.put(author, id);
+	}
+
+	protected void cacheSeriesId(String name, long id) {
+		mySeriesIdByName.put(name, id);
+	}
+
+	private long getAuthorId(Author author) {
+		Long id = myIdByAuthor.get(author);
+		if (id == null) {
+			id = findAuthorId(author);
+			if (id == -1) {
+				id = insertAuthor(author);
+			}
+			myIdByAuthor.put(author, id);
+		}
+		return id;
+	}
+
+	private long getSeriesId(String name) {
+		Long id = mySeriesIdByName.get(name);
+		if (id == null) {
+			id = findSeriesId(name);
+			if (id == -1) {
+				id = insertSeries(name);
+			}
+			mySeriesIdByName.put(name, id);
+		}
+		return id;
+	}
+
+	final void saveBookAuthorInfo(long bookId, long index, Author author) {
+		saveBookAuthorInfo(bookId, index, getAuthorId(author));
+	}
+
+	final void saveBookSeriesInfo(long bookId, SeriesInfo seriesInfo) {
+		if (seriesInfo == null) {
+			deleteBookSeriesInfo(bookId);
+		} else {
+			saveBookSeriesInfo(bookId, getSeriesId(seriesInfo.Name), seriesInfo.Index);
+		}
+	}
 
 	protected FileInfo createFileInfo(long id, String name, FileInfo parent) {
 		return new FileInfo(name, parent, id);
@@ -107,4 +162,8 @@ public abstract class BooksDatabase {
 
 	protected abstract Collection<String> loadVisitedHyperlinks(long bookId);
 	protected abstract void addVisitedHyperlink(long bookId, String hyperlinkId);
+
+	protected abstract byte[] loadPageIndex(long bookId, String fingerprint, String configuration);
+	protected abstract void savePageIndex(long bookId, String fingerprint, String configuration, byte[] data);
+	protected abstract void deletePageIndices(long bookId);
 }
@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.library;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.geometerplus.zlibrary.core.constants.MimeTypes;
+import org.geometerplus.zlibrary.core.filesystem.*;
+import org.geometerplus.zlibrary.core.image.*;
+import org.geometerplus.zlibrary.core.options.ZLIntegerRangeOption;
+
+import org.geometerplus.fbreader.formats.FormatPlugin;
+import org.geometerplus.fbreader.formats.PluginCollection;
+import org.geometerplus.fbreader.Paths;
+
+/*
+ * Covers are extracted from a book once per book version and kept in
+ * cacheDirectory/covers, one file per (path, size, modification date)
+ * fingerprint: the fingerprint, the mime type and the image bytes; a
+ * file without image bytes marks a book without a cover. Recently used
+ * BookCover objects are kept in a small LRU map by the same fingerprint,
+ * so list views get the same (already synchronized) image back until the
+ * book changes. The map lock is never held
+ * while a book or the store is read, and concurrent extractions of the
+ * same book share one task.
+ */
+abstract class CoverCache {
+	private static final int VERSION = 1;
+	private static final int MEMORY_CACHE_SIZE = 256;
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+
+	static final ZLIntegerRangeOption SizeLimitOption =
+		new ZLIntegerRangeOption("Memory", "CoverCacheSizeLimit", 0, 256, 16);
+
+	private static final LinkedHashMap<String,BookCover> ourCovers =
+		new LinkedHashMap<String,BookCover>(MEMORY_CACHE_SIZE, .75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,BookCover> eldest) {
+				return size() > MEMORY_CACHE_SIZE;
+			}
+		};
+	private static final ConcurrentHashMap<String,FutureTask<ZLSingleImage>> ourExtractions =
+		new ConcurrentHashMap<String,FutureTask<ZLSingleImage>>();
+	private static final Library.CoverStatistics ourStatistics = new Library.CoverStatistics();
+	// total size of the store in bytes, -1 until the store is listed
+	private static long ourStoreSize = -1;
+
+	private static String cacheDirectory() {
+		return Paths.cacheDirectory() + "/covers";
+	}
+
+	static BookCover getCover(ZLFile file) {
+		// a book that is not a local file has no version
+		final String fingerprint = fingerprint(file);
+		final String key = fingerprint != null ? fingerprint : file.getPath();
+		synchronized (ourCovers) {
+			++ourStatistics.Requests;
+			BookCover cover = ourCovers.get(key);
+			if (cover != null) {
+				++ourStatistics.MemoryHits;
+			} else {
+				cover = new BookCover(file, key);
+				ourCovers.put(key, cover);
+			}
+			return cover;
+		}
+	}
+
+	static Library.CoverStatistics getStatistics() {
+		final Library.CoverStatistics statistics = new Library.CoverStatistics();
+		synchronized (ourCovers) {
+			statistics.Requests = ourStatistics.Requests;
+			statistics.MemoryHits = ourStatistics.MemoryHits;
+			statistics.StoreHits = ourStatistics.StoreHits;
+			statistics.Extractions = ourStatistics.Extractions;
+			statistics.ExtractionTime = ourStatistics.ExtractionTime;
+		}
+		return statistics;
+	}
+
+	private static String fingerprint(ZLFile file) {
+		final ZLPhysicalFile physicalFile = file.getPhysicalFile();
+		if (physicalFile == null || !physicalFile.exists()) {
+			return null;
+		}
+		return file.getPath() + "\000" + physicalFile.size() + "\000" + physicalFile.lastModified();
+	}
+
+	private static File storeFile(String fingerprint) {
+		final int separator = fingerprint.indexOf('\000');
+		return new File(cacheDirectory(),
+			Integer.toHexString(fingerprint.substring(0, separator).hashCode()) + "-" +
+			Integer.toHexString(fingerprint.hashCode())
+		);
+	}
+
+	/*
+	 * Reads the stored cover of the current book version, if any,
+	 * into cover. Returns false if the book has not been stored yet.
+	 */
+	static boolean load(BookCover cover) {
+		final String fingerprint = fingerprint(cover.File);
+		if (fingerprint == null || SizeLimitOption.getValue() == 0) {
+			return false;
+		}
+		final File file = storeFile(fingerprint);
+		if (!file.exists()) {
+			return false;
+		}
+		RandomAccessFile stream = null;
+		try {
+			stream = new RandomAccessFile(file, "r");
+			if (stream.readInt() != VERSION || !fingerprint.equals(stream.readUTF())) {
+				return false;
+			}
+			final String mimeType = stream.readUTF();
+			final long offset = stream.getFilePointer();
+			final long length = stream.length() - offset;
+			cover.setImage(length > 0
+				? new ZLFileImage(mimeType, ZLFile.createFileByPath(file.getPath()), (int)offset, (int)length)
+				: null
+			);
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		file.setLastModified(System.currentTimeMillis());
+		synchronized (ourCovers) {
+			++ourStatistics.StoreHits;
+		}
+		return true;
+	}
+
+	static void extract(final BookCover cover) {
+		if (load(cover)) {
+			return;
+		}
+		final String path = cover.File.getPath();
+		FutureTask<ZLSingleImage> task = new FutureTask<ZLSingleImage>(new Callable<ZLSingleImage>() {
+			public ZLSingleImage call() {
+				final long start = System.currentTimeMillis();
+				try {
+					return readCover(cover.File);
+				} finally {
+					synchronized (ourCovers) {
+						++ourStatistics.Extractions;
+						ourStatistics.ExtractionTime += System.currentTimeMillis() - start;
+					}
+				}
+			}
+		});
+		final FutureTask<ZLSingleImage> running = ourExtractions.putIfAbsent(path, task);
+		if (running != null) {
+			task = running;
+		} else {
+			try {
+				task.run();
+			} finally {
+				ourExtractions.remove(path);
+			}
+		}
+		try {
+			cover.setImage(task.get());
+		} catch (InterruptedException e) {
+		} catch (ExecutionException e) {
+		}
+	}
+
+	private static ZLSingleImage readCover(ZLFile file) {
+		final FormatPlugin plugin = PluginCollection.Instance().getPlugin(file);
+		final ZLImage image = plugin != null ? plugin.readCover(file) : null;
+		ZLSingleImage singleImage = null;
+		if (image instanceof ZLSingleImage &&
+			!MimeTypes.MIME_IMAGE_PALM.equals(((ZLSingleImage)image).mimeType())) {
+			singleImage = (ZLSingleImage)image;
+			if (singleImage instanceof ZLLoadableImage) {
+				((ZLLoadableImage)singleImage).synchronize();
+			}
+		}
+
+		final String fingerprint = fingerprint(file);
+		if (fingerprint == null || SizeLimitOption.getValue() == 0) {
+			return singleImage;
+		}
+		final File storeFile = storeFile(fingerprint);
+		final File temporaryFile = new File(storeFile.getPath() + TEMPORARY_SUFFIX);
+		temporaryFile.getParentFile().mkdirs();
+		InputStream input = null;
+		DataOutputStream output = null;
+		try {
+			output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), 8192));
+			output.writeInt(VERSION);
+			output.writeUTF(fingerprint);
+			output.writeUTF(singleImage != null ? singleImage.mimeType() : "");
+			final int offset = output.size();
+			if (singleImage != null) {
+				input = singleImage.inputStream();
+			}
+			if (input != null) {
+				final byte[] buffer = new byte[8192];
+				int count;
+				while ((count = input.read(buffer)) != -1) {
+					output.write(buffer, 0, count);
+				}
+			}
+			final int length = output.size() - offset;
+			output.close();
+			output = null;
+			if (!temporaryFile.renameTo(storeFile)) {
+				temporaryFile.delete();
+				return singleImage;
+			}
+			added(storeFile);
+			return length > 0
+				? new ZLFileImage(singleImage.mimeType(), ZLFile.createFileByPath(storeFile.getPath()), offset, length)
+				: null;
+		} catch (IOException e) {
+			temporaryFile.delete();
+			return singleImage;
+		} finally {
+			if (input != null) {
+				try {
+					input.close();
+				} catch (IOException e) {
+				}
+			}
+			if (output != null) {
+				try {
+					output.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	// the store is listed once; after that it is only listed again to evict old covers
+	private static synchronized void added(File current) {
+		if (ourStoreSize == -1) {
+			ourStoreSize = 0;
+			final File[] files = new File(cacheDirectory()).listFiles();
+			if (files != null) {
+				for (File file : files) {
+					ourStoreSize += file.length();
+				}
+			}
+		} else {
+			ourStoreSize += current.length();
+		}
+		final long limit = SizeLimitOption.getValue() * 1024L * 1024L;
+		if (ourStoreSize <= limit) {
+			return;
+		}
+
+		final File[] files = new File(cacheDirectory()).listFiles();
+		if (files == null) {
+			return;
+		}
+		final HashMap<File,Long> lastUsed = new HashMap<File,Long>();
+		for (File file : files) {
+			lastUsed.put(file, file.lastModified());
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File file0, File file1) {
+				final long diff = lastUsed.get(file0) - lastUsed.get(file1);
+				return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+			}
+		});
+		// evict down to 3/4 of the limit, so the store is not listed on every extraction
+		for (File file : files) {
+			if (ourStoreSize <= limit * 3 / 4) {
+				break;
+			}
+			if (file.equals(current) || file.getName().endsWith(TEMPORARY_SUFFIX)) {
+				continue;
+			}
+			final long size = file.length();
+			if (file.delete()) {
+				ourStoreSize -= size;
+			}
+		}
+	}
+}
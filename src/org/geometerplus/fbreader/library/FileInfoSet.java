@@ -101,20 +101,29 @@ public final class FileInfoSet {
 			return true;
 		}
 		final long fileSize = file.size();
+		final long lastModified = file.lastModified();
 		FileInfo info = get(file);
 		if (info.FileSize == fileSize) {
-			return true;
-		} else {
-			info.FileSize = fileSize;
-			if (processChildren) {
-				removeChildren(info);
-				myInfosToSave.add(info);
-				addChildren(file);
-			} else {
+			if (info.LastModified == lastModified) {
+				return true;
+			}
+			if (info.LastModified == -1) {
+				// the date was not stored by older versions
+				info.LastModified = lastModified;
 				myInfosToSave.add(info);
+				return true;
 			}
-			return false;
 		}
+		info.FileSize = fileSize;
+		info.LastModified = lastModified;
+		if (processChildren) {
+			removeChildren(info);
+			myInfosToSave.add(info);
+			addChildren(file);
+		} else {
+			myInfosToSave.add(info);
+		}
+		return false;
 	}
 
 	public List<ZLFile> archiveEntries(ZLFile file) {
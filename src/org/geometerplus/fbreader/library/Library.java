@@ -20,11 +20,13 @@
 package org.geometerplus.fbreader.library;
 
 import java.io.File;
-import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.*;
 
+import org.geometerplus.zlibrary.core.encoding.ZLEncodingCollection;
 import org.geometerplus.zlibrary.core.filesystem.*;
 import org.geometerplus.zlibrary.core.image.ZLImage;
+import org.geometerplus.zlibrary.core.resources.ZLResource;
 import org.geometerplus.zlibrary.core.util.ZLMiscUtil;
 
 import org.geometerplus.fbreader.formats.FormatPlugin;
@@ -33,7 +35,14 @@ import org.geometerplus.fbreader.Paths;
 
 public final class Library {
 	public static final int STATE_NOT_INITIALIZED = 0;
-	public static final int STATE_FULLY_INITIALIZED = 1;
+	// some books are found, the scan is still running
+	public static final int STATE_PARTIALLY_INITIALIZED = 1;
+	public static final int STATE_FULLY_INITIALIZED = 2;
+
+	public interface ChangeListener {
+		// called by the scanning thread when new books are found
+		void onLibraryChanged();
+	}
 
 	private final LinkedList<Book> myBooks = new LinkedList<Book>();
 	private final HashSet<Book> myExternalBooks = new HashSet<Book>();
@@ -43,9 +52,71 @@ public final class Library {
 	private final LibraryTree myRecentBooks = new RootTree();
 	private final LibraryTree myFavorites = new RootTree();
 	private LibraryTree mySearchResult = new RootTree();
+	private final BookSearchIndex mySearchIndex = new BookSearchIndex();
+
+	public static final class ScanStatistics {
+		public int FilesNumber;
+		public int ChangedFilesNumber;
+		public int BooksNumber;
+		public int SavedBooksNumber;
+		// phase times in milliseconds
+		public long EnumerationTime;
+		public long CheckTime;
+		public long ParsingTime;
+		public long SaveTime;
+		public long BuildTime;
+
+		@Override
+		public String toString() {
+			return
+				FilesNumber + " files (" + ChangedFilesNumber + " changed), " +
+				BooksNumber + " books (" + SavedBooksNumber + " saved); enumeration " +
+				EnumerationTime + "ms, check " + CheckTime + "ms, parsing " + ParsingTime +
+				"ms, save " + SaveTime + "ms, build " + BuildTime + "ms";
+		}
+	}
+
+	public static final class CoverStatistics {
+		public int Requests;
+		public int MemoryHits;
+		public int StoreHits;
+		public int Extractions;
+		// in milliseconds
+		public long ExtractionTime;
+
+		@Override
+		public String toString() {
+			final int hits = MemoryHits + StoreHits;
+			return
+				Requests + " requests, " + MemoryHits + " memory hits, " + StoreHits +
+				" store hits (" + (Requests > 0 ? 100 * hits / Requests : 0) + "%), " +
+				Extractions + " extractions in " + ExtractionTime + "ms";
+		}
+	}
+
+	private final ScanStatistics myScanStatistics = new ScanStatistics();
 
 	private volatile int myState = STATE_NOT_INITIALIZED;
 	private volatile boolean myInterrupted = false;
+	// not the library itself: synchronize() holds that lock for the whole scan
+	private final Object myStateLock = new Object();
+
+	// minimal interval between two change notifications, in milliseconds
+	private static final long CHANGE_NOTIFICATION_INTERVAL = 500;
+	private final List<ChangeListener> myChangeListeners =
+		Collections.synchronizedList(new LinkedList<ChangeListener>());
+	private long myLastChangeNotificationTime;
+
+	/*
+	 * Books found by the scan but not yet added to the trees. The trees are
+	 * changed by the threads that read them, in applyFoundBooks(), never by
+	 * the scanning thread; this list is the lock for these changes.
+	 */
+	private final ArrayList<Book> myFoundBooks = new ArrayList<Book>();
+	// loaded before the first book is found
+	private List<Long> myRecentBookIds;
+	private Set<Long> myFavoriteBookIds;
+	private final HashMap<Long,Book> myRecentBookById = new HashMap<Long,Book>();
 
 	public Library() {
 	}
@@ -55,18 +126,40 @@ public final class Library {
 	}
 
 	public void waitForState(int state) {
-		while (myState < state && !myInterrupted) {
-			synchronized(this) {
-				if (myState < state && !myInterrupted) {
-					try {
-						wait();
-					} catch (InterruptedException e) {
-					}
+		synchronized (myStateLock) {
+			while (myState < state && !myInterrupted) {
+				try {
+					myStateLock.wait();
+				} catch (InterruptedException e) {
 				}
 			}
 		}
 	}
 
+	private void setState(int state) {
+		synchronized (myStateLock) {
+			myState = state;
+			myStateLock.notifyAll();
+		}
+	}
+
+	public void addChangeListener(ChangeListener listener) {
+		myChangeListeners.add(listener);
+	}
+
+	public void removeChangeListener(ChangeListener listener) {
+		myChangeListeners.remove(listener);
+	}
+
+	private void fireLibraryChanged() {
+		myLastChangeNotificationTime = System.currentTimeMillis();
+		synchronized (myChangeListeners) {
+			for (ChangeListener listener : myChangeListeners) {
+				listener.onLibraryChanged();
+			}
+		}
+	}
+
 	public static ZLResourceFile getHelpFile() {
 		final ZLResourceFile file = ZLResourceFile.createResourceFile(
 			"data/help/MiniHelp." + Locale.getDefault().getLanguage() + ".fb2"
@@ -91,22 +184,6 @@ public final class Library {
 		return book;
 	}
 
-	private void collectBooks(
-		ZLFile file,
-		FileInfoSet fileInfos,
-		Map<Long,Book> savedBooks,
-		boolean doReadMetaInfo
-	) {
-		Book book = getBook(file, fileInfos, savedBooks, doReadMetaInfo);
-		if (book != null) {
-			myBooks.add(book);
-		} else if (file.isArchive()) {
-			for (ZLFile entry : fileInfos.archiveEntries(file)) {
-				collectBooks(entry, fileInfos, savedBooks, doReadMetaInfo);
-			}
-		}
-	}
-
 	private void collectExternalBooks(FileInfoSet fileInfos, Map<Long,Book> savedBooks) {
 		final HashSet<ZLPhysicalFile> myUpdatedFiles = new HashSet<ZLPhysicalFile>();
 		final HashSet<Long> files = new HashSet<Long>(savedBooks.keySet());
@@ -132,56 +209,203 @@ public final class Library {
 			}
 			final long bookId = book.getId();
 			if (bookId != -1 && BooksDatabase.Instance().checkBookList(bookId)) {
-				myBooks.add(book);
+				addBook(book);
 				myExternalBooks.add(book);
 			}
 		}
 	}
 
-	private List<ZLPhysicalFile> collectPhysicalFiles() {
-		final Queue<ZLFile> dirQueue = new LinkedList<ZLFile>();
-		final HashSet<ZLFile> dirSet = new HashSet<ZLFile>();
-		final LinkedList<ZLPhysicalFile> fileList = new LinkedList<ZLPhysicalFile>();
+	private static final class DirectoryListing implements Callable<DirectoryListing> {
+		final ZLFile Directory;
+		final ArrayList<ZLFile> Directories = new ArrayList<ZLFile>();
+		final ArrayList<ZLPhysicalFile> Files = new ArrayList<ZLPhysicalFile>();
 
-		dirQueue.offer(new ZLPhysicalFile(new File(Paths.BooksDirectoryOption().getValue())));
+		DirectoryListing(ZLFile directory) {
+			Directory = directory;
+		}
 
-		while (!dirQueue.isEmpty()) {
-			for (ZLFile file : dirQueue.poll().children()) {
+		public DirectoryListing call() {
+			for (ZLFile file : Directory.children()) {
 				if (file.isDirectory()) {
-					if (!dirSet.contains(file)) {
-						dirQueue.add(file);
-						dirSet.add(file);
-					}
+					Directories.add(file);
 				} else {
-					file.setCached(true);
-					fileList.add((ZLPhysicalFile)file);
+					Files.add((ZLPhysicalFile)file);
+				}
+			}
+			return this;
+		}
+	}
+
+	// directories are listed in parallel, the traversal itself is done by the calling thread
+	private List<ZLPhysicalFile> collectPhysicalFiles(ExecutorService pool) throws InterruptedException {
+		final CompletionService<DirectoryListing> listings = new ExecutorCompletionService<DirectoryListing>(pool);
+		final HashSet<ZLFile> dirSet = new HashSet<ZLFile>();
+		final ArrayList<ZLPhysicalFile> fileList = new ArrayList<ZLPhysicalFile>();
+
+		listings.submit(new DirectoryListing(new ZLPhysicalFile(new File(Paths.BooksDirectoryOption().getValue()))));
+		for (int pending = 1; pending > 0; --pending) {
+			final DirectoryListing listing;
+			try {
+				listing = listings.take().get();
+			} catch (ExecutionException e) {
+				continue;
+			}
+			for (ZLFile directory : listing.Directories) {
+				if (dirSet.add(directory)) {
+					listings.submit(new DirectoryListing(directory));
+					++pending;
 				}
 			}
+			for (ZLPhysicalFile file : listing.Files) {
+				file.setCached(true);
+				fileList.add(file);
+			}
 		}
 		return fileList;
 	}
 
-	private void collectBooks() {
-		final List<ZLPhysicalFile> physicalFilesList = collectPhysicalFiles();
+	/*
+	 * Reads meta info of one file in a pool thread; Result is
+	 * the book saved in the database (or null) before the call
+	 * and the book found in the file (or null) after it.
+	 */
+	private static final class MetaInfoTask implements Callable<MetaInfoTask> {
+		final ZLFile File;
+		final ZLPhysicalFile PhysicalFile;
+		final boolean ReadMetaInfo;
+		Book Result;
+
+		MetaInfoTask(ZLFile file, ZLPhysicalFile physicalFile, Book saved, boolean readMetaInfo) {
+			File = file;
+			PhysicalFile = physicalFile;
+			Result = saved;
+			ReadMetaInfo = readMetaInfo;
+		}
+
+		public MetaInfoTask call() {
+			boolean doReadMetaInfo = ReadMetaInfo;
+			if (Result == null) {
+				doReadMetaInfo = true;
+				Result = new Book(File);
+			}
+			if (doReadMetaInfo && !Result.readMetaInfo()) {
+				Result = null;
+			}
+			return this;
+		}
+	}
+
+	/*
+	 * Changes are detected by file size and modification time, files are
+	 * checked by the calling thread that owns fileInfos, meta info is read
+	 * by the pool threads, and every book found is published at once,
+	 * while other files are still being read.
+	 */
+	private void collectBooks(ExecutorService pool) throws InterruptedException {
+		long time = System.currentTimeMillis();
+		final List<ZLPhysicalFile> physicalFilesList = collectPhysicalFiles(pool);
+		myScanStatistics.FilesNumber = physicalFilesList.size();
+		myScanStatistics.EnumerationTime = System.currentTimeMillis() - time;
 
-		FileInfoSet fileInfos = new FileInfoSet();
+		time = System.currentTimeMillis();
+		final FileInfoSet fileInfos = new FileInfoSet();
 
 		final Map<Long,Book> savedBooks = BooksDatabase.Instance().loadBooks(fileInfos);
+		myRecentBookIds = BooksDatabase.Instance().loadRecentBookIds();
+		myFavoriteBookIds = new HashSet<Long>(BooksDatabase.Instance().loadFavoritesIds());
 
+		final boolean[] changed = new boolean[physicalFilesList.size()];
+		int index = 0;
 		for (ZLPhysicalFile file : physicalFilesList) {
 			// TODO: better value for this flag
 			final boolean flag = !"epub".equals(file.getExtension());
-			collectBooks(file, fileInfos, savedBooks, !fileInfos.check(file, flag));
+			changed[index] = !fileInfos.check(file, flag);
+			if (changed[index]) {
+				++myScanStatistics.ChangedFilesNumber;
+			}
+			++index;
+		}
+		// new files get their ids in one transaction
+		fileInfos.save();
+		myScanStatistics.CheckTime = System.currentTimeMillis() - time;
+
+		time = System.currentTimeMillis();
+		// lazily created singletons are not thread-safe
+		PluginCollection.Instance();
+		ZLResource.resource("library");
+		ZLEncodingCollection.Instance();
+
+		final CompletionService<MetaInfoTask> tasks = new ExecutorCompletionService<MetaInfoTask>(pool);
+		final HashMap<ZLPhysicalFile,Integer> pendingByFile = new HashMap<ZLPhysicalFile,Integer>();
+		// saved books read again since their files have changed
+		final ArrayList<Book> reparsedBooks = new ArrayList<Book>();
+		int pending = 0;
+		index = 0;
+		for (ZLPhysicalFile file : physicalFilesList) {
+			tasks.submit(new MetaInfoTask(file, file, savedBooks.remove(fileInfos.getId(file)), changed[index++]));
+			pendingByFile.put(file, 1);
+			++pending;
+		}
+		for (; pending > 0; --pending) {
+			final MetaInfoTask task;
+			try {
+				task = tasks.take().get();
+			} catch (ExecutionException e) {
+				// a file that cannot be read is not a book
+				continue;
+			}
+			int count = pendingByFile.get(task.PhysicalFile) - 1;
+			if (task.Result != null) {
+				if (task.ReadMetaInfo && task.Result.getId() != -1) {
+					reparsedBooks.add(task.Result);
+				}
+				addBook(task.Result);
+			} else if (task.File.isArchive()) {
+				final boolean readMetaInfo = task.ReadMetaInfo;
+				for (ZLFile entry : fileInfos.archiveEntries(task.File)) {
+					tasks.submit(new MetaInfoTask(
+						entry, task.PhysicalFile, savedBooks.remove(fileInfos.getId(entry)), readMetaInfo
+					));
+					++count;
+					++pending;
+				}
+			}
+			if (count > 0) {
+				pendingByFile.put(task.PhysicalFile, count);
+			} else {
+				pendingByFile.remove(task.PhysicalFile);
+				task.PhysicalFile.setCached(false);
+			}
+		}
+		for (ZLPhysicalFile file : pendingByFile.keySet()) {
 			file.setCached(false);
 		}
+
 		final Book helpBook = getBook(getHelpFile(), fileInfos, savedBooks, false);
 		if (helpBook != null) {
-			myBooks.add(helpBook);
+			addBook(helpBook);
 		}
 
 		collectExternalBooks(fileInfos, savedBooks);
+		myScanStatistics.BooksNumber = myBooks.size();
+		myScanStatistics.ParsingTime = System.currentTimeMillis() - time;
 
-		fileInfos.save();
+		time = System.currentTimeMillis();
+		// only new and changed books are written, file ids are taken from fileInfos
+		BooksDatabase.Instance().executeAsATransaction(new Runnable() {
+			public void run() {
+				for (Book book : myBooks) {
+					if (book.save(fileInfos)) {
+						++myScanStatistics.SavedBooksNumber;
+					}
+				}
+				for (Book book : reparsedBooks) {
+					BooksDatabase.Instance().deletePageIndices(book.getId());
+				}
+				fileInfos.save();
+			}
+		});
+		myScanStatistics.SaveTime = System.currentTimeMillis() - time;
 	}
 
 	private static class AuthorSeriesPair {
@@ -226,118 +450,115 @@ public final class Library {
 		return tagTree;
 	}
 
-	private void build() {
-		final HashMap<Tag,TagTree> tagTreeMap = new HashMap<Tag,TagTree>();
-		final HashMap<Author,AuthorTree> authorTreeMap = new HashMap<Author,AuthorTree>();
-		final HashMap<AuthorSeriesPair,SeriesTree> seriesTreeMap = new HashMap<AuthorSeriesPair,SeriesTree>();
-		final HashMap<Long,Book> bookById = new HashMap<Long,Book>();
+	private final HashMap<Tag,TagTree> myTagTreeMap = new HashMap<Tag,TagTree>();
+	private final HashMap<Author,AuthorTree> myAuthorTreeMap = new HashMap<Author,AuthorTree>();
+	private final HashMap<AuthorSeriesPair,SeriesTree> mySeriesTreeMap = new HashMap<AuthorSeriesPair,SeriesTree>();
 
-		collectBooks();
+	// called by the scanning thread
+	private void addBook(Book book) {
+		myBooks.add(book);
+		mySearchIndex.add(book);
+		synchronized (myFoundBooks) {
+			myFoundBooks.add(book);
+		}
+		if (myState == STATE_NOT_INITIALIZED) {
+			setState(STATE_PARTIALLY_INITIALIZED);
+		}
+		if (System.currentTimeMillis() - myLastChangeNotificationTime >= CHANGE_NOTIFICATION_INTERVAL) {
+			fireLibraryChanged();
+		}
+	}
 
-		for (Book book : myBooks) {
-			bookById.put(book.getId(), book);
-			List<Author> authors = book.authors();
-			if (authors.isEmpty()) {
-				authors = (List<Author>)myNullList;
+	/*
+	 * Adds the books found since the previous call to the trees;
+	 * called by every method that returns or changes a tree.
+	 */
+	private void applyFoundBooks() {
+		synchronized (myFoundBooks) {
+			if (myFoundBooks.isEmpty()) {
+				return;
 			}
-			final SeriesInfo seriesInfo = book.getSeriesInfo();
-			for (Author a : authors) {
-				AuthorTree authorTree = authorTreeMap.get(a);
-				if (authorTree == null) {
-					authorTree = myLibraryByAuthor.createAuthorSubTree(a);
-					authorTreeMap.put(a, authorTree);
+			final long time = System.currentTimeMillis();
+			boolean recentChanged = false;
+			for (Book book : myFoundBooks) {
+				addBookToTrees(book);
+				final long id = book.getId();
+				if (myFavoriteBookIds.contains(id)) {
+					myFavorites.createBookSubTree(book, true);
 				}
-				if (seriesInfo == null) {
-					authorTree.createBookSubTree(book, false);
-				} else {
-					final String series = seriesInfo.Name;
-					final AuthorSeriesPair pair = new AuthorSeriesPair(a, series);
-					SeriesTree seriesTree = seriesTreeMap.get(pair);
-					if (seriesTree == null) {
-						seriesTree = authorTree.createSeriesSubTree(series);
-						seriesTreeMap.put(pair, seriesTree);
-					}
-					seriesTree.createBookInSeriesSubTree(book);
+				if (myRecentBookIds.contains(id)) {
+					myRecentBookById.put(id, book);
+					recentChanged = true;
 				}
 			}
-
-			List<Tag> tags = book.tags();
-			if (tags.isEmpty()) {
-				tags = (List<Tag>)myNullList;
-			}
-			for (Tag t : tags) {
-				getTagTree(t, tagTreeMap).createBookSubTree(book, true);
+			myFoundBooks.clear();
+
+			if (recentChanged) {
+				myRecentBooks.clear();
+				for (long id : myRecentBookIds) {
+					final Book book = myRecentBookById.get(id);
+					if (book != null) {
+						myRecentBooks.createBookSubTree(book, true);
+					}
+				}
 			}
+			myFavorites.sortAllChildren();
+			myLibraryByAuthor.sortAllChildren();
+			myLibraryByTitle.sortAllChildren();
+			myLibraryByTag.sortAllChildren();
+			myScanStatistics.BuildTime += System.currentTimeMillis() - time;
 		}
+	}
 
-		boolean doGroupTitlesByFirstLetter = false;
-		if (myBooks.size() > 10) {
-			final HashSet<Character> letterSet = new HashSet<Character>();
-			for (Book book : myBooks) {
-				String title = book.getTitle();
-				if (title != null) {
-					title = title.trim();
-					if (!"".equals(title)) {
-						letterSet.add(title.charAt(0));
-					}
-				}
+	private void addBookToTrees(Book book) {
+		myLibraryByTitle.createBookSubTree(book, true);
+
+		List<Author> authors = book.authors();
+		if (authors.isEmpty()) {
+			authors = (List<Author>)myNullList;
+		}
+		final SeriesInfo seriesInfo = book.getSeriesInfo();
+		for (Author a : authors) {
+			AuthorTree authorTree = myAuthorTreeMap.get(a);
+			if (authorTree == null) {
+				authorTree = myLibraryByAuthor.createAuthorSubTree(a);
+				myAuthorTreeMap.put(a, authorTree);
 			}
-			doGroupTitlesByFirstLetter = letterSet.size() > myBooks.size() + 4;
-		}
-		if (doGroupTitlesByFirstLetter) {
-			final HashMap<Character,TitleTree> letterTrees = new HashMap<Character,TitleTree>();
-			for (Book book : myBooks) {
-				String title = book.getTitle();
-				if (title == null) {
-					continue;
-				}
-				title = title.trim();
-				if ("".equals(title)) {
-					continue;
-				}
-				Character c = title.charAt(0);
-				TitleTree tree = letterTrees.get(c);
-				if (tree == null) {
-					tree = myLibraryByTitle.createTitleSubTree(c.toString());
-					letterTrees.put(c, tree);
+			if (seriesInfo == null) {
+				authorTree.createBookSubTree(book, false);
+			} else {
+				final String series = seriesInfo.Name;
+				final AuthorSeriesPair pair = new AuthorSeriesPair(a, series);
+				SeriesTree seriesTree = mySeriesTreeMap.get(pair);
+				if (seriesTree == null) {
+					seriesTree = authorTree.createSeriesSubTree(series);
+					mySeriesTreeMap.put(pair, seriesTree);
 				}
-				tree.createBookSubTree(book, true);
-			}
-		} else {
-			for (Book book : myBooks) {
-				myLibraryByTitle.createBookSubTree(book, true);
+				seriesTree.createBookInSeriesSubTree(book);
 			}
 		}
 
-		final BooksDatabase db = BooksDatabase.Instance();
-		for (long id : db.loadRecentBookIds()) {
-			Book book = bookById.get(id);
-			if (book != null) {
-				myRecentBooks.createBookSubTree(book, true);
-			}
+		List<Tag> tags = book.tags();
+		if (tags.isEmpty()) {
+			tags = (List<Tag>)myNullList;
 		}
-
-		for (long id : db.loadFavoritesIds()) {
-			Book book = bookById.get(id);
-			if (book != null) {
-				myFavorites.createBookSubTree(book, true);
-			}
+		for (Tag t : tags) {
+			getTagTree(t, myTagTreeMap).createBookSubTree(book, true);
 		}
+	}
 
-		myFavorites.sortAllChildren();
-		myLibraryByAuthor.sortAllChildren();
-		myLibraryByTitle.sortAllChildren();
-		myLibraryByTag.sortAllChildren();
-
-		db.executeAsATransaction(new Runnable() {
-			public void run() {
-				for (Book book : myBooks) {
-					book.save();
-				}
-			}
-		});
+	private void build() throws InterruptedException {
+		final ExecutorService pool = Executors.newFixedThreadPool(
+			Math.max(2, Runtime.getRuntime().availableProcessors())
+		);
+		try {
+			collectBooks(pool);
+		} finally {
+			pool.shutdownNow();
+		}
 
-		myState = STATE_FULLY_INITIALIZED;
+		setState(STATE_FULLY_INITIALIZED);
+		fireLibraryChanged();
 	}
 
 	public synchronized void synchronize() {
@@ -348,27 +569,41 @@ public final class Library {
 			} catch (Throwable t) {
 				myInterrupted = true;
 			}
-			notifyAll();
+			synchronized (myStateLock) {
+				myStateLock.notifyAll();
+			}
 		}
 	}
 
+	/*
+	 * Statistics of the library scan; valid when the library is fully initialized.
+	 * BuildTime is the time spent adding the found books to the trees.
+	 */
+	public ScanStatistics getScanStatistics() {
+		return myScanStatistics;
+	}
+
 	public LibraryTree byAuthor() {
-		waitForState(STATE_FULLY_INITIALIZED);
+		waitForState(STATE_PARTIALLY_INITIALIZED);
+		applyFoundBooks();
 		return myLibraryByAuthor;
 	}
 
 	public LibraryTree byTitle() {
-		waitForState(STATE_FULLY_INITIALIZED);
+		waitForState(STATE_PARTIALLY_INITIALIZED);
+		applyFoundBooks();
 		return myLibraryByTitle;
 	}
 
 	public LibraryTree byTag() {
-		waitForState(STATE_FULLY_INITIALIZED);
+		waitForState(STATE_PARTIALLY_INITIALIZED);
+		applyFoundBooks();
 		return myLibraryByTag;
 	}
 
 	public LibraryTree recentBooks() {
-		waitForState(STATE_FULLY_INITIALIZED);
+		waitForState(STATE_PARTIALLY_INITIALIZED);
+		applyFoundBooks();
 		return myRecentBooks;
 	}
 
@@ -383,7 +618,8 @@ public final class Library {
 	}
 
 	public LibraryTree favorites() {
-		waitForState(STATE_FULLY_INITIALIZED);
+		waitForState(STATE_PARTIALLY_INITIALIZED);
+		applyFoundBooks();
 		return myFavorites;
 	}
 
@@ -392,16 +628,21 @@ public final class Library {
 	}
 
 	public LibraryTree searchBooks(String pattern) {
-		waitForState(STATE_FULLY_INITIALIZED);
+		return searchBooks(pattern, -1);
+	}
+
+	/*
+	 * Books are listed in the order of match quality: title matches
+	 * first, then author, series and tag ones; at most limit books
+	 * if limit is not negative.
+	 */
+	public LibraryTree searchBooks(String pattern, int limit) {
+		waitForState(STATE_PARTIALLY_INITIALIZED);
 		final RootTree newSearchResults = new RootTree();
 		if (pattern != null) {
-			pattern = pattern.toLowerCase();
-			for (Book book : myBooks) {
-				if (book.matches(pattern)) {
-					newSearchResults.createBookSubTree(book, true);
-				}
+			for (Book book : mySearchIndex.find(pattern, limit)) {
+				newSearchResults.createBookSubTree(book, true);
 			}
-			newSearchResults.sortAllChildren();
 			if (newSearchResults.hasChildren()) {
 				mySearchResult = newSearchResults;
 			}
@@ -423,11 +664,13 @@ public final class Library {
 
 	public boolean isBookInFavorites(Book book) {
 		waitForState(STATE_FULLY_INITIALIZED);
+		applyFoundBooks();
 		return myFavorites.containsBook(book);
 	}
 
 	public void addBookToFavorites(Book book) {
 		waitForState(STATE_FULLY_INITIALIZED);
+		applyFoundBooks();
 		if (!myFavorites.containsBook(book)) {
 			myFavorites.createBookSubTree(book, true);
 			myFavorites.sortAllChildren();
@@ -437,6 +680,7 @@ public final class Library {
 
 	public void removeBookFromFavorites(Book book) {
 		waitForState(STATE_FULLY_INITIALIZED);
+		applyFoundBooks();
 		if (myFavorites.removeBook(book)) {
 			BooksDatabase.Instance().removeFromFavorites(book.getId());
 		}
@@ -449,6 +693,7 @@ public final class Library {
 
 	public int getRemoveBookMode(Book book) {
 		waitForState(STATE_FULLY_INITIALIZED);
+		applyFoundBooks();
 		return (myExternalBooks.contains(book) ? REMOVE_FROM_LIBRARY : REMOVE_DONT_REMOVE)
 			| (canDeleteBookFile(book) ? REMOVE_FROM_DISK : REMOVE_DONT_REMOVE);
 	}
@@ -472,7 +717,9 @@ public final class Library {
 			return;
 		}
 		waitForState(STATE_FULLY_INITIALIZED);
+		applyFoundBooks();
 		myBooks.remove(book);
+		mySearchIndex.remove(book);
 		myLibraryByAuthor.removeBook(book);
 		myLibraryByTag.removeBook(book);
 		if (myRecentBooks.removeBook(book)) {
@@ -485,42 +732,26 @@ public final class Library {
 		myFavorites.removeBook(book);
 
 		BooksDatabase.Instance().deleteFromBookList(book.getId());
+		BooksDatabase.Instance().deletePageIndices(book.getId());
 		if ((removeMode & REMOVE_FROM_DISK) != 0) {
 			book.File.getPhysicalFile().delete();
 		}
 	}
 
-	private static final HashMap<String,WeakReference<ZLImage>> ourCoverMap =
-		new HashMap<String,WeakReference<ZLImage>>();
-	private static final WeakReference<ZLImage> NULL_IMAGE = new WeakReference<ZLImage>(null);
-
+	/*
+	 * Never blocks: the returned image is loaded (from the cover store,
+	 * or from the book itself) when it is synchronized. Returns null
+	 * for a file that is not a book.
+	 */
 	public static ZLImage getCover(ZLFile file) {
-		if (file == null) {
+		if (file == null || PluginCollection.Instance().getPlugin(file) == null) {
 			return null;
 		}
-		synchronized(ourCoverMap) {
-			final String path = file.getPath();
-			final WeakReference<ZLImage> ref = ourCoverMap.get(path);
-			if (ref == NULL_IMAGE) {
-				return null;
-			} else if (ref != null) {
-				final ZLImage image = ref.get();
-				if (image != null) {
-					return image;
-				}
-			}
-			ZLImage image = null;
-			final FormatPlugin plugin = PluginCollection.Instance().getPlugin(file);
-			if (plugin != null) {
-				image = plugin.readCover(file);
-			}
-			if (image == null) {
-				ourCoverMap.put(path, NULL_IMAGE);
-			} else {
-				ourCoverMap.put(path, new WeakReference<ZLImage>(image));
-			}
-			return image;
-		}
+		return CoverCache.getCover(file);
+	}
+
+	public static CoverStatistics getCoverStatistics() {
+		return CoverCache.getStatistics();
 	}
 
 	public static String getAnnotation(ZLFile file) {
@@ -24,7 +24,7 @@ import java.util.HashMap;
 public final class Tag {
 	private static final HashMap<Tag,Tag> ourTagSet = new HashMap<Tag,Tag>();
 
-	public static Tag getTag(Tag parent, String name) {
+	public static synchronized Tag getTag(Tag parent, String name) {
 		if (name == null) {
 			return parent;
 		}
@@ -20,19 +20,22 @@
 package org.geometerplus.fbreader.network;
 
 import java.io.*;
-import java.net.URI;
-import java.net.URISyntaxException;
 
 import org.geometerplus.zlibrary.core.constants.MimeTypes;
 import org.geometerplus.zlibrary.core.filesystem.ZLFile;
 import org.geometerplus.zlibrary.core.image.ZLFileImage;
 import org.geometerplus.zlibrary.core.image.ZLLoadableImage;
+import org.geometerplus.zlibrary.core.network.ZLNetworkCache;
 import org.geometerplus.zlibrary.core.network.ZLNetworkManager;
 import org.geometerplus.zlibrary.core.network.ZLNetworkException;
+import org.geometerplus.zlibrary.core.network.ZLNetworkRequest;
 
 import org.geometerplus.fbreader.Paths;
 
 public final class NetworkImage extends ZLLoadableImage implements MimeTypes {
+	// images are rarely changed, so a copy without expiration time is kept for a week
+	private static final long DEFAULT_LIFETIME = 7 * 24 * 60 * 60 * 1000L;
+
 	public final String Url;
 
 	public NetworkImage(String url, String mimeType) {
@@ -41,99 +44,13 @@ public final class NetworkImage extends ZLLoadableImage implements MimeTypes {
 		new File(Paths.networkCacheDirectory()).mkdirs();
 	}
 
-	private static final String TOESCAPE = "<>:\"|?*\\";
-
-	public static String makeImageFilePath(String url, String mimeType) {
-		URI uri;
-		try {
-			uri = new URI(url);
-		} catch (URISyntaxException ex) {
-			return null;
-		}
-
-		String host = uri.getHost();
-
-		StringBuilder path = new StringBuilder(host);
-		if (host.startsWith("www.")) {
-			path.delete(0, 4);
-		}
-		path.insert(0, File.separator);
-		path.insert(0, Paths.networkCacheDirectory());
-
-		int index = path.length();
-
-		path.append(uri.getPath());
-
-		int nameIndex = index;
-		while (index < path.length()) {
-			char ch = path.charAt(index);
-			if (TOESCAPE.indexOf(ch) != -1) {
-				path.setCharAt(index, '_');
-			}
-			if (ch == '/') {
-				if (index + 1 == path.length()) {
-					path.deleteCharAt(index);
-				} else {
-					path.setCharAt(index, '_');
-					nameIndex = index + 1;
-				}
-			}
-			++index;
-		}
-
-		String ext = null;
-		if (MIME_IMAGE_PNG.equals(mimeType)) {
-			ext = ".png";
-		} else if (MIME_IMAGE_JPEG.equals(mimeType)) {
-			if (path.length() > 5 && path.substring(path.length() - 5).equals(".jpeg")) {
-				ext = ".jpeg";
-			} else {
-				ext = ".jpg";
-			}
-		}
-
-		if (ext == null) {
-			int j = path.lastIndexOf(".");
-			if (j > nameIndex) {
-				ext = path.substring(j);
-				path.delete(j, path.length());
-			} else {
-				ext = "";
-			}
-		} else if (path.length() > ext.length() && path.substring(path.length() - ext.length()).equals(ext)) {
-			path.delete(path.length() - ext.length(), path.length());
-		}
-
-		String query = uri.getQuery();
-		if (query != null) {
-			index = 0;
-			while (index < query.length()) {
-				int j = query.indexOf("&", index);
-				if (j == -1) {
-					j = query.length();
-				}
-				String param = query.substring(index, j);
-				if (!param.startsWith("username=")
-					&& !param.startsWith("password=")
-					&& !param.endsWith("=")) {
-					int k = path.length();
-					path.append("_").append(param);
-					while (k < path.length()) {
-						char ch = path.charAt(k);
-						if (TOESCAPE.indexOf(ch) != -1 || ch == '/') {
-							path.setCharAt(k, '_');
-						}
-						++k;
-					}
-				}
-				index = j + 1;
-			}
-		}
-		return path.append(ext).toString();
-	}
-
+	/**
+	 * @return path of the image file in the network cache, or null
+	 *         if the cache is not set up
+	 */
 	public String getFilePath() {
-		return makeImageFilePath(Url, mimeType());
+		final ZLNetworkCache cache = ZLNetworkManager.Instance().getCache();
+		return cache != null ? cache.bodyFile(Url).getPath() : null;
 	}
 
 	@Override
@@ -166,39 +83,30 @@ public final class NetworkImage extends ZLLoadableImage implements MimeTypes {
 			return;
 		}
 		try {
-			final String path = getFilePath();
-			if (path == null) {
-				// TODO: error message ???
+			final ZLNetworkCache cache = ZLNetworkManager.Instance().getCache();
+			if (cache == null || cache.isFresh(Url) || doFast) {
 				return;
 			}
-			final int index = path.lastIndexOf(File.separator);
-			if (index != -1) {
-				final String dir = path.substring(0, index);
-				final File dirFile = new File(dir);
-				if (!dirFile.exists() && !dirFile.mkdirs()) {
-					// TODO: error message ???
-					return;
-				}
-				if (!dirFile.exists() || !dirFile.isDirectory()) {
-					// TODO: error message ???
-					return;
-				}
-			}
-			final File imageFile = new File(path);
-			if (imageFile.exists()) {
-				final long diff = System.currentTimeMillis() - imageFile.lastModified();
-				final long valid = 7 * 24 * 60 * 60 * 1000; // one week in milliseconds; FIXME: hardcoded const
-				if (diff >= 0 && diff <= valid) {
-					return;
-				}
-				imageFile.delete();
-			}
-			if (doFast) {
-				return;
-			}
-
 			try {
-				ZLNetworkManager.Instance().downloadToFile(Url, imageFile);
+				// the cache revalidates an expired copy and keeps the new one
+				ZLNetworkManager.Instance().perform(new ZLNetworkRequest(Url) {
+					@Override
+					public boolean isCacheable() {
+						return true;
+					}
+
+					@Override
+					public long getDefaultLifetime() {
+						return DEFAULT_LIFETIME;
+					}
+
+					@Override
+					public void handleStream(InputStream inputStream, int length) throws IOException {
+						final byte[] buffer = new byte[8192];
+						while (inputStream.read(buffer) != -1) {
+						}
+					}
+				});
 			} catch (ZLNetworkException e) {
 			}
 		} finally {
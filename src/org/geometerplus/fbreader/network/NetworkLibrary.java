@@ -23,12 +23,15 @@ import java.util.*;
 
 import org.geometerplus.zlibrary.core.library.ZLibrary;
 import org.geometerplus.zlibrary.core.util.ZLNetworkUtil;
+import org.geometerplus.zlibrary.core.options.ZLIntegerRangeOption;
 import org.geometerplus.zlibrary.core.options.ZLStringOption;
+import org.geometerplus.zlibrary.core.network.ZLNetworkCache;
 import org.geometerplus.zlibrary.core.network.ZLNetworkManager;
 import org.geometerplus.zlibrary.core.network.ZLNetworkException;
 import org.geometerplus.zlibrary.core.network.ZLNetworkRequest;
 import org.geometerplus.zlibrary.core.language.ZLLanguageUtil;
 
+import org.geometerplus.fbreader.Paths;
 import org.geometerplus.fbreader.tree.FBTree;
 import org.geometerplus.fbreader.network.tree.*;
 import org.geometerplus.fbreader.network.opds.OPDSCustomLink;
@@ -157,7 +160,14 @@ public class NetworkLibrary {
 	private boolean myChildrenAreInvalid = true;
 	private boolean myUpdateVisibility;
 
+	// in megabytes; read once, when the library is created
+	public final ZLIntegerRangeOption CacheSizeLimitOption =
+		new ZLIntegerRangeOption("Options", "NetworkCacheSizeLimit", 1, 1024, 32);
+
 	private NetworkLibrary() {
+		ZLNetworkManager.Instance().setCache(new ZLNetworkCache(
+			Paths.networkCacheDirectory() + "/http", CacheSizeLimitOption.getValue() * 1024L * 1024L
+		));
 	}
 
 	private boolean myIsAlreadyInitialized;
@@ -450,7 +460,7 @@ public class NetworkLibrary {
 		}
 
 		while (requestList.size() != 0) {
-			ZLNetworkManager.Instance().perform(requestList);
+			ZLNetworkManager.Instance().perform(requestList, synchronizedListener);
 
 			requestList.clear();
 
@@ -19,12 +19,13 @@
 
 package org.geometerplus.fbreader.network;
 
+import org.geometerplus.zlibrary.core.network.ZLNetworkManager;
 import org.geometerplus.zlibrary.core.network.ZLNetworkRequest;
 
 
 public class NetworkOperationData {
 
-	public interface OnNewItemListener {
+	public interface OnNewItemListener extends ZLNetworkManager.InterruptListener {
 		void onNewItem(INetworkLink link, NetworkItem item);
 
 		void commitItems(INetworkLink link);
@@ -85,6 +85,11 @@ public class OPDSNetworkLink extends AbstractNetworkLink {
 		}
 		url = rewriteUrl(url, false);
 		return new ZLNetworkRequest(url) {
+			@Override
+			public boolean isCacheable() {
+				return true;
+			}
+
 			@Override
 			public void handleStream(InputStream inputStream, int length) throws IOException, ZLNetworkException {
 				if (result.Listener.confirmInterrupt()) {
@@ -23,8 +23,15 @@ import java.io.*;
 import java.util.*;
 
 public abstract class ZLFile {
+	// files are created by the library scanning threads as well
 	private final static HashMap<String,ZLFile> ourCachedFiles = new HashMap<String,ZLFile>();
 
+	private static ZLFile getCachedFile(String path) {
+		synchronized (ourCachedFiles) {
+			return ourCachedFiles.isEmpty() ? null : ourCachedFiles.get(path);
+		}
+	}
+
 	protected interface ArchiveType {
 		int	NONE = 0;
 		int	GZIP = 0x0001;
@@ -76,7 +83,7 @@ public abstract class ZLFile {
 	public static ZLFile createFile(ZLFile parent, String name) {
 		ZLFile file = null;
 		if (parent == null) {
-			ZLFile cached = ourCachedFiles.get(name);
+			ZLFile cached = getCachedFile(name);
 			if (cached != null) {
 				return cached;
 			}
@@ -94,8 +101,8 @@ public abstract class ZLFile {
 			file = ZLArchiveEntryFile.createArchiveEntryFile(parent, name);
 		}
 
-		if (!ourCachedFiles.isEmpty() && (file != null)) {
-			ZLFile cached = ourCachedFiles.get(file.getPath());
+		if (file != null) {
+			ZLFile cached = getCachedFile(file.getPath());
 			if (cached != null) {
 				return cached;
 			}
@@ -107,7 +114,7 @@ public abstract class ZLFile {
 		if (path == null) {
 			return null;
 		}
-		ZLFile cached = ourCachedFiles.get(path);
+		ZLFile cached = getCachedFile(path);
 		if (cached != null) {
 			return cached;
 		}
@@ -191,13 +198,15 @@ public abstract class ZLFile {
 
 	public void setCached(boolean cached) {
 		myIsCached = cached;
-		if (cached) {
-			ourCachedFiles.put(getPath(), this);
-		} else {
-			ourCachedFiles.remove(getPath());
-			if (0 != (myArchiveType & ArchiveType.ZIP)) {
-				ZLZipEntryFile.removeFromCache(this);
+		synchronized (ourCachedFiles) {
+			if (cached) {
+				ourCachedFiles.put(getPath(), this);
+			} else {
+				ourCachedFiles.remove(getPath());
 			}
 		}
+		if (!cached && 0 != (myArchiveType & ArchiveType.ZIP)) {
+			ZLZipEntryFile.removeFromCache(this);
+		}
 	}
 }
@@ -60,7 +60,9 @@ final class ZLZipEntryFile extends ZLArchiveEntryFile {
 	}
 
 	static void removeFromCache(ZLFile file) {
-		ourZipFileMap.remove(file);
+		synchronized (ourZipFileMap) {
+			ourZipFileMap.remove(file);
+		}
 	}
 
 	ZLZipEntryFile(ZLFile parent, String name) {
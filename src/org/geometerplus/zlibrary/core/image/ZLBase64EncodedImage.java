@@ -21,6 +21,8 @@ package org.geometerplus.zlibrary.core.image;
 
 import java.io.*;
 
+import org.geometerplus.zlibrary.core.util.Base64InputStream;
+
 public abstract class ZLBase64EncodedImage extends ZLSingleImage {
 	private boolean myIsDecoded;
 
@@ -28,33 +30,6 @@ public abstract class ZLBase64EncodedImage extends ZLSingleImage {
 		super(mimeType);
 	}
 
-	protected static byte decodeByte(byte encodedByte) {
-		switch (encodedByte) {
-			case 'A': case 'B': case 'C': case 'D': case 'E': case 'F':
-			case 'G': case 'H': case 'I': case 'J': case 'K': case 'L':
-			case 'M': case 'N': case 'O': case 'P': case 'Q': case 'R':
-			case 'S': case 'T': case 'U': case 'V': case 'W': case 'X':
-			case 'Y': case 'Z':
-				return (byte)(encodedByte - 'A');
-			case 'a': case 'b': case 'c': case 'd': case 'e': case 'f':
-			case 'g': case 'h': case 'i': case 'j': case 'k': case 'l':
-			case 'm': case 'n': case 'o': case 'p': case 'q': case 'r':
-			case 's': case 't': case 'u': case 'v': case 'w': case 'x':
-			case 'y': case 'z':
-				return (byte)(encodedByte - 'a' + 26);
-			case '0': case '1': case '2': case '3': case '4':
-			case '5': case '6': case '7': case '8': case '9':
-				return (byte)(encodedByte - '0' + 52);
-			case '+':
-				return 62;
-			case '/':
-				return 63;
-			case '=':
-				return 64;
-		}
-		return -1;
-	}
-
 	public String getURI() {
 		try {
 			decode();
@@ -83,46 +58,22 @@ public abstract class ZLBase64EncodedImage extends ZLSingleImage {
 			return;
 		}
 
-		FileOutputStream outputStream = new FileOutputStream(outputFile);
+		final File file = new File(encodedFileName());
+		final InputStream inputStream = new Base64InputStream(new FileInputStream(file));
 		try {
-			int dataLength;
-			byte[] encodedData;
-
-			final File file = new File(encodedFileName());
-			final FileInputStream inputStream = new FileInputStream(file);
+			final OutputStream outputStream = new FileOutputStream(outputFile);
 			try {
-				dataLength = (int)file.length();
-				encodedData = new byte[dataLength];
-				inputStream.read(encodedData);
-			} finally {
-				inputStream.close();
-			}
-			file.delete();
-
-			final byte[] data = new byte[dataLength * 3 / 4 + 4];
-			int dataPos = 0;
-			for (int pos = 0; pos < dataLength; ) {
-				byte n0 = -1, n1 = -1, n2 = -1, n3 = -1;
-				while ((pos < dataLength) && (n0 == -1)) {
-					n0 = decodeByte(encodedData[pos++]);
-				}
-				while ((pos < dataLength) && (n1 == -1)) {
-					n1 = decodeByte(encodedData[pos++]);
+				final byte[] buffer = new byte[8192];
+				for (int count = inputStream.read(buffer); count > 0; count = inputStream.read(buffer)) {
+					outputStream.write(buffer, 0, count);
 				}
-				while ((pos < dataLength) && (n2 == -1)) {
-					n2 = decodeByte(encodedData[pos++]);
-				}
-				while ((pos < dataLength) && (n3 == -1)) {
-					n3 = decodeByte(encodedData[pos++]);
-				}
-				data[dataPos++] = (byte)(n0 << 2 | n1 >> 4);
-				data[dataPos++] = (byte)(((n1 & 0xf) << 4) | ((n2 >> 2) & 0xf));
-				data[dataPos++] = (byte)(n2 << 6 | n3);
+			} finally {
+				outputStream.close();
 			}
-			outputStream.write(data, 0, dataPos);
 		} finally {
-			outputStream.close();
+			inputStream.close();
 		}
+		file.delete();
 	}
 
 	@Override
@@ -20,38 +20,117 @@
 package org.geometerplus.zlibrary.core.image;
 
 import java.io.*;
+import java.util.*;
 
 import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.util.Base64InputStream;
+import org.geometerplus.zlibrary.core.util.ZLArrayUtils;
 import org.geometerplus.zlibrary.core.util.SliceInputStream;
 
 public class ZLFileImage extends ZLSingleImage {
 	public static final String SCHEME = "imagefile";
 
+	public static final String ENCODING_NONE = "";
+	public static final String ENCODING_BASE64 = "base64";
+
+	/*
+	 * Encoded images are decoded on every read, and an image is usually
+	 * read twice to be shown (for its size, then for its pixels), so
+	 * small decoded images are kept in a bounded LRU map.
+	 */
+	private static final int DECODED_CACHE_SIZE = 2 * 1024 * 1024;
+	private static final int DECODED_CACHE_ENTRY_SIZE = 256 * 1024;
+	private static final LinkedHashMap<String,byte[]> ourDecodedImages =
+		new LinkedHashMap<String,byte[]>(16, .75f, true);
+	private static int ourDecodedImagesSize;
+
 	private final ZLFile myFile;
+	private final String myEncoding;
 	private final int myOffset;
 	private final int myLength;
-	
-	public ZLFileImage(String mimeType, ZLFile file, int offset, int length) {
+
+	public ZLFileImage(String mimeType, ZLFile file, String encoding, int offset, int length) {
 		super(mimeType);
 		myFile = file;
+		myEncoding = encoding;
 		myOffset = offset;
 		myLength = length;
 	}
 
+	public ZLFileImage(String mimeType, ZLFile file, int offset, int length) {
+		this(mimeType, file, ENCODING_NONE, offset, length);
+	}
+
 	public ZLFileImage(String mimeType, ZLFile file) {
 		this(mimeType, file, 0, (int)file.size());
 	}
 
+	public ZLFile getFile() {
+		return myFile;
+	}
+
+	public String getEncoding() {
+		return myEncoding;
+	}
+
+	public int getOffset() {
+		return myOffset;
+	}
+
+	public int getLength() {
+		return myLength;
+	}
+
 	public String getURI() {
-		return SCHEME + "://" + myFile.getPath() + "\000" + myOffset + "\000" + myLength;
+		final String uri = SCHEME + "://" + myFile.getPath() + "\000" + myOffset + "\000" + myLength;
+		return ENCODING_NONE.equals(myEncoding) ? uri : uri + "\000" + myEncoding;
 	}
 
 	@Override
 	public InputStream inputStream() {
 		try {
-			return new SliceInputStream(myFile.getInputStream(), myOffset, myLength);
+			if (!ENCODING_BASE64.equals(myEncoding)) {
+				return new SliceInputStream(myFile.getInputStream(), myOffset, myLength);
+			}
+			if (myLength / 4 * 3 > DECODED_CACHE_ENTRY_SIZE) {
+				return new Base64InputStream(new SliceInputStream(myFile.getInputStream(), myOffset, myLength), myLength);
+			}
+			final String key = getURI();
+			synchronized (ourDecodedImages) {
+				final byte[] data = ourDecodedImages.get(key);
+				if (data != null) {
+					return new ByteArrayInputStream(data);
+				}
+			}
+			final byte[] data = decode();
+			synchronized (ourDecodedImages) {
+				if (ourDecodedImages.put(key, data) == null) {
+					ourDecodedImagesSize += data.length;
+				}
+				final Iterator<byte[]> it = ourDecodedImages.values().iterator();
+				while (ourDecodedImagesSize > DECODED_CACHE_SIZE && it.hasNext()) {
+					ourDecodedImagesSize -= it.next().length;
+					it.remove();
+				}
+			}
+			return new ByteArrayInputStream(data);
 		} catch (IOException e) {
 			return null;
 		}
 	}
+
+	private byte[] decode() throws IOException {
+		final InputStream stream =
+			new Base64InputStream(new SliceInputStream(myFile.getInputStream(), myOffset, myLength), myLength);
+		try {
+			byte[] data = new byte[myLength / 4 * 3 + 3];
+			int length = 0;
+			for (int count = stream.read(data); count > 0; count = stream.read(data, length, data.length - length)) {
+				length += count;
+			}
+			return length == data.length ? data : ZLArrayUtils.createCopy(data, length, length);
+		} finally {
+			stream.close();
+		}
+	}
 }
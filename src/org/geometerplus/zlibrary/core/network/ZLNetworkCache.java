@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2010-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.zlibrary.core.network;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import org.apache.http.Header;
+import org.apache.http.HttpMessage;
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+
+/*
+ * On-disk HTTP cache. A response is kept in two files named after the
+ * URL: the body and its metadata (URL, validators, expiration time).
+ * The cache owns its directory; when the size limit is exceeded, the least
+ * recently used responses are evicted. No other files may be stored there.
+ */
+public final class ZLNetworkCache {
+	private static final int VERSION = 1;
+	private static final String BODY_SUFFIX = ".body";
+	private static final String META_SUFFIX = ".meta";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	// in milliseconds
+	private static final long MAX_HEURISTIC_LIFETIME = 24 * 60 * 60 * 1000;
+
+	static final class Entry {
+		final String URL;
+		final File Body;
+		String ETag;
+		String LastModified;
+		long Expires;
+
+		Entry(String url, File body) {
+			URL = url;
+			Body = body;
+		}
+
+		boolean isFresh() {
+			return System.currentTimeMillis() < Expires;
+		}
+
+		void setValidators(HttpMessage request) {
+			if (ETag != null) {
+				request.setHeader("If-None-Match", ETag);
+			}
+			if (LastModified != null) {
+				request.setHeader("If-Modified-Since", LastModified);
+			}
+		}
+	}
+
+	private final File myDirectory;
+	private final long mySizeLimit;
+	// -1 until the directory is measured
+	private long myTotalSize = -1;
+
+	/**
+	 * @param directory  directory used by the cache only
+	 * @param sizeLimit  in bytes
+	 */
+	public ZLNetworkCache(String directory, long sizeLimit) {
+		myDirectory = new File(directory);
+		mySizeLimit = sizeLimit;
+	}
+
+	private String fileName(String url) {
+		final CRC32 crc = new CRC32();
+		try {
+			crc.update(url.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+		}
+		return Integer.toHexString(url.hashCode()) + "-" + Long.toHexString(crc.getValue());
+	}
+
+	/**
+	 * @return the file the body of the response for url is stored in;
+	 *         the file does not exist if there is no such response
+	 */
+	public File bodyFile(String url) {
+		return new File(myDirectory, fileName(url) + BODY_SUFFIX);
+	}
+
+	private File metaFile(String url) {
+		return new File(myDirectory, fileName(url) + META_SUFFIX);
+	}
+
+	public boolean isFresh(String url) {
+		final Entry entry = get(url);
+		return entry != null && entry.isFresh();
+	}
+
+	Entry get(String url) {
+		final File body = bodyFile(url);
+		final File meta = metaFile(url);
+		if (!body.exists() || !meta.exists()) {
+			return null;
+		}
+		DataInputStream stream = null;
+		try {
+			stream = new DataInputStream(new BufferedInputStream(new FileInputStream(meta), 1024));
+			if (stream.readInt() != VERSION || !url.equals(stream.readUTF())) {
+				return null;
+			}
+			final Entry entry = new Entry(url, body);
+			final String etag = stream.readUTF();
+			entry.ETag = etag.length() > 0 ? etag : null;
+			final String lastModified = stream.readUTF();
+			entry.LastModified = lastModified.length() > 0 ? lastModified : null;
+			entry.Expires = stream.readLong();
+			body.setLastModified(System.currentTimeMillis());
+			return entry;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private static String headerValue(HttpResponse response, String name) {
+		final Header header = response.getLastHeader(name);
+		return header != null ? header.getValue() : null;
+	}
+
+	static boolean isStorable(HttpResponse response) {
+		final String cacheControl = headerValue(response, "Cache-Control");
+		return cacheControl == null || cacheControl.toLowerCase().indexOf("no-store") == -1;
+	}
+
+	private static long parseDate(String value) {
+		if (value != null) {
+			try {
+				return DateUtils.parseDate(value).getTime();
+			} catch (DateParseException e) {
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Cache-Control max-age takes precedence over Expires; without both,
+	 * a response is fresh for a tenth of the time since its modification,
+	 * and without the modification date, for defaultLifetime.
+	 */
+	private static long expirationTime(HttpResponse response, String lastModified, long defaultLifetime) {
+		final long now = System.currentTimeMillis();
+		final String cacheControl = headerValue(response, "Cache-Control");
+		if (cacheControl != null) {
+			for (String directive : cacheControl.toLowerCase().split(",")) {
+				directive = directive.trim();
+				if (directive.equals("no-cache") || directive.equals("must-revalidate")) {
+					return 0;
+				}
+				if (directive.startsWith("max-age=")) {
+					try {
+						return now + Long.parseLong(directive.substring(8).trim()) * 1000;
+					} catch (NumberFormatException e) {
+						return 0;
+					}
+				}
+			}
+		}
+		final String expires = headerValue(response, "Expires");
+		if (expires != null) {
+			return Math.max(parseDate(expires), 0);
+		}
+		final long modified = parseDate(lastModified);
+		if (modified >= 0 && modified < now) {
+			return now + Math.min((now - modified) / 10, MAX_HEURISTIC_LIFETIME);
+		}
+		return defaultLifetime > 0 ? now + defaultLifetime : 0;
+	}
+
+	private void writeMeta(Entry entry) {
+		final File meta = metaFile(entry.URL);
+		final File temporaryMeta = new File(meta.getPath() + TEMPORARY_SUFFIX);
+		DataOutputStream stream = null;
+		try {
+			stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryMeta), 1024));
+			stream.writeInt(VERSION);
+			stream.writeUTF(entry.URL);
+			stream.writeUTF(entry.ETag != null ? entry.ETag : "");
+			stream.writeUTF(entry.LastModified != null ? entry.LastModified : "");
+			stream.writeLong(entry.Expires);
+			stream.close();
+			stream = null;
+			meta.delete();
+			temporaryMeta.renameTo(meta);
+		} catch (IOException e) {
+			temporaryMeta.delete();
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/*
+	 * Takes new validators and expiration time from a 304 response.
+	 */
+	void update(Entry entry, HttpResponse response, long defaultLifetime) {
+		final String etag = headerValue(response, "ETag");
+		if (etag != null) {
+			entry.ETag = etag;
+		}
+		final String lastModified = headerValue(response, "Last-Modified");
+		if (lastModified != null) {
+			entry.LastModified = lastModified;
+		}
+		entry.Expires = expirationTime(response, entry.LastModified, defaultLifetime);
+		writeMeta(entry);
+	}
+
+	/**
+	 * Returns a stream that copies the body into the cache as it is read.
+	 * The response is stored when the stream is closed after reaching its end;
+	 * a body that was not read completely is dropped.
+	 */
+	InputStream store(String url, HttpResponse response, InputStream body, long defaultLifetime) {
+		myDirectory.mkdirs();
+		final Entry entry = new Entry(url, bodyFile(url));
+		entry.ETag = headerValue(response, "ETag");
+		entry.LastModified = headerValue(response, "Last-Modified");
+		entry.Expires = expirationTime(response, entry.LastModified, defaultLifetime);
+		try {
+			return new CachingInputStream(body, entry);
+		} catch (IOException e) {
+			return body;
+		}
+	}
+
+	private final class CachingInputStream extends FilterInputStream {
+		private final Entry myEntry;
+		private final File myTemporaryFile;
+		private OutputStream myOutput;
+		private boolean myIsComplete;
+
+		CachingInputStream(InputStream base, Entry entry) throws IOException {
+			super(base);
+			myEntry = entry;
+			// a unique name, the same URL can be loaded by two requests at once
+			myTemporaryFile = File.createTempFile(entry.Body.getName(), TEMPORARY_SUFFIX, myDirectory);
+			myOutput = new BufferedOutputStream(new FileOutputStream(myTemporaryFile), 8192);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if (b == -1) {
+				myIsComplete = true;
+			} else if (myOutput != null) {
+				myOutput.write(b);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			final int size = super.read(buffer, offset, length);
+			if (size == -1) {
+				myIsComplete = true;
+			} else if (myOutput != null) {
+				myOutput.write(buffer, offset, size);
+			}
+			return size;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// skipped bytes are not copied, so the body cannot be stored
+			myIsComplete = false;
+			if (myOutput != null) {
+				myOutput.close();
+				myOutput = null;
+			}
+			return super.skip(n);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				if (myOutput != null) {
+					myOutput.close();
+					myOutput = null;
+					if (myIsComplete) {
+						commit(myEntry, myTemporaryFile);
+					} else {
+						myTemporaryFile.delete();
+					}
+				} else {
+					myTemporaryFile.delete();
+				}
+			}
+		}
+	}
+
+	private synchronized void commit(Entry entry, File temporaryBody) {
+		final long oldSize = entry.Body.length();
+		metaFile(entry.URL).delete();
+		entry.Body.delete();
+		if (!temporaryBody.renameTo(entry.Body)) {
+			temporaryBody.delete();
+			return;
+		}
+		writeMeta(entry);
+		if (myTotalSize == -1) {
+			myTotalSize = directorySize(myDirectory);
+		} else {
+			myTotalSize += entry.Body.length() - oldSize;
+		}
+		if (myTotalSize > mySizeLimit) {
+			evict();
+		}
+	}
+
+	private static long directorySize(File directory) {
+		long size = 0;
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				size += file.length();
+			}
+		}
+		return size;
+	}
+
+	private static void collectFiles(File directory, List<File> files) {
+		final File[] children = directory.listFiles();
+		if (children != null) {
+			for (File file : children) {
+				// metadata files go together with their bodies
+				if (file.isFile() && !file.getName().endsWith(META_SUFFIX)) {
+					files.add(file);
+				}
+			}
+		}
+	}
+
+	// removes least recently used files until the directory takes 3/4 of the limit
+	private void evict() {
+		final ArrayList<File> files = new ArrayList<File>();
+		collectFiles(myDirectory, files);
+		final HashMap<File,Long> lastUsed = new HashMap<File,Long>();
+		for (File file : files) {
+			lastUsed.put(file, file.lastModified());
+		}
+		Collections.sort(files, new Comparator<File>() {
+			public int compare(File file0, File file1) {
+				final long diff = lastUsed.get(file0) - lastUsed.get(file1);
+				return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+			}
+		});
+		long size = directorySize(myDirectory);
+		final long target = mySizeLimit / 4 * 3;
+		// temporary files of running downloads are younger than this
+		final long temporaryTime = System.currentTimeMillis() - 60 * 60 * 1000;
+		for (File file : files) {
+			if (size <= target) {
+				break;
+			}
+			final String name = file.getName();
+			if (name.endsWith(TEMPORARY_SUFFIX) && lastUsed.get(file) > temporaryTime) {
+				continue;
+			}
+			size -= file.length();
+			file.delete();
+			if (name.endsWith(BODY_SUFFIX)) {
+				final File meta = new File(
+					file.getParentFile(),
+					name.substring(0, name.length() - BODY_SUFFIX.length()) + META_SUFFIX
+				);
+				size -= meta.length();
+				meta.delete();
+			}
+		}
+		myTotalSize = size;
+	}
+}
@@ -0,0 +1,629 @@
+/*
+ * Copyright (C) 2010-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.core.network;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.geometerplus.zlibrary.core.util.ZLNetworkUtil;
+
+/*
+ * Downloads files into <name>.part and renames them when complete.
+ * Progress is saved in <name>.state: the resource length, its validator
+ * and the byte ranges (segments) with the number of bytes fetched in each,
+ * so an interrupted download continues with Range requests instead of
+ * starting from the first byte. Large files served with range support
+ * are fetched in several segments at once.
+ */
+public final class ZLNetworkDownloader {
+	private static ZLNetworkDownloader ourDownloader;
+
+	public static synchronized ZLNetworkDownloader Instance() {
+		if (ourDownloader == null) {
+			ourDownloader = new ZLNetworkDownloader(3, 2);
+		}
+		return ourDownloader;
+	}
+
+	public static interface Listener {
+		// total is -1 if the length is not known yet
+		void onProgress(Download download, long downloaded, long total);
+		// error is null on success
+		void onFinish(Download download, ZLNetworkException error);
+	}
+
+	private static final int STATE_VERSION = 1;
+	private static final String PART_SUFFIX = ".part";
+	private static final String STATE_SUFFIX = ".state";
+	// the first request asks for this many bytes to learn the length and range support
+	private static final int FIRST_CHUNK_SIZE = 256 * 1024;
+	private static final long SEGMENTATION_THRESHOLD = 4 * 1024 * 1024;
+	private static final int MAX_SEGMENTS = 2;
+	// consecutive failed requests of one segment
+	private static final int MAX_FAILURES = 3;
+	private static final int PROGRESS_INTERVAL = 1000;
+
+	private static final class Segment {
+		final long Start;
+		// exclusive, -1 while the length is not known
+		volatile long End;
+		volatile long Done;
+
+		Segment(long start, long end, long done) {
+			Start = start;
+			End = end;
+			Done = done;
+		}
+
+		long position() {
+			return Start + Done;
+		}
+
+		boolean isComplete() {
+			return End >= 0 && Start + Done >= End;
+		}
+	}
+
+	// the parts fetched so far cannot be used: the resource has changed,
+	// or the server does not support ranges any more
+	private static final class RestartException extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+	public final class Download implements Runnable {
+		public final String URL;
+		public final File File;
+		public final String SSLCertificate;
+		private final Listener myListener;
+		private final File myPartFile;
+		private final File myStateFile;
+
+		private long myExpectedSize = -1;
+		private String myExpectedMD5;
+
+		private volatile boolean myIsCancelled;
+		private volatile boolean myRestartRequested;
+		// the server has answered a range request with the whole resource
+		private volatile boolean myRangesUnsupported;
+		private volatile long myTotalLength = -1;
+		private String myValidator;
+		private final ArrayList<Segment> mySegments = new ArrayList<Segment>();
+		private long myStartTime;
+		private long myStartBytes;
+		private long myFinishTime;
+		private long myProgressTime;
+
+		Download(String url, String sslCertificate, File file, Listener listener) {
+			URL = url;
+			SSLCertificate = sslCertificate;
+			File = file;
+			myListener = listener;
+			myPartFile = new File(file.getPath() + PART_SUFFIX);
+			myStateFile = new File(file.getPath() + STATE_SUFFIX);
+		}
+
+		/**
+		 * The downloaded file is rejected if its size differs from the given one.
+		 */
+		public void setExpectedSize(long size) {
+			myExpectedSize = size;
+		}
+
+		/**
+		 * The downloaded file is rejected if its MD5 sum differs from the given one.
+		 */
+		public void setExpectedMD5(String md5) {
+			myExpectedMD5 = md5;
+		}
+
+		/**
+		 * Stops the download; the fetched part is kept, so the next
+		 * download of the same file continues from it.
+		 */
+		public void cancel() {
+			myIsCancelled = true;
+		}
+
+		public long getTotalLength() {
+			return myTotalLength;
+		}
+
+		public long getDownloadedLength() {
+			synchronized (mySegments) {
+				long downloaded = 0;
+				for (Segment s : mySegments) {
+					downloaded += s.Done;
+				}
+				return downloaded;
+			}
+		}
+
+		/**
+		 * @return average speed of this run, bytes fetched before a resume are not counted
+		 */
+		public long getBytesPerSecond() {
+			final long start = myStartTime;
+			if (start == 0) {
+				return 0;
+			}
+			final long end = myFinishTime != 0 ? myFinishTime : System.currentTimeMillis();
+			return (getDownloadedLength() - myStartBytes) * 1000 / Math.max(end - start, 1);
+		}
+
+		public void run() {
+			ZLNetworkException error = null;
+			boolean success = false;
+			try {
+				download();
+				success = true;
+			} catch (ZLNetworkException e) {
+				error = e;
+			} finally {
+				myFinishTime = System.currentTimeMillis();
+				finished(this);
+				if (!success && error == null) {
+					error = new ZLNetworkException(true, "Cannot download " + URL);
+				}
+				myListener.onFinish(this, error);
+			}
+		}
+
+		private void download() throws ZLNetworkException {
+			if (!readState()) {
+				restart();
+			}
+			myStartTime = System.currentTimeMillis();
+			myStartBytes = getDownloadedLength();
+			try {
+				if (myTotalLength == -1 && !myRangesUnsupported) {
+					// a new download: the first request tells the length and range support
+					fetch(mySegments.get(0), FIRST_CHUNK_SIZE);
+					split();
+				}
+				fetchAll();
+			} catch (RestartException e) {
+				restart();
+				try {
+					fetchAll();
+				} catch (RestartException e1) {
+					throw new ZLNetworkException(true, "Cannot resume " + URL);
+				}
+			}
+			verifyAndRename();
+		}
+
+		private void restart() throws ZLNetworkException {
+			myPartFile.delete();
+			myStateFile.delete();
+			myTotalLength = -1;
+			myValidator = null;
+			myRestartRequested = false;
+			synchronized (mySegments) {
+				mySegments.clear();
+				mySegments.add(new Segment(0, -1, 0));
+			}
+			try {
+				new FileOutputStream(myPartFile).close();
+			} catch (IOException e) {
+				throw new ZLNetworkException(ZLNetworkException.ERROR_CREATE_FILE, myPartFile.getPath());
+			}
+		}
+
+		// divides the rest of the first segment between several parallel ones
+		private void split() {
+			final Segment first = mySegments.get(0);
+			if (myTotalLength <= 0 || myValidator == null || first.isComplete()) {
+				return;
+			}
+			final long rest = myTotalLength - first.position();
+			final int count = rest >= SEGMENTATION_THRESHOLD ? MAX_SEGMENTS : 1;
+			final long step = rest / count;
+			synchronized (mySegments) {
+				mySegments.clear();
+				mySegments.add(new Segment(first.Start, first.position() + step, first.Done));
+				for (int i = 1; i < count; ++i) {
+					final long start = first.position() + i * step;
+					mySegments.add(new Segment(start, i == count - 1 ? myTotalLength : start + step, 0));
+				}
+			}
+			writeState();
+		}
+
+		private void fetchAll() throws ZLNetworkException, RestartException {
+			final ArrayList<Segment> segments;
+			synchronized (mySegments) {
+				segments = new ArrayList<Segment>(mySegments);
+			}
+			final ArrayList<Thread> threads = new ArrayList<Thread>();
+			final ZLNetworkException[] errors = new ZLNetworkException[segments.size()];
+			for (int i = 1; i < segments.size(); ++i) {
+				final int index = i;
+				final Thread thread = ourThreadFactory.newThread(new Runnable() {
+					public void run() {
+						try {
+							fetch(segments.get(index), -1);
+						} catch (ZLNetworkException e) {
+							errors[index] = e;
+						} catch (RestartException e) {
+						}
+					}
+				});
+				threads.add(thread);
+				thread.start();
+			}
+			try {
+				fetch(segments.get(0), -1);
+			} catch (ZLNetworkException e) {
+				errors[0] = e;
+			} catch (RestartException e) {
+			}
+			for (Thread thread : threads) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					myIsCancelled = true;
+				}
+			}
+			if (myRestartRequested) {
+				throw new RestartException();
+			}
+			writeState();
+			for (ZLNetworkException e : errors) {
+				if (e != null) {
+					throw e;
+				}
+			}
+		}
+
+		/*
+		 * Fetches the segment, or at most limit bytes of it if limit is not -1.
+		 * After a dropped connection the rest is requested again, unless
+		 * MAX_FAILURES requests in a row bring nothing.
+		 */
+		private void fetch(final Segment segment, long limit) throws ZLNetworkException, RestartException {
+			final long limitEnd = limit >= 0 ? segment.position() + limit : -1;
+			int failures = 0;
+			while (true) {
+				long end = segment.End;
+				if (limitEnd >= 0) {
+					end = end >= 0 ? Math.min(end, limitEnd) : limitEnd;
+				}
+				if (end >= 0 && segment.position() >= end) {
+					return;
+				}
+				if (myIsCancelled) {
+					throw new ZLNetworkException(true, "Cancelled");
+				}
+				if (myRestartRequested) {
+					throw new RestartException();
+				}
+
+				final long position = segment.position();
+				final ZLNetworkRequest request = new ZLNetworkRequest(URL, SSLCertificate, null) {
+					@Override
+					public void handleStream(InputStream inputStream, int length) throws IOException, ZLNetworkException {
+						write(segment, this, inputStream);
+					}
+				};
+				request.RangeStart = position;
+				request.RangeEnd = end >= 0 ? end - 1 : -1;
+				request.IfRange = myValidator;
+				ZLNetworkException error = null;
+				try {
+					ZLNetworkManager.Instance().perform(request);
+					if (segment.End < 0 && myTotalLength < 0 && (limitEnd < 0 || myRangesUnsupported)) {
+						// the length is not known, so the body ends where the stream ends;
+						// a server without range support sends the whole body at once,
+						// even if a limited chunk is requested
+						segment.End = segment.position();
+						return;
+					}
+				} catch (ZLNetworkException e) {
+					error = e;
+				}
+				if (myRestartRequested) {
+					throw new RestartException();
+				}
+				if (segment.position() > position) {
+					failures = 0;
+				} else if (++failures >= MAX_FAILURES) {
+					writeState();
+					throw error != null ? error : new ZLNetworkException(true, "Connection closed");
+				}
+				writeState();
+				if (error != null) {
+					try {
+						Thread.sleep(500 * failures);
+					} catch (InterruptedException e) {
+						myIsCancelled = true;
+					}
+				}
+			}
+		}
+
+		private void write(Segment segment, ZLNetworkRequest request, InputStream stream) throws IOException {
+			if (request.IsPartialContent) {
+				if (request.ContentStart != segment.position()) {
+					throw new IOException("Unexpected range start " + request.ContentStart);
+				}
+				if (myTotalLength == -1 && request.TotalLength >= 0) {
+					myTotalLength = request.TotalLength;
+					myValidator = request.Validator;
+				}
+				if (segment.End < 0) {
+					segment.End = myTotalLength;
+				}
+			} else {
+				// the whole resource is sent: ranges are not supported,
+				// unless the resource has changed since the validator was taken
+				if (request.IfRange == null || request.IfRange.equals(request.Validator)) {
+					myRangesUnsupported = true;
+				}
+				if (segment.Start != 0 || segment.Done != 0) {
+					myRestartRequested = true;
+					throw new IOException("The whole resource is sent again");
+				}
+				myTotalLength = request.TotalLength;
+				myValidator = null;
+				segment.End = request.TotalLength;
+			}
+
+			final RandomAccessFile file = new RandomAccessFile(myPartFile, "rw");
+			try {
+				file.seek(segment.position());
+				final long end = request.IsPartialContent && request.RangeEnd >= 0
+					? request.RangeEnd + 1 : segment.End;
+				final byte[] buffer = new byte[8192];
+				while (!myIsCancelled) {
+					int size = buffer.length;
+					if (end >= 0) {
+						size = (int)Math.min(size, end - segment.position());
+						if (size <= 0) {
+							break;
+						}
+					}
+					size = stream.read(buffer, 0, size);
+					if (size <= 0) {
+						break;
+					}
+					file.write(buffer, 0, size);
+					segment.Done += size;
+					progress();
+				}
+			} finally {
+				file.close();
+			}
+		}
+
+		private void progress() {
+			final long now = System.currentTimeMillis();
+			synchronized (this) {
+				if (now < myProgressTime) {
+					return;
+				}
+				myProgressTime = now + PROGRESS_INTERVAL;
+			}
+			writeState();
+			myListener.onProgress(this, getDownloadedLength(), myTotalLength);
+		}
+
+		private boolean readState() {
+			if (!myPartFile.exists() || !myStateFile.exists()) {
+				return false;
+			}
+			DataInputStream stream = null;
+			try {
+				stream = new DataInputStream(new BufferedInputStream(new FileInputStream(myStateFile), 1024));
+				if (stream.readInt() != STATE_VERSION || !URL.equals(stream.readUTF())) {
+					return false;
+				}
+				final long totalLength = stream.readLong();
+				final String validator = stream.readUTF();
+				final int count = stream.readInt();
+				if (totalLength < 0 || validator.length() == 0 || count <= 0 || count > MAX_SEGMENTS) {
+					return false;
+				}
+				final ArrayList<Segment> segments = new ArrayList<Segment>(count);
+				for (int i = 0; i < count; ++i) {
+					segments.add(new Segment(stream.readLong(), stream.readLong(), stream.readLong()));
+				}
+				myTotalLength = totalLength;
+				myValidator = validator;
+				synchronized (mySegments) {
+					mySegments.clear();
+					mySegments.addAll(segments);
+				}
+				return true;
+			} catch (IOException e) {
+				return false;
+			} finally {
+				if (stream != null) {
+					try {
+						stream.close();
+					} catch (IOException e) {
+					}
+				}
+			}
+		}
+
+		// without a validator a resumed download could mix two versions of the file
+		private synchronized void writeState() {
+			if (myTotalLength < 0 || myValidator == null) {
+				return;
+			}
+			final File temporaryFile = new File(myStateFile.getPath() + ".tmp");
+			DataOutputStream stream = null;
+			try {
+				stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), 1024));
+				stream.writeInt(STATE_VERSION);
+				stream.writeUTF(URL);
+				stream.writeLong(myTotalLength);
+				stream.writeUTF(myValidator);
+				synchronized (mySegments) {
+					stream.writeInt(mySegments.size());
+					for (Segment s : mySegments) {
+						stream.writeLong(s.Start);
+						stream.writeLong(s.End);
+						stream.writeLong(s.Done);
+					}
+				}
+				stream.close();
+				stream = null;
+				myStateFile.delete();
+				temporaryFile.renameTo(myStateFile);
+			} catch (IOException e) {
+				temporaryFile.delete();
+			} finally {
+				if (stream != null) {
+					try {
+						stream.close();
+					} catch (IOException e) {
+					}
+				}
+			}
+		}
+
+		private void verifyAndRename() throws ZLNetworkException {
+			final long length = myPartFile.length();
+			if ((myTotalLength >= 0 && length != myTotalLength) ||
+				(myExpectedSize >= 0 && length != myExpectedSize)) {
+				reject();
+				throw new ZLNetworkException(true, "Unexpected size " + length + " of " + URL);
+			}
+			if (myExpectedMD5 != null && !myExpectedMD5.equalsIgnoreCase(md5(myPartFile))) {
+				reject();
+				throw new ZLNetworkException(true, "Checksum mismatch for " + URL);
+			}
+			myStateFile.delete();
+			if (!myPartFile.renameTo(File)) {
+				throw new ZLNetworkException(ZLNetworkException.ERROR_CREATE_FILE, File.getPath());
+			}
+		}
+
+		private void reject() {
+			myPartFile.delete();
+			myStateFile.delete();
+		}
+	}
+
+	private static String md5(File file) {
+		InputStream stream = null;
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("MD5");
+			stream = new FileInputStream(file);
+			final byte[] buffer = new byte[8192];
+			while (true) {
+				final int size = stream.read(buffer);
+				if (size <= 0) {
+					break;
+				}
+				digest.update(buffer, 0, size);
+			}
+			final StringBuilder md5 = new StringBuilder();
+			for (byte b : digest.digest()) {
+				md5.append(Character.forDigit((b >> 4) & 0xF, 16));
+				md5.append(Character.forDigit(b & 0xF, 16));
+			}
+			return md5.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private static class MinPriorityThreadFactory implements ThreadFactory {
+		private final ThreadFactory myDefaultThreadFactory = Executors.defaultThreadFactory();
+
+		public Thread newThread(Runnable r) {
+			final Thread th = myDefaultThreadFactory.newThread(r);
+			th.setPriority(Thread.MIN_PRIORITY);
+			th.setDaemon(true);
+			return th;
+		}
+	}
+
+	private static final ThreadFactory ourThreadFactory = new MinPriorityThreadFactory();
+
+	private final int myMaxDownloads;
+	private final int myMaxDownloadsPerHost;
+	// threads are started only for downloads allowed by the limits
+	private final ExecutorService myExecutor = Executors.newCachedThreadPool(ourThreadFactory);
+	private final LinkedList<Download> myQueue = new LinkedList<Download>();
+	private final HashMap<String,Integer> myHostLoad = new HashMap<String,Integer>();
+	private int myRunningNumber;
+
+	public ZLNetworkDownloader(int maxDownloads, int maxDownloadsPerHost) {
+		myMaxDownloads = maxDownloads;
+		myMaxDownloadsPerHost = maxDownloadsPerHost;
+	}
+
+	/**
+	 * Queues a download of url into file; the download starts when
+	 * the limits on the number of running downloads allow it.
+	 */
+	public Download download(String url, String sslCertificate, File file, Listener listener) {
+		final Download download = new Download(url, sslCertificate, file, listener);
+		synchronized (this) {
+			myQueue.add(download);
+			schedule();
+		}
+		return download;
+	}
+
+	private void schedule() {
+		for (Iterator<Download> it = myQueue.iterator(); it.hasNext() && myRunningNumber < myMaxDownloads; ) {
+			final Download download = it.next();
+			final String host = ZLNetworkUtil.hostFromUrl(download.URL);
+			final Integer load = myHostLoad.get(host);
+			if (load != null && load >= myMaxDownloadsPerHost) {
+				continue;
+			}
+			it.remove();
+			myHostLoad.put(host, load != null ? load + 1 : 1);
+			++myRunningNumber;
+			myExecutor.execute(download);
+		}
+	}
+
+	private synchronized void finished(Download download) {
+		final String host = ZLNetworkUtil.hostFromUrl(download.URL);
+		final int load = myHostLoad.get(host);
+		if (load > 1) {
+			myHostLoad.put(host, load - 1);
+		} else {
+			myHostLoad.remove(host);
+		}
+		--myRunningNumber;
+		schedule();
+	}
+}
@@ -20,6 +20,7 @@
 package org.geometerplus.zlibrary.core.network;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.GZIPInputStream;
 import java.io.*;
 import java.net.*;
@@ -32,13 +33,24 @@ import org.apache.http.client.CookieStore;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.methods.*;
 import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.*;
+import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.cookie.Cookie;
 import org.apache.http.impl.client.*;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.*;
+import org.apache.http.protocol.HTTP;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.BasicHttpContext;
 
 import org.geometerplus.zlibrary.core.util.ZLNetworkUtil;
 import org.geometerplus.zlibrary.core.filesystem.ZLResourceFile;
+import org.geometerplus.zlibrary.core.options.ZLIntegerRangeOption;
 
 public class ZLNetworkManager {
 	private static ZLNetworkManager ourManager;
@@ -56,6 +68,55 @@ public class ZLNetworkManager {
 
 	private CredentialsCreator myCredentialsCreator;
 
+	public static interface InterruptListener {
+		/**
+		 * @return <code>true</code> if requests that are not started yet
+		 *         should not be started at all.
+		 */
+		boolean confirmInterrupt();
+	}
+
+	private static final int MAX_CONCURRENT_REQUESTS = 6;
+	private static final int MAX_CONCURRENT_REQUESTS_PER_HOST = 2;
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final ThreadFactory myDefaultThreadFactory = Executors.defaultThreadFactory();
+
+		public Thread newThread(Runnable r) {
+			final Thread th = myDefaultThreadFactory.newThread(r);
+			th.setDaemon(true);
+			return th;
+		}
+	}
+
+	// idle threads exit after a minute; if several request lists are performed
+	// at the same time and the pool is full, new requests are rejected and
+	// the list keeps them pending until a thread is free
+	private static final ExecutorService ourExecutor = new ThreadPoolExecutor(
+		0, MAX_CONCURRENT_REQUESTS, 60, TimeUnit.SECONDS,
+		new SynchronousQueue<Runnable>(),
+		new DaemonThreadFactory(),
+		new ThreadPoolExecutor.AbortPolicy()
+	);
+
+	private static final int MAX_CONNECTIONS = 20;
+	// in seconds
+	private static final int IDLE_CONNECTION_TIMEOUT = 30;
+
+	// in seconds
+	public final ZLIntegerRangeOption ConnectTimeoutOption =
+		new ZLIntegerRangeOption("Options", "NetworkConnectTimeout", 1, 300, 15);
+	// in seconds
+	public final ZLIntegerRangeOption ReadTimeoutOption =
+		new ZLIntegerRangeOption("Options", "NetworkReadTimeout", 1, 600, 30);
+	// read when the connection pool is created, i.e. on the first request
+	public final ZLIntegerRangeOption MaxConnectionsPerHostOption =
+		new ZLIntegerRangeOption("Options", "NetworkMaxConnectionsPerHost", 1, 16, 4);
+
+	// in seconds; applies to each request of a concurrently performed list
+	public final ZLIntegerRangeOption RequestTimeoutOption =
+		new ZLIntegerRangeOption("Options", "NetworkRequestTimeout", 10, 600, 120);
+
 	private class MyCredentialsProvider extends BasicCredentialsProvider {
 		private final HttpUriRequest myRequest;
 
@@ -70,13 +131,15 @@ public class ZLNetworkManager {
 				return c;
 			}
 			if (myCredentialsCreator != null) {
-				return myCredentialsCreator.createCredentials(myRequest.getURI().getScheme(), authscope);
+				// requests are performed concurrently, but credentials are asked one by one
+				synchronized (myCredentialsCreator) {
+					return myCredentialsCreator.createCredentials(myRequest.getURI().getScheme(), authscope);
+				}
 			}
 			return null;
 		}
 	};
 
-	private final HttpContext myHttpContext = new BasicHttpContext();
 	private final CookieStore myCookieStore = new BasicCookieStore() {
 		private volatile boolean myIsInitialized;
 
@@ -116,14 +179,167 @@ public class ZLNetworkManager {
 		}
 	};
 
-	{
-		myHttpContext.setAttribute(ClientContext.COOKIE_STORE, myCookieStore);
+	private static final ThreadLocal<ZLNetworkMetrics> ourCurrentMetrics = new ThreadLocal<ZLNetworkMetrics>();
+
+	/*
+	 * Charges DNS and connect times of new connections to the request
+	 * performed by the current thread.
+	 */
+	private static class TimingSocketFactory implements SocketFactory {
+		protected final SocketFactory myBase;
+
+		TimingSocketFactory(SocketFactory base) {
+			myBase = base;
+		}
+
+		public Socket createSocket() throws IOException {
+			return myBase.createSocket();
+		}
+
+		public Socket connectSocket(Socket socket, String host, int port, InetAddress localAddress, int localPort, HttpParams params) throws IOException {
+			final long start = System.currentTimeMillis();
+			// the address is cached, so the base factory does not resolve it again
+			InetAddress.getByName(host);
+			final long resolved = System.currentTimeMillis();
+			final Socket connected = myBase.connectSocket(socket, host, port, localAddress, localPort, params);
+			final ZLNetworkMetrics metrics = ourCurrentMetrics.get();
+			if (metrics != null) {
+				++metrics.ConnectionsNumber;
+				metrics.DNSTime += resolved - start;
+				metrics.ConnectTime += System.currentTimeMillis() - resolved;
+			}
+			return connected;
+		}
+
+		public boolean isSecure(Socket socket) {
+			return myBase.isSecure(socket);
+		}
+	}
+
+	// a scheme with a layered factory is considered secure, so plain http needs the base class
+	private static final class TimingLayeredSocketFactory extends TimingSocketFactory implements LayeredSocketFactory {
+		TimingLayeredSocketFactory(LayeredSocketFactory base) {
+			super(base);
+		}
+
+		public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+			return ((LayeredSocketFactory)myBase).createSocket(socket, host, port, autoClose);
+		}
+	}
+
+	private static final class CountingInputStream extends FilterInputStream {
+		private final ZLNetworkMetrics myMetrics;
+		private boolean myIsExhausted;
+		private long myCount;
+
+		CountingInputStream(InputStream base, ZLNetworkMetrics metrics) {
+			super(base);
+			myMetrics = metrics;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if (b != -1) {
+				++myMetrics.BytesReceived;
+				++myCount;
+			} else {
+				myIsExhausted = true;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			final int size = super.read(buffer, offset, length);
+			if (size > 0) {
+				myMetrics.BytesReceived += size;
+				myCount += size;
+			} else if (size == -1) {
+				myIsExhausted = true;
+			}
+			return size;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			final long skipped = super.skip(n);
+			myMetrics.BytesReceived += skipped;
+			myCount += skipped;
+			return skipped;
+		}
+
+		// length is -1 if unknown
+		boolean isExhausted(long length) {
+			return myIsExhausted || (length >= 0 && myCount >= length);
+		}
+
+		// after this call, closing the stream does not read the rest of the body
+		boolean abortConnection() throws IOException {
+			if (in instanceof ConnectionReleaseTrigger) {
+				((ConnectionReleaseTrigger)in).abortConnection();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	private DefaultHttpClient myHttpClient;
+	private final ZLNetworkMetrics myTotalMetrics = new ZLNetworkMetrics();
+	private volatile ZLNetworkCache myCache;
+
+	public void setCache(ZLNetworkCache cache) {
+		myCache = cache;
+	}
+
+	public ZLNetworkCache getCache() {
+		return myCache;
+	}
+
+	/*
+	 * One client for all requests: connections are kept alive in a shared
+	 * thread-safe pool and closed after IDLE_CONNECTION_TIMEOUT seconds.
+	 */
+	private synchronized DefaultHttpClient httpClient() {
+		if (myHttpClient == null) {
+			final HttpParams params = new BasicHttpParams();
+			HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+			HttpProtocolParams.setContentCharset(params, HTTP.DEFAULT_CONTENT_CHARSET);
+			HttpConnectionParams.setTcpNoDelay(params, true);
+			HttpConnectionParams.setSocketBufferSize(params, 8192);
+			ConnManagerParams.setMaxTotalConnections(params, MAX_CONNECTIONS);
+			ConnManagerParams.setMaxConnectionsPerRoute(
+				params, new ConnPerRouteBean(MaxConnectionsPerHostOption.getValue())
+			);
+
+			final SchemeRegistry registry = new SchemeRegistry();
+			registry.register(new Scheme(
+				"http", new TimingSocketFactory(PlainSocketFactory.getSocketFactory()), 80
+			));
+			registry.register(new Scheme(
+				"https", new TimingLayeredSocketFactory(SSLSocketFactory.getSocketFactory()), 443
+			));
+			myHttpClient = new DefaultHttpClient(new ThreadSafeClientConnManager(params, registry), params);
+		}
+		return myHttpClient;
+	}
+
+	/**
+	 * @return sums of the metrics of all the requests performed so far
+	 */
+	public ZLNetworkMetrics getTotalMetrics() {
+		synchronized (myTotalMetrics) {
+			return new ZLNetworkMetrics(myTotalMetrics);
+		}
 	}
 
 	private void setCommonHTTPOptions(HttpMessage request) throws ZLNetworkException {
 		//httpConnection.setInstanceFollowRedirects(true);
-		//httpConnection.setConnectTimeout(15000); // FIXME: hardcoded timeout value!!!
-		//httpConnection.setReadTimeout(30000); // FIXME: hardcoded timeout value!!!
+		final int connectTimeout = ConnectTimeoutOption.getValue() * 1000;
+		HttpConnectionParams.setConnectionTimeout(request.getParams(), connectTimeout);
+		HttpConnectionParams.setSoTimeout(request.getParams(), ReadTimeoutOption.getValue() * 1000);
+		// waiting for a free connection in the pool
+		ConnManagerParams.setTimeout(request.getParams(), connectTimeout);
 		request.setHeader("User-Agent", ZLNetworkUtil.getUserAgent());
 		request.setHeader("Accept-Language", Locale.getDefault().getLanguage());
 		//httpConnection.setAllowUserInteraction(true);
@@ -133,16 +349,95 @@ public class ZLNetworkManager {
 		myCredentialsCreator = creator;
 	}
 
+	private static void handleCachedStream(ZLNetworkRequest request, ZLNetworkCache.Entry entry, ZLNetworkMetrics metrics) throws IOException, ZLNetworkException {
+		++metrics.CachedResponsesNumber;
+		final InputStream stream = new FileInputStream(entry.Body);
+		try {
+			request.handleStream(stream, (int)entry.Body.length());
+		} finally {
+			stream.close();
+		}
+	}
+
+	/*
+	 * Tells the request which part of the resource the response carries;
+	 * the validator is a strong ETag or, without it, Last-Modified.
+	 */
+	private static void setContentRange(ZLNetworkRequest request, HttpResponse response, HttpEntity entity) {
+		request.IsPartialContent = false;
+		request.ContentStart = 0;
+		request.TotalLength = entity.getContentLength();
+		if (response.getStatusLine().getStatusCode() == HttpURLConnection.HTTP_PARTIAL) {
+			request.IsPartialContent = true;
+			request.TotalLength = -1;
+			// bytes <first>-<last>/<length or *>
+			final Header range = response.getFirstHeader("Content-Range");
+			if (range != null) {
+				final String value = range.getValue().trim();
+				final int dash = value.indexOf('-');
+				final int slash = value.indexOf('/');
+				if (value.startsWith("bytes ") && dash > 6 && slash > dash) {
+					try {
+						request.ContentStart = Long.parseLong(value.substring(6, dash).trim());
+						final String length = value.substring(slash + 1).trim();
+						if (!"*".equals(length)) {
+							request.TotalLength = Long.parseLong(length);
+						}
+					} catch (NumberFormatException e) {
+					}
+				}
+			}
+		}
+		final Header etag = response.getFirstHeader("ETag");
+		final Header lastModified = response.getFirstHeader("Last-Modified");
+		if (etag != null && !etag.getValue().startsWith("W/")) {
+			request.Validator = etag.getValue();
+		} else if (lastModified != null) {
+			request.Validator = lastModified.getValue();
+		} else {
+			request.Validator = null;
+		}
+	}
+
 	public void perform(ZLNetworkRequest request) throws ZLNetworkException {
 		boolean success = false;
 		DefaultHttpClient httpClient = null;
+		HttpGet getRequest = null;
 		HttpEntity entity = null;
+		CountingInputStream counter = null;
+		final ZLNetworkMetrics metrics = new ZLNetworkMetrics();
+		metrics.RequestsNumber = 1;
+		final long startTime = System.currentTimeMillis();
+		ourCurrentMetrics.set(metrics);
+		final ZLNetworkCache cache = request.isCacheable() ? myCache : null;
 		try {
 			request.doBefore();
-			httpClient = new DefaultHttpClient();
-			final HttpGet getRequest = new HttpGet(request.URL);
+			final ZLNetworkCache.Entry cached = cache != null ? cache.get(request.URL) : null;
+			if (cached != null && cached.isFresh()) {
+				handleCachedStream(request, cached, metrics);
+				success = true;
+				return;
+			}
+			httpClient = httpClient();
+			getRequest = new HttpGet(request.URL);
 			setCommonHTTPOptions(getRequest);
-			httpClient.setCredentialsProvider(new MyCredentialsProvider(getRequest));
+			if (cached != null) {
+				cached.setValidators(getRequest);
+			}
+			if (request.RangeStart >= 0) {
+				getRequest.setHeader("Range", "bytes=" + request.RangeStart + "-" +
+					(request.RangeEnd >= 0 ? String.valueOf(request.RangeEnd) : ""));
+				if (request.IfRange != null) {
+					getRequest.setHeader("If-Range", request.IfRange);
+				}
+				// a part of a compressed body cannot be decompressed
+				getRequest.setHeader("Accept-Encoding", "identity");
+			}
+			request.setHttpRequest(getRequest);
+			// a context keeps connection state, so it cannot be shared by concurrent requests
+			final HttpContext httpContext = new BasicHttpContext();
+			httpContext.setAttribute(ClientContext.COOKIE_STORE, myCookieStore);
+			httpContext.setAttribute(ClientContext.CREDS_PROVIDER, new MyCredentialsProvider(getRequest));
 			/*
 				if (request.PostData != null) {
 					httpConnection.setRequestMethod("POST");
@@ -168,15 +463,42 @@ public class ZLNetworkManager {
 				}
 			*/
 			HttpResponse response = null;
-			for (int retryCounter = 0; retryCounter < 3 && entity == null; ++retryCounter) {
-				response = httpClient.execute(getRequest, myHttpContext);
-				entity = response.getEntity();
+			try {
+				for (int retryCounter = 0; retryCounter < 3 && entity == null; ++retryCounter) {
+					final long requestTime = System.currentTimeMillis();
+					final long connectionTime = metrics.DNSTime + metrics.ConnectTime;
+					response = httpClient.execute(getRequest, httpContext);
+					metrics.FirstByteTime += System.currentTimeMillis() - requestTime
+						- (metrics.DNSTime + metrics.ConnectTime - connectionTime);
+					entity = response.getEntity();
+					if (response.getStatusLine().getStatusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+						break;
+					}
+				}
+			} catch (IOException e) {
+				// the server cannot be reached: an expired copy is better than nothing
+				if (cached == null || getRequest.isAborted()) {
+					throw e;
+				}
+				handleCachedStream(request, cached, metrics);
+				success = true;
+				return;
 			}
 			final int responseCode = response.getStatusLine().getStatusCode();
 
+			if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+				cache.update(cached, response, request.getDefaultLifetime());
+				handleCachedStream(request, cached, metrics);
+				success = true;
+				return;
+			}
+
 			InputStream stream = null;
-			if (entity != null && responseCode == HttpURLConnection.HTTP_OK) {
-				stream = entity.getContent();
+			if (entity != null && (responseCode == HttpURLConnection.HTTP_OK ||
+				(responseCode == HttpURLConnection.HTTP_PARTIAL && request.RangeStart >= 0))) {
+				counter = new CountingInputStream(entity.getContent(), metrics);
+				stream = counter;
+				setContentRange(request, response, entity);
 			}
 
 			if (stream != null) {
@@ -185,8 +507,14 @@ public class ZLNetworkManager {
 					if (encoding != null && "gzip".equalsIgnoreCase(encoding.getValue())) {
 						stream = new GZIPInputStream(stream);
 					}
+					if (cache != null && ZLNetworkCache.isStorable(response)) {
+						stream = cache.store(request.URL, response, stream, request.getDefaultLifetime());
+					}
 					request.handleStream(stream, (int)entity.getContentLength());
 				} finally {
+					if (!counter.isExhausted(entity.getContentLength()) && !counter.abortConnection()) {
+						getRequest.abort();
+					}
 					stream.close();
 				}
 				success = true;
@@ -215,40 +543,166 @@ public class ZLNetworkManager {
 			throw new ZLNetworkException(ZLNetworkException.ERROR_RESOLVE_HOST, ZLNetworkUtil.hostFromUrl(request.URL), ex);
 		} catch (SocketTimeoutException ex) {
 			throw new ZLNetworkException(ZLNetworkException.ERROR_TIMEOUT, ex);
+		} catch (ConnectTimeoutException ex) {
+			throw new ZLNetworkException(ZLNetworkException.ERROR_TIMEOUT, ex);
 		} catch (IOException ex) {
 			ex.printStackTrace();
 			throw new ZLNetworkException(ZLNetworkException.ERROR_SOMETHING_WRONG, ZLNetworkUtil.hostFromUrl(request.URL), ex);
 		} finally {
-			request.doAfter(success);
-			if (httpClient != null) {
-				httpClient.getConnectionManager().shutdown();
-			}
-			if (entity != null) {
-				try {
-					entity.consumeContent();
-				} catch (IOException e) {
+			request.setHttpRequest(null);
+			try {
+				request.doAfter(success);
+			} finally {
+				// returns the connection to the pool; a body that is not read
+				// is not worth downloading, so its connection is closed instead
+				if (entity != null && !getRequest.isAborted()) {
+					if (counter != null || entity.getContentLength() == 0) {
+						try {
+							entity.consumeContent();
+						} catch (IOException e) {
+						}
+					} else {
+						getRequest.abort();
+					}
+				}
+				if (httpClient != null) {
+					final ClientConnectionManager manager = httpClient.getConnectionManager();
+					manager.closeExpiredConnections();
+					manager.closeIdleConnections(IDLE_CONNECTION_TIMEOUT, TimeUnit.SECONDS);
+				}
+				ourCurrentMetrics.set(null);
+				metrics.TotalTime = System.currentTimeMillis() - startTime;
+				request.setMetrics(metrics);
+				synchronized (myTotalMetrics) {
+					myTotalMetrics.add(metrics);
 				}
 			}
 		}
 	}
 
 	public void perform(List<ZLNetworkRequest> requests) throws ZLNetworkException {
+		perform(requests, null);
+	}
+
+	private static final class RunningRequest {
+		final ZLNetworkRequest Request;
+		final String Host;
+		final long Deadline;
+
+		RunningRequest(ZLNetworkRequest request, String host, long deadline) {
+			Request = request;
+			Host = host;
+			Deadline = deadline;
+		}
+	}
+
+	/**
+	 * Performs requests concurrently, at most MAX_CONCURRENT_REQUESTS at a time
+	 * and at most MAX_CONCURRENT_REQUESTS_PER_HOST for one host. A request that
+	 * runs longer than RequestTimeoutOption is aborted. Once the listener
+	 * confirms interrupt, the requests that are not started yet are dropped.
+	 * Errors of all the requests are reported by one exception.
+	 */
+	public void perform(List<ZLNetworkRequest> requests, InterruptListener listener) throws ZLNetworkException {
 		if (requests.size() == 0) {
 			return;
 		}
 		if (requests.size() == 1) {
-			perform(requests.get(0));
+			if (listener == null || !listener.confirmInterrupt()) {
+				perform(requests.get(0));
+			}
 			return;
 		}
-		HashSet<String> errors = new HashSet<String>();
-		// TODO: implement concurrent execution !!!
-		for (ZLNetworkRequest r: requests) {
+
+		final long timeout = RequestTimeoutOption.getValue() * 1000L;
+		final LinkedList<ZLNetworkRequest> pending = new LinkedList<ZLNetworkRequest>(requests);
+		final HashMap<Future<?>,RunningRequest> running = new HashMap<Future<?>,RunningRequest>();
+		final HashMap<String,Integer> hostLoad = new HashMap<String,Integer>();
+		final CompletionService<Object> service = new ExecutorCompletionService<Object>(ourExecutor);
+		final LinkedHashSet<String> errors = new LinkedHashSet<String>();
+
+		while (!pending.isEmpty() || !running.isEmpty()) {
+			if (listener != null && !pending.isEmpty() && listener.confirmInterrupt()) {
+				pending.clear();
+				continue;
+			}
+			for (Iterator<ZLNetworkRequest> it = pending.iterator();
+				 it.hasNext() && running.size() < MAX_CONCURRENT_REQUESTS; ) {
+				final ZLNetworkRequest request = it.next();
+				final String host = ZLNetworkUtil.hostFromUrl(request.URL);
+				final Integer load = hostLoad.get(host);
+				if (load != null && load >= MAX_CONCURRENT_REQUESTS_PER_HOST) {
+					continue;
+				}
+				final Future<Object> future;
+				try {
+					future = service.submit(new Callable<Object>() {
+						public Object call() throws ZLNetworkException {
+							perform(request);
+							return null;
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					// the pool is busy with other lists; tried again after the next poll
+					break;
+				}
+				it.remove();
+				hostLoad.put(host, load != null ? load + 1 : 1);
+				running.put(future, new RunningRequest(request, host, System.currentTimeMillis() + timeout));
+			}
+
+			long wait = pending.isEmpty() ? timeout : 200;
+			for (RunningRequest r : running.values()) {
+				wait = Math.min(wait, r.Deadline - System.currentTimeMillis());
+			}
+			final Future<Object> done;
 			try {
-				perform(r);
-			} catch (ZLNetworkException e) {
-				errors.add(e.getMessage());
+				done = service.poll(Math.max(wait, 1), TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				for (RunningRequest r : running.values()) {
+					r.Request.abort();
+				}
+				Thread.currentThread().interrupt();
+				throw new ZLNetworkException(ZLNetworkException.ERROR_UNKNOWN_ERROR, e);
+			}
+
+			if (done != null) {
+				// a request aborted by timeout is not in the map anymore
+				final RunningRequest r = running.remove(done);
+				if (r != null) {
+					releaseHost(hostLoad, r.Host);
+					try {
+						done.get();
+					} catch (ExecutionException e) {
+						final Throwable cause = e.getCause();
+						if (cause instanceof ZLNetworkException) {
+							errors.add(cause.getMessage());
+						} else if (cause instanceof RuntimeException) {
+							throw (RuntimeException)cause;
+						} else if (cause instanceof Error) {
+							throw (Error)cause;
+						} else {
+							errors.add(String.valueOf(cause));
+						}
+					} catch (InterruptedException e) {
+					}
+				}
+			}
+
+			final long now = System.currentTimeMillis();
+			for (Iterator<Map.Entry<Future<?>,RunningRequest>> it = running.entrySet().iterator(); it.hasNext(); ) {
+				final Map.Entry<Future<?>,RunningRequest> entry = it.next();
+				final RunningRequest r = entry.getValue();
+				if (r.Deadline <= now) {
+					it.remove();
+					releaseHost(hostLoad, r.Host);
+					r.Request.abort();
+					entry.getKey().cancel(true);
+					errors.add(new ZLNetworkException(ZLNetworkException.ERROR_TIMEOUT).getMessage());
+				}
 			}
 		}
+
 		if (errors.size() > 0) {
 			StringBuilder message = new StringBuilder();
 			for (String e : errors) {
@@ -261,6 +715,15 @@ public class ZLNetworkManager {
 		}
 	}
 
+	private static void releaseHost(HashMap<String,Integer> hostLoad, String host) {
+		final int load = hostLoad.get(host);
+		if (load > 1) {
+			hostLoad.put(host, load - 1);
+		} else {
+			hostLoad.remove(host);
+		}
+	}
+
 	public final void downloadToFile(String url, final File outFile) throws ZLNetworkException {
 		downloadToFile(url, null, outFile, 8192);
 	}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2010-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.zlibrary.core.network;
+
+/*
+ * Timings (in milliseconds) and traffic of network requests. DNS and
+ * connect times are spent only when a new connection is opened; for
+ * https the connect time includes the TLS handshake. FirstByteTime is
+ * counted from sending the request to receiving the response headers.
+ */
+public final class ZLNetworkMetrics {
+	public int RequestsNumber;
+	public int ConnectionsNumber;
+	// requests answered from the cache, with or without revalidation
+	public int CachedResponsesNumber;
+	public long DNSTime;
+	public long ConnectTime;
+	public long FirstByteTime;
+	public long TotalTime;
+	public long BytesReceived;
+
+	ZLNetworkMetrics() {
+	}
+
+	ZLNetworkMetrics(ZLNetworkMetrics metrics) {
+		add(metrics);
+	}
+
+	void add(ZLNetworkMetrics metrics) {
+		RequestsNumber += metrics.RequestsNumber;
+		ConnectionsNumber += metrics.ConnectionsNumber;
+		CachedResponsesNumber += metrics.CachedResponsesNumber;
+		DNSTime += metrics.DNSTime;
+		ConnectTime += metrics.ConnectTime;
+		FirstByteTime += metrics.FirstByteTime;
+		TotalTime += metrics.TotalTime;
+		BytesReceived += metrics.BytesReceived;
+	}
+
+	@Override
+	public String toString() {
+		return
+			"requests: " + RequestsNumber +
+			", connections: " + ConnectionsNumber +
+			", cached: " + CachedResponsesNumber +
+			", dns: " + DNSTime +
+			"ms, connect: " + ConnectTime +
+			"ms, first byte: " + FirstByteTime +
+			"ms, total: " + TotalTime +
+			"ms, received: " + BytesReceived;
+	}
+}
@@ -23,11 +23,27 @@ import java.io.InputStream;
 import java.io.IOException;
 import java.net.URLConnection;
 
+import org.apache.http.client.methods.HttpUriRequest;
+
 public abstract class ZLNetworkRequest {
 	String URL;
 	public final String SSLCertificate;
 	public final String PostData;
 
+	// a byte range to fetch (the end is inclusive, -1 for the end of the
+	// resource) and the validator the range is valid for; set by ZLNetworkDownloader
+	long RangeStart = -1;
+	long RangeEnd = -1;
+	String IfRange;
+	// set by ZLNetworkManager before handleStream is called
+	boolean IsPartialContent;
+	long ContentStart;
+	long TotalLength = -1;
+	String Validator;
+
+	private volatile HttpUriRequest myHttpRequest;
+	private volatile ZLNetworkMetrics myMetrics;
+
 	protected ZLNetworkRequest(String url) {
 		this(url, null, null);
 	}
@@ -49,4 +65,43 @@ public abstract class ZLNetworkRequest {
 
 	public void doAfter(boolean success) throws ZLNetworkException {
 	}
+
+	/**
+	 * @return <code>true</code> if the response can be taken from
+	 *         and stored in the network cache
+	 */
+	public boolean isCacheable() {
+		return false;
+	}
+
+	/**
+	 * @return time (in milliseconds) a cached response stays fresh for
+	 *         if the server sends neither its expiration nor its modification time
+	 */
+	public long getDefaultLifetime() {
+		return 0;
+	}
+
+	/**
+	 * @return metrics of the last completed perform of this request, or null
+	 */
+	public ZLNetworkMetrics getMetrics() {
+		return myMetrics;
+	}
+
+	void setMetrics(ZLNetworkMetrics metrics) {
+		myMetrics = metrics;
+	}
+
+	void setHttpRequest(HttpUriRequest request) {
+		myHttpRequest = request;
+	}
+
+	// breaks the connection of a running request; used by timeouts
+	void abort() {
+		final HttpUriRequest request = myHttpRequest;
+		if (request != null) {
+			request.abort();
+		}
+	}
 }
@@ -42,7 +42,7 @@ public abstract class ZLTree<T extends ZLTree<T>> implements Iterable<T> {
 		Parent = parent;
 		if (parent != null) {
 			Level = parent.Level + 1;
-			parent.addSubTree((T)this, position);
+			((ZLTree<T>)parent).addSubTree((T)this, position);
 		} else {
 			Level = 0;
 		}
@@ -73,8 +73,8 @@ public abstract class ZLTree<T extends ZLTree<T>> implements Iterable<T> {
 		}
 		--index;
 		for (T subtree : mySubTrees) {
-			if (subtree.mySize <= index) {
-				index -= subtree.mySize;
+			if (((ZLTree<T>)subtree).mySize <= index) {
+				index -= ((ZLTree<T>)subtree).mySize;
 			} else {
 				return (T)subtree.getTreeByParagraphNumber(index);
 			}
@@ -150,7 +150,7 @@ public abstract class ZLTree<T extends ZLTree<T>> implements Iterable<T> {
 		public T next() {
 			final T element = myCurrentElement;
 			if (element.hasChildren() && element.Level < myMaxLevel) {
-				myCurrentElement = (T)element.mySubTrees.get(0);
+				myCurrentElement = ((ZLTree<T>)element).mySubTrees.get(0);
 				myIndexStack.add(0);
 			} else {
 				ZLTree<T> parent = element;
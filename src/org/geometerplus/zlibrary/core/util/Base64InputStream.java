@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.core.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+ * Decodes base64 text read from the base stream. Characters outside of
+ * the base64 alphabet (line breaks, spaces) are skipped; decoding stops
+ * at the first '=' or after the given number of encoded bytes.
+ */
+public class Base64InputStream extends InputStream {
+	private static final byte[] ourDecodeTable = new byte[256];
+
+	static {
+		for (int i = 0; i < 256; ++i) {
+			ourDecodeTable[i] = -1;
+		}
+		for (int i = 0; i < 26; ++i) {
+			ourDecodeTable['A' + i] = (byte)i;
+			ourDecodeTable['a' + i] = (byte)(26 + i);
+		}
+		for (int i = 0; i < 10; ++i) {
+			ourDecodeTable['0' + i] = (byte)(52 + i);
+		}
+		ourDecodeTable['+'] = 62;
+		ourDecodeTable['/'] = 63;
+	}
+
+	private final InputStream myBase;
+	private final byte[] myBuffer = new byte[8192];
+	private int myBufferOffset;
+	private int myBufferLength;
+	private int myEncodedBytesLeft;
+	private boolean myIsFinished;
+	// not yet returned decoded bits, the lowest myBitsNumber bits of myBits
+	private int myBits;
+	private int myBitsNumber;
+
+	public Base64InputStream(InputStream base, int length) {
+		myBase = base;
+		myEncodedBytesLeft = length;
+	}
+
+	public Base64InputStream(InputStream base) {
+		this(base, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int read() throws IOException {
+		final byte[] b = new byte[1];
+		return read(b, 0, 1) == 1 ? b[0] & 0xFF : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		final byte[] table = ourDecodeTable;
+		final byte[] buffer = myBuffer;
+		int bits = myBits;
+		int bitsNumber = myBitsNumber;
+		int count = 0;
+		while (count < len) {
+			if (myBufferOffset == myBufferLength) {
+				if (myIsFinished || myEncodedBytesLeft == 0) {
+					break;
+				}
+				final int read = myBase.read(buffer, 0, Math.min(buffer.length, myEncodedBytesLeft));
+				if (read <= 0) {
+					myIsFinished = true;
+					break;
+				}
+				myEncodedBytesLeft -= read;
+				myBufferOffset = 0;
+				myBufferLength = read;
+			}
+			final int encoded = buffer[myBufferOffset++] & 0xFF;
+			final int value = table[encoded];
+			if (value < 0) {
+				if (encoded == '=') {
+					myIsFinished = true;
+					myBufferOffset = myBufferLength;
+				}
+				continue;
+			}
+			bits = (bits << 6) | value;
+			bitsNumber += 6;
+			if (bitsNumber >= 8) {
+				bitsNumber -= 8;
+				b[off + count++] = (byte)(bits >> bitsNumber);
+			}
+		}
+		myBits = bits & ((1 << bitsNumber) - 1);
+		myBitsNumber = bitsNumber;
+		return count > 0 ? count : -1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		myBase.close();
+	}
+}
@@ -26,16 +26,48 @@ public class SliceInputStream extends ZLInputStreamWithOffset {
 	private final int myStart;
 	private final int myLength;
 	
+	/*
+	 * Reads are limited to the slice. The base stream is skipped to start,
+	 * which is a seek for files and for entries stored in zip archives.
+	 */
 	public SliceInputStream(InputStream base, int start, int length) throws IOException {
 		super(base);
-		super.skip(start);
 		myStart = start;
 		myLength = length;
+		super.skip(start);
+	}
+
+	private int remaining() {
+		return Math.max(myStart + myLength - super.offset(), 0);
 	}
 	
 	@Override
 	public int available() throws IOException {
-		return Math.min(super.available(), Math.max(myStart + myLength - super.offset(), 0));
+		return Math.min(super.available(), remaining());
+	}
+
+	@Override
+	public int read() throws IOException {
+		return (remaining() > 0) ? super.read() : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		final int remaining = remaining();
+		return (remaining > 0) ? super.read(b, off, Math.min(len, remaining)) : -1;
+	}
+
+	@Override
+	public int read(byte[] b) throws IOException {
+		return read(b, 0, b.length);
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		return super.skip(Math.min(n, remaining()));
 	}
 
 	@Override
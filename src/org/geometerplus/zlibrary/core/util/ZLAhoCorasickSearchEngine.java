@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.zlibrary.core.util;
+
+import java.util.*;
+
+/*
+ * Aho-Corasick automaton for a set of patterns. Transitions of a node are
+ * kept in a sorted char array; in ignore-case mode patterns and text are
+ * compared in lower case. Matches are reported in the order of their
+ * ends; of the patterns ending at the same position the longest one wins.
+ */
+final class ZLAhoCorasickSearchEngine extends ZLSearchEngine {
+	private static final char[] NO_LABELS = new char[0];
+	private static final int[] NO_TARGETS = new int[0];
+
+	private final boolean myIgnoreCase;
+
+	private char[][] myLabels;
+	private int[][] myTargets;
+	private int[] myFailures;
+	// length of the longest pattern ending in the node, 0 if none
+	private int[] myOutputs;
+	private int myNodesNumber;
+
+	private int myMatchLength;
+
+	ZLAhoCorasickSearchEngine(String[] patterns, boolean ignoreCase) {
+		myIgnoreCase = ignoreCase;
+		int capacity = 1;
+		for (String pattern : patterns) {
+			capacity += pattern.length();
+		}
+		myLabels = new char[capacity][];
+		myTargets = new int[capacity][];
+		myFailures = new int[capacity];
+		myOutputs = new int[capacity];
+		myLabels[0] = NO_LABELS;
+		myTargets[0] = NO_TARGETS;
+		myNodesNumber = 1;
+
+		for (String pattern : patterns) {
+			int node = 0;
+			for (int i = 0; i < pattern.length(); ++i) {
+				final char ch = fold(pattern.charAt(i));
+				int next = transition(node, ch);
+				if (next == -1) {
+					next = addNode(node, ch);
+				}
+				node = next;
+			}
+			if (node != 0) {
+				myOutputs[node] = Math.max(myOutputs[node], pattern.length());
+			}
+		}
+
+		// breadth-first order guarantees that failure of a parent is ready
+		final int[] queue = new int[myNodesNumber];
+		int head = 0;
+		int tail = 0;
+		for (int child : myTargets[0]) {
+			myFailures[child] = 0;
+			queue[tail++] = child;
+		}
+		while (head < tail) {
+			final int node = queue[head++];
+			final char[] labels = myLabels[node];
+			final int[] targets = myTargets[node];
+			for (int i = 0; i < labels.length; ++i) {
+				final int child = targets[i];
+				int failure = myFailures[node];
+				int next;
+				while ((next = transition(failure, labels[i])) == -1 && failure != 0) {
+					failure = myFailures[failure];
+				}
+				myFailures[child] = (next != -1 && next != child) ? next : 0;
+				myOutputs[child] = Math.max(myOutputs[child], myOutputs[myFailures[child]]);
+				queue[tail++] = child;
+			}
+		}
+	}
+
+	private char fold(char ch) {
+		return myIgnoreCase ? Character.toLowerCase(ch) : ch;
+	}
+
+	private int transition(int node, char ch) {
+		final int index = Arrays.binarySearch(myLabels[node], ch);
+		return index >= 0 ? myTargets[node][index] : -1;
+	}
+
+	private int addNode(int parent, char ch) {
+		final int node = myNodesNumber++;
+		myLabels[node] = NO_LABELS;
+		myTargets[node] = NO_TARGETS;
+
+		final char[] labels = myLabels[parent];
+		final int[] targets = myTargets[parent];
+		final int index = -Arrays.binarySearch(labels, ch) - 1;
+		final char[] newLabels = new char[labels.length + 1];
+		final int[] newTargets = new int[targets.length + 1];
+		System.arraycopy(labels, 0, newLabels, 0, index);
+		System.arraycopy(targets, 0, newTargets, 0, index);
+		newLabels[index] = ch;
+		newTargets[index] = node;
+		System.arraycopy(labels, index, newLabels, index + 1, labels.length - index);
+		System.arraycopy(targets, index, newTargets, index + 1, targets.length - index);
+		myLabels[parent] = newLabels;
+		myTargets[parent] = newTargets;
+		return node;
+	}
+
+	int getMatchLength() {
+		return myMatchLength;
+	}
+
+	int find(char[] text, int offset, int length, int pos) {
+		final int end = offset + length;
+		int node = 0;
+		for (int i = offset + pos; i < end; ++i) {
+			final char ch = fold(text[i]);
+			int next;
+			while ((next = transition(node, ch)) == -1 && node != 0) {
+				node = myFailures[node];
+			}
+			node = (next != -1) ? next : 0;
+			final int output = myOutputs[node];
+			if (output > 0) {
+				myMatchLength = output;
+				return i + 1 - output - offset;
+			}
+		}
+		return -1;
+	}
+}
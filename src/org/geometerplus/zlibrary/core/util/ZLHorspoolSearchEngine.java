@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.zlibrary.core.util;
+
+/*
+ * Boyer-Moore-Horspool search. The skip table is indexed by the low byte
+ * of a character; characters sharing a low byte share the smallest shift,
+ * so collisions only make shifts shorter. In ignore-case mode both case
+ * variants of every pattern character are put into the table.
+ */
+final class ZLHorspoolSearchEngine extends ZLSearchEngine {
+	private final char[] myLower;
+	private final char[] myUpper;
+	private final int[] mySkipTable = new int[256];
+
+	ZLHorspoolSearchEngine(char[] lowerCasePattern, char[] upperCasePattern) {
+		myLower = lowerCasePattern;
+		myUpper = upperCasePattern;
+		final int patternLength = lowerCasePattern.length;
+		final int[] table = mySkipTable;
+		for (int i = 0; i < 256; ++i) {
+			table[i] = patternLength;
+		}
+		for (int j = 0; j < patternLength - 1; ++j) {
+			final int shift = patternLength - 1 - j;
+			table[lowerCasePattern[j] & 0xFF] = Math.min(table[lowerCasePattern[j] & 0xFF], shift);
+			if (upperCasePattern != null) {
+				table[upperCasePattern[j] & 0xFF] = Math.min(table[upperCasePattern[j] & 0xFF], shift);
+			}
+		}
+	}
+
+	int getMatchLength() {
+		return myLower.length;
+	}
+
+	int find(char[] text, int offset, int length, int pos) {
+		final char[] lower = myLower;
+		final char[] upper = myUpper;
+		final int[] table = mySkipTable;
+		final int lastIndex = lower.length - 1;
+		final int end = offset + length;
+		if (upper != null) {
+			final char lastLower = lower[lastIndex];
+			final char lastUpper = upper[lastIndex];
+			for (int i = offset + pos + lastIndex; i < end; ) {
+				final char current = text[i];
+				if (current == lastLower || current == lastUpper) {
+					int j = lastIndex - 1;
+					for (int k = i - 1; j >= 0; --j, --k) {
+						final char symbol = text[k];
+						if (lower[j] != symbol && upper[j] != symbol) {
+							break;
+						}
+					}
+					if (j < 0) {
+						return i - lastIndex - offset;
+					}
+				}
+				i += table[current & 0xFF];
+			}
+		} else {
+			final char last = lower[lastIndex];
+			for (int i = offset + pos + lastIndex; i < end; ) {
+				final char current = text[i];
+				if (current == last) {
+					int j = lastIndex - 1;
+					for (int k = i - 1; j >= 0 && lower[j] == text[k]; --j, --k);
+					if (j < 0) {
+						return i - lastIndex - offset;
+					}
+				}
+				i += table[current & 0xFF];
+			}
+		}
+		return -1;
+	}
+}
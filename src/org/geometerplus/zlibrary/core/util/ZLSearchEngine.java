@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.zlibrary.core.util;
+
+abstract class ZLSearchEngine {
+	// patterns shorter than this are searched by the first character
+	private static final int MIN_SKIP_TABLE_PATTERN_LENGTH = 3;
+
+	// upperCasePattern, if any, is of the same length as lowerCasePattern
+	static ZLSearchEngine create(char[] lowerCasePattern, char[] upperCasePattern) {
+		if (lowerCasePattern.length < MIN_SKIP_TABLE_PATTERN_LENGTH) {
+			return new ZLSimpleSearchEngine(lowerCasePattern, upperCasePattern);
+		}
+		return new ZLHorspoolSearchEngine(lowerCasePattern, upperCasePattern);
+	}
+
+	/*
+	 * Returns the position of the first match starting at or after pos,
+	 * relative to offset, or -1 if there is no such match.
+	 */
+	abstract int find(char[] text, int offset, int length, int pos);
+
+	// length of the last found match
+	abstract int getMatchLength();
+}
@@ -23,6 +23,7 @@ public class ZLSearchPattern {
 	final boolean IgnoreCase;
 	final char[] LowerCasePattern;
 	final char[] UpperCasePattern;
+	private final ZLSearchEngine myEngine;
 
 	public ZLSearchPattern(String pattern, boolean ignoreCase) {
 		IgnoreCase = ignoreCase;
@@ -33,9 +34,33 @@ public class ZLSearchPattern {
 			LowerCasePattern = pattern.toCharArray();
 			UpperCasePattern = null;
 		}
+		if (IgnoreCase && LowerCasePattern.length != UpperCasePattern.length) {
+			// case conversion changes the length (e.g. German sharp s),
+			// so characters cannot be compared in pairs; every form is searched for
+			myEngine = new ZLAhoCorasickSearchEngine(new String[] {
+				pattern, new String(LowerCasePattern), new String(UpperCasePattern)
+			}, true);
+		} else {
+			myEngine = ZLSearchEngine.create(LowerCasePattern, UpperCasePattern);
+		}
+	}
+
+	/*
+	 * Matches any of the patterns; getLength() returns the length
+	 * of the pattern found by the last search.
+	 */
+	public ZLSearchPattern(String[] patterns, boolean ignoreCase) {
+		IgnoreCase = ignoreCase;
+		LowerCasePattern = null;
+		UpperCasePattern = null;
+		myEngine = new ZLAhoCorasickSearchEngine(patterns, ignoreCase);
 	}
 
 	public int getLength() {
-		return LowerCasePattern.length;
+		return myEngine.getMatchLength();
+	}
+
+	int find(char[] text, int offset, int length, int pos) {
+		return myEngine.find(text, offset, length, pos);
 	}
 }
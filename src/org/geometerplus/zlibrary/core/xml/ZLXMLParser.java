@@ -21,6 +21,7 @@ package org.geometerplus.zlibrary.core.xml;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.geometerplus.zlibrary.core.filesystem.*;
 
@@ -71,60 +72,107 @@ final class ZLXMLParser {
 	private final ZLXMLReader myXMLReader;
 	private final boolean myProcessNamespaces;
 
-	private static HashMap<Integer,Queue<char[]>> ourBufferPool = new HashMap<Integer,Queue<char[]>>();
-	private static Queue<ZLMutableString> ourStringPool = new LinkedList<ZLMutableString>();
+	/*
+	 * Buffers and strings are pooled per thread, so parsers running in
+	 * different threads never wait for each other. A pool keeps only a
+	 * few objects; parses nested in one thread take more of them.
+	 */
+	private static final int POOL_SIZE = 8;
 
-	private static synchronized char[] getBuffer(int bufferSize) {
-		Queue<char[]> queue = ourBufferPool.get(bufferSize);
-		if (queue != null) {
-			char[] buffer = queue.poll();
-			if (buffer != null) {
-				return buffer;
+	private static final class Pool {
+		final ArrayList<char[]> Buffers = new ArrayList<char[]>();
+		final ArrayList<ZLMutableString> Strings = new ArrayList<ZLMutableString>();
+	}
+
+	private static final ThreadLocal<Pool> ourPool = new ThreadLocal<Pool>() {
+		@Override
+		protected Pool initialValue() {
+			return new Pool();
+		}
+	};
+
+	private static char[] getBuffer(Pool pool, int bufferSize) {
+		final ArrayList<char[]> buffers = pool.Buffers;
+		for (int i = buffers.size() - 1; i >= 0; --i) {
+			if (buffers.get(i).length == bufferSize) {
+				return buffers.remove(i);
 			}
 		}
 		return new char[bufferSize];
 	}
 
-	private static synchronized void storeBuffer(char[] buffer) {
-		Queue<char[]> queue = ourBufferPool.get(buffer.length);
-		if (queue == null) {
-			queue = new LinkedList<char[]>();
-			ourBufferPool.put(buffer.length, queue);
+	private static void storeBuffer(Pool pool, char[] buffer) {
+		final ArrayList<char[]> buffers = pool.Buffers;
+		if (buffers.size() == POOL_SIZE) {
+			buffers.remove(0);
 		}
-		queue.add(buffer);
+		buffers.add(buffer);
 	}
 
-	private static synchronized ZLMutableString getMutableString() {
-		ZLMutableString string = ourStringPool.poll();
-		return (string != null) ? string : new ZLMutableString();
+	private static ZLMutableString getMutableString(Pool pool) {
+		final ArrayList<ZLMutableString> strings = pool.Strings;
+		final int size = strings.size();
+		return (size > 0) ? strings.remove(size - 1) : new ZLMutableString();
 	}
 
-	private static synchronized void storeString(ZLMutableString string) {
-		ourStringPool.add(string);
+	private static void storeString(Pool pool, ZLMutableString string) {
+		final ArrayList<ZLMutableString> strings = pool.Strings;
+		if (strings.size() < 5 * POOL_SIZE) {
+			string.clear();
+			strings.add(string);
+		}
 	}
 
+	private final Pool myPool = ourPool.get();
 	private final char[] myBuffer;
 	private int myBufferDescriptionLength;
-	private final ZLMutableString myTagName = getMutableString();
-	private final ZLMutableString myCData = getMutableString();
-	private final ZLMutableString myAttributeName = getMutableString();
-	private final ZLMutableString myAttributeValue = getMutableString();
-	private final ZLMutableString myEntityName = getMutableString();
+	private final ZLMutableString myTagName = getMutableString(myPool);
+	private final ZLMutableString myCData = getMutableString(myPool);
+	private final ZLMutableString myAttributeName = getMutableString(myPool);
+	private final ZLMutableString myAttributeValue = getMutableString(myPool);
+	private final ZLMutableString myEntityName = getMutableString(myPool);
+
+	private final List<String> myDTDList;
+	private final ZLXMLSymbolTable mySymbols;
+	private final ArrayList<String> myNewSymbols = new ArrayList<String>();
 
 	void finish() {
-		storeBuffer(myBuffer);
-		storeString(myTagName);
-		storeString(myAttributeName);
-		storeString(myAttributeValue);
-		storeString(myEntityName);
+		final Pool pool = myPool;
+		storeBuffer(pool, myBuffer);
+		storeString(pool, myTagName);
+		storeString(pool, myCData);
+		storeString(pool, myAttributeName);
+		storeString(pool, myAttributeValue);
+		storeString(pool, myEntityName);
+		ZLXMLSymbolTable.update(myDTDList, mySymbols, myNewSymbols);
+	}
+
+	/*
+	 * Tag, attribute and entity names are looked up in the shared symbol
+	 * table first; attribute values are only cached for this parse.
+	 */
+	private String convertToSymbol(Map<ZLMutableString,String> strings, ZLMutableString container) {
+		final String symbol = mySymbols.get(container);
+		if (symbol != null) {
+			container.clear();
+			return symbol;
+		}
+		final int size = strings.size();
+		final String s = convertToString(strings, container);
+		if (strings.size() > size) {
+			myNewSymbols.add(s);
+		}
+		return s;
 	}
 
 	public ZLXMLParser(ZLXMLReader xmlReader, InputStream stream, int bufferSize) throws IOException {
 		myXMLReader = xmlReader;
 		myProcessNamespaces = xmlReader.processNamespaces();
+		myDTDList = xmlReader.externalDTDs();
+		mySymbols = ZLXMLSymbolTable.forDTDs(myDTDList);
 
 		String encoding = "utf-8";
-		final char[] buffer = getBuffer(bufferSize);
+		final char[] buffer = getBuffer(myPool, bufferSize);
 		myBuffer = buffer;
 		boolean found = false;
 		int len = 0;
@@ -157,8 +205,12 @@ final class ZLXMLParser {
 		myStreamReader = new InputStreamReader(stream, encoding);
 	}
 
-	private static char[] getEntityValue(HashMap<String,char[]> entityMap, String name) {
+	// the DTD map is shared by concurrent parses, so reader entities and character references go to a map of this parse
+	private static char[] getEntityValue(HashMap<String,char[]> entityMap, HashMap<String,char[]> localEntityMap, String name) {
 		char[] value = entityMap.get(name);
+		if (value == null) {
+			value = localEntityMap.get(name);
+		}
 		if (value == null) {
 			if ((name.length() > 0) && (name.charAt(0) == '#')) {
 				try {
@@ -169,7 +221,7 @@ final class ZLXMLParser {
 						number = Integer.parseInt(name.substring(1));
 					}
 					value = new char[] { (char)number };
-					entityMap.put(name, value);
+					localEntityMap.put(name, value);
 				} catch (NumberFormatException e) {
 				}
 			}
@@ -177,10 +229,16 @@ final class ZLXMLParser {
 		return value;
 	}
 
-	private static HashMap<List<String>,HashMap<String,char[]>> ourDTDMaps = 
-		new HashMap<List<String>,HashMap<String,char[]>>();
+	private static final ConcurrentHashMap<List<String>,HashMap<String,char[]>> ourDTDMaps =
+		new ConcurrentHashMap<List<String>,HashMap<String,char[]>>();
+
+	// maps are never changed after they are published, so only the first request for a DTD list locks
+	static HashMap<String,char[]> getDTDMap(List<String> dtdList) throws IOException {
+		final HashMap<String,char[]> entityMap = ourDTDMaps.get(dtdList);
+		return entityMap != null ? entityMap : createDTDMap(dtdList);
+	}
 
-	static synchronized HashMap<String,char[]> getDTDMap(List<String> dtdList) throws IOException {
+	private static synchronized HashMap<String,char[]> createDTDMap(List<String> dtdList) throws IOException {
 		HashMap<String,char[]> entityMap = ourDTDMaps.get(dtdList);
 		if (entityMap == null) {
 			entityMap = new HashMap<String,char[]>();
@@ -202,8 +260,9 @@ final class ZLXMLParser {
 
 	void doIt() throws IOException {
 		final ZLXMLReader xmlReader = myXMLReader;
-		final HashMap<String,char[]> entityMap = getDTDMap(xmlReader.externalDTDs());
-		xmlReader.addExternalEntities(entityMap);
+		final HashMap<String,char[]> entityMap = getDTDMap(myDTDList);
+		final HashMap<String,char[]> localEntityMap = new HashMap<String,char[]>();
+		xmlReader.addExternalEntities(localEntityMap);
 		final InputStreamReader streamReader = myStreamReader;
 		final boolean processNamespaces = myProcessNamespaces;
 		HashMap<String,String> oldNamespaceMap = processNamespaces ? new HashMap<String,String>() : null;
@@ -389,7 +448,7 @@ mainSwitchLabel:
 										state = TEXT;
 										tagName.append(buffer, startPosition, i - startPosition);
 										{
-											String stringTagName = convertToString(strings, tagName);
+											String stringTagName = convertToSymbol(strings, tagName);
 											if (tagStackSize == tagStack.length) {
 												tagStack = ZLArrayUtils.createCopy(tagStack, tagStackSize, tagStackSize << 1);
 											}
@@ -411,7 +470,7 @@ mainSwitchLabel:
 									case '/':
 										state = SLASH;
 										tagName.append(buffer, startPosition, i - startPosition);
-										if (processFullTag(xmlReader, convertToString(strings, tagName), attributes)) {
+										if (processFullTag(xmlReader, convertToSymbol(strings, tagName), attributes)) {
 											streamReader.close();
 											return;
 										}
@@ -429,7 +488,7 @@ mainSwitchLabel:
 							switch (buffer[++i]) {
 								case '>':
 									{
-										String stringTagName = convertToString(strings, tagName);
+										String stringTagName = convertToSymbol(strings, tagName);
 										if (tagStackSize == tagStack.length) {
 											tagStack = ZLArrayUtils.createCopy(tagStack, tagStackSize, tagStackSize << 1);
 										}
@@ -451,7 +510,7 @@ mainSwitchLabel:
 									break;
 								case '/':
 									state = SLASH;
-									if (processFullTag(xmlReader, convertToString(strings, tagName), attributes)) {
+									if (processFullTag(xmlReader, convertToSymbol(strings, tagName), attributes)) {
 										streamReader.close();
 										return;
 									}
@@ -542,7 +601,7 @@ mainSwitchLabel:
 									state = ATTRIBUTE_NAME;
 									break mainSwitchLabel;
 							}
-							final String aName = convertToString(strings, attributeName);
+							final String aName = convertToSymbol(strings, attributeName);
 							if (processNamespaces && aName.startsWith("xmlns:")) {
 								if (currentNamespaceMap == null) {
 									currentNamespaceMap = new HashMap<String,String>(oldNamespaceMap);
@@ -593,7 +652,7 @@ mainSwitchLabel:
 										entityName.append(buffer, startPosition, i - startPosition);
 										state = savedState;
 										startPosition = i + 1;
-										final char[] value = getEntityValue(entityMap, convertToString(strings, entityName));
+										final char[] value = getEntityValue(entityMap, localEntityMap, convertToSymbol(strings, entityName));
 										if ((value != null) && (value.length != 0)) {
 											switch (state) {
 												case ATTRIBUTE_VALUE_QUOT:
@@ -647,7 +706,7 @@ mainSwitchLabel:
 											}
 											currentNamespaceMap = null;
 										}
-										//processEndTag(xmlReader, convertToString(strings, tagName), currentNamespaceMap);
+										//processEndTag(xmlReader, convertToSymbol(strings, tagName), currentNamespaceMap);
 										state = TEXT;
 										startPosition = i + 1;
 										break mainSwitchLabel;
@@ -678,7 +737,7 @@ mainSwitchLabel:
 										if (tagStackSize > 0) {
 											processEndTag(xmlReader, tagStack[--tagStackSize], currentNamespaceMap);
 										}
-										//processEndTag(xmlReader, convertToString(strings, tagName), currentNamespaceMap);
+										//processEndTag(xmlReader, convertToSymbol(strings, tagName), currentNamespaceMap);
 										startPosition = i + 1;
 										break mainSwitchLabel;
 								}
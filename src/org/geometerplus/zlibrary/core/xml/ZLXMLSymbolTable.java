@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.core.xml;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Interned tag, attribute and entity names, shared by all parses that
+ * use the same external DTDs (i.e. the same vocabulary). A table is
+ * immutable, so lookups need no locking; names met for the first time
+ * are collected by the parser and published as a new table when the
+ * parse is finished. A table is an open addressing hash set with a
+ * power of two capacity, looked up directly by the parser's char buffer.
+ */
+final class ZLXMLSymbolTable {
+	private static final int MAX_SIZE = 4096;
+	private static final ZLXMLSymbolTable EMPTY = new ZLXMLSymbolTable(new String[8], 0);
+
+	private static final ConcurrentHashMap<List<String>,ZLXMLSymbolTable> ourTables =
+		new ConcurrentHashMap<List<String>,ZLXMLSymbolTable>();
+
+	static ZLXMLSymbolTable forDTDs(List<String> dtdList) {
+		final ZLXMLSymbolTable table = ourTables.get(dtdList);
+		return table != null ? table : EMPTY;
+	}
+
+	/*
+	 * Publishes table extended by newSymbols (which must be interned).
+	 * If another parse has published a table meanwhile, one of the two
+	 * updates is lost; its names are added again by a later parse.
+	 */
+	static void update(List<String> dtdList, ZLXMLSymbolTable table, List<String> newSymbols) {
+		if (newSymbols.isEmpty() || table.mySize + newSymbols.size() > MAX_SIZE) {
+			return;
+		}
+		ourTables.put(dtdList, table.extend(newSymbols));
+	}
+
+	private final String[] mySymbols;
+	private final int mySize;
+
+	private ZLXMLSymbolTable(String[] symbols, int size) {
+		mySymbols = symbols;
+		mySize = size;
+	}
+
+	private static int hash(char[] data, int length) {
+		int code = length;
+		for (int i = 0; i < length; ++i) {
+			code = 31 * code + data[i];
+		}
+		return code ^ (code >>> 16);
+	}
+
+	private static int hash(String string) {
+		final int length = string.length();
+		int code = length;
+		for (int i = 0; i < length; ++i) {
+			code = 31 * code + string.charAt(i);
+		}
+		return code ^ (code >>> 16);
+	}
+
+	String get(ZLMutableString string) {
+		final char[] data = string.myData;
+		final int length = string.myLength;
+		final String[] symbols = mySymbols;
+		final int mask = symbols.length - 1;
+		for (int index = hash(data, length) & mask; ; index = (index + 1) & mask) {
+			final String symbol = symbols[index];
+			if (symbol == null) {
+				return null;
+			}
+			if (symbol.length() == length) {
+				int i = length;
+				while (--i >= 0 && symbol.charAt(i) == data[i]) {
+				}
+				if (i < 0) {
+					return symbol;
+				}
+			}
+		}
+	}
+
+	private ZLXMLSymbolTable extend(List<String> newSymbols) {
+		final int size = mySize + newSymbols.size();
+		int capacity = 8;
+		while (capacity < 2 * size) {
+			capacity <<= 1;
+		}
+		final String[] symbols = new String[capacity];
+		for (String symbol : mySymbols) {
+			if (symbol != null) {
+				insert(symbols, symbol);
+			}
+		}
+		int added = mySize;
+		for (String symbol : newSymbols) {
+			if (insert(symbols, symbol)) {
+				++added;
+			}
+		}
+		return new ZLXMLSymbolTable(symbols, added);
+	}
+
+	private static boolean insert(String[] symbols, String symbol) {
+		final int mask = symbols.length - 1;
+		for (int index = hash(symbol) & mask; ; index = (index + 1) & mask) {
+			if (symbols[index] == null) {
+				symbols[index] = symbol;
+				return true;
+			}
+			if (symbols[index] == symbol) {
+				return false;
+			}
+		}
+	}
+}
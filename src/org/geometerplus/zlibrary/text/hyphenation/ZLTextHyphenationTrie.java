@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.zlibrary.text.hyphenation;
+
+import java.io.*;
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.util.ZLArrayUtils;
+
+/*
+ * TeX hyphenation patterns compiled into a double-array trie.
+ * Characters are mapped to dense codes 1..n (0 means the character
+ * does not occur in any pattern); a transition from state s by code c
+ * goes to t = base[s] + c and exists iff check[t] == s. A state that
+ * ends a pattern of k symbols refers to its k + 1 values in one pool.
+ */
+final class ZLTextHyphenationTrie {
+	private static final int VERSION = 1;
+
+	private short[] myCodes;
+	private int[] myBase;
+	private int[] myCheck;
+	// value offset + 1, 0 if no pattern ends in the state
+	private int[] myValueOffsets;
+	private byte[] myValues;
+
+	private static final class Node {
+		char[] Labels = new char[0];
+		Node[] Children = new Node[0];
+		byte[] Values;
+		int State;
+
+		Node child(char label) {
+			int index = Arrays.binarySearch(Labels, label);
+			if (index >= 0) {
+				return Children[index];
+			}
+			index = -index - 1;
+			final int length = Labels.length;
+			final char[] labels = new char[length + 1];
+			final Node[] children = new Node[length + 1];
+			System.arraycopy(Labels, 0, labels, 0, index);
+			System.arraycopy(Children, 0, children, 0, index);
+			System.arraycopy(Labels, index, labels, index + 1, length - index);
+			System.arraycopy(Children, index, children, index + 1, length - index);
+			final Node node = new Node();
+			labels[index] = label;
+			children[index] = node;
+			Labels = labels;
+			Children = children;
+			return node;
+		}
+	}
+
+	private ZLTextHyphenationTrie() {
+	}
+
+	static ZLTextHyphenationTrie compile(List<ZLTextTeXHyphenationPattern> patterns) {
+		final ZLTextHyphenationTrie trie = new ZLTextHyphenationTrie();
+
+		final Node root = new Node();
+		char maxSymbol = 0;
+		int valuesLength = 0;
+		int nodesNumber = 1;
+		for (ZLTextTeXHyphenationPattern pattern : patterns) {
+			final char[] symbols = pattern.getSymbols();
+			Node node = root;
+			for (int i = 0; i < pattern.getLength(); ++i) {
+				final char symbol = symbols[i];
+				if (symbol > maxSymbol) {
+					maxSymbol = symbol;
+				}
+				final Node parent = node;
+				final int childrenNumber = parent.Labels.length;
+				node = parent.child(symbol);
+				if (parent.Labels.length != childrenNumber) {
+					++nodesNumber;
+				}
+			}
+			if (node.Values == null) {
+				valuesLength += pattern.getLength() + 1;
+			}
+			node.Values = pattern.getValues();
+		}
+
+		final short[] codes = new short[maxSymbol + 1];
+		short alphabetSize = 0;
+		for (ZLTextTeXHyphenationPattern pattern : patterns) {
+			final char[] symbols = pattern.getSymbols();
+			for (int i = 0; i < pattern.getLength(); ++i) {
+				if (codes[symbols[i]] == 0) {
+					codes[symbols[i]] = ++alphabetSize;
+				}
+			}
+		}
+		trie.myCodes = codes;
+
+		int capacity = 2 * nodesNumber + alphabetSize + 1;
+		int[] base = new int[capacity];
+		int[] check = new int[capacity];
+		int[] valueOffsets = new int[capacity];
+		Arrays.fill(check, -1);
+		check[0] = 0;
+		final byte[] values = new byte[valuesLength];
+		int valuesOffset = 0;
+		int firstFree = 1;
+
+		// breadth-first, every node gets its state before its children are placed
+		final LinkedList<Node> queue = new LinkedList<Node>();
+		root.State = 0;
+		queue.add(root);
+		while (!queue.isEmpty()) {
+			final Node node = queue.removeFirst();
+			if (node.Values != null) {
+				System.arraycopy(node.Values, 0, values, valuesOffset, node.Values.length);
+				valueOffsets[node.State] = valuesOffset + 1;
+				valuesOffset += node.Values.length;
+			}
+			final int childrenNumber = node.Labels.length;
+			if (childrenNumber == 0) {
+				continue;
+			}
+			final int[] childCodes = new int[childrenNumber];
+			int minCode = Integer.MAX_VALUE;
+			for (int i = 0; i < childrenNumber; ++i) {
+				childCodes[i] = codes[node.Labels[i]];
+				minCode = Math.min(minCode, childCodes[i]);
+			}
+			while (firstFree < check.length && check[firstFree] != -1) {
+				++firstFree;
+			}
+			int b = Math.max(1, firstFree - minCode);
+			while (true) {
+				boolean fits = true;
+				for (int code : childCodes) {
+					final int t = b + code;
+					if (t < check.length && check[t] != -1) {
+						fits = false;
+						break;
+					}
+				}
+				if (fits) {
+					break;
+				}
+				++b;
+			}
+			int maxState = b + alphabetSize;
+			if (maxState >= check.length) {
+				final int oldLength = check.length;
+				final int newLength = Math.max(2 * oldLength, maxState + 1);
+				base = ZLArrayUtils.createCopy(base, oldLength, newLength);
+				check = ZLArrayUtils.createCopy(check, oldLength, newLength);
+				valueOffsets = ZLArrayUtils.createCopy(valueOffsets, oldLength, newLength);
+				Arrays.fill(check, oldLength, newLength, -1);
+			}
+			base[node.State] = b;
+			for (int i = 0; i < childrenNumber; ++i) {
+				final Node child = node.Children[i];
+				child.State = b + childCodes[i];
+				check[child.State] = node.State;
+				queue.add(child);
+			}
+		}
+
+		int length = check.length;
+		while (length > 1 && check[length - 1] == -1) {
+			--length;
+		}
+		trie.myBase = ZLArrayUtils.createCopy(base, length, length);
+		trie.myCheck = ZLArrayUtils.createCopy(check, length, length);
+		trie.myValueOffsets = ZLArrayUtils.createCopy(valueOffsets, length, length);
+		trie.myValues = values;
+		return trie;
+	}
+
+	/*
+	 * Raises values[i] to the maximum of values of all patterns that match
+	 * word at the offsets 0 .. length - 2; values must have length + 1 items.
+	 */
+	void apply(char[] word, int length, byte[] values) {
+		final short[] codes = myCodes;
+		final int[] base = myBase;
+		final int[] check = myCheck;
+		final int[] valueOffsets = myValueOffsets;
+		final byte[] patternValues = myValues;
+		for (int offset = 0; offset < length - 1; ++offset) {
+			int state = 0;
+			for (int i = offset; i < length; ++i) {
+				final char symbol = word[i];
+				final int code = (symbol < codes.length) ? codes[symbol] : 0;
+				if (code == 0) {
+					break;
+				}
+				final int next = base[state] + code;
+				if (next >= check.length || check[next] != state) {
+					break;
+				}
+				state = next;
+				final int valueOffset = valueOffsets[state];
+				if (valueOffset != 0) {
+					for (int j = offset, k = valueOffset - 1, end = i + 1; j <= end; ++j, ++k) {
+						if (values[j] < patternValues[k]) {
+							values[j] = patternValues[k];
+						}
+					}
+				}
+			}
+		}
+	}
+
+	void write(DataOutputStream stream) throws IOException {
+		stream.writeInt(VERSION);
+		stream.writeInt(myCodes.length);
+		for (short code : myCodes) {
+			stream.writeShort(code);
+		}
+		stream.writeInt(myBase.length);
+		for (int i = 0; i < myBase.length; ++i) {
+			stream.writeInt(myBase[i]);
+			stream.writeInt(myCheck[i]);
+			stream.writeInt(myValueOffsets[i]);
+		}
+		stream.writeInt(myValues.length);
+		stream.write(myValues);
+	}
+
+	static ZLTextHyphenationTrie read(DataInputStream stream) throws IOException {
+		if (stream.readInt() != VERSION) {
+			return null;
+		}
+		final ZLTextHyphenationTrie trie = new ZLTextHyphenationTrie();
+		trie.myCodes = new short[stream.readInt()];
+		for (int i = 0; i < trie.myCodes.length; ++i) {
+			trie.myCodes[i] = stream.readShort();
+		}
+		final int length = stream.readInt();
+		trie.myBase = new int[length];
+		trie.myCheck = new int[length];
+		trie.myValueOffsets = new int[length];
+		for (int i = 0; i < length; ++i) {
+			trie.myBase[i] = stream.readInt();
+			trie.myCheck[i] = stream.readInt();
+			trie.myValueOffsets[i] = stream.readInt();
+		}
+		trie.myValues = new byte[stream.readInt()];
+		stream.readFully(trie.myValues);
+		return trie;
+	}
+}
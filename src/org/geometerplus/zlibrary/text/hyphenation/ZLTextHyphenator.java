@@ -19,13 +19,15 @@
 
 package org.geometerplus.zlibrary.text.hyphenation;
 
-import java.util.List;
+import java.util.*;
+
 import org.geometerplus.zlibrary.core.util.*;
 
 import org.geometerplus.zlibrary.text.view.ZLTextWord; 
 
 public abstract class ZLTextHyphenator {
 	private static ZLTextHyphenator ourInstance;
+	private static String ourCacheDirectory;
 	
 	public static ZLTextHyphenator Instance() {
 		if (ourInstance == null) {
@@ -41,6 +43,82 @@ public abstract class ZLTextHyphenator {
 		}
 	}
 
+	// compiled patterns are stored in this directory; null disables storing
+	public static void setCacheDirectory(String directory) {
+		ourCacheDirectory = directory;
+	}
+
+	static String getCacheDirectory() {
+		return ourCacheDirectory;
+	}
+
+	private static final int INFO_CACHE_SIZE = 2048;
+
+	/*
+	 * A range of characters; the cache is probed by a key over the word
+	 * data itself, and the characters are copied only for a new entry.
+	 */
+	private static final class WordKey {
+		char[] Data;
+		int Offset;
+		int Length;
+		int Hash;
+
+		void set(char[] data, int offset, int length) {
+			Data = data;
+			Offset = offset;
+			Length = length;
+			int hash = 0;
+			for (int i = offset + length - 1; i >= offset; --i) {
+				hash = 31 * hash + data[i];
+			}
+			Hash = hash;
+		}
+
+		WordKey copy() {
+			final WordKey key = new WordKey();
+			key.Data = new char[Length];
+			System.arraycopy(Data, Offset, key.Data, 0, Length);
+			key.Length = Length;
+			key.Hash = Hash;
+			return key;
+		}
+
+		@Override
+		public int hashCode() {
+			return Hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			final WordKey key = (WordKey)o;
+			if (Hash != key.Hash || Length != key.Length) {
+				return false;
+			}
+			for (int i = Offset, j = key.Offset; i < Offset + Length; ++i, ++j) {
+				if (Data[i] != key.Data[j]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	// hyphenation masks of recently laid out words
+	private final LinkedHashMap<WordKey,ZLTextHyphenationInfo> myInfoCache =
+		new LinkedHashMap<WordKey,ZLTextHyphenationInfo>(INFO_CACHE_SIZE, 0.75f, true) {
+			private static final long serialVersionUID = 1827164937402765394L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<WordKey,ZLTextHyphenationInfo> eldest) {
+				return size() > INFO_CACHE_SIZE;
+			}
+		};
+	private final WordKey myLookupKey = new WordKey();
+
+	private boolean[] myIsLetter = new boolean[32];
+	private char[] myPattern = new char[34];
+
 	protected ZLTextHyphenator() {
 	}
 
@@ -48,10 +126,30 @@ public abstract class ZLTextHyphenator {
 	public abstract void load(final String languageCode);
 	public abstract void unload();
 
-	public ZLTextHyphenationInfo getInfo(final ZLTextWord word) {
+	protected final synchronized void clearInfoCache() {
+		myInfoCache.clear();
+	}
+
+	public synchronized ZLTextHyphenationInfo getInfo(final ZLTextWord word) {
+		final WordKey key = myLookupKey;
+		key.set(word.Data, word.Offset, word.Length);
+		ZLTextHyphenationInfo info = myInfoCache.get(key);
+		if (info == null) {
+			info = computeInfo(word);
+			myInfoCache.put(key.copy(), info);
+		}
+		key.Data = null;
+		return info;
+	}
+
+	private ZLTextHyphenationInfo computeInfo(final ZLTextWord word) {
 		final int len = word.Length;
-		final boolean[] isLetter = new boolean[len];
-		final char[] pattern = new char[len + 2];
+		if (myIsLetter.length < len) {
+			myIsLetter = new boolean[len + 16];
+			myPattern = new char[len + 18];
+		}
+		final boolean[] isLetter = myIsLetter;
+		final char[] pattern = myPattern;
 		final char[] data = word.Data;
 		pattern[0] = ' ';
 		for (int i = 0, j = word.Offset; i < len; ++i, ++j) {
@@ -60,6 +158,7 @@ public abstract class ZLTextHyphenator {
 				isLetter[i] = true;
 				pattern[i + 1] = Character.toLowerCase(symbol);
 			} else {
+				isLetter[i] = false;
 				pattern[i + 1] = ' ';
 			}
 		}
@@ -19,19 +19,24 @@
 
 package org.geometerplus.zlibrary.text.hyphenation;
 
+import java.io.*;
 import java.util.*;
+import java.util.zip.CRC32;
 
 import org.geometerplus.zlibrary.core.util.ZLMiscUtil;
 import org.geometerplus.zlibrary.core.filesystem.ZLFile;
 import org.geometerplus.zlibrary.core.filesystem.ZLResourceFile;
 
 final class ZLTextTeXHyphenator extends ZLTextHyphenator {
-	private final HashMap<ZLTextTeXHyphenationPattern,ZLTextTeXHyphenationPattern> myPatternTable = 
-		new HashMap<ZLTextTeXHyphenationPattern,ZLTextTeXHyphenationPattern>();
+	// patterns are collected here while reading and then compiled into myTrie
+	private final ArrayList<ZLTextTeXHyphenationPattern> myPatterns =
+		new ArrayList<ZLTextTeXHyphenationPattern>();
+	private ZLTextHyphenationTrie myTrie;
+	private byte[] myValues = new byte[64];
 	private String myLanguage;
 
 	void addPattern(ZLTextTeXHyphenationPattern pattern) {
-		myPatternTable.put(pattern, pattern);
+		myPatterns.add(pattern);
 	}
 
 	private List<String> myLanguageCodes;
@@ -53,7 +58,7 @@ final class ZLTextTeXHyphenator extends ZLTextHyphenator {
 		return Collections.unmodifiableList(myLanguageCodes);
 	}
 
-	public void load(final String language) {
+	public synchronized void load(final String language) {
 		if (ZLMiscUtil.equals(language, myLanguage)) {
 			return;
 		}
@@ -61,42 +66,123 @@ final class ZLTextTeXHyphenator extends ZLTextHyphenator {
 		unload();
 
 		if (language != null) {
-			new ZLTextHyphenationReader(this).read(ZLResourceFile.createResourceFile(
+			final ZLFile file = ZLResourceFile.createResourceFile(
 		  		"hyphenationPatterns/" + language + ".pattern"
-			)); 
+			);
+			final long checksum = checksum(file);
+			myTrie = readCompiledPatterns(language, checksum);
+			if (myTrie == null) {
+				new ZLTextHyphenationReader(this).read(file); 
+				if (!myPatterns.isEmpty()) {
+					myTrie = ZLTextHyphenationTrie.compile(myPatterns);
+					myPatterns.clear();
+					writeCompiledPatterns(language, checksum, myTrie);
+				}
+			}
 		}
 	}	
 
-	public void unload() {
-		myPatternTable.clear();
+	public synchronized void unload() {
+		myPatterns.clear();
+		myTrie = null;
+		clearInfoCache();
+	}
+
+	private static long checksum(ZLFile file) {
+		InputStream stream = null;
+		try {
+			stream = file.getInputStream();
+			final CRC32 crc = new CRC32();
+			final byte[] buffer = new byte[8192];
+			int size;
+			while ((size = stream.read(buffer)) > 0) {
+				crc.update(buffer, 0, size);
+			}
+			return crc.getValue();
+		} catch (IOException e) {
+			return -1;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private static File compiledPatternsFile(String language) {
+		final String directory = getCacheDirectory();
+		return (directory != null) ? new File(directory, language + ".trie") : null;
 	}
 
+	private static ZLTextHyphenationTrie readCompiledPatterns(String language, long checksum) {
+		final File file = compiledPatternsFile(language);
+		if (file == null || checksum == -1 || !file.exists()) {
+			return null;
+		}
+		DataInputStream stream = null;
+		try {
+			stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8192));
+			if (stream.readLong() != checksum) {
+				return null;
+			}
+			return ZLTextHyphenationTrie.read(stream);
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private static void writeCompiledPatterns(String language, long checksum, ZLTextHyphenationTrie trie) {
+		final File file = compiledPatternsFile(language);
+		if (file == null || checksum == -1) {
+			return;
+		}
+		file.getParentFile().mkdirs();
+		final File temporaryFile = new File(file.getPath() + ".tmp");
+		DataOutputStream stream = null;
+		try {
+			stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), 8192));
+			stream.writeLong(checksum);
+			trie.write(stream);
+			stream.close();
+			stream = null;
+			temporaryFile.renameTo(file);
+		} catch (IOException e) {
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	// called from getInfo only, so the values buffer is never shared
 	public void hyphenate(char[] stringToHyphenate, boolean[] mask, int length) {
-		if (myPatternTable.isEmpty()) {
+		final ZLTextHyphenationTrie trie = myTrie;
+		if (trie == null) {
 			for (int i = 0; i < length - 1; i++) {
 				mask[i] = false;
 			}
 			return;
 		}
 
-		byte[] values = new byte[length + 1];
-
-		final HashMap<ZLTextTeXHyphenationPattern,ZLTextTeXHyphenationPattern> table = myPatternTable;
-		ZLTextTeXHyphenationPattern pattern =
-			new ZLTextTeXHyphenationPattern(stringToHyphenate, 0, length, false);
-		for (int offset = 0; offset < length - 1; offset++) {
-			int len = length - offset + 1;
-			pattern.update(stringToHyphenate, offset, len - 1);
-			while (--len > 0) {
-				pattern.myLength = len;
-				pattern.myHashCode = 0;
-				ZLTextTeXHyphenationPattern toApply =
-					(ZLTextTeXHyphenationPattern)table.get(pattern);
-				if (toApply != null) {
-					toApply.apply(values, offset);
-				}
-			}
+		if (myValues.length < length + 1) {
+			myValues = new byte[length + 16];
 		}
+		final byte[] values = myValues;
+		Arrays.fill(values, 0, length + 1, (byte)0);
+
+		trie.apply(stringToHyphenate, length, values);
  	
 		for (int i = 0; i < length - 1; i++) {
 			mask[i] = (values[i + 1] % 2) == 1;
@@ -23,14 +23,6 @@ import java.lang.ref.WeakReference;
 import java.io.*;
 import java.util.*;
 
-final class CachedCharStorageException extends RuntimeException {
-	private static final long serialVersionUID = -6373408730045821053L;
-
-	public CachedCharStorageException(String message) {
-		super(message);
-	}
-}
-
 public final class CachedCharStorage implements CharStorage {
 	private final int myBlockSize;
 	private final ArrayList<WeakReference<char[]>> myArray = new ArrayList<WeakReference<char[]>>();
@@ -48,11 +40,11 @@ public final class CachedCharStorage implements CharStorage {
 		new File(directoryName).mkdirs();
 	}
 
-	public int size() {
+	public synchronized int size() {
 		return myArray.size();
 	}
 
-	public char[] block(int index) {
+	public synchronized char[] block(int index) {
 		char[] block = myArray.get(index).get();
 		if (block == null) {
 			try {
@@ -81,7 +73,7 @@ public final class CachedCharStorage implements CharStorage {
 		return block;
 	}
 
-	public char[] createNewBlock(int minimumLength) {
+	public synchronized char[] createNewBlock(int minimumLength) {
 		int blockSize = myBlockSize;
 		if (minimumLength > blockSize) {
 			blockSize = minimumLength;
@@ -91,7 +83,7 @@ public final class CachedCharStorage implements CharStorage {
 		return block;
 	}
 
-	public void freezeLastBlock() {
+	public synchronized void freezeLastBlock() {
 		int index = myArray.size() - 1;
 		if (index >= 0) {
 			char[] block = myArray.get(index).get();
@@ -112,7 +104,7 @@ public final class CachedCharStorage implements CharStorage {
 		}
 	}
 
-	public void clear() {
+	public synchronized void clear() {
 		myArray.clear();
 	}
 }
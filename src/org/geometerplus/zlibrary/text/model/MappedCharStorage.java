@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.model;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.util.ZLArrayUtils;
+
+/*
+ * All frozen blocks are appended to one file and read back through
+ * a memory-mapped view of that file; decoded blocks are kept in a
+ * strong LRU of at most maxCachedBlocks entries. The block currently
+ * being written is never evicted.
+ */
+public final class MappedCharStorage implements CharStorage {
+	private final int myBlockSize;
+	private final String myFileName;
+	private final LinkedHashMap<Integer,char[]> myCache;
+
+	private int[] myOffsets = new int[64];
+	private int[] myLengths = new int[64];
+	private int mySize;
+	private int myFrozenSize;
+	private int myFileLength;
+
+	private char[] myLastBlock;
+
+	private RandomAccessFile myFile;
+	private FileChannel myChannel;
+	private CharBuffer myMapping;
+	private ByteBuffer myWriteBuffer;
+
+	private int myHitCount;
+	private int myMissCount;
+	private int myReloadCount;
+
+	public MappedCharStorage(int blockSize, String directoryName, String fileExtension, final int maxCachedBlocks) {
+		myBlockSize = blockSize;
+		myFileName = directoryName + "/blocks." + fileExtension;
+		myCache = new LinkedHashMap<Integer,char[]>(maxCachedBlocks + 1, 1.0f, true) {
+			private static final long serialVersionUID = 4512680453192127810L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer,char[]> eldest) {
+				return size() > maxCachedBlocks;
+			}
+		};
+		new File(directoryName).mkdirs();
+	}
+
+	public synchronized int size() {
+		return mySize;
+	}
+
+	public synchronized char[] block(int index) {
+		if (index < 0 || index >= mySize) {
+			throw new IndexOutOfBoundsException("Block " + index + " of " + mySize);
+		}
+		if (index >= myFrozenSize) {
+			return myLastBlock;
+		}
+		char[] block = myCache.get(index);
+		if (block != null) {
+			++myHitCount;
+			return block;
+		}
+		++myMissCount;
+		block = new char[myLengths[index]];
+		final CharBuffer view = mapping().duplicate();
+		view.position(myOffsets[index]);
+		view.get(block);
+		myCache.put(index, block);
+		return block;
+	}
+
+	private CharBuffer mapping() {
+		if (myMapping == null) {
+			try {
+				myMapping = myChannel.map(FileChannel.MapMode.READ_ONLY, 0, 2L * myFileLength)
+					.order(ByteOrder.LITTLE_ENDIAN).asCharBuffer();
+			} catch (IOException e) {
+				throw new CachedCharStorageException("Error during mapping " + myFileName);
+			}
+			++myReloadCount;
+		}
+		return myMapping;
+	}
+
+	public synchronized char[] createNewBlock(int minimumLength) {
+		int blockSize = myBlockSize;
+		if (minimumLength > blockSize) {
+			blockSize = minimumLength;
+		}
+		if (mySize > myFrozenSize) {
+			// the previous block was never frozen explicitly
+			freezeLastBlock();
+		}
+		if (mySize == myOffsets.length) {
+			myOffsets = ZLArrayUtils.createCopy(myOffsets, mySize, mySize << 1);
+			myLengths = ZLArrayUtils.createCopy(myLengths, mySize, mySize << 1);
+		}
+		final char[] block = new char[blockSize];
+		myLengths[mySize++] = blockSize;
+		myLastBlock = block;
+		return block;
+	}
+
+	public synchronized void freezeLastBlock() {
+		final int index = mySize - 1;
+		if (index < myFrozenSize) {
+			return;
+		}
+		final char[] block = myLastBlock;
+		try {
+			if (myChannel == null) {
+				myFile = new RandomAccessFile(myFileName, "rw");
+				myFile.setLength(0);
+				myChannel = myFile.getChannel();
+			}
+			final int byteLength = 2 * block.length;
+			ByteBuffer buffer = myWriteBuffer;
+			if (buffer == null || buffer.capacity() < byteLength) {
+				buffer = ByteBuffer.allocate(Math.max(byteLength, 2 * myBlockSize));
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				myWriteBuffer = buffer;
+			}
+			buffer.clear();
+			buffer.asCharBuffer().put(block);
+			buffer.limit(byteLength);
+			long position = 2L * myFileLength;
+			while (buffer.hasRemaining()) {
+				position += myChannel.write(buffer, position);
+			}
+		} catch (IOException e) {
+			throw new CachedCharStorageException("Error during writing " + myFileName);
+		}
+		myOffsets[index] = myFileLength;
+		myFileLength += block.length;
+		myFrozenSize = mySize;
+		myMapping = null;
+		myCache.put(index, block);
+		myLastBlock = null;
+	}
+
+	public synchronized void clear() {
+		myCache.clear();
+		mySize = 0;
+		myFrozenSize = 0;
+		myFileLength = 0;
+		myLastBlock = null;
+		myMapping = null;
+		if (myFile != null) {
+			try {
+				myFile.close();
+			} catch (IOException e) {
+			}
+			myFile = null;
+			myChannel = null;
+		}
+		new File(myFileName).delete();
+	}
+
+	/*
+	 * Freezes the last block and writes the block table; together with
+	 * the block file it is enough to reopen the storage by readIndex.
+	 */
+	public synchronized void writeIndex(DataOutputStream stream) throws IOException {
+		if (mySize > myFrozenSize) {
+			freezeLastBlock();
+		}
+		stream.writeInt(mySize);
+		for (int i = 0; i < mySize; ++i) {
+			stream.writeInt(myOffsets[i]);
+			stream.writeInt(myLengths[i]);
+		}
+	}
+
+	public synchronized void readIndex(DataInputStream stream) throws IOException {
+		final int size = stream.readInt();
+		final int[] offsets = new int[Math.max(size, 1)];
+		final int[] lengths = new int[Math.max(size, 1)];
+		int fileLength = 0;
+		for (int i = 0; i < size; ++i) {
+			offsets[i] = stream.readInt();
+			lengths[i] = stream.readInt();
+			fileLength = Math.max(fileLength, offsets[i] + lengths[i]);
+		}
+		RandomAccessFile file = null;
+		if (size > 0) {
+			file = new RandomAccessFile(myFileName, "r");
+			if (file.length() < 2L * fileLength) {
+				file.close();
+				throw new IOException("Block file " + myFileName + " is truncated");
+			}
+		}
+		myCache.clear();
+		myLastBlock = null;
+		myMapping = null;
+		myFile = file;
+		myChannel = (file != null) ? file.getChannel() : null;
+		myOffsets = offsets;
+		myLengths = lengths;
+		mySize = size;
+		myFrozenSize = size;
+		myFileLength = fileLength;
+	}
+
+	public synchronized int getHitCount() {
+		return myHitCount;
+	}
+
+	public synchronized int getMissCount() {
+		return myMissCount;
+	}
+
+	public synchronized int getReloadCount() {
+		return myReloadCount;
+	}
+}
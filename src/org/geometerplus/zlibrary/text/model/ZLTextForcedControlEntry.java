@@ -32,6 +32,10 @@ public final class ZLTextForcedControlEntry {
 	public ZLTextForcedControlEntry() {
 	}
 
+	void reset() {
+		myMask = 0;
+	}
+
 	short getMask() {
 		return myMask;
 	};
@@ -41,4 +41,6 @@ public interface ZLTextModel {
 	int findParagraphByTextLength(int length);
 	
 	int search(final String text, int startIndex, int endIndex, boolean ignoreCase);
+	// finds whole words equal to text or, if prefix is true, starting with it
+	int searchWords(final String text, int startIndex, int endIndex, boolean ignoreCase, boolean prefix);
 }
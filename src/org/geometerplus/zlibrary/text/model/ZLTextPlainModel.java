@@ -36,8 +36,15 @@ public class ZLTextPlainModel implements ZLTextModel {
 
 	protected int myParagraphsNumber;
 
+	// hyperlink and image ids; entries refer to them by index
+	protected String[] myStrings = new String[16];
+	protected int myStringsNumber;
+	// image entries are immutable, so an entry is shared by all the iterators
+	private ZLImageEntry[] myImageEntries = new ZLImageEntry[0];
+
 	protected final CharStorage myStorage;
 	private ArrayList<ZLTextMark> myMarks;
+	private volatile ZLTextSearchIndex mySearchIndex;
 
 	protected final ZLImageMap myImageMap;
 
@@ -59,6 +66,7 @@ public class ZLTextPlainModel implements ZLTextModel {
 		private String myHyperlinkId;
 
 		private ZLImageEntry myImageEntry;
+		// reused, so it is valid until the next call of next()
 		private ZLTextForcedControlEntry myForcedControlEntry;
 
 		private short myFixedHSpaceLength;
@@ -150,19 +158,20 @@ public class ZLTextPlainModel implements ZLTextModel {
 					myControlIsStart = (kind & 0x0100) == 0x0100;
 					myHyperlinkType = (byte)(kind >> 9);
 					if (myHyperlinkType != 0) {
-						short labelLength = (short)data[dataOffset++];
-						myHyperlinkId = new String(data, dataOffset, labelLength);
-						dataOffset += labelLength;
+						myHyperlinkId = myStrings[
+							((int)data[dataOffset++] << 16) +
+							(int)data[dataOffset++]
+						];
 					}
 					break;
 				}
 				case ZLTextParagraph.Entry.IMAGE:
 				{
 					final short vOffset = (short)data[dataOffset++];
-					final short len = (short)data[dataOffset++];
-					final String id = new String(data, dataOffset, len);
-					dataOffset += len;
-					myImageEntry = new ZLImageEntry(myImageMap, id, vOffset);
+					final int index =
+						((int)data[dataOffset++] << 16) +
+						(int)data[dataOffset++];
+					myImageEntry = sharedImageEntry(index, vOffset);
 					break;
 				}
 				case ZLTextParagraph.Entry.FIXED_HSPACE:
@@ -171,7 +180,11 @@ public class ZLTextPlainModel implements ZLTextModel {
 				case ZLTextParagraph.Entry.FORCED_CONTROL:
 				{
 					final int mask = (int)data[dataOffset++];
-					final ZLTextForcedControlEntry entry = new ZLTextForcedControlEntry();
+					if (myForcedControlEntry == null) {
+						myForcedControlEntry = new ZLTextForcedControlEntry();
+					}
+					final ZLTextForcedControlEntry entry = myForcedControlEntry;
+					entry.reset();
 					if ((mask & ZLTextForcedControlEntry.SUPPORTS_LEFT_INDENT) ==
 								ZLTextForcedControlEntry.SUPPORTS_LEFT_INDENT) {
 						entry.setLeftIndent((short)data[dataOffset++]);
@@ -184,7 +197,6 @@ public class ZLTextPlainModel implements ZLTextModel {
 								ZLTextForcedControlEntry.SUPPORTS_ALIGNMENT_TYPE) {
 						entry.setAlignmentType((byte)data[dataOffset++]);
 					}
-					myForcedControlEntry = entry;
 				}
 			}
 			++myCounter;
@@ -193,6 +205,10 @@ public class ZLTextPlainModel implements ZLTextModel {
 	}
 
 	protected ZLTextPlainModel(String id, String language, int arraySize, int dataBlockSize, String directoryName, String extension, ZLImageMap imageMap) {
+		this(id, language, arraySize, new CachedCharStorage(dataBlockSize, directoryName, extension), imageMap);
+	}
+
+	protected ZLTextPlainModel(String id, String language, int arraySize, CharStorage storage, ZLImageMap imageMap) {
 		myId = id;
 		myLanguage = language;
 		myStartEntryIndices = new int[arraySize];
@@ -200,10 +216,26 @@ public class ZLTextPlainModel implements ZLTextModel {
 		myParagraphLengths = new int[arraySize];
 		myTextSizes = new int[arraySize];
 		myParagraphKinds = new byte[arraySize];
-		myStorage = new CachedCharStorage(dataBlockSize, directoryName, extension);
+		myStorage = storage;
 		myImageMap = imageMap;
 	}
 
+	// the entries of an image differ only in vOffset, which is the same almost always
+	private ZLImageEntry sharedImageEntry(int index, short vOffset) {
+		ZLImageEntry[] entries = myImageEntries;
+		if (index >= entries.length) {
+			entries = new ZLImageEntry[Math.max(myStringsNumber, index + 1)];
+			System.arraycopy(myImageEntries, 0, entries, 0, myImageEntries.length);
+			myImageEntries = entries;
+		}
+		ZLImageEntry entry = entries[index];
+		if (entry == null || entry.VOffset != vOffset) {
+			entry = new ZLImageEntry(myImageMap, myStrings[index], vOffset);
+			entries[index] = entry;
+		}
+		return entry;
+	}
+
 	public final String getId() {
 		return myId;
 	}
@@ -253,9 +285,33 @@ public class ZLTextPlainModel implements ZLTextModel {
 	}
 
 	public final int search(final String text, int startIndex, int endIndex, boolean ignoreCase) {
-		int count = 0;
-		ZLSearchPattern pattern = new ZLSearchPattern(text, ignoreCase);
 		myMarks = new ArrayList<ZLTextMark>();
+		return scan(new ZLSearchPattern(text, ignoreCase), startIndex, endIndex, false, false);
+	}
+
+	public final int searchWords(final String text, int startIndex, int endIndex, boolean ignoreCase, boolean prefix) {
+		myMarks = new ArrayList<ZLTextMark>();
+		final ZLTextSearchIndex index = mySearchIndex;
+		if (index != null && ignoreCase && ZLTextSearchIndex.isWord(text)) {
+			index.find(text.toLowerCase(), prefix, startIndex, Math.min(endIndex, myParagraphsNumber), myMarks);
+			return myMarks.size();
+		}
+		return scan(new ZLSearchPattern(text, ignoreCase), startIndex, endIndex, true, !prefix);
+	}
+
+	public final void setSearchIndex(ZLTextSearchIndex index) {
+		mySearchIndex = index;
+	}
+
+	private static boolean isWordBoundary(char[] data, int start, int end, int position) {
+		return
+			position <= start || position >= end ||
+			!ZLTextSearchIndex.isWordCharacter(data[position - 1]) ||
+			!ZLTextSearchIndex.isWordCharacter(data[position]);
+	}
+
+	private int scan(ZLSearchPattern pattern, int startIndex, int endIndex, boolean wordStart, boolean wordEnd) {
+		int count = 0;
 		if (startIndex > myParagraphsNumber) {
                 	startIndex = myParagraphsNumber;				
 		}
@@ -273,6 +329,12 @@ public class ZLTextPlainModel implements ZLTextModel {
 					int textLength = it.getTextLength();
 					for (int pos = ZLSearchUtil.find(textData, textOffset, textLength, pattern); pos != -1; 
 						pos = ZLSearchUtil.find(textData, textOffset, textLength, pattern, pos + 1)) {
+						if (wordStart && !isWordBoundary(textData, textOffset, textOffset + textLength, textOffset + pos)) {
+							continue;
+						}
+						if (wordEnd && !isWordBoundary(textData, textOffset, textOffset + textLength, textOffset + pos + pattern.getLength())) {
+							continue;
+						}
 						myMarks.add(new ZLTextMark(index, offset + pos, pattern.getLength()));
 						++count;
 					}
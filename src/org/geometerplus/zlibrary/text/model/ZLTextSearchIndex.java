@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.model;
+
+import java.io.*;
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.util.ZLArrayUtils;
+
+/*
+ * Inverted index of a text model: every word (a maximal run of letters
+ * and digits inside one text entry, in lower case) is mapped to the list
+ * of its (paragraph, offset) positions. Offsets are counted the same way
+ * as in ZLTextPlainModel.search. A posting list is a sequence of varints:
+ * the paragraph delta, then the offset delta for the same paragraph or
+ * the absolute offset for a new one.
+ */
+public final class ZLTextSearchIndex {
+	private static final class PostingsBuilder {
+		private byte[] myData = new byte[8];
+		private int myLength;
+		private int myCount;
+		private int myParagraph;
+		private int myOffset;
+
+		void add(int paragraph, int offset) {
+			if (myLength + 10 > myData.length) {
+				myData = ZLArrayUtils.createCopy(myData, myLength, 2 * myData.length + 10);
+			}
+			final int paragraphDelta = paragraph - myParagraph;
+			myLength = writeVarInt(myData, myLength, paragraphDelta);
+			myLength = writeVarInt(myData, myLength, paragraphDelta == 0 ? offset - myOffset : offset);
+			myParagraph = paragraph;
+			myOffset = offset;
+			++myCount;
+		}
+	}
+
+	private static int writeVarInt(byte[] data, int position, int value) {
+		while ((value & ~0x7F) != 0) {
+			data[position++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		data[position++] = (byte)value;
+		return position;
+	}
+
+	static boolean isWordCharacter(char ch) {
+		return Character.isLetterOrDigit(ch);
+	}
+
+	public static ZLTextSearchIndex build(ZLTextModel model) {
+		final HashMap<String,PostingsBuilder> builders = new HashMap<String,PostingsBuilder>();
+		final int paragraphsNumber = model.getParagraphsNumber();
+		for (int index = 0; index < paragraphsNumber; ++index) {
+			int offset = 0;
+			for (ZLTextParagraph.EntryIterator it = model.getParagraph(index).iterator(); it.hasNext(); ) {
+				it.next();
+				if (it.getType() != ZLTextParagraph.Entry.TEXT) {
+					continue;
+				}
+				final char[] data = it.getTextData();
+				final int start = it.getTextOffset();
+				final int length = it.getTextLength();
+				int i = 0;
+				while (i < length) {
+					if (!isWordCharacter(data[start + i])) {
+						++i;
+						continue;
+					}
+					int j = i + 1;
+					while (j < length && isWordCharacter(data[start + j])) {
+						++j;
+					}
+					final String word = new String(data, start + i, j - i).toLowerCase();
+					PostingsBuilder builder = builders.get(word);
+					if (builder == null) {
+						builder = new PostingsBuilder();
+						builders.put(word, builder);
+					}
+					builder.add(index, offset + i);
+					i = j;
+				}
+				offset += length;
+			}
+		}
+
+		final ZLTextSearchIndex searchIndex = new ZLTextSearchIndex(builders.size());
+		final String[] words = builders.keySet().toArray(new String[builders.size()]);
+		Arrays.sort(words);
+		int totalLength = 0;
+		for (String word : words) {
+			totalLength += builders.get(word).myLength;
+		}
+		searchIndex.myPostings = new byte[totalLength];
+		int position = 0;
+		for (int i = 0; i < words.length; ++i) {
+			final PostingsBuilder builder = builders.get(words[i]);
+			searchIndex.myWords[i] = words[i];
+			searchIndex.myCounts[i] = builder.myCount;
+			searchIndex.myStarts[i] = position;
+			System.arraycopy(builder.myData, 0, searchIndex.myPostings, position, builder.myLength);
+			position += builder.myLength;
+		}
+		searchIndex.myStarts[words.length] = position;
+		return searchIndex;
+	}
+
+	private final String[] myWords;
+	private final int[] myCounts;
+	// postings of word i are myPostings[myStarts[i] .. myStarts[i + 1])
+	private final int[] myStarts;
+	private byte[] myPostings;
+
+	private ZLTextSearchIndex(int size) {
+		myWords = new String[size];
+		myCounts = new int[size];
+		myStarts = new int[size + 1];
+	}
+
+	public int getWordsNumber() {
+		return myWords.length;
+	}
+
+	/*
+	 * Returns true if the index can answer a query for text,
+	 * i.e. the text is a single word.
+	 */
+	public static boolean isWord(String text) {
+		if (text.length() == 0) {
+			return false;
+		}
+		for (int i = 0; i < text.length(); ++i) {
+			if (!isWordCharacter(text.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Adds to marks, in text order, the occurrences of the words equal to
+	 * (or, if prefix is true, starting with) the lower-case word, that lie
+	 * in paragraphs startIndex (inclusive) to endIndex (exclusive).
+	 */
+	public void find(String word, boolean prefix, int startIndex, int endIndex, List<ZLTextMark> marks) {
+		int from = Arrays.binarySearch(myWords, word);
+		if (from < 0) {
+			if (!prefix) {
+				return;
+			}
+			from = -from - 1;
+		}
+		int to = from + 1;
+		if (prefix) {
+			to = from;
+			while (to < myWords.length && myWords[to].startsWith(word)) {
+				++to;
+			}
+		}
+
+		final int firstMark = marks.size();
+		final byte[] postings = myPostings;
+		final int length = word.length();
+		for (int i = from; i < to; ++i) {
+			int position = myStarts[i];
+			int paragraph = 0;
+			int offset = 0;
+			for (int count = myCounts[i]; count > 0; --count) {
+				int paragraphDelta = 0;
+				for (int shift = 0; ; shift += 7) {
+					final byte b = postings[position++];
+					paragraphDelta |= (b & 0x7F) << shift;
+					if (b >= 0) {
+						break;
+					}
+				}
+				int offsetValue = 0;
+				for (int shift = 0; ; shift += 7) {
+					final byte b = postings[position++];
+					offsetValue |= (b & 0x7F) << shift;
+					if (b >= 0) {
+						break;
+					}
+				}
+				paragraph += paragraphDelta;
+				offset = (paragraphDelta == 0) ? offset + offsetValue : offsetValue;
+				if (paragraph >= endIndex) {
+					break;
+				}
+				if (paragraph >= startIndex) {
+					marks.add(new ZLTextMark(paragraph, offset, length));
+				}
+			}
+		}
+		if (to - from > 1) {
+			Collections.sort(marks.subList(firstMark, marks.size()));
+		}
+	}
+
+	public void write(DataOutputStream stream) throws IOException {
+		stream.writeInt(myWords.length);
+		for (int i = 0; i < myWords.length; ++i) {
+			stream.writeUTF(myWords[i]);
+			stream.writeInt(myCounts[i]);
+			stream.writeInt(myStarts[i + 1] - myStarts[i]);
+		}
+		stream.write(myPostings, 0, myStarts[myWords.length]);
+	}
+
+	public static ZLTextSearchIndex read(DataInputStream stream) throws IOException {
+		final int size = stream.readInt();
+		if (size < 0) {
+			throw new IOException("Invalid search index size " + size);
+		}
+		final ZLTextSearchIndex index = new ZLTextSearchIndex(size);
+		int position = 0;
+		for (int i = 0; i < size; ++i) {
+			index.myWords[i] = stream.readUTF();
+			index.myCounts[i] = stream.readInt();
+			index.myStarts[i] = position;
+			position += stream.readInt();
+		}
+		index.myStarts[size] = position;
+		index.myPostings = new byte[position];
+		stream.readFully(index.myPostings);
+		return index;
+	}
+}
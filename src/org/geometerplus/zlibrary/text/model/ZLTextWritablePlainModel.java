@@ -19,6 +19,9 @@
 
 package org.geometerplus.zlibrary.text.model;
 
+import java.io.*;
+import java.util.HashMap;
+
 import org.geometerplus.zlibrary.core.util.*;
 
 import org.geometerplus.zlibrary.core.image.ZLImageMap;
@@ -26,11 +29,16 @@ import org.geometerplus.zlibrary.core.image.ZLImageMap;
 public final class ZLTextWritablePlainModel extends ZLTextPlainModel implements ZLTextWritableModel {
 	private char[] myCurrentDataBlock;
 	private int myBlockOffset;
+	private final HashMap<String,Integer> myStringIndices = new HashMap<String,Integer>();
 
 	public ZLTextWritablePlainModel(String id, String language, int arraySize, int dataBlockSize, String directoryName, String extension, ZLImageMap imageMap) {
 		super(id, language, arraySize, dataBlockSize, directoryName, extension, imageMap);
 	}
 
+	public ZLTextWritablePlainModel(String id, String language, int arraySize, CharStorage storage, ZLImageMap imageMap) {
+		super(id, language, arraySize, storage, imageMap);
+	}
+
 	private void extend() {
 		final int size = myStartEntryIndices.length;
 		myStartEntryIndices = ZLArrayUtils.createCopy(myStartEntryIndices, size, size << 1);
@@ -57,6 +65,20 @@ public final class ZLTextWritablePlainModel extends ZLTextPlainModel implements
 		myParagraphKinds[index] = kind;
 	}
 
+	private int getStringIndex(String string) {
+		final Integer index = myStringIndices.get(string);
+		if (index != null) {
+			return index;
+		}
+		final int newIndex = myStringsNumber++;
+		if (newIndex == myStrings.length) {
+			myStrings = ZLArrayUtils.createCopy(myStrings, newIndex, newIndex << 1);
+		}
+		myStrings[newIndex] = string;
+		myStringIndices.put(string, newIndex);
+		return newIndex;
+	}
+
 	private char[] getDataBlock(int minimumLength) {
 		char[] block = myCurrentDataBlock;
 		if ((block == null) || (minimumLength > block.length - myBlockOffset)) {
@@ -118,27 +140,27 @@ public final class ZLTextWritablePlainModel extends ZLTextPlainModel implements
 	}
 	
 	public void addHyperlinkControl(byte textKind, byte hyperlinkType, String label) {
-		final short labelLength = (short)label.length();
-		final char[] block = getDataBlock(3 + labelLength);
+		final int index = getStringIndex(label);
+		final char[] block = getDataBlock(4);
 		++myParagraphLengths[myParagraphsNumber - 1];
 		int blockOffset = myBlockOffset;
 		block[blockOffset++] = (char)ZLTextParagraph.Entry.CONTROL;
 		block[blockOffset++] = (char)((hyperlinkType << 9) + 0x0100 + textKind);
-		block[blockOffset++] = (char)labelLength;
-		label.getChars(0, labelLength, block, blockOffset);
-		myBlockOffset = blockOffset + labelLength;
+		block[blockOffset++] = (char)(index >> 16);
+		block[blockOffset++] = (char)index;
+		myBlockOffset = blockOffset;
 	}
 	
 	public void addImage(String id, short vOffset) {
-		final int len = id.length();
-		final char[] block = getDataBlock(3 + len);
+		final int index = getStringIndex(id);
+		final char[] block = getDataBlock(4);
 		++myParagraphLengths[myParagraphsNumber - 1];
 		int blockOffset = myBlockOffset;
 		block[blockOffset++] = (char)ZLTextParagraph.Entry.IMAGE;
 		block[blockOffset++] = (char)vOffset;
-		block[blockOffset++] = (char)len;
-		id.getChars(0, len, block, blockOffset);
-		myBlockOffset = blockOffset + len;
+		block[blockOffset++] = (char)(index >> 16);
+		block[blockOffset++] = (char)index;
+		myBlockOffset = blockOffset;
 	}
 	
 	public void addFixedHSpace(short length) {
@@ -148,6 +170,51 @@ public final class ZLTextWritablePlainModel extends ZLTextPlainModel implements
 		block[myBlockOffset++] = (char)length;
 	}	
 
+	public void writeParagraphIndex(DataOutputStream stream) throws IOException {
+		final int size = myParagraphsNumber;
+		stream.writeInt(size);
+		for (int i = 0; i < size; ++i) {
+			stream.writeInt(myStartEntryIndices[i]);
+			stream.writeInt(myStartEntryOffsets[i]);
+			stream.writeInt(myParagraphLengths[i]);
+			stream.writeInt(myTextSizes[i]);
+			stream.writeByte(myParagraphKinds[i]);
+		}
+		stream.writeInt(myStringsNumber);
+		for (int i = 0; i < myStringsNumber; ++i) {
+			stream.writeUTF(myStrings[i]);
+		}
+	}
+
+	public void readParagraphIndex(DataInputStream stream) throws IOException {
+		final int size = stream.readInt();
+		// one slot more, as the scan in ZLTextPlainModel resets its iterator past the last paragraph
+		final int arraySize = size + 1;
+		myStartEntryIndices = new int[arraySize];
+		myStartEntryOffsets = new int[arraySize];
+		myParagraphLengths = new int[arraySize];
+		myTextSizes = new int[arraySize];
+		myParagraphKinds = new byte[arraySize];
+		for (int i = 0; i < size; ++i) {
+			myStartEntryIndices[i] = stream.readInt();
+			myStartEntryOffsets[i] = stream.readInt();
+			myParagraphLengths[i] = stream.readInt();
+			myTextSizes[i] = stream.readInt();
+			myParagraphKinds[i] = stream.readByte();
+		}
+		myParagraphsNumber = size;
+		final int stringsNumber = stream.readInt();
+		myStrings = new String[Math.max(stringsNumber, 1)];
+		myStringIndices.clear();
+		for (int i = 0; i < stringsNumber; ++i) {
+			myStrings[i] = stream.readUTF();
+			myStringIndices.put(myStrings[i], i);
+		}
+		myStringsNumber = stringsNumber;
+		myCurrentDataBlock = null;
+		myBlockOffset = 0;
+	}
+
 	public void stopReading() {
 		/*
 		if (myCurrentDataBlock != null) {
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.view;
+
+import java.io.*;
+
+import org.geometerplus.zlibrary.core.util.ZLArrayUtils;
+
+/*
+ * Start positions of the pages laid out for one view configuration,
+ * stored as (paragraph, element, char) triples. Until the index is
+ * complete, the last entry is the start of the first page whose end
+ * is not known yet.
+ */
+final class ZLTextPageIndex {
+	final String Configuration;
+
+	private int[] myStarts = new int[3 * 256];
+	private int mySize;
+	private boolean myIsComplete;
+
+	ZLTextPageIndex(String configuration) {
+		Configuration = configuration;
+		add(0, 0, 0);
+	}
+
+	int size() {
+		return mySize;
+	}
+
+	boolean isComplete() {
+		return myIsComplete;
+	}
+
+	void setComplete() {
+		myIsComplete = true;
+	}
+
+	int getParagraphIndex(int page) {
+		return myStarts[3 * page];
+	}
+
+	int getElementIndex(int page) {
+		return myStarts[3 * page + 1];
+	}
+
+	int getCharIndex(int page) {
+		return myStarts[3 * page + 2];
+	}
+
+	void add(int paragraphIndex, int elementIndex, int charIndex) {
+		if (3 * mySize == myStarts.length) {
+			myStarts = ZLArrayUtils.createCopy(myStarts, 3 * mySize, 6 * mySize);
+		}
+		myStarts[3 * mySize] = paragraphIndex;
+		myStarts[3 * mySize + 1] = elementIndex;
+		myStarts[3 * mySize + 2] = charIndex;
+		++mySize;
+	}
+
+	private int compare(int page, ZLTextPosition position) {
+		final int[] starts = myStarts;
+		int diff = starts[3 * page] - position.getParagraphIndex();
+		if (diff != 0) {
+			return diff;
+		}
+		diff = starts[3 * page + 1] - position.getElementIndex();
+		if (diff != 0) {
+			return diff;
+		}
+		return starts[3 * page + 2] - position.getCharIndex();
+	}
+
+	/*
+	 * Returns the number (0-based) of the last page starting at or before position.
+	 */
+	int findPage(ZLTextPosition position) {
+		int low = 0;
+		int high = mySize - 1;
+		while (low < high) {
+			final int middle = (low + high + 1) >>> 1;
+			if (compare(middle, position) <= 0) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	byte[] toByteArray() {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(5 + 12 * mySize);
+		final DataOutputStream stream = new DataOutputStream(bytes);
+		try {
+			stream.writeBoolean(myIsComplete);
+			stream.writeInt(mySize);
+			for (int i = 0; i < 3 * mySize; ++i) {
+				stream.writeInt(myStarts[i]);
+			}
+		} catch (IOException e) {
+		}
+		return bytes.toByteArray();
+	}
+
+	static ZLTextPageIndex fromByteArray(String configuration, byte[] data) {
+		final DataInputStream stream = new DataInputStream(new ByteArrayInputStream(data));
+		try {
+			final boolean isComplete = stream.readBoolean();
+			final int size = stream.readInt();
+			if (size <= 0 || data.length != 5 + 12 * size) {
+				return null;
+			}
+			final ZLTextPageIndex index = new ZLTextPageIndex(configuration);
+			index.myStarts = new int[3 * size];
+			for (int i = 0; i < 3 * size; ++i) {
+				index.myStarts[i] = stream.readInt();
+			}
+			index.mySize = size;
+			index.myIsComplete = isComplete;
+			return index;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2007-2011 Geometer Plus <contact@geometerplus.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.view;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Lays out pages around the current one on a background thread.
+ * Layout shares the text style and paint context of the view, so every
+ * page is prepared under the view's monitor, one page per lock
+ * acquisition; a stale generation number stops the task early.
+ */
+final class ZLTextPagePrefetcher {
+	private static class MinPriorityThreadFactory implements ThreadFactory {
+		private final ThreadFactory myDefaultThreadFactory = Executors.defaultThreadFactory();
+
+		public Thread newThread(Runnable r) {
+			final Thread th = myDefaultThreadFactory.newThread(r);
+			th.setPriority(Thread.MIN_PRIORITY);
+			th.setDaemon(true);
+			return th;
+		}
+	}
+
+	private static final ExecutorService ourPool = Executors.newSingleThreadExecutor(new MinPriorityThreadFactory());
+
+	private final ZLTextView myView;
+	private volatile int myGeneration;
+	private boolean myIsScheduled;
+
+	ZLTextPagePrefetcher(ZLTextView view) {
+		myView = view;
+	}
+
+	synchronized void cancel() {
+		++myGeneration;
+	}
+
+	synchronized void schedule() {
+		if (myIsScheduled) {
+			return;
+		}
+		myIsScheduled = true;
+		ourPool.execute(new Runnable() {
+			public void run() {
+				final int generation;
+				synchronized (ZLTextPagePrefetcher.this) {
+					myIsScheduled = false;
+					generation = myGeneration;
+				}
+				while (generation == myGeneration) {
+					synchronized (myView) {
+						if (generation != myGeneration || !myView.prefetchPage()) {
+							break;
+						}
+					}
+					Thread.yield();
+				}
+			}
+		});
+	}
+}
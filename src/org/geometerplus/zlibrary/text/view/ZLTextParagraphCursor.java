@@ -189,10 +189,14 @@ public final class ZLTextParagraphCursor {
 
 	private static final char[] SPACE_ARRAY = { ' ' };
 	void fill() {
+		final long startTime = System.nanoTime();
 		ZLTextParagraph	paragraph = Model.getParagraph(Index);
 		switch (paragraph.getKind()) {
 			case ZLTextParagraph.Kind.TEXT_PARAGRAPH:
-				new Processor(paragraph, new LineBreaker(Model.getLanguage()), Model.getMarks(), Index, myElements).fill();
+				// Processor shares a static breaks buffer; pages may be laid out on a background thread
+				synchronized (Processor.class) {
+					new Processor(paragraph, new LineBreaker(Model.getLanguage()), Model.getMarks(), Index, myElements).fill();
+				}
 				break;
 			case ZLTextParagraph.Kind.EMPTY_LINE_PARAGRAPH:
 				myElements.add(new ZLTextWord(SPACE_ARRAY, 0, 1, 0));
@@ -200,10 +204,13 @@ public final class ZLTextParagraphCursor {
 			default:
 				break;
 		}
+		ZLTextParagraphCursorCache.addBuildTime(System.nanoTime() - startTime);
+		ZLTextParagraphCursorCache.resize(this);
 	}
 	
 	void clear() {
 		myElements.clear();
+		ZLTextParagraphCursorCache.resize(this);
 	}
 
 	public boolean isFirst() {
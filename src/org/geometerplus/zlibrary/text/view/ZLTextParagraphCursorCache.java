@@ -19,12 +19,21 @@
 
 package org.geometerplus.zlibrary.text.view;
 
-import java.lang.ref.WeakReference;
 import java.util.*;
 
+import org.geometerplus.zlibrary.core.options.ZLIntegerRangeOption;
+
 import org.geometerplus.zlibrary.text.model.ZLTextModel;
 
+/*
+ * Strong LRU of paragraph cursors, bounded by the total number of
+ * elements. Every model has its own partition, so the cursors of
+ * a model that is not shown any more can be dropped at once.
+ */
 class ZLTextParagraphCursorCache {
+	static final ZLIntegerRangeOption SizeLimitOption =
+		new ZLIntegerRangeOption("Memory", "ParagraphCacheSize", 1024, 1 << 20, 1 << 16);
+
 	private final static class Key {
 		private final ZLTextModel myModel;
 		private final int myIndex;
@@ -44,18 +53,117 @@ class ZLTextParagraphCursorCache {
 		}
 	}
 
-	private static final HashMap<Key,WeakReference<ZLTextParagraphCursor>> ourMap = new HashMap<Key,WeakReference<ZLTextParagraphCursor>>();
+	private final static class Entry {
+		final ZLTextParagraphCursor Cursor;
+		int Size;
+
+		Entry(ZLTextParagraphCursor cursor) {
+			Cursor = cursor;
+			Size = size(cursor);
+		}
+
+		static int size(ZLTextParagraphCursor cursor) {
+			return Math.max(cursor.getParagraphLength(), 1);
+		}
+	}
+
+	// access-ordered; the eldest entry is the least recently used
+	private static final LinkedHashMap<Key,Entry> ourMap = new LinkedHashMap<Key,Entry>(256, 0.75f, true);
+	private static final HashMap<ZLTextModel,HashSet<Key>> ourPartitions = new HashMap<ZLTextModel,HashSet<Key>>();
+	private static int ourSize;
+
+	private static int ourHitCount;
+	private static int ourMissCount;
+	private static long ourBuildTime;
+
+	public static synchronized void put(ZLTextModel model, int index, ZLTextParagraphCursor cursor) {
+		final Key key = new Key(model, index);
+		final Entry entry = new Entry(cursor);
+		final Entry old = ourMap.put(key, entry);
+		if (old != null) {
+			ourSize -= old.Size;
+		} else {
+			HashSet<Key> partition = ourPartitions.get(model);
+			if (partition == null) {
+				partition = new HashSet<Key>();
+				ourPartitions.put(model, partition);
+			}
+			partition.add(key);
+		}
+		ourSize += entry.Size;
+
+		final int limit = SizeLimitOption.getValue();
+		for (Iterator<Map.Entry<Key,Entry>> it = ourMap.entrySet().iterator(); ourSize > limit && it.hasNext(); ) {
+			final Map.Entry<Key,Entry> eldest = it.next();
+			if (eldest.getValue() == entry) {
+				// the newest cursor is kept even if it alone exceeds the limit
+				break;
+			}
+			it.remove();
+			removeFromPartition(eldest.getKey());
+			ourSize -= eldest.getValue().Size;
+		}
+	}
+
+	// a cached cursor has been cleared or filled again
+	static synchronized void resize(ZLTextParagraphCursor cursor) {
+		final Entry entry = ourMap.get(new Key(cursor.Model, cursor.Index));
+		if (entry != null && entry.Cursor == cursor) {
+			final int size = Entry.size(cursor);
+			ourSize += size - entry.Size;
+			entry.Size = size;
+		}
+	}
 
-	public static void put(ZLTextModel model, int index, ZLTextParagraphCursor cursor) {
-		ourMap.put(new Key(model, index), new WeakReference<ZLTextParagraphCursor>(cursor));
+	private static void removeFromPartition(Key key) {
+		final HashSet<Key> partition = ourPartitions.get(key.myModel);
+		if (partition != null) {
+			partition.remove(key);
+			if (partition.isEmpty()) {
+				ourPartitions.remove(key.myModel);
+			}
+		}
 	}
 
-	public static ZLTextParagraphCursor get(ZLTextModel model, int index) {
-		WeakReference<ZLTextParagraphCursor> ref = ourMap.get(new Key(model, index));
-		return (ref != null) ? ref.get() : null;
+	public static synchronized ZLTextParagraphCursor get(ZLTextModel model, int index) {
+		final Entry entry = ourMap.get(new Key(model, index));
+		if (entry != null) {
+			++ourHitCount;
+			return entry.Cursor;
+		}
+		++ourMissCount;
+		return null;
 	}
 
-	public static void clear() {
+	public static synchronized void clear() {
 		ourMap.clear();
+		ourPartitions.clear();
+		ourSize = 0;
+	}
+
+	public static synchronized void clear(ZLTextModel model) {
+		final HashSet<Key> partition = ourPartitions.remove(model);
+		if (partition != null) {
+			for (Key key : partition) {
+				ourSize -= ourMap.remove(key).Size;
+			}
+		}
+	}
+
+	static synchronized void addBuildTime(long time) {
+		ourBuildTime += time;
+	}
+
+	static synchronized int getHitCount() {
+		return ourHitCount;
+	}
+
+	static synchronized int getMissCount() {
+		return ourMissCount;
+	}
+
+	// in nanoseconds
+	static synchronized long getBuildTime() {
+		return ourBuildTime;
 	}
 }
@@ -25,9 +25,12 @@ import org.geometerplus.zlibrary.core.application.ZLApplication;
 import org.geometerplus.zlibrary.core.view.ZLPaintContext;
 import org.geometerplus.zlibrary.core.filesystem.ZLFile;
 import org.geometerplus.zlibrary.core.filesystem.ZLResourceFile;
+import org.geometerplus.zlibrary.core.options.ZLBooleanOption;
+import org.geometerplus.zlibrary.core.options.ZLIntegerRangeOption;
 
 import org.geometerplus.zlibrary.text.model.*;
 import org.geometerplus.zlibrary.text.hyphenation.*;
+import org.geometerplus.zlibrary.text.view.style.ZLTextBaseStyle;
 import org.geometerplus.zlibrary.text.view.style.ZLTextStyleCollection;
 
 public abstract class ZLTextView extends ZLTextViewBase {
@@ -53,6 +56,26 @@ public abstract class ZLTextView extends ZLTextViewBase {
 	ZLTextPage myCurrentPage = new ZLTextPage();
 	private ZLTextPage myNextPage = new ZLTextPage();
 
+	public final ZLIntegerRangeOption PrefetchDepthOption =
+		new ZLIntegerRangeOption("Options", "PagesToPrefetch", 0, 5, 2);
+
+	// pages after myNextPage and before myPreviousPage, nearest first
+	private final LinkedList<ZLTextPage> myPagesAhead = new LinkedList<ZLTextPage>();
+	private final LinkedList<ZLTextPage> myPagesBehind = new LinkedList<ZLTextPage>();
+	private final ZLTextPagePrefetcher myPrefetcher = new ZLTextPagePrefetcher(this);
+
+	public final ZLBooleanOption PageIndexOption =
+		new ZLBooleanOption("Options", "IndexPages", true);
+
+	private static final int PAGE_INDEX_SAVE_INTERVAL = 100;
+	private ZLTextPageIndex myPageIndex;
+	private final ZLTextPage myIndexPage = new ZLTextPage();
+
+	private int myPrefetchHitCount;
+	private int myPrefetchMissCount;
+	private int myLaidOutPagesNumber;
+	private long myPageLayoutTime;
+
 	private final HashMap<ZLTextLineInfo,ZLTextLineInfo> myLineInfoCache = new HashMap<ZLTextLineInfo,ZLTextLineInfo>();
 
 	public ZLTextView(ZLApplication application) {
@@ -61,13 +84,15 @@ public abstract class ZLTextView extends ZLTextViewBase {
 	}
 
 	public synchronized void setModel(ZLTextModel model) {
-		ZLTextParagraphCursorCache.clear();
+		if (myModel != null) {
+			ZLTextParagraphCursorCache.clear(myModel);
+		}
 		mySelectionModel.clear();
 
 		myModel = model;
+		myPageIndex = null;
 		myCurrentPage.reset();
-		myPreviousPage.reset();
-		myNextPage.reset();
+		resetNeighbourPages();
 		if (myModel != null) {
 			final int paragraphsNumber = myModel.getParagraphsNumber();
 			if (paragraphsNumber > 0) {
@@ -77,6 +102,14 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		Application.getViewWidget().reset();
 	}
 
+	private void resetNeighbourPages() {
+		myPrefetcher.cancel();
+		myPreviousPage.reset();
+		myNextPage.reset();
+		myPagesAhead.clear();
+		myPagesBehind.clear();
+	}
+
 	public ZLTextModel getModel() {
 		return myModel;
 	}
@@ -100,8 +133,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 			return;
 		}
 
-		myPreviousPage.reset();
-		myNextPage.reset();
+		resetNeighbourPages();
 		boolean doRepaint = false;
 		if (myCurrentPage.StartCursor.isNull()) {
 			doRepaint = true;
@@ -132,7 +164,17 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		}
 	}
 
-	public synchronized int search(final String text, boolean ignoreCase, boolean wholeText, boolean backward, boolean thisSectionOnly) {
+	public interface SearchMode {
+		int SUBSTRING = 0;
+		int WHOLE_WORD = 1;
+		int WORD_PREFIX = 2;
+	}
+
+	public int search(final String text, boolean ignoreCase, boolean wholeText, boolean backward, boolean thisSectionOnly) {
+		return search(text, ignoreCase, wholeText, backward, thisSectionOnly, SearchMode.SUBSTRING);
+	}
+
+	public synchronized int search(final String text, boolean ignoreCase, boolean wholeText, boolean backward, boolean thisSectionOnly, int mode) {
 		if (text.length() == 0) {
 			return 0;
 		}
@@ -141,9 +183,10 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		if (thisSectionOnly) {
 			// TODO: implement
 		}
-		int count = myModel.search(text, startIndex, endIndex, ignoreCase);
-		myPreviousPage.reset();
-		myNextPage.reset();
+		int count = (mode == SearchMode.SUBSTRING) ?
+			myModel.search(text, startIndex, endIndex, ignoreCase) :
+			myModel.searchWords(text, startIndex, endIndex, ignoreCase, mode == SearchMode.WORD_PREFIX);
+		resetNeighbourPages();
 		if (!myCurrentPage.StartCursor.isNull()) {
 			rebuildPaintInfo();
 			if (count > 0) {
@@ -205,8 +248,14 @@ public abstract class ZLTextView extends ZLTextViewBase {
 				final ZLTextPage swap = myNextPage;
 				myNextPage = myCurrentPage;
 				myCurrentPage = myPreviousPage;
-				myPreviousPage = swap;
-				myPreviousPage.reset();
+				myPreviousPage = takePrefetchedPage(myPagesBehind, swap);
+				keepPrefetchedPage(myPagesAhead, swap);
+				if (!myCurrentPage.StartCursor.isNull() &&
+					!myPreviousPage.EndCursor.isNull() &&
+					!myPreviousPage.EndCursor.samePositionAs(myCurrentPage.StartCursor)) {
+					myPreviousPage.reset();
+					myPagesBehind.clear();
+				}
 				if (myCurrentPage.PaintState == PaintStateEnum.NOTHING_TO_PAINT) {
 					preparePaintInfo(myNextPage);
 					myCurrentPage.EndCursor.setCursor(myNextPage.StartCursor);
@@ -225,16 +274,240 @@ public abstract class ZLTextView extends ZLTextViewBase {
 				final ZLTextPage swap = myPreviousPage;
 				myPreviousPage = myCurrentPage;
 				myCurrentPage = myNextPage;
-				myNextPage = swap;
-				myNextPage.reset();
+				myNextPage = takePrefetchedPage(myPagesAhead, swap);
+				keepPrefetchedPage(myPagesBehind, swap);
 				if (myCurrentPage.PaintState == PaintStateEnum.NOTHING_TO_PAINT) {
 					preparePaintInfo(myPreviousPage);
 					myCurrentPage.StartCursor.setCursor(myPreviousPage.EndCursor);
 					myCurrentPage.PaintState = PaintStateEnum.START_IS_KNOWN;
+				} else if (!myCurrentPage.EndCursor.isNull() &&
+						   !myNextPage.StartCursor.isNull() &&
+						   !myCurrentPage.EndCursor.samePositionAs(myNextPage.StartCursor)) {
+					myNextPage.reset();
+					myPagesAhead.clear();
+					myNextPage.StartCursor.setCursor(myCurrentPage.EndCursor);
+					myNextPage.PaintState = PaintStateEnum.START_IS_KNOWN;
 				}
 				break;
 			}
 		}
+		schedulePrefetch();
+	}
+
+	private ZLTextPage takePrefetchedPage(LinkedList<ZLTextPage> pages, ZLTextPage spare) {
+		if (!pages.isEmpty()) {
+			return pages.removeFirst();
+		}
+		spare.reset();
+		return spare;
+	}
+
+	private void keepPrefetchedPage(LinkedList<ZLTextPage> pages, ZLTextPage page) {
+		if (page.PaintState == PaintStateEnum.NOTHING_TO_PAINT) {
+			return;
+		}
+		if (page == myPreviousPage || page == myNextPage) {
+			return;
+		}
+		pages.addFirst(page);
+		while (pages.size() > PrefetchDepthOption.getValue() - 1) {
+			pages.removeLast();
+		}
+	}
+
+	private void schedulePrefetch() {
+		if (PrefetchDepthOption.getValue() > 0 || PageIndexOption.getValue()) {
+			myPrefetcher.schedule();
+		}
+	}
+
+	private boolean isPrepared(ZLTextPage page) {
+		return
+			page.PaintState == PaintStateEnum.READY &&
+			page.OldWidth == getTextAreaWidth() &&
+			page.OldHeight == getTextAreaHeight();
+	}
+
+	private static boolean isLastPage(ZLTextPage page) {
+		final ZLTextWordCursor cursor = page.EndCursor;
+		return cursor.isNull() || (cursor.isEndOfParagraph() && cursor.getParagraphCursor().isLast());
+	}
+
+	private static boolean isFirstPage(ZLTextPage page) {
+		final ZLTextWordCursor cursor = page.StartCursor;
+		return cursor.isNull() || (cursor.isStartOfParagraph() && cursor.getParagraphCursor().isFirst());
+	}
+
+	private boolean prefetchForward(int count) {
+		ZLTextPage previous = myCurrentPage;
+		for (int i = 0; i < count; ++i) {
+			ZLTextPage page;
+			if (i == 0) {
+				page = myNextPage;
+			} else if (i <= myPagesAhead.size()) {
+				page = myPagesAhead.get(i - 1);
+			} else {
+				page = null;
+			}
+			if (page == null || !isPrepared(page)) {
+				if (isLastPage(previous)) {
+					return false;
+				}
+				if (page == null) {
+					page = new ZLTextPage();
+					myPagesAhead.add(page);
+				}
+				if (page.PaintState == PaintStateEnum.NOTHING_TO_PAINT) {
+					page.StartCursor.setCursor(previous.EndCursor);
+					page.PaintState = PaintStateEnum.START_IS_KNOWN;
+				}
+				preparePaintInfo(page);
+				return true;
+			}
+			previous = page;
+		}
+		return false;
+	}
+
+	private boolean prefetchBackward(int count) {
+		ZLTextPage next = myCurrentPage;
+		for (int i = 0; i < count; ++i) {
+			ZLTextPage page;
+			if (i == 0) {
+				page = myPreviousPage;
+			} else if (i <= myPagesBehind.size()) {
+				page = myPagesBehind.get(i - 1);
+			} else {
+				page = null;
+			}
+			if (page == null || !isPrepared(page)) {
+				if (isFirstPage(next)) {
+					return false;
+				}
+				if (page == null) {
+					page = new ZLTextPage();
+					myPagesBehind.add(page);
+				}
+				if (page.PaintState == PaintStateEnum.NOTHING_TO_PAINT) {
+					page.EndCursor.setCursor(next.StartCursor);
+					page.PaintState = PaintStateEnum.END_IS_KNOWN;
+				}
+				preparePaintInfo(page);
+				return true;
+			}
+			next = page;
+		}
+		return false;
+	}
+
+	/*
+	 * Called by ZLTextPagePrefetcher under the view's monitor;
+	 * lays out at most one page and returns false when there is nothing to do.
+	 * Neighbour pages go first, then the page index is extended.
+	 */
+	synchronized boolean prefetchPage() {
+		if (myModel == null || myModel.getParagraphsNumber() == 0 || !isPrepared(myCurrentPage)) {
+			return false;
+		}
+		final int depth = PrefetchDepthOption.getValue();
+		if (depth > 0 && (
+				prefetchForward(1) ||
+				prefetchBackward(1) ||
+				prefetchForward(depth) ||
+				prefetchBackward(depth))) {
+			return true;
+		}
+		return extendPageIndex();
+	}
+
+	private String pageIndexConfiguration() {
+		final ZLTextBaseStyle style = ZLTextStyleCollection.Instance().getBaseStyle();
+		return
+			myModel.getId() + ":" + myModel.getParagraphsNumber() + ":" + sizeOfFullText() + ":" +
+			getTextAreaWidth() + "x" + getTextAreaHeight() + ":" +
+			getLeftMargin() + "," + getRightMargin() + "," + getTopMargin() + "," + getBottomMargin() + ":" +
+			style.getFontFamily() + ":" + style.getFontSize() + ":" +
+			style.getLineSpacePercent() + ":" + style.AutoHyphenationOption.getValue();
+	}
+
+	// Can be called only when (myModel.getParagraphsNumber() != 0)
+	private ZLTextPageIndex pageIndex() {
+		if (!PageIndexOption.getValue()) {
+			return null;
+		}
+		final String configuration = pageIndexConfiguration();
+		if (myPageIndex == null || !myPageIndex.Configuration.equals(configuration)) {
+			final byte[] data = loadPageIndex(configuration);
+			final ZLTextPageIndex index =
+				(data != null) ? ZLTextPageIndex.fromByteArray(configuration, data) : null;
+			myPageIndex = (index != null) ? index : new ZLTextPageIndex(configuration);
+		}
+		return myPageIndex;
+	}
+
+	/*
+	 * Lays out the first page of the index whose end is unknown;
+	 * returns false when the index is complete.
+	 */
+	private boolean extendPageIndex() {
+		final ZLTextPageIndex index = pageIndex();
+		if (index == null || index.isComplete()) {
+			return false;
+		}
+		final int last = index.size() - 1;
+		final ZLTextWordCursor start =
+			new ZLTextWordCursor(ZLTextParagraphCursor.cursor(myModel, index.getParagraphIndex(last)));
+		start.moveTo(index.getElementIndex(last), index.getCharIndex(last));
+		final ZLTextWordCursor end = new ZLTextWordCursor();
+		buildInfos(myIndexPage, start, end);
+		myIndexPage.LineInfos.clear();
+		myLineInfoCache.clear();
+		if ((end.isEndOfParagraph() && end.getParagraphCursor().isLast()) || end.compareTo(start) <= 0) {
+			index.setComplete();
+		} else {
+			index.add(end.getParagraphIndex(), end.getElementIndex(), end.getCharIndex());
+		}
+		if (index.isComplete() || index.size() % PAGE_INDEX_SAVE_INTERVAL == 0) {
+			savePageIndex(index.Configuration, index.toByteArray());
+		}
+		return !index.isComplete();
+	}
+
+	protected byte[] loadPageIndex(String configuration) {
+		return null;
+	}
+
+	protected void savePageIndex(String configuration, byte[] data) {
+	}
+
+	public final synchronized int getPrefetchHitCount() {
+		return myPrefetchHitCount;
+	}
+
+	public final synchronized int getPrefetchMissCount() {
+		return myPrefetchMissCount;
+	}
+
+	public final synchronized int getLaidOutPagesNumber() {
+		return myLaidOutPagesNumber;
+	}
+
+	// in nanoseconds
+	public final synchronized long getAveragePageLayoutTime() {
+		return myLaidOutPagesNumber > 0 ? myPageLayoutTime / myLaidOutPagesNumber : 0;
+	}
+
+	public static int getParagraphCacheHitCount() {
+		return ZLTextParagraphCursorCache.getHitCount();
+	}
+
+	public static int getParagraphCacheMissCount() {
+		return ZLTextParagraphCursorCache.getMissCount();
+	}
+
+	// time spent on splitting paragraphs into elements, in nanoseconds
+	public static long getParagraphBuildTime() {
+		return ZLTextParagraphCursorCache.getBuildTime();
 	}
 
 	@Override
@@ -274,6 +547,14 @@ public abstract class ZLTextView extends ZLTextViewBase {
 				}
 		}
 
+		if (page != myCurrentPage) {
+			if (isPrepared(page)) {
+				++myPrefetchHitCount;
+			} else {
+				++myPrefetchMissCount;
+			}
+		}
+
 		page.TextElementMap.clear();
 
 		preparePaintInfo(page);
@@ -308,6 +589,10 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		if (selectedElementRegion != null && myHighlightSelectedRegion) {
 			selectedElementRegion.draw(context);
 		}
+
+		if (page == myCurrentPage) {
+			schedulePrefetch();
+		}
 	}
 
 	private ZLTextPage getPage(PageIndex pageIndex) {
@@ -478,10 +763,42 @@ public abstract class ZLTextView extends ZLTextViewBase {
 	}
 
 	public final synchronized int computePageNumber() {
-		return computeTextPageNumber(sizeOfFullText());
+		if (myModel == null || myModel.getParagraphsNumber() == 0) {
+			return 1;
+		}
+		final ZLTextPageIndex index = pageIndex();
+		if (index == null) {
+			return computeTextPageNumber(sizeOfFullText());
+		}
+		if (index.isComplete()) {
+			return index.size();
+		}
+		// pages after the indexed ones are estimated
+		final int known = index.size() - 1;
+		return known + computeTextPageNumber(
+			sizeOfFullText() - sizeOfTextBeforeParagraph(index.getParagraphIndex(known))
+		);
 	}
 
 	public final synchronized int computeCurrentPage() {
+		if (myModel == null || myModel.getParagraphsNumber() == 0) {
+			return 1;
+		}
+		final ZLTextPageIndex index = pageIndex();
+		if (index != null) {
+			preparePaintInfo(myCurrentPage);
+			final ZLTextWordCursor start = myCurrentPage.StartCursor;
+			if (!start.isNull()) {
+				final int page = index.findPage(start);
+				if (index.isComplete() || page < index.size() - 1) {
+					return page + 1;
+				}
+				return page + computeTextPageNumber(
+					getCurrentCharNumber(PageIndex.current, false) -
+					sizeOfTextBeforeParagraph(index.getParagraphIndex(page))
+				);
+			}
+		}
 		return computeTextPageNumber(getCurrentCharNumber(PageIndex.current, false));
 	}
 
@@ -490,6 +807,13 @@ public abstract class ZLTextView extends ZLTextViewBase {
 			return;
 		}
 
+		final ZLTextPageIndex index = pageIndex();
+		if (index != null && page >= 1 && page <= index.size()) {
+			--page;
+			gotoPosition(index.getParagraphIndex(page), index.getElementIndex(page), index.getCharIndex(page));
+			return;
+		}
+
 		final float factor = computeCharsPerPage();
 		final float textSize = page * factor;
 
@@ -944,8 +1268,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 
 	public synchronized final void scrollPage(boolean forward, int scrollingMode, int value) {
 		preparePaintInfo(myCurrentPage);
-		myPreviousPage.reset();
-		myNextPage.reset();
+		resetNeighbourPages();
 		if (myCurrentPage.PaintState == PaintStateEnum.READY) {
 			myCurrentPage.PaintState = forward ? PaintStateEnum.TO_SCROLL_FORWARD : PaintStateEnum.TO_SCROLL_BACKWARD;
 			myScrollingMode = scrollingMode;
@@ -963,8 +1286,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		if (myModel != null && myModel.getParagraphsNumber() > 0) {
 			Application.getViewWidget().reset();
 			myCurrentPage.moveStartCursor(paragraphIndex, wordIndex, charIndex);
-			myPreviousPage.reset();
-			myNextPage.reset();
+			resetNeighbourPages();
 			preparePaintInfo(myCurrentPage);
 			if (myCurrentPage.isEmptyPage()) {
 				scrollPage(true, ScrollingMode.NO_OVERLAPPING, 0);
@@ -975,8 +1297,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 	private final synchronized void gotoPositionByEnd(int paragraphIndex, int wordIndex, int charIndex) {
 		if (myModel != null && myModel.getParagraphsNumber() > 0) {
 			myCurrentPage.moveEndCursor(paragraphIndex, wordIndex, charIndex);
-			myPreviousPage.reset();
-			myNextPage.reset();
+			resetNeighbourPages();
 			preparePaintInfo(myCurrentPage);
 			if (myCurrentPage.isEmptyPage()) {
 				scrollPage(false, ScrollingMode.NO_OVERLAPPING, 0);
@@ -985,8 +1306,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 	}
 
 	protected synchronized void preparePaintInfo() {
-		myPreviousPage.reset();
-		myNextPage.reset();
+		resetNeighbourPages();
 		preparePaintInfo(myCurrentPage);
 	}
 
@@ -998,7 +1318,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 			page.OldHeight = newHeight;
 			if (page.PaintState != PaintStateEnum.NOTHING_TO_PAINT) {
 				page.LineInfos.clear();
-				if (page == myPreviousPage) {
+				if (page == myPreviousPage || myPagesBehind.contains(page)) {
 					if (!page.EndCursor.isNull()) {
 						page.StartCursor.reset();
 						page.PaintState = PaintStateEnum.END_IS_KNOWN;
@@ -1022,6 +1342,8 @@ public abstract class ZLTextView extends ZLTextViewBase {
 			return;
 		}
 
+		final long startTime = System.nanoTime();
+
 		final HashMap<ZLTextLineInfo,ZLTextLineInfo> cache = myLineInfoCache;
 		for (ZLTextLineInfo info : page.LineInfos) {
 			cache.put(info, info);
@@ -1119,9 +1441,11 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		// TODO: cache?
 		myLineInfoCache.clear();
 
+		myPageLayoutTime += System.nanoTime() - startTime;
+		++myLaidOutPagesNumber;
+
 		if (page == myCurrentPage) {
-			myPreviousPage.reset();
-			myNextPage.reset();
+			resetNeighbourPages();
 		}
 	}
 
@@ -1131,8 +1455,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 	}
 
 	protected void rebuildPaintInfo() {
-		myPreviousPage.reset();
-		myNextPage.reset();
+		resetNeighbourPages();
 		ZLTextParagraphCursorCache.clear();
 
 		if (myCurrentPage.PaintState != PaintStateEnum.NOTHING_TO_PAINT) {